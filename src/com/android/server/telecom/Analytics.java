@@ -217,6 +217,14 @@ public class Analytics {
         public void addCallProperties(int properties) {
         }
 
+        public void addCallFilterTiming(String filterName, long queueDelayMillis,
+                long executionMillis, boolean isOnCriticalPath, boolean isCompleted) {
+        }
+
+        public void addAudioRouteSwitch(int sourceRoute, int destinationRoute, int deviceType,
+                long durationMillis, boolean isCompleted) {
+        }
+
         public void setCallSource(int callSource) {
         }
 
@@ -254,6 +262,8 @@ public class Analytics {
         public boolean isVideo = false;
         public List<TelecomLogClass.VideoEvent> videoEvents;
         public List<TelecomLogClass.InCallServiceInfo> inCallServiceInfos;
+        public List<TelecomLogClass.CallFilterTiming> callFilterTimings;
+        public List<TelecomLogClass.AudioRouteSwitch> audioRouteSwitches;
         public int callProperties = 0;
         public int callSource = CALL_SOURCE_UNSPECIFIED;
         public long missedReason;
@@ -269,6 +279,8 @@ public class Analytics {
             connectionService = "";
             videoEvents = new LinkedList<>();
             inCallServiceInfos = new LinkedList<>();
+            callFilterTimings = new LinkedList<>();
+            audioRouteSwitches = new LinkedList<>();
             missedReason = 0;
         }
 
@@ -286,6 +298,8 @@ public class Analytics {
             this.callEvents = other.callEvents;
             this.isVideo = other.isVideo;
             this.videoEvents = other.videoEvents;
+            this.callFilterTimings = other.callFilterTimings;
+            this.audioRouteSwitches = other.audioRouteSwitches;
             this.callProperties = other.callProperties;
             this.callSource = other.callSource;
             this.missedReason = other.missedReason;
@@ -407,6 +421,28 @@ public class Analytics {
             this.callProperties |= properties;
         }
 
+        @Override
+        public void addCallFilterTiming(String filterName, long queueDelayMillis,
+                long executionMillis, boolean isOnCriticalPath, boolean isCompleted) {
+            callFilterTimings.add(new TelecomLogClass.CallFilterTiming()
+                    .setFilterName(filterName)
+                    .setQueueDelayMillis(queueDelayMillis)
+                    .setExecutionMillis(executionMillis)
+                    .setOnCriticalPath(isOnCriticalPath)
+                    .setCompleted(isCompleted));
+        }
+
+        @Override
+        public void addAudioRouteSwitch(int sourceRoute, int destinationRoute, int deviceType,
+                long durationMillis, boolean isCompleted) {
+            audioRouteSwitches.add(new TelecomLogClass.AudioRouteSwitch()
+                    .setSourceRoute(sourceRoute)
+                    .setDestinationRoute(destinationRoute)
+                    .setDeviceType(deviceType)
+                    .setDurationMillis(durationMillis)
+                    .setCompleted(isCompleted));
+        }
+
         @Override
         public void setCallSource(int callSource) {
             this.callSource = callSource;
@@ -514,6 +550,10 @@ public class Analytics {
                     videoEvents.toArray(new TelecomLogClass.VideoEvent[videoEvents.size()]);
             result.inCallServices = inCallServiceInfos.toArray(
                     new TelecomLogClass.InCallServiceInfo[inCallServiceInfos.size()]);
+            result.callFilterTimings = callFilterTimings.toArray(
+                    new TelecomLogClass.CallFilterTiming[callFilterTimings.size()]);
+            result.audioRouteSwitches = audioRouteSwitches.toArray(
+                    new TelecomLogClass.AudioRouteSwitch[audioRouteSwitches.size()]);
 
             return result;
         }
@@ -743,48 +783,60 @@ public class Analytics {
     }
 
     public static void dump(IndentingPrintWriter writer) {
+        // Copy what is needed under the lock, which calls in progress also take, and format it
+        // outside of the lock.
+        List<CallInfoImpl> callInfos;
+        Map<Integer, Double> averageTimings;
         synchronized (sLock) {
-            int prefixLength = CallsManager.TELECOM_CALL_ID_PREFIX.length();
-            List<String> callIds = new ArrayList<>(sCallIdToInfo.keySet());
-            // Sort the analytics in increasing order of call IDs
-            try {
-                Collections.sort(callIds, (id1, id2) -> {
-                    int i1, i2;
-                    try {
-                        i1 = Integer.valueOf(id1.substring(prefixLength));
-                    } catch (NumberFormatException e) {
-                        i1 = Integer.MAX_VALUE;
-                    }
-
-                    try {
-                        i2 = Integer.valueOf(id2.substring(prefixLength));
-                    } catch (NumberFormatException e) {
-                        i2 = Integer.MAX_VALUE;
-                    }
-                    return i1 - i2;
-                });
-            } catch (IllegalArgumentException e) {
-                // do nothing, leave the list in a partially sorted state.
+            callInfos = new ArrayList<>(sCallIdToInfo.size());
+            for (CallInfoImpl info : sCallIdToInfo.values()) {
+                CallInfoImpl copy = new CallInfoImpl(info);
+                if (info.inCallServiceInfos != null) {
+                    copy.inCallServiceInfos = new ArrayList<>(info.inCallServiceInfos);
+                }
+                callInfos.add(copy);
             }
+            averageTimings = SessionTiming.averageTimings(sSessionTimings);
+        }
 
-            for (String callId : callIds) {
-                writer.printf("Call %s: ", callId);
-                writer.println(sCallIdToInfo.get(callId).toString());
-            }
+        int prefixLength = CallsManager.TELECOM_CALL_ID_PREFIX.length();
+        // Sort the analytics in increasing order of call IDs
+        try {
+            Collections.sort(callInfos, (info1, info2) -> {
+                int i1, i2;
+                try {
+                    i1 = Integer.valueOf(info1.callId.substring(prefixLength));
+                } catch (NumberFormatException e) {
+                    i1 = Integer.MAX_VALUE;
+                }
 
-            Map<Integer, Double> averageTimings = SessionTiming.averageTimings(sSessionTimings);
-            averageTimings.entrySet().stream()
-                    .filter(e -> sSessionIdToLogSession.containsKey(e.getKey()))
-                    .forEach(e -> writer.printf("%s: %.2f\n",
-                            sSessionIdToLogSession.get(e.getKey()), e.getValue()));
-            writer.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
-            writer.println("Past analytics dumps: ");
-            writer.increaseIndent();
-            for (long time : sDumpTimes) {
-                writer.println(Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
-            }
-            writer.decreaseIndent();
+                try {
+                    i2 = Integer.valueOf(info2.callId.substring(prefixLength));
+                } catch (NumberFormatException e) {
+                    i2 = Integer.MAX_VALUE;
+                }
+                return i1 - i2;
+            });
+        } catch (IllegalArgumentException e) {
+            // do nothing, leave the list in a partially sorted state.
+        }
+
+        for (CallInfoImpl info : callInfos) {
+            writer.printf("Call %s: ", info.callId);
+            writer.println(info.toString());
+        }
+
+        averageTimings.entrySet().stream()
+                .filter(e -> sSessionIdToLogSession.containsKey(e.getKey()))
+                .forEach(e -> writer.printf("%s: %.2f\n",
+                        sSessionIdToLogSession.get(e.getKey()), e.getValue()));
+        writer.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
+        writer.println("Past analytics dumps: ");
+        writer.increaseIndent();
+        for (long time : sDumpTimes) {
+            writer.println(Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC));
         }
+        writer.decreaseIndent();
     }
 
     public static void reset() {
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keeps track of the audio devices which audio routing decisions are made from, so that those
+ * decisions do not each need a call into the audio service.
+ * <p>
+ * The output devices are kept up to date from an {@link AudioDeviceCallback}.  The available
+ * communication devices are reloaded on the first lookup after the callback reports a change.
+ * Since the callback is delivered asynchronously, a lookup for a communication device type which
+ * is not known reloads the list once before giving up, so a device which has only just been
+ * connected is still found.
+ */
+public class AudioDeviceRegistry {
+    private class RegistryCallback extends AudioDeviceCallback {
+        @Override
+        public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+            synchronized (mLock) {
+                if (mOutputDevices != null) {
+                    for (AudioDeviceInfo device : addedDevices) {
+                        if (device.isSink() && !containsDevice(mOutputDevices, device)) {
+                            getDevicesOfType(mOutputDevices, device.getType()).add(device);
+                        }
+                    }
+                }
+                mIsCommunicationDevicesStale = true;
+            }
+        }
+
+        @Override
+        public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+            synchronized (mLock) {
+                if (mOutputDevices != null) {
+                    for (AudioDeviceInfo device : removedDevices) {
+                        List<AudioDeviceInfo> devices = mOutputDevices.get(device.getType());
+                        if (devices != null) {
+                            devices.removeIf(d -> d.getId() == device.getId());
+                        }
+                    }
+                }
+                mIsCommunicationDevicesStale = true;
+            }
+        }
+    }
+
+    private final AudioManager mAudioManager;
+    private final Object mLock = new Object();
+    // Guarded by mLock.  Devices are indexed by AudioDeviceInfo type; null until first loaded.
+    private SparseArray<List<AudioDeviceInfo>> mOutputDevices;
+    private SparseArray<List<AudioDeviceInfo>> mCommunicationDevices;
+    private List<AudioDeviceInfo> mCommunicationDeviceList;
+    private boolean mIsCommunicationDevicesStale = true;
+    private int mNumAudioManagerCalls;
+
+    public AudioDeviceRegistry(AudioManager audioManager) {
+        mAudioManager = audioManager;
+        mAudioManager.registerAudioDeviceCallback(new RegistryCallback(), null);
+    }
+
+    /**
+     * @return the devices which are currently available for communication.
+     */
+    public List<AudioDeviceInfo> getAvailableCommunicationDevices() {
+        synchronized (mLock) {
+            if (mIsCommunicationDevicesStale) {
+                loadCommunicationDevices();
+            }
+            return new ArrayList<>(mCommunicationDeviceList);
+        }
+    }
+
+    /**
+     * @param type The {@code AudioDeviceInfo.TYPE_*} of the device.
+     * @return an available communication device of a type, or {@code null} if there is none.
+     */
+    public AudioDeviceInfo getCommunicationDevice(int type) {
+        return getCommunicationDevice(type, null);
+    }
+
+    /**
+     * @param type The {@code AudioDeviceInfo.TYPE_*} of the device.
+     * @param address The address of the device, or {@code null} to match any address.
+     * @return an available communication device of a type, or {@code null} if there is none.
+     */
+    public AudioDeviceInfo getCommunicationDevice(int type, String address) {
+        synchronized (mLock) {
+            boolean isReloaded = mIsCommunicationDevicesStale;
+            if (isReloaded) {
+                loadCommunicationDevices();
+            }
+            AudioDeviceInfo device = findDevice(mCommunicationDevices, type, address);
+            if (device == null && !isReloaded) {
+                // The device may have connected before the callback reporting it has arrived.
+                loadCommunicationDevices();
+                device = findDevice(mCommunicationDevices, type, address);
+            }
+            return device;
+        }
+    }
+
+    /**
+     * @param type The {@code AudioDeviceInfo.TYPE_*} of the device.
+     * @return {@code true} if there is an output device of a type.
+     */
+    public boolean hasOutputDevice(int type) {
+        synchronized (mLock) {
+            if (mOutputDevices == null) {
+                mOutputDevices = new SparseArray<>();
+                mNumAudioManagerCalls++;
+                for (AudioDeviceInfo device
+                        : mAudioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS)) {
+                    getDevicesOfType(mOutputDevices, device.getType()).add(device);
+                }
+            }
+            List<AudioDeviceInfo> devices = mOutputDevices.get(type);
+            return devices != null && !devices.isEmpty();
+        }
+    }
+
+    /**
+     * @return the number of times the audio service has been queried for devices.
+     */
+    @VisibleForTesting
+    public int getNumAudioManagerCalls() {
+        synchronized (mLock) {
+            return mNumAudioManagerCalls;
+        }
+    }
+
+    // Must be called with mLock held.
+    private void loadCommunicationDevices() {
+        mNumAudioManagerCalls++;
+        List<AudioDeviceInfo> devices = mAudioManager.getAvailableCommunicationDevices();
+        mCommunicationDeviceList = devices == null ? new ArrayList<>() : new ArrayList<>(devices);
+        mCommunicationDevices = new SparseArray<>();
+        for (AudioDeviceInfo device : mCommunicationDeviceList) {
+            getDevicesOfType(mCommunicationDevices, device.getType()).add(device);
+        }
+        mIsCommunicationDevicesStale = false;
+    }
+
+    private static List<AudioDeviceInfo> getDevicesOfType(
+            SparseArray<List<AudioDeviceInfo>> index, int type) {
+        List<AudioDeviceInfo> devices = index.get(type);
+        if (devices == null) {
+            devices = new ArrayList<>();
+            index.put(type, devices);
+        }
+        return devices;
+    }
+
+    private static AudioDeviceInfo findDevice(SparseArray<List<AudioDeviceInfo>> index, int type,
+            String address) {
+        List<AudioDeviceInfo> devices = index.get(type);
+        if (devices == null) {
+            return null;
+        }
+        for (AudioDeviceInfo device : devices) {
+            if (address == null || Objects.equals(address, device.getAddress())) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsDevice(SparseArray<List<AudioDeviceInfo>> index,
+            AudioDeviceInfo device) {
+        List<AudioDeviceInfo> devices = index.get(device.getType());
+        if (devices == null) {
+            return false;
+        }
+        for (AudioDeviceInfo d : devices) {
+            if (d.getId() == device.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Dumps the state of the {@link AudioDeviceRegistry}.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("audioManagerCalls=");
+            pw.print(mNumAudioManagerCalls);
+            pw.print(", communicationDevicesStale=");
+            pw.println(mIsCommunicationDevicesStale);
+            if (mCommunicationDeviceList != null) {
+                pw.increaseIndent();
+                for (AudioDeviceInfo device : mCommunicationDeviceList) {
+                    pw.print("id=");
+                    pw.print(device.getId());
+                    pw.print(", type=");
+                    pw.println(device.getType());
+                }
+                pw.decreaseIndent();
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.os.SystemClock;
+import android.telecom.CallAudioState;
+import android.telecom.Log;
+import android.util.Pair;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Traces user-requested audio route switches from the request being handled by
+ * {@link CallAudioRouteStateMachine} to the new route being in use, recording each hop through
+ * the route state machine and the Bluetooth stack along the way.
+ * <p>
+ * The latencies of completed switches are kept per source route, destination route and Bluetooth
+ * device type, so that slow switches can be attributed to a particular kind of switch.  Only one
+ * switch is traced at a time; a switch which has not completed when the next one is requested is
+ * recorded as abandoned.
+ */
+public class AudioRouteSwitchTracer {
+    /** Device type of a switch which did not involve a Bluetooth device. */
+    public static final int DEVICE_TYPE_NONE = -1;
+
+    /** The number of most recent latencies kept for each kind of switch. */
+    @VisibleForTesting
+    public static final int MAX_SAMPLES = 100;
+
+    private static final int MAX_RECENT_SPANS = 10;
+
+    /**
+     * A single route switch and the hops it went through.
+     */
+    public static class Span {
+        public final String sessionId;
+        public final int sourceRoute;
+        public final int destinationRoute;
+        private final long mStartMillis;
+        private final List<Pair<String, Long>> mHops = new ArrayList<>();
+        private int mDeviceType = DEVICE_TYPE_NONE;
+        private long mDurationMillis;
+        private boolean mIsFinished;
+        private boolean mIsCompleted;
+
+        Span(String sessionId, int sourceRoute, int destinationRoute, long startMillis) {
+            this.sessionId = sessionId;
+            this.sourceRoute = sourceRoute;
+            this.destinationRoute = destinationRoute;
+            mStartMillis = startMillis;
+        }
+
+        public int getDeviceType() {
+            return mDeviceType;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        public boolean isCompleted() {
+            return mIsCompleted;
+        }
+
+        /**
+         * @return the name of each hop and the milliseconds since the switch was requested.
+         */
+        public List<Pair<String, Long>> getHops() {
+            return mHops;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(sessionId).append(' ').append(getKey(sourceRoute, destinationRoute,
+                    mDeviceType));
+            if (mIsFinished) {
+                sb.append(mIsCompleted ? " completed in " : " abandoned after ")
+                        .append(mDurationMillis).append("ms");
+            }
+            sb.append(':');
+            for (Pair<String, Long> hop : mHops) {
+                sb.append(' ').append(hop.first).append('@').append(hop.second);
+            }
+            return sb.toString();
+        }
+    }
+
+    private final ClockProxy mClockProxy;
+    private final Consumer<Span> mListener;
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private Span mPendingSpan;
+    private final Map<String, long[]> mSamples = new LinkedHashMap<>();
+    private final Map<String, Integer> mSampleCounts = new LinkedHashMap<>();
+    private final LinkedList<Span> mRecentSpans = new LinkedList<>();
+    private int mNumAbandoned;
+
+    /**
+     * @param listener Notified of each switch once it completes or is abandoned.
+     */
+    public AudioRouteSwitchTracer(Consumer<Span> listener) {
+        this(new ClockProxy() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public long elapsedRealtime() {
+                return SystemClock.elapsedRealtime();
+            }
+        }, listener);
+    }
+
+    @VisibleForTesting
+    public AudioRouteSwitchTracer(ClockProxy clockProxy, Consumer<Span> listener) {
+        mClockProxy = clockProxy;
+        mListener = listener;
+    }
+
+    /**
+     * Starts tracing a route switch to a route other than Bluetooth, or to whichever Bluetooth
+     * device is active.
+     *
+     * @see #beginSwitch(String, int, int, String, String, long)
+     */
+    public void beginSwitch(String sessionId, int sourceRoute, int destinationRoute,
+            long queueDelayMillis) {
+        beginSwitch(sessionId, sourceRoute, destinationRoute, null, null, queueDelayMillis);
+    }
+
+    /**
+     * Starts tracing a route switch, abandoning the switch currently being traced if there is one.
+     * A switch to the route already in use will not enter a new route, so it completes straight
+     * away; a switch from one Bluetooth device to another is traced until audio connects.
+     *
+     * @param sessionId The ID of the logging session which requested the switch.
+     * @param sourceRoute The route being switched away from.
+     * @param destinationRoute The route being switched to.
+     * @param bluetoothAddress For a switch to Bluetooth, the address of the device requested, or
+     *                         {@code null} for the active device.
+     * @param activeBluetoothAddress The address of the Bluetooth device in use, or {@code null}.
+     * @param queueDelayMillis How long the request waited before being handled.
+     */
+    public void beginSwitch(String sessionId, int sourceRoute, int destinationRoute,
+            String bluetoothAddress, String activeBluetoothAddress, long queueDelayMillis) {
+        boolean isAlreadyOnRoute = sourceRoute == destinationRoute
+                && (destinationRoute != CallAudioState.ROUTE_BLUETOOTH
+                        || bluetoothAddress == null
+                        || bluetoothAddress.equals(activeBluetoothAddress));
+        Span abandoned;
+        Span completed = null;
+        synchronized (mLock) {
+            abandoned = finishPendingSpan(false);
+            long startMillis = mClockProxy.elapsedRealtime() - queueDelayMillis;
+            mPendingSpan = new Span(sessionId, sourceRoute, destinationRoute, startMillis);
+            mPendingSpan.mHops.add(new Pair<>("dequeued", queueDelayMillis));
+            if (isAlreadyOnRoute) {
+                addHop("alreadyOnRoute");
+                completed = finishPendingSpan(true);
+            }
+        }
+        notifyListener(abandoned);
+        notifyListener(completed);
+    }
+
+    /**
+     * Records a hop of the switch being traced, if there is one.
+     *
+     * @param name The name of the hop.
+     */
+    public void recordHop(String name) {
+        synchronized (mLock) {
+            addHop(name);
+        }
+    }
+
+    /**
+     * Records a hop through the Bluetooth stack, noting the type of device being connected.
+     *
+     * @param name The name of the hop.
+     * @param deviceType One of the {@code BluetoothDeviceManager.DEVICE_TYPE_*} constants.
+     */
+    public void recordBluetoothHop(String name, int deviceType) {
+        synchronized (mLock) {
+            if (addHop(name) && deviceType != DEVICE_TYPE_NONE) {
+                mPendingSpan.mDeviceType = deviceType;
+            }
+        }
+    }
+
+    /**
+     * Called when the route state machine enters a state.  Completes the switch being traced if
+     * the state is its destination, unless that is Bluetooth, which only completes once Bluetooth
+     * audio has connected.
+     *
+     * @param stateName The name of the state entered.
+     * @param route The route of the state entered.
+     */
+    public void onRouteEntered(String stateName, int route) {
+        Span completed = null;
+        synchronized (mLock) {
+            if (addHop(stateName) && route == mPendingSpan.destinationRoute
+                    && route != CallAudioState.ROUTE_BLUETOOTH) {
+                completed = finishPendingSpan(true);
+            }
+        }
+        notifyListener(completed);
+    }
+
+    /**
+     * Called when the route state machine has handled Bluetooth audio connecting.  Completes the
+     * switch being traced if its destination is Bluetooth.
+     */
+    public void onBluetoothAudioConnected() {
+        Span completed = null;
+        synchronized (mLock) {
+            if (addHop("btAudioConnected")
+                    && mPendingSpan.destinationRoute == CallAudioState.ROUTE_BLUETOOTH) {
+                completed = finishPendingSpan(true);
+            }
+        }
+        notifyListener(completed);
+    }
+
+    /**
+     * Returns a latency percentile for a kind of switch.
+     *
+     * @param sourceRoute The route switched away from.
+     * @param destinationRoute The route switched to.
+     * @param deviceType The Bluetooth device type, or {@link #DEVICE_TYPE_NONE}.
+     * @param percentile The percentile, between 0 and 100.
+     * @return the latency in milliseconds, or -1 if there have been no such switches.
+     */
+    @VisibleForTesting
+    public long getPercentileMillis(int sourceRoute, int destinationRoute, int deviceType,
+            int percentile) {
+        synchronized (mLock) {
+            long[] sorted = getSortedSamples(getKey(sourceRoute, destinationRoute, deviceType));
+            return sorted == null ? -1 : getPercentile(sorted, percentile);
+        }
+    }
+
+    @VisibleForTesting
+    public int getNumAbandoned() {
+        synchronized (mLock) {
+            return mNumAbandoned;
+        }
+    }
+
+    // Must be called with mLock held.  Returns false if no switch is being traced.
+    private boolean addHop(String name) {
+        if (mPendingSpan == null) {
+            return false;
+        }
+        mPendingSpan.mHops.add(new Pair<>(name,
+                mClockProxy.elapsedRealtime() - mPendingSpan.mStartMillis));
+        return true;
+    }
+
+    // Must be called with mLock held.
+    private Span finishPendingSpan(boolean isCompleted) {
+        Span span = mPendingSpan;
+        if (span == null) {
+            return null;
+        }
+        mPendingSpan = null;
+        span.mIsFinished = true;
+        span.mIsCompleted = isCompleted;
+        span.mDurationMillis = mClockProxy.elapsedRealtime() - span.mStartMillis;
+        if (isCompleted) {
+            String key = getKey(span.sourceRoute, span.destinationRoute, span.mDeviceType);
+            long[] samples = mSamples.computeIfAbsent(key, k -> new long[MAX_SAMPLES]);
+            int count = mSampleCounts.getOrDefault(key, 0);
+            samples[count % MAX_SAMPLES] = span.mDurationMillis;
+            mSampleCounts.put(key, count + 1);
+        } else {
+            mNumAbandoned++;
+        }
+        mRecentSpans.add(span);
+        if (mRecentSpans.size() > MAX_RECENT_SPANS) {
+            mRecentSpans.removeFirst();
+        }
+        return span;
+    }
+
+    private void notifyListener(Span span) {
+        if (span == null) {
+            return;
+        }
+        Log.i(this, "Route switch %s", span);
+        if (mListener != null) {
+            mListener.accept(span);
+        }
+    }
+
+    // Must be called with mLock held.
+    private long[] getSortedSamples(String key) {
+        long[] samples = mSamples.get(key);
+        if (samples == null) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(samples, Math.min(mSampleCounts.get(key), MAX_SAMPLES));
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long getPercentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String getKey(int sourceRoute, int destinationRoute, int deviceType) {
+        String key = CallAudioState.audioRouteToString(sourceRoute) + "->"
+                + CallAudioState.audioRouteToString(destinationRoute);
+        switch (deviceType) {
+            case BluetoothDeviceManager.DEVICE_TYPE_HEADSET:
+                return key + "/HFP";
+            case BluetoothDeviceManager.DEVICE_TYPE_HEARING_AID:
+                return key + "/HEARING_AID";
+            case BluetoothDeviceManager.DEVICE_TYPE_LE_AUDIO:
+                return key + "/LE_AUDIO";
+            default:
+                return key;
+        }
+    }
+
+    /**
+     * Dumps the switch latencies and the most recent switches.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("abandoned=");
+            pw.println(mNumAbandoned);
+            pw.increaseIndent();
+            for (String key : mSamples.keySet()) {
+                long[] sorted = getSortedSamples(key);
+                pw.print(key);
+                pw.print(": count=");
+                pw.print(mSampleCounts.get(key));
+                pw.print(", p50=");
+                pw.print(getPercentile(sorted, 50));
+                pw.print("ms, p90=");
+                pw.print(getPercentile(sorted, 90));
+                pw.print("ms, p99=");
+                pw.print(getPercentile(sorted, 99));
+                pw.println("ms");
+            }
+            pw.decreaseIndent();
+            pw.println("Recent switches:");
+            pw.increaseIndent();
+            for (Span span : mRecentSpans) {
+                pw.println(span);
+            }
+            if (mPendingSpan != null) {
+                pw.print("pending: ");
+                pw.println(mPendingSpan);
+            }
+            pw.decreaseIndent();
+        }
+    }
+}
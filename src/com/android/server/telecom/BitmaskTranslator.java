@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+/**
+ * Translates a bitmask of flags into a bitmask of corresponding flags, such as the capabilities
+ * of a {@link android.telecom.Connection} into those of a {@link android.telecom.Call}.
+ * <p>
+ * The translation is defined by pairs of masks: the second mask of a pair is set in the result
+ * if all of the bits of the first mask are set in the input.  It is precomputed into one
+ * 256-entry table per byte of the input, so a translation is four table lookups rather than a
+ * pass over every pair.  This is only exact if no first mask has bits in more than one byte;
+ * should a pair ever not meet that, the pairs are used directly instead.
+ */
+public class BitmaskTranslator {
+    private static final int NUM_LANES = 4;
+    private static final int LANE_SIZE = 256;
+
+    private final int[] mPairs;
+    private final int[] mTable = new int[NUM_LANES * LANE_SIZE];
+    private final boolean mIsTableExact;
+
+    /**
+     * @param pairs The masks to translate from, each followed by the mask it translates to.
+     */
+    public BitmaskTranslator(int[] pairs) {
+        mPairs = pairs.clone();
+        boolean isTableExact = true;
+        for (int i = 0; i < mPairs.length; i += 2) {
+            int mask = mPairs[i];
+            if (mask != 0) {
+                int lane = Integer.numberOfTrailingZeros(mask) / 8;
+                isTableExact &= (mask & ~(0xff << (8 * lane))) == 0;
+            }
+        }
+        mIsTableExact = isTableExact;
+        for (int lane = 0; lane < NUM_LANES; lane++) {
+            for (int value = 0; value < LANE_SIZE; value++) {
+                mTable[lane * LANE_SIZE + value] = translateByPairs(value << (8 * lane));
+            }
+        }
+    }
+
+    /**
+     * @param mask The mask to translate.
+     * @return the translated mask.
+     */
+    public int translate(int mask) {
+        if (!mIsTableExact) {
+            return translateByPairs(mask);
+        }
+        return mTable[mask & 0xff]
+                | mTable[LANE_SIZE + ((mask >>> 8) & 0xff)]
+                | mTable[2 * LANE_SIZE + ((mask >>> 16) & 0xff)]
+                | mTable[3 * LANE_SIZE + (mask >>> 24)];
+    }
+
+    /**
+     * Translates a mask by checking each pair in turn; the reference for {@link #translate}.
+     *
+     * @param mask The mask to translate.
+     * @return the translated mask.
+     */
+    @VisibleForTesting
+    public int translateByPairs(int mask) {
+        int result = 0;
+        for (int i = 0; i < mPairs.length; i += 2) {
+            if ((mPairs[i] & mask) == mPairs[i]) {
+                result |= mPairs[i + 1];
+            }
+        }
+        return result;
+    }
+
+    @VisibleForTesting
+    public boolean isTableExact() {
+        return mIsTableExact;
+    }
+}
@@ -529,7 +529,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     private boolean mIsVoipAudioMode;
     private StatusHints mStatusHints;
-    private Bundle mExtras;
+    private final CallExtras mExtras = new CallExtras();
     private final ConnectionServiceRepository mRepository;
     private final Context mContext;
     private final CallsManager mCallsManager;
@@ -539,6 +539,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     private final String mId;
     private String mConnectionId;
     private Analytics.CallInfo mAnalytics = new Analytics.CallInfo();
+    private final CallEventJournal mEventJournal;
     private CallStateChangedAtomWriter mCallStateChangedAtomWriter =
             new CallStateChangedAtomWriter();
     private char mPlayingDtmfTone;
@@ -558,9 +559,10 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     private boolean mIsLocallyDisconnecting = false;
 
     /**
-     * Tracks the current call data usage as reported by the video provider.
+     * Tracks the current call data usage as reported by the video provider.  Volatile since the
+     * video provider updates this from a binder thread without holding the Telecom lock.
      */
-    private long mCallDataUsage = DATA_USAGE_NOT_SET;
+    private volatile long mCallDataUsage = DATA_USAGE_NOT_SET;
 
     private boolean mIsWorkCall;
 
@@ -828,6 +830,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             ToastFactory toastFactory) {
 
         mId = callId;
+        mEventJournal = CallEventJournal.create(callId);
         mConnectionId = callId;
         mState = (isConference && callDirection != CALL_DIRECTION_INCOMING &&
                 callDirection != CALL_DIRECTION_OUTGOING) ?
@@ -942,6 +945,13 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         return mAnalytics;
     }
 
+    /**
+     * @return the compact journal of informational events for this call.
+     */
+    public CallEventJournal getEventJournal() {
+        return mEventJournal;
+    }
+
     public void destroy() {
         if (mDestroyed) {
             return;
@@ -2164,12 +2174,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             }
 
             int strippedCaps = getConnectionCapabilities();
-            int xorCaps = previousCapabilities ^ strippedCaps;
-            Log.addEvent(this, LogUtils.Events.CAPABILITY_CHANGE,
-                    "Current: [%s], Removed [%s], Added [%s]",
-                    Connection.capabilitiesToStringShort(strippedCaps),
-                    Connection.capabilitiesToStringShort(previousCapabilities & xorCaps),
-                    Connection.capabilitiesToStringShort(strippedCaps & xorCaps));
+            LogUtils.addCallEvent(this, LogUtils.Events.CAPABILITY_CHANGE, previousCapabilities,
+                    strippedCaps);
         }
     }
 
@@ -2249,7 +2255,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             if (wasExternal != isExternal) {
                 Log.v(this, "setConnectionProperties: external call changed isExternal = %b",
                         isExternal);
-                Log.addEvent(this, LogUtils.Events.IS_EXTERNAL, isExternal);
+                LogUtils.addCallEvent(this, LogUtils.Events.IS_EXTERNAL, isExternal ? 1 : 0, 0);
                 if (isExternal) {
                     // If there is an ongoing emergency call, remove the ability for this call to
                     // be pulled.
@@ -2273,12 +2279,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             mAnalytics.addCallProperties(mConnectionProperties);
 
-            int xorProps = previousProperties ^ mConnectionProperties;
-            Log.addEvent(this, LogUtils.Events.PROPERTY_CHANGE,
-                    "Current: [%s], Removed [%s], Added [%s]",
-                    Connection.propertiesToStringShort(mConnectionProperties),
-                    Connection.propertiesToStringShort(previousProperties & xorProps),
-                    Connection.propertiesToStringShort(mConnectionProperties & xorProps));
+            LogUtils.addCallEvent(this, LogUtils.Events.PROPERTY_CHANGE, previousProperties,
+                    mConnectionProperties);
         }
     }
 
@@ -2565,7 +2567,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         } else {
             Log.i(this, "Send playDtmfTone to connection service for call %s", this);
             mConnectionService.playDtmfTone(this, digit);
-            Log.addEvent(this, LogUtils.Events.START_DTMF, Log.pii(digit));
+            LogUtils.addCallEvent(this, LogUtils.Events.START_DTMF, digit, 0);
         }
         mPlayingDtmfTone = digit;
     }
@@ -2579,7 +2581,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.w(this, "stopDtmfTone() request on a call without a connection service.");
         } else {
             Log.i(this, "Send stopDtmfTone to connection service for call %s", this);
-            Log.addEvent(this, LogUtils.Events.STOP_DTMF);
+            LogUtils.addCallEvent(this, LogUtils.Events.STOP_DTMF, null);
             mConnectionService.stopDtmfTone(this);
         }
         mPlayingDtmfTone = NO_DTMF_TONE;
@@ -2987,14 +2989,36 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     @VisibleForTesting
     public Bundle getExtras() {
+        return mExtras.get();
+    }
+
+    /**
+     * @return the extras which may be sent to an {@link android.telecom.InCallService} other than
+     * the system dialer; shared between callers, so must not be modified.
+     */
+    public Bundle getNonSystemExtras() {
+        return mExtras.getNonSystemExtras();
+    }
+
+    /**
+     * @return the extras which may be sent to a call screening service with access to restricted
+     * extras; shared between callers, so must not be modified.
+     */
+    public Bundle getRestrictedScreeningExtras() {
+        return mExtras.getRestrictedScreeningExtras();
+    }
+
+    @VisibleForTesting
+    public CallExtras getCallExtras() {
         return mExtras;
     }
 
     public boolean isCrsCall() {
-        if (mExtras == null) {
+        Bundle extras = mExtras.get();
+        if (extras == null) {
             return false;
         }
-        int crsType = mExtras.getInt(QtiCallConstants.EXTRA_CRS_TYPE,
+        int crsType = extras.getInt(QtiCallConstants.EXTRA_CRS_TYPE,
                 QtiCallConstants.CRS_TYPE_INVALID);
         return (crsType == (QtiCallConstants.CRS_TYPE_VIDEO
                     | QtiCallConstants.CRS_TYPE_AUDIO))
@@ -3002,10 +3026,11 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     }
 
     public int getOriginalCallType() {
-        if (mExtras == null) {
+        Bundle extras = mExtras.get();
+        if (extras == null) {
             return CALL_TYPE_UNKNOWN;
         }
-        return mExtras.getInt(QtiCallConstants.EXTRA_ORIGINAL_CALL_TYPE,
+        return extras.getInt(QtiCallConstants.EXTRA_ORIGINAL_CALL_TYPE,
                 CALL_TYPE_UNKNOWN);
     }
 
@@ -3052,18 +3077,16 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (extras == null) {
             return;
         }
-        if (mExtras == null) {
-            mExtras = new Bundle();
-        }
         mExtras.putAll(extras);
+        Bundle allExtras = mExtras.get();
 
         for (Listener l : mListeners) {
             l.onExtrasChanged(this, source, extras, requestingPackageName);
         }
 
         // If mExtra shows that the call using Volte, record it with mWasVolte
-        if (mExtras.containsKey(TelecomManager.EXTRA_CALL_NETWORK_TYPE) &&
-            mExtras.get(TelecomManager.EXTRA_CALL_NETWORK_TYPE)
+        if (allExtras.containsKey(TelecomManager.EXTRA_CALL_NETWORK_TYPE) &&
+            allExtras.get(TelecomManager.EXTRA_CALL_NETWORK_TYPE)
                     .equals(TelephonyManager.NETWORK_TYPE_LTE)) {
             mWasVolte = true;
         }
@@ -3077,7 +3100,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             int callerNumberVerificationStatus =
                     extras.getInt(Connection.EXTRA_CALLER_NUMBER_VERIFICATION_STATUS);
             if (mCallerNumberVerificationStatus != callerNumberVerificationStatus) {
-                Log.addEvent(this, LogUtils.Events.VERSTAT_CHANGED, callerNumberVerificationStatus);
+                LogUtils.addCallEvent(this, LogUtils.Events.VERSTAT_CHANGED,
+                        callerNumberVerificationStatus, 0);
                 setCallerNumberVerificationStatus(callerNumberVerificationStatus);
             }
         }
@@ -3085,18 +3109,18 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         // The remote connection service API can track the phone account which was originally
         // requested to create a connection via the remote connection service API; we store that so
         // we have some visibility into how a call was actually placed.
-        if (mExtras.containsKey(Connection.EXTRA_REMOTE_PHONE_ACCOUNT_HANDLE)) {
+        if (allExtras.containsKey(Connection.EXTRA_REMOTE_PHONE_ACCOUNT_HANDLE)) {
             setRemotePhoneAccountHandle(extras.getParcelable(
                     Connection.EXTRA_REMOTE_PHONE_ACCOUNT_HANDLE));
         }
 
         // If the change originated from an InCallService, notify the connection service.
         if (source == SOURCE_INCALL_SERVICE) {
-            Log.addEvent(this, LogUtils.Events.ICS_EXTRAS_CHANGED);
+            LogUtils.addCallEvent(this, LogUtils.Events.ICS_EXTRAS_CHANGED, null);
             if (mTransactionalService != null) {
                 Log.i(this, "putExtras: called on TransactionalService. doing nothing");
             } else if (mConnectionService != null) {
-                mConnectionService.onExtrasChanged(this, mExtras);
+                mConnectionService.onExtrasChanged(this, allExtras);
             } else {
                 Log.e(this, new NullPointerException(),
                         "putExtras failed due to null CS callId=%s", getId());
@@ -3117,12 +3141,10 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      * @param keys The extra keys to remove.
      */
     void removeExtras(int source, List<String> keys) {
-        if (mExtras == null) {
+        if (mExtras.get() == null) {
             return;
         }
-        for (String key : keys) {
-            mExtras.remove(key);
-        }
+        mExtras.remove(keys);
 
         for (Listener l : mListeners) {
             l.onExtrasRemoved(this, source, keys);
@@ -3133,7 +3155,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             if (mTransactionalService != null) {
                 Log.i(this, "removeExtras: called on TransactionalService. doing nothing");
             } else if (mConnectionService != null) {
-                mConnectionService.onExtrasChanged(this, mExtras);
+                mConnectionService.onExtrasChanged(this, mExtras.get());
             } else {
                 Log.e(this, new NullPointerException(),
                         "removeExtras failed due to null CS callId=%s", getId());
@@ -3397,7 +3419,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                             BluetoothCallQualityReport.EXTRA_BLUETOOTH_CALL_QUALITY_REPORT
                     ));
                 }
-                Log.addEvent(this, LogUtils.Events.CALL_EVENT, event);
+                LogUtils.addCallEvent(this, LogUtils.Events.CALL_EVENT, event);
                 sendEventToService(this, event, extras);
             }
         } else {
@@ -3422,7 +3444,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      * @param report The bluetooth quality report.
      */
     void notifyBluetoothCallQualityReport(@NonNull BluetoothCallQualityReport report) {
-        Log.addEvent(this, LogUtils.Events.BT_QUALITY_REPORT, "choppy=" + report.isChoppyVoice());
+        LogUtils.addCallEvent(this, LogUtils.Events.BT_QUALITY_REPORT,
+                report.isChoppyVoice() ? 1 : 0, 0);
         for (Listener l : mListeners) {
             l.onBluetoothCallQualityReport(this, report);
         }
@@ -3758,9 +3781,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                             Log.w(Call.this, "Error obtaining canned SMS responses: %d %s", code,
                                     msg);
                         }
-                    },
-                    mContext
-            );
+                    });
         } else {
             Log.d(this, "maybeLoadCannedSmsResponses: doing nothing");
         }
@@ -3997,8 +4018,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         int previousVideoState = mVideoState;
         mVideoState = videoState;
         if (mVideoState != previousVideoState) {
-            Log.addEvent(this, LogUtils.Events.VIDEO_STATE_CHANGED,
-                    VideoProfile.videoStateToString(videoState));
+            LogUtils.addCallEvent(this, LogUtils.Events.VIDEO_STATE_CHANGED, videoState, 0);
             for (Listener l : mListeners) {
                 l.onVideoStateChanged(this, previousVideoState, mVideoState);
             }
@@ -4021,7 +4041,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             return;
         }
         if (mIsVoipAudioMode != audioModeIsVoip) {
-            Log.addEvent(this, LogUtils.Events.SET_VOIP_MODE, audioModeIsVoip ? "Y" : "N");
+            LogUtils.addCallEvent(this, LogUtils.Events.SET_VOIP_MODE, audioModeIsVoip ? 1 : 0,
+                    0);
         }
         mIsVoipAudioMode = audioModeIsVoip;
         for (Listener l : mListeners) {
@@ -4149,7 +4170,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     public void setRttMode(int mode) {
         mRttMode = mode;
-        Log.addEvent(this, LogUtils.Events.SET_RRT_MODE, "mode=" + mode);
+        LogUtils.addCallEvent(this, LogUtils.Events.SET_RRT_MODE, mode, 0);
         // TODO: hook this up to CallAudioManager.
     }
 
@@ -4192,7 +4213,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
         // Don't log call quality reports; they're quite frequent and will clog the log.
         if (!Connection.EVENT_CALL_QUALITY_REPORT.equals(event)) {
-            Log.addEvent(this, LogUtils.Events.CONNECTION_EVENT, event);
+            LogUtils.addCallEvent(this, LogUtils.Events.CONNECTION_EVENT, event);
         }
         if (Connection.EVENT_ON_HOLD_TONE_START.equals(event)) {
             mIsRemotelyHeld = true;
@@ -4340,7 +4361,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     public void setConferenceState(boolean isConference) {
         mIsConference = isConference;
-        Log.addEvent(this, LogUtils.Events.CONF_STATE_CHANGED, "isConference=" + isConference);
+        LogUtils.addCallEvent(this, LogUtils.Events.CONF_STATE_CHANGED, isConference ? 1 : 0,
+                0);
         // Ultimately CallsManager needs to know so it can update the "add call" state and inform
         // the UI to update itself.
         for (Listener l : mListeners) {
@@ -4356,8 +4378,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     // Make sure the callDirection has been mapped to the Call definition correctly!
     public void setCallDirection(int callDirection) {
         if (mCallDirection != callDirection) {
-            Log.addEvent(this, LogUtils.Events.CALL_DIRECTION_CHANGED, "callDirection="
-                    + callDirection);
+            LogUtils.addCallEvent(this, LogUtils.Events.CALL_DIRECTION_CHANGED, callDirection,
+                    0);
             mCallDirection = callDirection;
             for (Listener l : mListeners) {
                 // Update InCallService directly, do not notify CallsManager.
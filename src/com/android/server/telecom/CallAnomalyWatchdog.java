@@ -28,7 +28,9 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.stats.CallStateChangedAtomWriter;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -108,15 +110,37 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         }
     }
 
+    /**
+     * Resolution of the timer wheel used to track call state timeouts.
+     */
+    private static final long TIMER_WHEEL_TICK_MILLIS = 100L;
+    /**
+     * Number of buckets in the timer wheel; with a 100ms tick this covers just over 25 seconds per
+     * revolution, which encompasses the default transitory and intermediate state timeouts.
+     */
+    private static final int TIMER_WHEEL_BUCKETS = 256;
+
     // Handler for tracking pending timeouts.
     private final ScheduledExecutorService mScheduledExecutorService;
     private final TelecomSystem.SyncRoot mLock;
     private final Timeouts.Adapter mTimeoutAdapter;
     private final ClockProxy mClockProxy;
     private AnomalyReporterAdapter mAnomalyReporter = new AnomalyReporterAdapterImpl();
+    /**
+     * Tracks the state timeout deadline of every call; rescheduling a call on a state change is
+     * O(1) and reuses the call's timer node.  Guarded by synchronizing on the wheel itself.
+     */
+    private final TimerWheel<Call> mTimerWheel = new TimerWheel<>(TIMER_WHEEL_TICK_MILLIS,
+            TIMER_WHEEL_BUCKETS);
     // Pre-allocate space for 2 calls; realistically thats all we should ever need (tm)
-    private final Map<Call, ScheduledFuture<?>> mScheduledFutureMap = new ConcurrentHashMap<>(2);
+    private final Map<Call, TimerWheel.Node<Call>> mTimerNodeMap = new ConcurrentHashMap<>(2);
     private final Map<Call, WatchdogCallState> mWatchdogCallStateMap = new ConcurrentHashMap<>(2);
+    /**
+     * The single sweep scheduled on {@link #mScheduledExecutorService}; armed for the earliest
+     * deadline in {@link #mTimerWheel}.  Guarded by synchronizing on {@link #mTimerWheel}.
+     */
+    private ScheduledFuture<?> mSweepFuture;
+    private long mSweepDeadlineMillis = -1;
     // Track the calls which are pending destruction.
     // TODO: enhance to handle the case where a call never gets destroyed.
     private final Set<Call> mCallsPendingDestruction = Collections.newSetFromMap(
@@ -251,10 +275,9 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
      * @param call the call.
      */
     private void stopTrackingCall(Call call) {
-        if (mScheduledFutureMap.containsKey(call)) {
-            ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-            existingTimeout.cancel(false /* cancelIfRunning */);
-            mScheduledFutureMap.remove(call);
+        TimerWheel.Node<Call> node = mTimerNodeMap.remove(call);
+        if (node != null) {
+            cancelTimeout(node);
         }
         if (mCallsPendingDestruction.contains(call)) {
             mCallsPendingDestruction.remove(call);
@@ -280,30 +303,87 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         }
         mWatchdogCallStateMap.put(call, newState);
 
-        // The call's state has changed, so we will remove any existing state cleanup tasks.
-        if (mScheduledFutureMap.containsKey(call)) {
-            ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-            existingTimeout.cancel(false /* cancelIfRunning */);
-            mScheduledFutureMap.remove(call);
-        }
-
         Log.i(this, "maybePostCleanupTask; callId=%s, state=%s, createConnComplete=%b",
                 call.getId(), CallState.toString(call.getState()),
                 call.isCreateConnectionComplete());
 
+        // The call's state has changed, so move its timer node to the new deadline, or remove it
+        // if the call is no longer in a transitory or intermediate state.
         long timeoutMillis = getTimeoutMillis(call, newState);
-        boolean isEnabledDisconnect = isEnabledDisconnectForStuckCall();
-        // If the call is now in a transitory or intermediate state, post a new cleanup task.
         if (timeoutMillis > 0) {
-            Runnable cleanupRunnable = getCleanupRunnable(call, newState, timeoutMillis,
-                    isEnabledDisconnect);
-
-            // Post cleanup to the executor service and cache the future, so we can cancel it if
-            // needed.
-            ScheduledFuture<?> future = mScheduledExecutorService.schedule(cleanupRunnable,
-                    timeoutMillis, TimeUnit.MILLISECONDS);
-            mScheduledFutureMap.put(call, future);
+            TimerWheel.Node<Call> node = mTimerNodeMap.computeIfAbsent(call, TimerWheel.Node::new);
+            scheduleTimeout(node, newState.stateStartTimeMillis + timeoutMillis);
+        } else {
+            TimerWheel.Node<Call> node = mTimerNodeMap.get(call);
+            if (node != null) {
+                cancelTimeout(node);
+            }
+        }
+    }
+
+    /**
+     * Schedules a call's timer node in the timer wheel, re-arming the sweep if the new deadline is
+     * now the earliest one.
+     * @param node the call's timer node.
+     * @param deadlineMillis the deadline, in {@link ClockProxy#elapsedRealtime()} time.
+     */
+    private void scheduleTimeout(TimerWheel.Node<Call> node, long deadlineMillis) {
+        synchronized (mTimerWheel) {
+            boolean wasEarliest = node.isScheduled()
+                    && node.getDeadlineMillis() == mSweepDeadlineMillis;
+            mTimerWheel.schedule(node, deadlineMillis);
+            if (mSweepFuture == null || deadlineMillis < mSweepDeadlineMillis) {
+                armSweep(deadlineMillis);
+            } else if (wasEarliest) {
+                armSweep(mTimerWheel.getEarliestDeadlineMillis());
+            }
+        }
+    }
+
+    /**
+     * Removes a call's timer node from the timer wheel, re-arming or cancelling the sweep if it
+     * was for this call's deadline.
+     * @param node the call's timer node.
+     */
+    private void cancelTimeout(TimerWheel.Node<Call> node) {
+        synchronized (mTimerWheel) {
+            if (!mTimerWheel.cancel(node)) {
+                return;
+            }
+            if (mTimerWheel.size() == 0) {
+                cancelSweep();
+            } else if (node.getDeadlineMillis() == mSweepDeadlineMillis) {
+                armSweep(mTimerWheel.getEarliestDeadlineMillis());
+            }
+        }
+    }
+
+    /**
+     * Arms the sweep of the timer wheel to run at the given deadline, replacing any existing one.
+     * Must be called with {@link #mTimerWheel} held.
+     * @param deadlineMillis the deadline, in {@link ClockProxy#elapsedRealtime()} time.
+     */
+    private void armSweep(long deadlineMillis) {
+        if (mSweepFuture != null && deadlineMillis == mSweepDeadlineMillis) {
+            return;
+        }
+        cancelSweep();
+        long delayMillis = Math.max(0, deadlineMillis - mClockProxy.elapsedRealtime());
+        mSweepDeadlineMillis = deadlineMillis;
+        mSweepFuture = mScheduledExecutorService.schedule(getSweepRunnable(), delayMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the pending sweep of the timer wheel, if any.  Must be called with
+     * {@link #mTimerWheel} held.
+     */
+    private void cancelSweep() {
+        if (mSweepFuture != null) {
+            mSweepFuture.cancel(false /* cancelIfRunning */);
+            mSweepFuture = null;
         }
+        mSweepDeadlineMillis = -1;
     }
 
     public long getTimeoutMillis(Call call, WatchdogCallState state) {
@@ -337,54 +417,90 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         return 0;
     }
 
-    private Runnable getCleanupRunnable(Call call, WatchdogCallState newState, long timeoutMillis,
-            boolean isEnabledDisconnect) {
-        Runnable cleanupRunnable = new android.telecom.Logging.Runnable("CAW.mR", mLock) {
+    private Runnable getSweepRunnable() {
+        return new android.telecom.Logging.Runnable("CAW.mR", mLock) {
             @Override
             public void loggedRun() {
-                // If we're already pending a cleanup due to a state violation for this call.
-                if (mCallsPendingDestruction.contains(call)) {
-                    return;
-                }
-                // Ensure that at timeout we are still in the original state when we posted the
-                // timeout.
-                final WatchdogCallState expiredState = new WatchdogCallState(call.getState(),
-                        call.isCreateConnectionComplete(), mClockProxy.elapsedRealtime());
-                if (expiredState.equals(newState)
-                        && getDurationInCurrentStateMillis(newState) > timeoutMillis) {
-                    // The call has been in this transitory or intermediate state too long,
-                    // so disconnect it and destroy it.
-                    Log.addEvent(call, STATE_TIMEOUT, newState);
-                    mLocalLog.log("STATE_TIMEOUT; callId=" + call.getId() + " in state "
-                            + newState);
-                    if (call.isEmergencyCall()){
-                        mAnomalyReporter.reportAnomaly(
-                                WATCHDOG_DISCONNECTED_STUCK_EMERGENCY_CALL_UUID,
-                                WATCHDOG_DISCONNECTED_STUCK_EMERGENCY_CALL_MSG);
-                        mEmergencyCallDiagnosticLogger.reportStuckCall(call);
-                    } else {
-                        mAnomalyReporter.reportAnomaly(
-                                WATCHDOG_DISCONNECTED_STUCK_CALL_UUID,
-                                WATCHDOG_DISCONNECTED_STUCK_CALL_MSG);
-                    }
-
-                    if (isEnabledDisconnect) {
-                        call.setOverrideDisconnectCauseCode(
-                                new DisconnectCause(DisconnectCause.ERROR, "state_timeout"));
-                        call.disconnect("State timeout");
-                    } else {
-                        writeCallStateChangedAtom(call);
-                    }
-
-                    mCallsPendingDestruction.add(call);
-                    if (mWatchdogCallStateMap.containsKey(call)) {
-                        mWatchdogCallStateMap.remove(call);
-                    }
-                }
-                mScheduledFutureMap.remove(call);
+                sweepExpiredCalls();
             }
         }.prepare();
-        return cleanupRunnable;
+    }
+
+    /**
+     * Expires all calls whose deadline has passed in a single batch, then re-arms the sweep for
+     * the next earliest deadline.
+     */
+    private void sweepExpiredCalls() {
+        List<Call> expiredCalls = new ArrayList<>();
+        synchronized (mTimerWheel) {
+            mSweepFuture = null;
+            mSweepDeadlineMillis = -1;
+            mTimerWheel.expire(mClockProxy.elapsedRealtime(), expiredCalls::add);
+        }
+        if (!expiredCalls.isEmpty()) {
+            boolean isEnabledDisconnect = isEnabledDisconnectForStuckCall();
+            for (Call call : expiredCalls) {
+                handleStateTimeout(call, isEnabledDisconnect);
+            }
+        }
+        synchronized (mTimerWheel) {
+            if (mSweepFuture == null && mTimerWheel.size() > 0) {
+                // Deadlines which land on the current millisecond are picked up a tick later.
+                armSweep(Math.max(mTimerWheel.getEarliestDeadlineMillis(),
+                        mClockProxy.elapsedRealtime() + 1));
+            }
+        }
+    }
+
+    /**
+     * Handles a call whose state timeout has expired.
+     * @param call the call.
+     * @param isEnabledDisconnect whether stuck calls should be disconnected.
+     */
+    private void handleStateTimeout(Call call, boolean isEnabledDisconnect) {
+        // If we're already pending a cleanup due to a state violation for this call.
+        if (mCallsPendingDestruction.contains(call)) {
+            return;
+        }
+        final WatchdogCallState trackedState = mWatchdogCallStateMap.get(call);
+        if (trackedState == null) {
+            return;
+        }
+        // Ensure that at timeout we are still in the original state when we scheduled the
+        // timeout.
+        final WatchdogCallState expiredState = new WatchdogCallState(call.getState(),
+                call.isCreateConnectionComplete(), mClockProxy.elapsedRealtime());
+        if (expiredState.equals(trackedState) && getDurationInCurrentStateMillis(trackedState)
+                > getTimeoutMillis(call, trackedState)) {
+            // The call has been in this transitory or intermediate state too long,
+            // so disconnect it and destroy it.
+            Log.addEvent(call, STATE_TIMEOUT, trackedState);
+            mLocalLog.log("STATE_TIMEOUT; callId=" + call.getId() + " in state "
+                    + trackedState);
+            if (call.isEmergencyCall()){
+                mAnomalyReporter.reportAnomaly(
+                        WATCHDOG_DISCONNECTED_STUCK_EMERGENCY_CALL_UUID,
+                        WATCHDOG_DISCONNECTED_STUCK_EMERGENCY_CALL_MSG);
+                mEmergencyCallDiagnosticLogger.reportStuckCall(call);
+            } else {
+                mAnomalyReporter.reportAnomaly(
+                        WATCHDOG_DISCONNECTED_STUCK_CALL_UUID,
+                        WATCHDOG_DISCONNECTED_STUCK_CALL_MSG);
+            }
+
+            if (isEnabledDisconnect) {
+                call.setOverrideDisconnectCauseCode(
+                        new DisconnectCause(DisconnectCause.ERROR, "state_timeout"));
+                call.disconnect("State timeout");
+            } else {
+                writeCallStateChangedAtom(call);
+            }
+
+            mCallsPendingDestruction.add(call);
+            if (mWatchdogCallStateMap.containsKey(call)) {
+                mWatchdogCallStateMap.remove(call);
+            }
+        }
     }
 
     /**
@@ -426,8 +542,10 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         mLocalLog.dump(pw);
         pw.decreaseIndent();
         pw.print("Pending timeouts: ");
-        pw.println(mScheduledFutureMap.keySet().stream().map(c -> c.getId()).collect(
-                Collectors.joining(",")));
+        pw.println(mTimerNodeMap.entrySet().stream()
+                .filter(e -> e.getValue().isScheduled())
+                .map(e -> e.getKey().getId())
+                .collect(Collectors.joining(",")));
         pw.print("Pending destruction: ");
         pw.println(mCallsPendingDestruction.stream().map(c -> c.getId()).collect(
                 Collectors.joining(",")));
@@ -435,6 +553,8 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
 
     @VisibleForTesting
     public int getNumberOfScheduledTimeouts() {
-        return mScheduledFutureMap.size();
+        synchronized (mTimerWheel) {
+            return mTimerWheel.size();
+        }
     }
 }
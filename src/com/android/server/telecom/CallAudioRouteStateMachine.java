@@ -31,6 +31,7 @@ import android.os.Binder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.telecom.CallAudioState;
 import android.telecom.Log;
@@ -241,11 +242,28 @@ public class CallAudioRouteStateMachine extends StateMachine {
             String messageCodeName = MESSAGE_CODE_TO_NAME.get(msg.what, "unknown");
             Log.continueSession(session, "CARSM.pM_" + messageCodeName);
             Log.i(this, "Message received: %s=%d, arg1=%d", messageCodeName, msg.what, msg.arg1);
+            int destinationRoute = getUserSwitchDestination(msg.what);
+            if (destinationRoute != 0 && mCurrentCallAudioState != null) {
+                // Messages sent to the front of the queue have no enqueue time.
+                long queueDelayMillis = msg.getWhen() == 0
+                        ? 0 : Math.max(0, SystemClock.uptimeMillis() - msg.getWhen());
+                String bluetoothAddress = msg.what == USER_SWITCH_BLUETOOTH
+                        ? (String) ((SomeArgs) msg.obj).arg2 : null;
+                BluetoothDevice activeDevice = mCurrentCallAudioState.getActiveBluetoothDevice();
+                mAudioRouteSwitchTracer.beginSwitch(
+                        session != null ? session.getFullSessionId() : messageCodeName,
+                        mCurrentCallAudioState.getRoute(), destinationRoute, bluetoothAddress,
+                        activeDevice == null ? null : activeDevice.getAddress(),
+                        queueDelayMillis);
+            }
         }
     }
 
     @Override
     protected void onPostHandleMessage(Message msg) {
+        if (msg.what == BT_AUDIO_CONNECTED) {
+            mAudioRouteSwitchTracer.onBluetoothAudioConnected();
+        }
         Log.endSession();
         if (msg.obj != null && msg.obj instanceof SomeArgs) {
             ((SomeArgs) msg.obj).recycle();
@@ -262,6 +280,7 @@ public class CallAudioRouteStateMachine extends StateMachine {
                 Log.addEvent(mCallsManager.getForegroundCall(),
                         AUDIO_ROUTE_TO_LOG_EVENT.get(getRouteCode(), LogUtils.Events.AUDIO_ROUTE));
             }
+            mAudioRouteSwitchTracer.onRouteEntered(getName(), getRouteCode());
         }
 
         @Override
@@ -1538,6 +1557,7 @@ public class CallAudioRouteStateMachine extends StateMachine {
     private final Context mContext;
     private final CallsManager mCallsManager;
     private final AudioManager mAudioManager;
+    private final AudioDeviceRegistry mAudioDeviceRegistry;
     private final BluetoothRouteManager mBluetoothRouteManager;
     private final WiredHeadsetManager mWiredHeadsetManager;
     private final StatusBarNotifier mStatusBarNotifier;
@@ -1556,6 +1576,9 @@ public class CallAudioRouteStateMachine extends StateMachine {
 
     private CallAudioManager mCallAudioManager;
 
+    private final AudioRouteSwitchTracer mAudioRouteSwitchTracer =
+            new AudioRouteSwitchTracer(this::onRouteSwitchFinished);
+
     public CallAudioRouteStateMachine(
             Context context,
             CallsManager callsManager,
@@ -1575,6 +1598,8 @@ public class CallAudioRouteStateMachine extends StateMachine {
         mAudioServiceFactory = audioServiceFactory;
         mLock = callsManager.getLock();
         mAsyncTaskExecutor = asyncTaskExecutor;
+        mAudioDeviceRegistry = findOrCreateAudioDeviceRegistry(bluetoothManager, mAudioManager);
+        mBluetoothRouteManager.setAudioRouteSwitchTracer(mAudioRouteSwitchTracer);
         createStates(earpieceControl);
     }
 
@@ -1597,6 +1622,8 @@ public class CallAudioRouteStateMachine extends StateMachine {
         mAudioServiceFactory = audioServiceFactory;
         mLock = callsManager.getLock();
         mAsyncTaskExecutor = asyncTaskExecutor;
+        mAudioDeviceRegistry = findOrCreateAudioDeviceRegistry(bluetoothManager, mAudioManager);
+        mBluetoothRouteManager.setAudioRouteSwitchTracer(mAudioRouteSwitchTracer);
 
         createStates(earpieceControl);
     }
@@ -1767,6 +1794,44 @@ public class CallAudioRouteStateMachine extends StateMachine {
         pw.increaseIndent();
         dumpPendingMessages(pw);
         pw.decreaseIndent();
+        pw.println("Route switch latency:");
+        pw.increaseIndent();
+        mAudioRouteSwitchTracer.dump(pw);
+        pw.decreaseIndent();
+    }
+
+    @VisibleForTesting
+    public AudioDeviceRegistry getAudioDeviceRegistry() {
+        return mAudioDeviceRegistry;
+    }
+
+    @VisibleForTesting
+    public AudioRouteSwitchTracer getAudioRouteSwitchTracer() {
+        return mAudioRouteSwitchTracer;
+    }
+
+    private void onRouteSwitchFinished(AudioRouteSwitchTracer.Span span) {
+        Call call = mCallsManager.getForegroundCall();
+        Analytics.CallInfo analytics = call != null ? call.getAnalytics() : null;
+        if (analytics != null) {
+            analytics.addAudioRouteSwitch(span.sourceRoute, span.destinationRoute,
+                    span.getDeviceType(), span.getDurationMillis(), span.isCompleted());
+        }
+    }
+
+    private static int getUserSwitchDestination(int messageCode) {
+        switch (messageCode) {
+            case USER_SWITCH_EARPIECE:
+                return ROUTE_EARPIECE;
+            case USER_SWITCH_BLUETOOTH:
+                return ROUTE_BLUETOOTH;
+            case USER_SWITCH_HEADSET:
+                return ROUTE_WIRED_HEADSET;
+            case USER_SWITCH_SPEAKER:
+                return ROUTE_SPEAKER;
+            default:
+                return 0;
+        }
     }
 
     public void dumpPendingMessages(IndentingPrintWriter pw) {
@@ -1783,16 +1848,12 @@ public class CallAudioRouteStateMachine extends StateMachine {
         // These APIs are all via two-way binder calls so can potentially block Telecom.  Since none
         // of this has to happen in the Telecom lock we'll offload it to the async executor.
 
-        AudioDeviceInfo speakerDevice = null;
-        for (AudioDeviceInfo info : mAudioManager.getAvailableCommunicationDevices()) {
-            if (info.getType() == AudioDeviceInfo.TYPE_BUILTIN_SPEAKER) {
-                speakerDevice = info;
-                break;
-            }
-        }
+        AudioDeviceInfo speakerDevice = mAudioDeviceRegistry.getCommunicationDevice(
+                AudioDeviceInfo.TYPE_BUILTIN_SPEAKER);
         boolean speakerOn = false;
         if (speakerDevice != null && on) {
             boolean result = mAudioManager.setCommunicationDevice(speakerDevice);
+            mAudioRouteSwitchTracer.recordHop("setCommunicationDevice");
             if (result) {
                 speakerOn = true;
             }
@@ -1825,6 +1886,7 @@ public class CallAudioRouteStateMachine extends StateMachine {
             }
             if (connectedDevice == null || !Objects.equals(address, connectedDevice.getAddress())) {
                 Log.i(this, "connecting bluetooth audio: %s", address);
+                mAudioRouteSwitchTracer.recordHop("connectBluetoothAudio");
                 mBluetoothRouteManager.connectBluetoothAudio(address);
             }
         }
@@ -2011,14 +2073,15 @@ public class CallAudioRouteStateMachine extends StateMachine {
     }
 
     private boolean checkForEarpieceSupport() {
-        AudioDeviceInfo[] deviceList = mAudioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
-        for (AudioDeviceInfo device: deviceList) {
-            if (device.getType() == AudioDeviceInfo.TYPE_BUILTIN_EARPIECE) {
-                return true;
-            }
-        }
-        // No earpiece found
-        return false;
+        return mAudioDeviceRegistry.hasOutputDevice(AudioDeviceInfo.TYPE_BUILTIN_EARPIECE);
+    }
+
+    // Shares the Bluetooth stack's registry where there is one, so that device changes are only
+    // tracked once.
+    private static AudioDeviceRegistry findOrCreateAudioDeviceRegistry(
+            BluetoothRouteManager bluetoothManager, AudioManager audioManager) {
+        AudioDeviceRegistry registry = bluetoothManager.getAudioDeviceRegistry();
+        return registry != null ? registry : new AudioDeviceRegistry(audioManager);
     }
 
     private int calculateBaselineRouteMessage(boolean isExplicitUserRequest,
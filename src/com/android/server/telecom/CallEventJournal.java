@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Connection;
+import android.telecom.Log;
+import android.telecom.VideoProfile;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact, per-call journal of the most recent high frequency informational call events.
+ * <p>
+ * The journal interns event names to small integer IDs and stores events in preallocated
+ * primitive ring buffers.  Event data is kept in its primitive form and only rendered to a
+ * string when the journal is dumped.  The journaled events are not also logged to the Telecom
+ * event log; the journals of recent calls are dumped alongside it instead.
+ */
+public class CallEventJournal {
+    /**
+     * Renders the primitive arguments of a journaled event to a string at dump time.
+     */
+    public interface ArgsFormatter {
+        String format(long arg0, long arg1);
+    }
+
+    public static final int DEFAULT_CAPACITY = 64;
+    private static final int MAX_EVENT_IDS = 256;
+    private static final int MAX_RECENT_JOURNALS = 10;
+    private static final int UNKNOWN_EVENT_ID = 0;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static final Object sLock = new Object();
+    private static final Map<String, Integer> sEventIds = new ConcurrentHashMap<>();
+    private static final String[] sEventNames = new String[MAX_EVENT_IDS];
+    private static final ArgsFormatter[] sFormatters = new ArgsFormatter[MAX_EVENT_IDS];
+    private static int sNextEventId = UNKNOWN_EVENT_ID + 1;
+    private static final ArrayDeque<CallEventJournal> sRecentJournals =
+            new ArrayDeque<>(MAX_RECENT_JOURNALS);
+
+    static {
+        sEventNames[UNKNOWN_EVENT_ID] = "UNKNOWN";
+        for (String event : Analytics.sLogEventToAnalyticsEvent.keySet()) {
+            internEventName(event);
+        }
+        for (String event : LogUtils.JOURNAL_ONLY_EVENTS) {
+            internEventName(event);
+        }
+        registerFormatter(LogUtils.Events.CAPABILITY_CHANGE,
+                (previous, current) -> formatChange(
+                        Connection.capabilitiesToStringShort((int) current),
+                        Connection.capabilitiesToStringShort((int) (previous & ~current)),
+                        Connection.capabilitiesToStringShort((int) (current & ~previous))));
+        registerFormatter(LogUtils.Events.PROPERTY_CHANGE,
+                (previous, current) -> formatChange(
+                        Connection.propertiesToStringShort((int) current),
+                        Connection.propertiesToStringShort((int) (previous & ~current)),
+                        Connection.propertiesToStringShort((int) (current & ~previous))));
+        registerFormatter(LogUtils.Events.VIDEO_STATE_CHANGED,
+                (videoState, unused) -> VideoProfile.videoStateToString((int) videoState));
+        registerFormatter(LogUtils.Events.CALL_DIRECTION_CHANGED,
+                (direction, unused) -> "callDirection=" + direction);
+        registerFormatter(LogUtils.Events.SET_VOIP_MODE,
+                (isVoip, unused) -> isVoip != 0 ? "Y" : "N");
+        registerFormatter(LogUtils.Events.SET_RRT_MODE, (mode, unused) -> "mode=" + mode);
+        registerFormatter(LogUtils.Events.CONF_STATE_CHANGED,
+                (isConference, unused) -> "isConference=" + (isConference != 0));
+        registerFormatter(LogUtils.Events.BT_QUALITY_REPORT,
+                (isChoppy, unused) -> "choppy=" + (isChoppy != 0));
+        registerFormatter(LogUtils.Events.IS_EXTERNAL,
+                (isExternal, unused) -> String.valueOf(isExternal != 0));
+        registerFormatter(LogUtils.Events.VERSTAT_CHANGED,
+                (verstat, unused) -> String.valueOf(verstat));
+        registerFormatter(LogUtils.Events.START_DTMF,
+                (digit, unused) -> Log.pii(String.valueOf((char) digit)));
+    }
+
+    private final String mCallId;
+    private final int[] mEventIds;
+    private final long[] mTimestamps;
+    private final long[] mArgs0;
+    private final long[] mArgs1;
+    private final Object[] mData;
+    // Index of the slot the next event is written to.
+    private int mNext;
+    private int mCount;
+    private long mTotalEvents;
+
+    /**
+     * Creates a journal for the given call and adds it to the set of recent journals included in
+     * {@link #dumpRecent(IndentingPrintWriter)}.
+     *
+     * @param callId The ID of the call the journal records events for.
+     * @return the new journal.
+     */
+    public static CallEventJournal create(String callId) {
+        CallEventJournal journal = new CallEventJournal(callId, DEFAULT_CAPACITY);
+        synchronized (sLock) {
+            if (sRecentJournals.size() >= MAX_RECENT_JOURNALS) {
+                sRecentJournals.removeFirst();
+            }
+            sRecentJournals.addLast(journal);
+        }
+        return journal;
+    }
+
+    @VisibleForTesting
+    public CallEventJournal(String callId, int capacity) {
+        mCallId = callId;
+        mEventIds = new int[capacity];
+        mTimestamps = new long[capacity];
+        mArgs0 = new long[capacity];
+        mArgs1 = new long[capacity];
+        mData = new Object[capacity];
+    }
+
+    /**
+     * Interns an event name, returning its small integer ID.  Known events are interned when this
+     * class is loaded, so this is normally a lock-free map lookup.
+     *
+     * @param event The event name.
+     * @return the ID of the event, or the ID of the unknown event if the table is full.
+     */
+    public static int internEventName(String event) {
+        Integer id = sEventIds.get(event);
+        if (id != null) {
+            return id;
+        }
+        synchronized (sLock) {
+            id = sEventIds.get(event);
+            if (id != null) {
+                return id;
+            }
+            if (sNextEventId >= MAX_EVENT_IDS) {
+                return UNKNOWN_EVENT_ID;
+            }
+            int newId = sNextEventId++;
+            sEventNames[newId] = event;
+            sEventIds.put(event, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * @param eventId An event ID returned by {@link #internEventName(String)}.
+     * @return the name of the event.
+     */
+    public static String getEventName(int eventId) {
+        return eventId >= 0 && eventId < MAX_EVENT_IDS && sEventNames[eventId] != null
+                ? sEventNames[eventId] : sEventNames[UNKNOWN_EVENT_ID];
+    }
+
+    private static void registerFormatter(String event, ArgsFormatter formatter) {
+        sFormatters[internEventName(event)] = formatter;
+    }
+
+    private static String formatChange(String current, String removed, String added) {
+        return "Current: [" + current + "], Removed [" + removed + "], Added [" + added + "]";
+    }
+
+    private static String formatArgs(int eventId, long arg0, long arg1) {
+        return sFormatters[eventId] != null ? sFormatters[eventId].format(arg0, arg1) : null;
+    }
+
+    /**
+     * Records an event with an optional, already existing, data object.
+     *
+     * @param event The event name.
+     * @param data The event data, or {@code null}.
+     */
+    public void record(String event, Object data) {
+        record(internEventName(event), 0, 0, data);
+    }
+
+    /**
+     * Records an event with primitive arguments which are rendered at dump time by the formatter
+     * registered for the event.
+     *
+     * @param event The event name.
+     * @param arg0 The first argument.
+     * @param arg1 The second argument.
+     */
+    public void record(String event, long arg0, long arg1) {
+        record(internEventName(event), arg0, arg1, null);
+    }
+
+    private synchronized void record(int eventId, long arg0, long arg1, Object data) {
+        mEventIds[mNext] = eventId;
+        mTimestamps[mNext] = System.currentTimeMillis();
+        mArgs0[mNext] = arg0;
+        mArgs1[mNext] = arg1;
+        mData[mNext] = data;
+        mNext = (mNext + 1) % mEventIds.length;
+        if (mCount < mEventIds.length) {
+            mCount++;
+        }
+        mTotalEvents++;
+    }
+
+    /**
+     * @return the number of events currently held in the journal.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /**
+     * Renders the events currently held in the journal, oldest first.
+     *
+     * @return the rendered events.
+     */
+    public synchronized List<String> renderEvents() {
+        List<String> events = new ArrayList<>(mCount);
+        int first = (mNext - mCount + mEventIds.length) % mEventIds.length;
+        for (int i = 0; i < mCount; i++) {
+            int index = (first + i) % mEventIds.length;
+            int eventId = mEventIds[index];
+            StringBuilder sb = new StringBuilder();
+            sb.append(DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(mTimestamps[index])
+                    .atZone(ZoneId.systemDefault())));
+            sb.append(" - ").append(getEventName(eventId));
+            String data = null;
+            if (mData[index] != null) {
+                data = String.valueOf(mData[index]);
+            } else {
+                data = formatArgs(eventId, mArgs0[index], mArgs1[index]);
+            }
+            if (data != null) {
+                sb.append(" (").append(data).append(")");
+            }
+            events.add(sb.toString());
+        }
+        return events;
+    }
+
+    /**
+     * Dumps the contents of this journal.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        long totalEvents;
+        synchronized (this) {
+            totalEvents = mTotalEvents;
+        }
+        pw.print(mCallId == null ? "?" : mCallId);
+        pw.print(" (total=");
+        pw.print(totalEvents);
+        pw.println("):");
+        pw.increaseIndent();
+        for (String event : renderEvents()) {
+            pw.println(event);
+        }
+        pw.decreaseIndent();
+    }
+
+    /**
+     * Dumps the journals of the most recently created calls.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public static void dumpRecent(IndentingPrintWriter pw) {
+        List<CallEventJournal> journals;
+        synchronized (sLock) {
+            journals = new ArrayList<>(sRecentJournals);
+        }
+        pw.println("Call Event Journal:");
+        pw.increaseIndent();
+        for (CallEventJournal journal : journals) {
+            journal.dump(pw);
+        }
+        pw.decreaseIndent();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.os.Bundle;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.List;
+
+/**
+ * The extras of a {@link Call}, along with the sanitized versions of them which are sent to
+ * {@link android.telecom.InCallService}s and call screening services.
+ * <p>
+ * The extras are copied on write: each change replaces the extras bundle with a new one and
+ * increments the version, so a bundle returned by this class is never modified afterwards and
+ * must not be modified by its recipient.  This allows each sanitized version of the extras to be
+ * built once per change, and shared by every {@link android.telecom.ParcelableCall} built until
+ * the next change.
+ * <p>
+ * Like the {@link Call} which owns it, this class is guarded by the Telecom lock.
+ */
+public class CallExtras {
+    private Bundle mExtras;
+    private int mVersion;
+    private Bundle mNonSystemExtras;
+    private int mNonSystemExtrasVersion = -1;
+    private Bundle mRestrictedScreeningExtras;
+    private int mRestrictedScreeningExtrasVersion = -1;
+    private int mNumSanitizations;
+
+    /**
+     * @return all of the extras, or {@code null} if none have been added.
+     */
+    public Bundle get() {
+        return mExtras;
+    }
+
+    /**
+     * @return a number which changes each time the extras change.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Adds extras, replacing any existing extras with the same keys.
+     *
+     * @param extras The extras to add.
+     */
+    public void putAll(Bundle extras) {
+        Bundle newExtras = mExtras == null ? new Bundle() : new Bundle(mExtras);
+        newExtras.putAll(extras);
+        mExtras = newExtras;
+        mVersion++;
+    }
+
+    /**
+     * Removes extras.
+     *
+     * @param keys The keys of the extras to remove.
+     */
+    public void remove(List<String> keys) {
+        if (mExtras == null) {
+            return;
+        }
+        Bundle newExtras = null;
+        for (String key : keys) {
+            if (mExtras.containsKey(key)) {
+                if (newExtras == null) {
+                    newExtras = new Bundle(mExtras);
+                }
+                newExtras.remove(key);
+            }
+        }
+        if (newExtras != null) {
+            mExtras = newExtras;
+            mVersion++;
+        }
+    }
+
+    /**
+     * @return the extras which may be sent to an {@link android.telecom.InCallService} other than
+     * the system dialer.
+     */
+    public Bundle getNonSystemExtras() {
+        if (mNonSystemExtrasVersion != mVersion) {
+            mNonSystemExtras = ParcelableCallUtils.sanitizeExtras(mExtras);
+            mNonSystemExtrasVersion = mVersion;
+            mNumSanitizations++;
+        }
+        return mNonSystemExtras;
+    }
+
+    /**
+     * @return the extras which may be sent to a call screening service which has access to the
+     * restricted extras.
+     */
+    public Bundle getRestrictedScreeningExtras() {
+        if (mRestrictedScreeningExtrasVersion != mVersion) {
+            mRestrictedScreeningExtras = ParcelableCallUtils.sanitizeRestrictedCallExtras(mExtras);
+            mRestrictedScreeningExtrasVersion = mVersion;
+            mNumSanitizations++;
+        }
+        return mRestrictedScreeningExtras;
+    }
+
+    /**
+     * @return the number of times a sanitized version of the extras has been built.
+     */
+    @VisibleForTesting
+    public int getNumSanitizations() {
+        return mNumSanitizations;
+    }
+}
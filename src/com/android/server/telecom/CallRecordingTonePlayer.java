@@ -75,10 +75,10 @@ public class CallRecordingTonePlayer extends CallsManagerListenerBase {
         private MediaPlayer mRecordingTonePlayer = null;
 
         LoopingTonePlayer() {
-            // We're using the main looper here to avoid creating more threads and risking a thread
+            // We're using a shared looper here to avoid creating more threads and risking a thread
             // leak. The actual playing of the tone doesn't take up much time on the calling
-            // thread, so it's okay to use the main thread for this.
-            super(Looper.getMainLooper());
+            // thread, so it's okay to share it.
+            super(mLooper);
         }
 
         private boolean start() {
@@ -105,8 +105,11 @@ public class CallRecordingTonePlayer extends CallsManagerListenerBase {
         }
 
         private void stop() {
-            mRecordingTonePlayer.release();
+            MediaPlayer recordingTonePlayer = mRecordingTonePlayer;
             mRecordingTonePlayer = null;
+            removeCallbacks(mPlayToneRunnable);
+            // Release on the looper so that a repeat of the tone running now finishes first.
+            post(recordingTonePlayer::release);
         }
     }
 
@@ -115,6 +118,7 @@ public class CallRecordingTonePlayer extends CallsManagerListenerBase {
     private final TelecomSystem.SyncRoot mLock;
     private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
     private final long mRepeatInterval;
+    private final Looper mLooper;
     private boolean mIsRecording = false;
     private LoopingTonePlayer mLoopingTonePlayer;
     private List<Call> mCalls = new ArrayList<>();
@@ -122,9 +126,20 @@ public class CallRecordingTonePlayer extends CallsManagerListenerBase {
     public CallRecordingTonePlayer(Context context, AudioManager audioManager,
             Timeouts.Adapter timeouts,
             TelecomSystem.SyncRoot lock) {
+        this(context, audioManager, timeouts, lock, Looper.getMainLooper());
+    }
+
+    /**
+     * @param looper The looper the tone is repeated on, such as the tone worker's.
+     */
+    public CallRecordingTonePlayer(Context context, AudioManager audioManager,
+            Timeouts.Adapter timeouts,
+            TelecomSystem.SyncRoot lock,
+            Looper looper) {
         mContext = context;
         mAudioManager = audioManager;
         mLock = lock;
+        mLooper = looper;
         mRepeatInterval = timeouts.getCallRecordingToneRepeatIntervalMillis(
                 context.getContentResolver());
     }
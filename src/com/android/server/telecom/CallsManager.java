@@ -120,12 +120,18 @@ import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
 import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
+import com.android.server.telecom.callfiltering.BlockedNumberIndex;
+import com.android.server.telecom.callfiltering.CallerInfoFuture;
 import com.android.server.telecom.callfiltering.BlockCheckerFilter;
 import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
+import com.android.server.telecom.callfiltering.CallFilterConfigCache;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
+import com.android.server.telecom.callfiltering.CallFilterTelemetry;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.CallFilteringResult.Builder;
+import com.android.server.telecom.callfiltering.CallScreeningServiceConnectionManager;
 import com.android.server.telecom.callfiltering.CallScreeningServiceFilter;
+import com.android.server.telecom.callfiltering.CallScreeningVerdictCache;
 import com.android.server.telecom.callfiltering.DirectToVoicemailFilter;
 import com.android.server.telecom.callfiltering.DndCallFilter;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
@@ -164,6 +170,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -462,6 +469,15 @@ public class CallsManager extends Call.ListenerBase
     private final VoipCallMonitor mVoipCallMonitor;
     private final CallEndpointController mCallEndpointController;
     private final CallAnomalyWatchdog mCallAnomalyWatchdog;
+    private final BlockedNumberIndex mBlockedNumberIndex;
+    private final BlockCheckerAdapter mBlockCheckerAdapter;
+    private final CallScreeningVerdictCache mCallScreeningVerdictCache;
+    private final CallFilterTelemetry mCallFilterTelemetry = new CallFilterTelemetry();
+    private final CallFilterConfigCache mCallFilterConfigCache;
+    private final CallScreeningServiceConnectionManager mCallScreeningConnectionManager;
+    private final SelfManagedCallAdmissionController mSelfManagedAdmissionController =
+            new SelfManagedCallAdmissionController(MAXIMUM_RINGING_CALLS,
+                    MAXIMUM_SELF_MANAGED_CALLS);
 
     private final EmergencyCallDiagnosticLogger mEmergencyCallDiagnosticLogger;
     private final CallStreamingController mCallStreamingController;
@@ -543,6 +559,8 @@ public class CallsManager extends Call.ListenerBase
      * in below cases:
      *  1) Carrier config changed.
      *  2) Blocking suppression state changed.
+     * Also refreshes the cached carrier call screening app when the carrier config or the default
+     * subscription it is read from changes.
      */
     private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
         @Override
@@ -551,6 +569,13 @@ public class CallsManager extends Call.ListenerBase
             if (CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED.equals(action)
                     || SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED.equals(action)) {
                 updateEmergencyCallNotificationAsync(context);
+                if (CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED.equals(action)) {
+                    mCallFilterConfigCache.onCarrierConfigChanged();
+                    mCallScreeningVerdictCache.invalidateAll();
+                }
+            } else if (SubscriptionManager.ACTION_DEFAULT_SUBSCRIPTION_CHANGED.equals(action)) {
+                mCallFilterConfigCache.onCarrierConfigChanged();
+                mCallScreeningVerdictCache.invalidateAll();
             } else if (ACTION_MSIM_VOICE_CAPABILITY_CHANGED.equals(action)) {
                 updateCanAddCall();
             }
@@ -619,8 +644,10 @@ public class CallsManager extends Call.ListenerBase
         mCallerInfoLookupHelper = callerInfoLookupHelper;
         mEmergencyCallDiagnosticLogger = emergencyCallDiagnosticLogger;
 
-        mDtmfLocalTonePlayer =
-                new DtmfLocalTonePlayer(new DtmfLocalTonePlayer.ToneGeneratorProxy());
+        // Plays all of the tones below on one worker thread, reusing their tone generators.
+        ToneEngine toneEngine = new ToneEngine();
+        mDtmfLocalTonePlayer = new DtmfLocalTonePlayer(
+                new DtmfLocalTonePlayer.ToneGeneratorProxy(toneEngine), toneEngine.getLooper());
         CallAudioRouteStateMachine callAudioRouteStateMachine =
                 callAudioRouteStateMachineFactory.create(
                         context,
@@ -648,7 +675,7 @@ public class CallsManager extends Call.ListenerBase
                                         audioManager.generateAudioSessionId()));
         InCallTonePlayer.Factory playerFactory = new InCallTonePlayer.Factory(
                 callAudioRoutePeripheralAdapter, lock, toneGeneratorFactory, mediaPlayerFactory,
-                () -> audioManager.getStreamVolume(AudioManager.STREAM_RING) > 0);
+                () -> audioManager.getStreamVolume(AudioManager.STREAM_RING) > 0, toneEngine);
 
         SystemSettingsUtil systemSettingsUtil = new SystemSettingsUtil();
         RingtoneFactory ringtoneFactory = new RingtoneFactory(this, context);
@@ -665,7 +692,7 @@ public class CallsManager extends Call.ListenerBase
                 mContext.getSystemService(NotificationManager.class),
                 accessibilityManagerAdapter);
         mCallRecordingTonePlayer = new CallRecordingTonePlayer(mContext, audioManager,
-                mTimeoutsAdapter, mLock);
+                mTimeoutsAdapter, mLock, toneEngine.getLooper());
         mCallAudioManager = new CallAudioManager(callAudioRouteStateMachine,
                 this, callAudioModeStateMachineFactory.create(systemStateHelper,
                 (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE)),
@@ -706,6 +733,7 @@ public class CallsManager extends Call.ListenerBase
         mListeners.add(callAnomalyWatchdog);
         mListeners.add(mEmergencyCallDiagnosticLogger);
         mListeners.add(mCallStreamingController);
+        mListeners.add(mSelfManagedAdmissionController);
 
         // this needs to be after the mCallAudioManager
         mListeners.add(mPhoneStateBroadcaster);
@@ -726,11 +754,44 @@ public class CallsManager extends Call.ListenerBase
         intentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         intentFilter.addAction(SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED);
         intentFilter.addAction(ACTION_MSIM_VOICE_CAPABILITY_CHANGED);
+        intentFilter.addAction(SubscriptionManager.ACTION_DEFAULT_SUBSCRIPTION_CHANGED);
         context.registerReceiver(mReceiver, intentFilter, Context.RECEIVER_EXPORTED);
         mGraphHandlerThreads = new LinkedList<>();
         mCallAnomalyWatchdog = callAnomalyWatchdog;
         mAsyncTaskExecutor = asyncTaskExecutor;
         mUserManager = mContext.getSystemService(UserManager.class);
+        mBlockedNumberIndex = new BlockedNumberIndex(mContext, mClockProxy,
+                mCallLogManager::getCountryIso,
+                number -> {
+                    TelephonyManager tm = getTelephonyManager();
+                    try {
+                        return tm == null || tm.isEmergencyNumber(number);
+                    } catch (IllegalStateException | UnsupportedOperationException e) {
+                        return true;
+                    }
+                });
+        mBlockCheckerAdapter = new BlockCheckerAdapter(mBlockedNumberIndex);
+        mCallScreeningVerdictCache = new CallScreeningVerdictCache(mClockProxy);
+        mCallScreeningConnectionManager = new CallScreeningServiceConnectionManager(mContext,
+                mHandler, mClockProxy);
+        mCallFilterConfigCache = new CallFilterConfigCache(mHandler, this::getCarrierPackageName,
+                userHandle -> TelecomManager.from(mContext).getDefaultDialerPackage(userHandle),
+                userHandle -> mRoleManagerAdapter.getDefaultCallScreeningApp(userHandle),
+                packageName -> AppLabelProxy.Util.getAppLabel(mContext.getPackageManager(),
+                        packageName),
+                mCallScreeningVerdictCache::isEnabled, mCallScreeningConnectionManager::isEnabled);
+        mCallFilterConfigCache.preload(mCurrentUserHandle);
+        // Cached screening responses and connections are only useful while the same apps hold
+        // the roles.
+        IntConsumer onScreeningRoleChanged = userId -> {
+            mCallFilterConfigCache.onRoleChanged(userId);
+            mCallScreeningVerdictCache.invalidate(userId);
+            mCallScreeningConnectionManager.unbindIdleConnections();
+        };
+        mRoleManagerAdapter.observeCallScreeningApp(mContext.getMainExecutor(),
+                onScreeningRoleChanged);
+        mRoleManagerAdapter.observeDefaultDialerApp(mContext.getMainExecutor(),
+                onScreeningRoleChanged);
         QtiCarrierConfigHelper.getInstance().setup(mContext);
     }
 
@@ -797,6 +858,20 @@ public class CallsManager extends Call.ListenerBase
     @Override
     public void onSuccessfulIncomingCall(Call incomingCall) {
         Log.d(this, "onSuccessfulIncomingCall");
+        if (incomingCall.isSelfManaged()) {
+            // None of the filters apply to self-managed calls; skip straight to completion
+            // without querying the phone account or telephony state.
+            Log.i(this, "Skipping call filtering for self-managed call %s",
+                    incomingCall.getId());
+            onCallFilteringComplete(incomingCall, new Builder()
+                    .setShouldAllowCall(true)
+                    .setShouldReject(false)
+                    .setShouldAddToCallLog(true)
+                    .setShouldShowNotification(true)
+                    .build(), false);
+            incomingCall.setIsUsingCallFiltering(false);
+            return;
+        }
         PhoneAccount phoneAccount = mPhoneAccountRegistrar.getPhoneAccountUnchecked(
                 incomingCall.getTargetPhoneAccount());
         Bundle extras =
@@ -807,16 +882,14 @@ public class CallsManager extends Call.ListenerBase
         if (incomingCall.hasProperty(Connection.PROPERTY_EMERGENCY_CALLBACK_MODE) ||
                 incomingCall.hasProperty(Connection.PROPERTY_NETWORK_IDENTIFIED_EMERGENCY_CALL) ||
                 telephonyManager.isInEmergencySmsMode() ||
-                incomingCall.isSelfManaged() ||
                 extras.getBoolean(PhoneAccount.EXTRA_SKIP_CALL_FILTERING)) {
             Log.i(this, "Skipping call filtering for %s (ecm=%b, "
                             + "networkIdentifiedEmergencyCall = %b, emergencySmsMode = %b, "
-                            + "selfMgd=%b, skipExtra=%b)",
+                            + "skipExtra=%b)",
                     incomingCall.getId(),
                     incomingCall.hasProperty(Connection.PROPERTY_EMERGENCY_CALLBACK_MODE),
                     incomingCall.hasProperty(Connection.PROPERTY_NETWORK_IDENTIFIED_EMERGENCY_CALL),
                     telephonyManager.isInEmergencySmsMode(),
-                    incomingCall.isSelfManaged(),
                     extras.getBoolean(PhoneAccount.EXTRA_SKIP_CALL_FILTERING));
             onCallFilteringComplete(incomingCall, new Builder()
                     .setShouldAllowCall(true)
@@ -834,38 +907,47 @@ public class CallsManager extends Call.ListenerBase
 
     private IncomingCallFilterGraph setUpCallFilterGraph(Call incomingCall) {
         incomingCall.setIsUsingCallFiltering(true);
-        String carrierPackageName = getCarrierPackageName();
+        String carrierPackageName = mCallFilterConfigCache.getCarrierPackageName();
         UserHandle userHandle = incomingCall.getAssociatedUser();
-        String defaultDialerPackageName = TelecomManager.from(mContext).
-                getDefaultDialerPackage(userHandle);
-        String userChosenPackageName = getRoleManagerAdapter().
-                getDefaultCallScreeningApp(userHandle);
-        AppLabelProxy appLabelProxy = packageName -> AppLabelProxy.Util.getAppLabel(
-                mContext.getPackageManager(), packageName);
+        String defaultDialerPackageName =
+                mCallFilterConfigCache.getDefaultDialerPackage(userHandle);
+        String userChosenPackageName = mCallFilterConfigCache.getCallScreeningPackage(userHandle);
+        AppLabelProxy appLabelProxy = mCallFilterConfigCache::getAppLabel;
         ParcelableCallUtils.Converter converter = new ParcelableCallUtils.Converter();
+        CallScreeningVerdictCache verdictCache = mCallFilterConfigCache.isVerdictCacheEnabled()
+                ? mCallScreeningVerdictCache : null;
+        CallScreeningServiceConnectionManager connectionManager =
+                mCallFilterConfigCache.isConnectionSharingEnabled()
+                        ? mCallScreeningConnectionManager : null;
 
         IncomingCallFilterGraph graph = new IncomingCallFilterGraph(incomingCall,
-                this::onCallFilteringComplete, mContext, mTimeoutsAdapter, mLock);
-        DirectToVoicemailFilter voicemailFilter = new DirectToVoicemailFilter(incomingCall,
+                this::onCallFilteringComplete, mContext, mTimeoutsAdapter, mLock,
+                mCallFilterTelemetry);
+        // The contact lookup is shared by the filters which need it.
+        CallerInfoFuture callerInfoFuture = new CallerInfoFuture(incomingCall,
                 mCallerInfoLookupHelper);
+        DirectToVoicemailFilter voicemailFilter = new DirectToVoicemailFilter(incomingCall,
+                callerInfoFuture);
         BlockCheckerFilter blockCheckerFilter = new BlockCheckerFilter(mContext, incomingCall,
-                mCallerInfoLookupHelper, new BlockCheckerAdapter());
+                callerInfoFuture, mBlockCheckerAdapter);
         DndCallFilter dndCallFilter = new DndCallFilter(incomingCall, getRinger());
         CallScreeningServiceFilter carrierCallScreeningServiceFilter =
                 new CallScreeningServiceFilter(incomingCall, carrierPackageName,
                         CallScreeningServiceFilter.PACKAGE_TYPE_CARRIER, mContext, this,
-                        appLabelProxy, converter);
+                        appLabelProxy, converter, verdictCache, connectionManager);
         CallScreeningServiceFilter callScreeningServiceFilter;
         if ((userChosenPackageName != null)
                 && (!userChosenPackageName.equals(defaultDialerPackageName))) {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     userChosenPackageName, CallScreeningServiceFilter.PACKAGE_TYPE_USER_CHOSEN,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, verdictCache,
+                    connectionManager);
         } else {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     defaultDialerPackageName,
                     CallScreeningServiceFilter.PACKAGE_TYPE_DEFAULT_DIALER,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, verdictCache,
+                    connectionManager);
         }
         graph.addFilter(voicemailFilter);
         graph.addFilter(dndCallFilter);
@@ -1460,6 +1542,7 @@ public class CallsManager extends Call.ListenerBase
     public Call processIncomingCallIntent(PhoneAccountHandle phoneAccountHandle, Bundle extras,
         boolean isConference) {
         Log.d(this, "processIncomingCallIntent");
+        final long admissionStartNanos = SystemClock.elapsedRealtimeNanos();
         boolean isHandover = extras.getBoolean(TelecomManager.EXTRA_IS_HANDOVER);
         Uri handle = extras.getParcelable(TelecomManager.EXTRA_INCOMING_CALL_ADDRESS);
         if (handle == null) {
@@ -1688,6 +1771,10 @@ public class CallsManager extends Call.ListenerBase
             notifyStartCreateConnection(call);
             call.startCreateConnection(mPhoneAccountRegistrar);
         }
+        if (isSelfManaged || call.isTransactionalCall()) {
+            mSelfManagedAdmissionController.recordAdmissionLatency(
+                    SystemClock.elapsedRealtimeNanos() - admissionStartNanos);
+        }
         return call;
     }
 
@@ -4950,6 +5037,15 @@ public class CallsManager extends Call.ListenerBase
                 exceptCall, null /*phoneAccountHandle*/, CallState.RINGING, CallState.ANSWERED);
     }
 
+    public CallFilterConfigCache getCallFilterConfigCache() {
+        return mCallFilterConfigCache;
+    }
+
+    @VisibleForTesting
+    public SelfManagedCallAdmissionController getSelfManagedAdmissionController() {
+        return mSelfManagedAdmissionController;
+    }
+
     private boolean hasMaximumSelfManagedRingingCalls(Call exceptCall,
                                                       PhoneAccountHandle phoneAccountHandle) {
         return MAXIMUM_RINGING_CALLS <= getNumCallsWithState(true /* isSelfManaged */, exceptCall,
@@ -5567,6 +5663,9 @@ public class CallsManager extends Call.ListenerBase
         mCurrentUserHandle = userHandle;
         mMissedCallNotifier.setCurrentUserHandle(userHandle);
         mRoleManagerAdapter.setCurrentUserHandle(userHandle);
+        if (mCallFilterConfigCache != null) {
+            mCallFilterConfigCache.onUserSwitch(userHandle);
+        }
         final UserManager userManager = UserManager.get(mContext);
         List<UserInfo> profiles = userManager.getEnabledProfiles(userHandle.getIdentifier());
         for (UserInfo profile : profiles) {
@@ -5646,6 +5745,10 @@ public class CallsManager extends Call.ListenerBase
         }
 
         if (phoneAccount.isSelfManaged()) {
+            if (mSelfManagedAdmissionController.isFastPathEnabled()) {
+                return mSelfManagedAdmissionController.checkIncomingCallPermitted(call,
+                        phoneAccountHandle);
+            }
             if (hasMaximumSelfManagedRingingCalls(call, phoneAccountHandle)) {
                 return CallFailureCause.MAX_RINGING_CALLS;
             }
@@ -5828,37 +5931,78 @@ public class CallsManager extends Call.ListenerBase
         mCallAudioManager.switchBaseline();
     }
 
+    /**
+     * The state of the calls, copied under the Telecom lock so that it can be dumped without
+     * holding the lock.
+     */
+    public static class DumpSnapshot {
+        final List<String> calls = new ArrayList<>();
+        String pendingCallId;
+        final List<String> pendingRedirectedCallIds = new ArrayList<>();
+        final List<String> pendingUnredirectedCallIds = new ArrayList<>();
+    }
+
+    /**
+     * Copies the state of the calls for {@link #dump(IndentingPrintWriter, String[],
+     * DumpSnapshot)}; should be called with the Telecom lock held, and does as little as it can.
+     */
+    public DumpSnapshot snapshotForDump() {
+        DumpSnapshot snapshot = new DumpSnapshot();
+        for (Call call : mCalls) {
+            snapshot.calls.add(call.toString());
+        }
+        if (mPendingCall != null) {
+            snapshot.pendingCallId = mPendingCall.getId();
+        }
+        snapshot.pendingRedirectedCallIds.addAll(mPendingRedirectedOutgoingCallInfo.keySet());
+        snapshot.pendingUnredirectedCallIds.addAll(mPendingUnredirectedOutgoingCallInfo.keySet());
+        return snapshot;
+    }
+
     /**
      * Dumps the state of the {@link CallsManager}.
      *
      * @param pw The {@code IndentingPrintWriter} to write the state to.
      */
     public void dump(IndentingPrintWriter pw, String[] args) {
-        mContext.enforceCallingOrSelfPermission(android.Manifest.permission.DUMP, TAG);
-        if (mCalls != null) {
-            pw.println("mCalls: ");
+        dump(pw, args, snapshotForDump());
+        if (mEmergencyCallDiagnosticLogger != null) {
+            pw.println("mEmergencyCallDiagnosticLogger:");
             pw.increaseIndent();
-            for (Call call : mCalls) {
-                pw.println(call);
-            }
+            mEmergencyCallDiagnosticLogger.dump(pw, args);
             pw.decreaseIndent();
         }
+    }
 
-        if (mPendingCall != null) {
+    /**
+     * Dumps the state of the {@link CallsManager}, other than the emergency call diagnostics,
+     * taking the state of the calls from a snapshot.  Does not need the Telecom lock.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     * @param snapshot The state of the calls, from {@link #snapshotForDump()}.
+     */
+    public void dump(IndentingPrintWriter pw, String[] args, DumpSnapshot snapshot) {
+        mContext.enforceCallingOrSelfPermission(android.Manifest.permission.DUMP, TAG);
+        pw.println("mCalls: ");
+        pw.increaseIndent();
+        for (String call : snapshot.calls) {
+            pw.println(call);
+        }
+        pw.decreaseIndent();
+
+        if (snapshot.pendingCallId != null) {
             pw.print("mPendingCall:");
-            pw.println(mPendingCall.getId());
+            pw.println(snapshot.pendingCallId);
         }
 
-        if (mPendingRedirectedOutgoingCallInfo.size() > 0) {
+        if (snapshot.pendingRedirectedCallIds.size() > 0) {
             pw.print("mPendingRedirectedOutgoingCallInfo:");
-            pw.println(mPendingRedirectedOutgoingCallInfo.keySet().stream().collect(
-                    Collectors.joining(", ")));
+            pw.println(String.join(", ", snapshot.pendingRedirectedCallIds));
         }
 
-        if (mPendingUnredirectedOutgoingCallInfo.size() > 0) {
+        if (snapshot.pendingUnredirectedCallIds.size() > 0) {
             pw.print("mPendingUnredirectedOutgoingCallInfo:");
-            pw.println(mPendingUnredirectedOutgoingCallInfo.keySet().stream().collect(
-                    Collectors.joining(", ")));
+            pw.println(String.join(", ", snapshot.pendingUnredirectedCallIds));
         }
 
         if (mCallAudioManager != null) {
@@ -5896,12 +6040,35 @@ public class CallsManager extends Call.ListenerBase
             pw.decreaseIndent();
         }
 
-        if (mEmergencyCallDiagnosticLogger != null) {
-            pw.println("mEmergencyCallDiagnosticLogger:");
-            pw.increaseIndent();
-            mEmergencyCallDiagnosticLogger.dump(pw, args);
-            pw.decreaseIndent();
-        }
+        pw.println("mBlockedNumberIndex:");
+        pw.increaseIndent();
+        mBlockedNumberIndex.dump(pw);
+        pw.decreaseIndent();
+
+        pw.println("mCallFilterConfigCache:");
+        pw.increaseIndent();
+        mCallFilterConfigCache.dump(pw);
+        pw.decreaseIndent();
+
+        pw.println("mCallFilterTelemetry:");
+        pw.increaseIndent();
+        mCallFilterTelemetry.dump(pw);
+        pw.decreaseIndent();
+
+        pw.println("mCallScreeningVerdictCache:");
+        pw.increaseIndent();
+        mCallScreeningVerdictCache.dump(pw);
+        pw.decreaseIndent();
+
+        pw.println("mCallScreeningConnectionManager:");
+        pw.increaseIndent();
+        mCallScreeningConnectionManager.dump(pw);
+        pw.decreaseIndent();
+
+        pw.println("mSelfManagedAdmissionController:");
+        pw.increaseIndent();
+        mSelfManagedAdmissionController.dump(pw);
+        pw.decreaseIndent();
 
         if (mDefaultDialerCache != null) {
             pw.println("mDefaultDialerCache:");
@@ -6710,6 +6877,10 @@ public class CallsManager extends Call.ListenerBase
         return PhoneAccountHandle.areFromSamePackage(call1TargetAcct, call2TargetAcct);
     }
 
+    public BlockedNumberIndex getBlockedNumberIndex() {
+        return mBlockedNumberIndex;
+    }
+
     public LinkedList<HandlerThread> getGraphHandlerThreads() {
         return mGraphHandlerThreads;
     }
@@ -36,6 +36,7 @@ import android.os.ParcelFileDescriptor;
 import android.os.Process;
 import android.os.RemoteException;
 import android.os.ResultReceiver;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.telecom.CallAudioState;
 import android.telecom.CallEndpoint;
@@ -105,7 +106,10 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             UserHandle callingUserHandle = Binder.getCallingUserHandle();
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock,
+                        LogUtils.Sessions.CSW_HANDLE_CREATE_CONNECTION_COMPLETE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("handleCreateConnectionComplete %s", callId);
                     // Check status hints image for cross user access
                     if (connection.getStatusHints() != null) {
@@ -130,6 +134,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -138,11 +143,19 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void handleCreateConferenceComplete(String callId, ConnectionRequest request,
                 ParcelableConference conference, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> handleCreateConferenceComplete(callId, request, conference,
+                            sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_HANDLE_CREATE_CONNECTION_COMPLETE,
                     mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock,
+                        LogUtils.Sessions.CSW_HANDLE_CREATE_CONNECTION_COMPLETE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("handleCreateConferenceComplete %s", callId);
                     ConnectionServiceWrapper.this
                             .handleCreateConferenceComplete(callId, request, conference);
@@ -160,6 +173,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -168,11 +182,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setActive(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setActive(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_ACTIVE,
                     mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_ACTIVE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setActive %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -185,6 +204,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -192,10 +212,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setRinging(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setRinging(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_RINGING, mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_RINGING);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setRinging %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -208,6 +233,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -215,10 +241,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void resetConnectionTime(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> resetConnectionTime(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.rCCT", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.rCCT");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("resetConnectionTime %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -228,6 +259,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -236,10 +268,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setVideoProvider(String callId, IVideoProvider videoProvider,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setVideoProvider(callId, videoProvider, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sVP", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sVP");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setVideoProvider %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -250,6 +287,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -257,10 +295,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setDialing(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setDialing(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_DIALING, mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_DIALING);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setDialing %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -273,6 +316,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -280,10 +324,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setPulling(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setPulling(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_PULLING, mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_PULLING);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setPulling %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -294,6 +343,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -302,11 +352,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setDisconnected(String callId, DisconnectCause disconnectCause,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setDisconnected(callId, disconnectCause, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_DISCONNECTED,
                     mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_DISCONNECTED);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setDisconnected %s %s", callId, disconnectCause);
                     Call call = mCallIdMapper.getCall(callId);
                     Log.d(this, "disconnect call %s %s", disconnectCause, call);
@@ -320,6 +375,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -327,10 +383,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setOnHold(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setOnHold(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_ON_HOLD, mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_SET_ON_HOLD);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setOnHold %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -343,6 +404,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -351,10 +413,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setRingbackRequested(String callId, boolean ringback,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setRingbackRequested(callId, ringback, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.SRR", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.SRR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setRingbackRequested %s %b", callId, ringback);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -367,6 +434,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -374,10 +442,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void removeCall(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> removeCall(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_REMOVE_CALL, mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.CSW_REMOVE_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("removeCall %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -392,6 +465,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -400,10 +474,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setConnectionCapabilities(String callId, int connectionCapabilities,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setConnectionCapabilities(callId, connectionCapabilities, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sCC", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sConnCaps");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setConnectionCapabilities %s %d", callId, connectionCapabilities);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -417,6 +497,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -425,10 +506,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setConnectionProperties(String callId, int connectionProperties,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setConnectionProperties(callId, connectionProperties, sessionInfo))) {
+                return;
+            }
             Log.startSession("CSW.sCP", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sCP");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setConnectionProperties %s %d", callId, connectionProperties);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -439,6 +526,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -447,11 +535,18 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setIsConferenced(String callId, String conferenceCallId,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setIsConferenced(callId, conferenceCallId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, LogUtils.Sessions.CSW_SET_IS_CONFERENCED,
                     mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock,
+                        LogUtils.Sessions.CSW_SET_IS_CONFERENCED);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setIsConferenced %s %s", callId, conferenceCallId);
                     Call childCall = mCallIdMapper.getCall(callId);
                     if (childCall != null) {
@@ -476,6 +571,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -483,10 +579,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setConferenceMergeFailed(String callId, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setConferenceMergeFailed(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sCMF", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sCMF");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setConferenceMergeFailed %s", callId);
                     // TODO: we should move the UI for indication a merge failure here
                     // from CallNotifier.onSuppServiceFailed(). This way the InCallUI can
@@ -502,6 +603,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -633,10 +735,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onPostDialWait(String callId, String remaining,
                 Session.Info sessionInfo) throws RemoteException {
+            if (mEventLoop.maybePost(() -> onPostDialWait(callId, remaining, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oPDW", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oPDW");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("onPostDialWait %s %s", callId, remaining);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -649,6 +756,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -657,10 +765,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onPostDialChar(String callId, char nextChar,
                 Session.Info sessionInfo) throws RemoteException {
+            if (mEventLoop.maybePost(() -> onPostDialChar(callId, nextChar, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oPDC", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oPDC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("onPostDialChar %s %s", callId, nextChar);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -673,6 +786,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -685,7 +799,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             Log.startSession(sessionInfo, "CSW.qRCS", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.qRCS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("queryRemoteConnectionServices callingPackage=" + callingPackage);
                     ConnectionServiceWrapper.this
                             .queryRemoteConnectionServices(callingUserHandle, callingPackage,
@@ -695,6 +811,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -702,10 +819,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setVideoState(String callId, int videoState, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setVideoState(callId, videoState, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sVS", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sVS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setVideoState %s %d", callId, videoState);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -716,6 +838,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -723,10 +846,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void setIsVoipAudioMode(String callId, boolean isVoip, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> setIsVoipAudioMode(callId, isVoip, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sIVAM", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sIVAM");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setIsVoipAudioMode %s %b", callId, isVoip);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -737,6 +865,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -745,10 +874,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setAudioRoute(String callId, int audioRoute,
                 String bluetoothAddress, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setAudioRoute(callId, audioRoute, bluetoothAddress, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sAR", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sAR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setAudioRoute %s %s", callId,
                             CallAudioState.audioRouteToString(audioRoute));
                     mCallsManager.setAudioRoute(audioRoute, bluetoothAddress);
@@ -757,6 +892,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -765,10 +901,16 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void requestCallEndpointChange(String callId, CallEndpoint endpoint,
                 ResultReceiver callback, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> requestCallEndpointChange(callId, endpoint, callback, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.rCEC", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.rCEC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("requestCallEndpointChange %s %s", callId,
                             endpoint.getEndpointName());
                     mCallsManager.requestCallEndpointChange(endpoint, callback);
@@ -777,6 +919,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -789,7 +932,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             UserHandle callingUserHandle = Binder.getCallingUserHandle();
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sSH");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setStatusHints %s %s", callId, statusHints);
                     // Check status hints image for cross user access
                     if (statusHints != null) {
@@ -806,6 +951,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -813,10 +959,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void putExtras(String callId, Bundle extras, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> putExtras(callId, extras, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.pE", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.pE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Bundle.setDefusable(extras, true);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -827,6 +978,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -834,10 +986,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
         @Override
         public void removeExtras(String callId, List<String> keys, Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> removeExtras(callId, keys, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.rE", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.rE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("removeExtra %s %s", callId, keys);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -848,6 +1005,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -856,11 +1014,17 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setAddress(String callId, Uri address, int presentation,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setAddress(callId, address, presentation, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sA", mPackageAbbreviation);
 
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sA");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setAddress %s %s %d", callId, address, presentation);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -871,6 +1035,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -879,10 +1044,17 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setCallerDisplayName(String callId, String callerDisplayName, int presentation,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setCallerDisplayName(callId, callerDisplayName, presentation,
+                            sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sCDN", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sCDN");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setCallerDisplayName %s %s %d", callId, callerDisplayName,
                             presentation);
                     Call call = mCallIdMapper.getCall(callId);
@@ -894,6 +1066,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -902,10 +1075,17 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void setConferenceableConnections(String callId, List<String> conferenceableCallIds,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(
+                    () -> setConferenceableConnections(callId, conferenceableCallIds,
+                            sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.sCC", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sConfConns");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
 
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -926,6 +1106,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -948,7 +1129,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                     == PackageManager.PERMISSION_GRANTED;
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.aEC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     // Make sure that the PhoneAccount associated with the incoming
                     // ParcelableConnection is in fact registered to Telecom and is being called
                     // from the correct user.
@@ -1090,6 +1273,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1098,10 +1282,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onConnectionEvent(String callId, String event, Bundle extras,
                 Session.Info sessionInfo) {
+            if (mEventLoop.maybePost(() -> onConnectionEvent(callId, event, extras, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oCE", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oCE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Bundle.setDefusable(extras, true);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -1112,6 +1301,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1120,16 +1310,24 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onRttInitiationSuccess(String callId, Session.Info sessionInfo)
                 throws RemoteException {
+            if (mEventLoop.maybePost(() -> onRttInitiationSuccess(callId, sessionInfo))) {
+                return;
+            }
 
         }
 
         @Override
         public void onRttInitiationFailure(String callId, int reason, Session.Info sessionInfo)
                 throws RemoteException {
+            if (mEventLoop.maybePost(() -> onRttInitiationFailure(callId, reason, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oRIF", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oRIF");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.onRttConnectionFailure(reason);
@@ -1139,6 +1337,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1147,16 +1346,24 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onRttSessionRemotelyTerminated(String callId, Session.Info sessionInfo)
                 throws RemoteException {
+            if (mEventLoop.maybePost(() -> onRttSessionRemotelyTerminated(callId, sessionInfo))) {
+                return;
+            }
 
         }
 
         @Override
         public void onRemoteRttRequest(String callId, Session.Info sessionInfo)
                 throws RemoteException {
+            if (mEventLoop.maybePost(() -> onRemoteRttRequest(callId, sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oRRR", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oRRR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.onRemoteRttRequest();
@@ -1166,6 +1373,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1182,7 +1390,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             Log.startSession(sessionInfo, "CSW.oPAC", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oPAC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.setTargetPhoneAccount(pHandle);
@@ -1192,6 +1402,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1200,10 +1411,15 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         @Override
         public void onConnectionServiceFocusReleased(Session.Info sessionInfo)
                 throws RemoteException {
+            if (mEventLoop.maybePost(() -> onConnectionServiceFocusReleased(sessionInfo))) {
+                return;
+            }
             Log.startSession(sessionInfo, "CSW.oCSFR", mPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.oCSFR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mConnSvrFocusListener.onConnectionServiceReleased(
                             ConnectionServiceWrapper.this);
                 }
@@ -1211,6 +1427,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1230,7 +1447,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sCS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.setConferenceState(isConference);
@@ -1240,6 +1459,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1258,7 +1478,9 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "CSW.sCD");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     logIncoming("setCallDirection %s %d", callId, direction);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -1269,6 +1491,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 Log.e(ConnectionServiceWrapper.this, t, "");
                 throw t;
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
                 Log.endSession();
             }
@@ -1351,6 +1574,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
     private final CallsManager mCallsManager;
     private final AppOpsManager mAppOpsManager;
     private final Context mContext;
+    private final TelecomEventLoop mEventLoop;
 
     private ConnectionServiceFocusManager.ConnectionServiceFocusListener mConnSvrFocusListener;
 
@@ -1373,6 +1597,20 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             Context context,
             TelecomSystem.SyncRoot lock,
             UserHandle userHandle) {
+        this(componentName, connectionServiceRepository, phoneAccountRegistrar, callsManager,
+                context, lock, userHandle, TelecomEventLoop.getInstance());
+    }
+
+    @VisibleForTesting
+    public ConnectionServiceWrapper(
+            ComponentName componentName,
+            ConnectionServiceRepository connectionServiceRepository,
+            PhoneAccountRegistrar phoneAccountRegistrar,
+            CallsManager callsManager,
+            Context context,
+            TelecomSystem.SyncRoot lock,
+            UserHandle userHandle,
+            TelecomEventLoop eventLoop) {
         super(ConnectionService.SERVICE_INTERFACE, componentName, context, lock, userHandle);
         mConnectionServiceRepository = connectionServiceRepository;
         phoneAccountRegistrar.addListener(new PhoneAccountRegistrar.Listener() {
@@ -1383,6 +1621,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         mCallsManager = callsManager;
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
         mContext = context;
+        mEventLoop = eventLoop;
     }
 
     /** See {@link IConnectionService#addConnectionServiceAdapter}. */
@@ -1630,15 +1869,58 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
 
     }
 
+    /**
+     * Binds to the ConnectionService ahead of a {@link #createConnection} request so that the
+     * bind can proceed in parallel with other work.  The binding is held until
+     * {@link #releasePrebind()} is called.
+     *
+     * @param call The call the binding is taken for.
+     * @param onFailure Invoked if the ConnectionService could not be bound.
+     */
+    @VisibleForTesting
+    public void prebind(Call call, Runnable onFailure) {
+        Log.i(this, "prebind(%s) via %s.", call, getComponentName());
+        incrementAssociatedCallCount();
+        final long bindStartMillis = SystemClock.elapsedRealtime();
+        mBinder.bind(new BindCallback() {
+            @Override
+            public void onSuccess() {
+                Log.i(ConnectionServiceWrapper.this, "prebind of %s succeeded in %d ms",
+                        getComponentName(), SystemClock.elapsedRealtime() - bindStartMillis);
+            }
+
+            @Override
+            public void onFailure() {
+                Log.w(ConnectionServiceWrapper.this, "prebind of %s failed in %d ms",
+                        getComponentName(), SystemClock.elapsedRealtime() - bindStartMillis);
+                onFailure.run();
+            }
+        }, call);
+    }
+
+    /**
+     * Releases a binding taken by {@link #prebind(Call, Runnable)}.
+     */
+    @VisibleForTesting
+    public void releasePrebind() {
+        decrementAssociatedCallCount();
+    }
+
     /**
      * Creates a new connection for a new outgoing call or to attach to an existing incoming call.
      */
     @VisibleForTesting
     public void createConnection(final Call call, final CreateConnectionResponse response) {
         Log.i(this, "createConnection(%s) via %s.", call, getComponentName());
+        final EmergencyCallDiagnosticLogger diagnosticLogger = getEmergencyCallDiagnosticLogger();
+        final long bindStartElapsedMillis = SystemClock.elapsedRealtime();
         BindCallback callback = new BindCallback() {
             @Override
             public void onSuccess() {
+                if (diagnosticLogger != null) {
+                    diagnosticLogger.onConnectionServiceBindFinished(call, true,
+                            SystemClock.elapsedRealtime() - bindStartElapsedMillis);
+                }
                 String callId = mCallIdMapper.getCallId(call);
                 if (callId == null) {
                     Log.i(ConnectionServiceWrapper.this, "Call not present"
@@ -1730,13 +2012,27 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             @Override
             public void onFailure() {
                 Log.e(this, new Exception(), "Failure to call %s", getComponentName());
+                if (diagnosticLogger != null) {
+                    diagnosticLogger.onConnectionServiceBindFinished(call, false,
+                            SystemClock.elapsedRealtime() - bindStartElapsedMillis);
+                }
                 response.handleCreateConnectionFailure(new DisconnectCause(DisconnectCause.ERROR));
             }
         };
 
+        if (diagnosticLogger != null) {
+            diagnosticLogger.onConnectionServiceBindStarted(call);
+        }
         mBinder.bind(callback, call);
     }
 
+    /**
+     * @return the logger of emergency call diagnostics, if there is one.
+     */
+    EmergencyCallDiagnosticLogger getEmergencyCallDiagnosticLogger() {
+        return mCallsManager == null ? null : mCallsManager.getEmergencyCallDiagnosticLogger();
+    }
+
     /**
      * Notifies the {@link ConnectionService} associated with a {@link Call} that the request to
      * create a connection has been denied or failed.
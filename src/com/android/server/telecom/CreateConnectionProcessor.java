@@ -19,15 +19,19 @@ package com.android.server.telecom;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.SystemClock;
 import android.os.UserHandle;
+import android.provider.DeviceConfig;
 import android.telecom.DisconnectCause;
 import android.telecom.Log;
 import android.telecom.ParcelableConference;
 import android.telecom.ParcelableConnection;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
+import android.telephony.ServiceState;
 import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
+import android.util.SparseBooleanArray;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
 
@@ -37,10 +41,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +59,12 @@ import java.util.stream.Collectors;
  */
 @VisibleForTesting
 public class CreateConnectionProcessor implements CreateConnectionResponse {
+    /**
+     * DeviceConfig flag which enables binding to all candidate ConnectionServices for an emergency
+     * call in parallel, rather than binding to each one only once the previous attempt fails.
+     */
+    private static final String ENABLE_PARALLEL_EMERGENCY_BIND =
+            "enable_parallel_emergency_connection_service_bind";
 
     // Describes information required to attempt to make a phone call
     private static class CallAttemptRecord {
@@ -99,6 +112,14 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     public interface ITelephonyManagerAdapter {
         int getSubIdForPhoneAccount(Context context, PhoneAccount account);
         int getSlotIndex(int subId);
+
+        /**
+         * @return {@code true} if the subscription can currently place emergency calls, either
+         * because it is in service or because it is limited to emergency calls only.
+         */
+        default boolean isInServiceForEmergency(Context context, int subId) {
+            return true;
+        }
     }
 
     private ITelephonyManagerAdapter mTelephonyAdapter = new ITelephonyManagerAdapter() {
@@ -115,6 +136,20 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
         public int getSlotIndex(int subId) {
             return SubscriptionManager.getSlotIndex(subId);
         }
+
+        @Override
+        public boolean isInServiceForEmergency(Context context, int subId) {
+            TelephonyManager manager = context.getSystemService(TelephonyManager.class);
+            if (manager == null) {
+                return true;
+            }
+            ServiceState serviceState = manager.createForSubscriptionId(subId).getServiceState();
+            if (serviceState == null) {
+                return true;
+            }
+            return serviceState.getState() == ServiceState.STATE_IN_SERVICE
+                    || serviceState.isEmergencyOnly();
+        }
     };
 
     private final Call mCall;
@@ -128,6 +163,15 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     private CreateConnectionTimeout mTimeout;
     private ConnectionServiceWrapper mService;
     private int mConnectionAttempt;
+    // Overrides the DeviceConfig flag when non-null.
+    private Boolean mIsParallelEmergencyBindEnabled;
+    // ConnectionServices bound ahead of their attempt, keyed by connection manager account.
+    private final Map<PhoneAccountHandle, ConnectionServiceWrapper> mPrebindServices =
+            new HashMap<>();
+    // Connection manager accounts whose ConnectionService could not be bound ahead of time.
+    private final Set<PhoneAccountHandle> mFailedPrebinds = new HashSet<>();
+    private long mAttemptStartElapsedMillis;
+    private final List<Long> mAttemptLatenciesMillis = new ArrayList<>();
 
     @VisibleForTesting
     public CreateConnectionProcessor(
@@ -159,6 +203,27 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
         mTelephonyAdapter = adapter;
     }
 
+    @VisibleForTesting
+    public void setParallelEmergencyBindEnabled(boolean isEnabled) {
+        mIsParallelEmergencyBindEnabled = isEnabled;
+    }
+
+    /**
+     * @return the duration of each completed connection attempt, in the order they were made.
+     */
+    @VisibleForTesting
+    public List<Long> getAttemptLatenciesMillis() {
+        return new ArrayList<>(mAttemptLatenciesMillis);
+    }
+
+    private boolean isParallelEmergencyBindEnabled() {
+        if (mIsParallelEmergencyBindEnabled != null) {
+            return mIsParallelEmergencyBindEnabled;
+        }
+        return DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_TELEPHONY,
+                ENABLE_PARALLEL_EMERGENCY_BIND, false);
+    }
+
     @VisibleForTesting
     public void process() {
         Log.v(this, "process");
@@ -173,9 +238,59 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
             adjustAttemptsForEmergency(mCall.getTargetPhoneAccount());
         }
         mAttemptRecordIterator = mAttemptRecords.iterator();
+        if (mCall.isEmergencyCall() && mAttemptRecords.size() > 1
+                && isParallelEmergencyBindEnabled()) {
+            prebindConnectionServices();
+        }
         attemptNextPhoneAccount();
     }
 
+    /**
+     * Binds to the ConnectionService of every attempt up front so that bind latency overlaps with
+     * the earlier attempts.  Attempts are still made one at a time in order; an attempt whose
+     * ConnectionService fails to bind is skipped without waiting for it to fail or time out.
+     */
+    private void prebindConnectionServices() {
+        for (CallAttemptRecord record : mAttemptRecords) {
+            PhoneAccountHandle handle = record.connectionManagerPhoneAccount;
+            if (mPrebindServices.containsKey(handle) || mFailedPrebinds.contains(handle)
+                    || !mPhoneAccountRegistrar.phoneAccountRequiresBindPermission(handle)) {
+                continue;
+            }
+            ConnectionServiceWrapper service = mRepository.getService(handle.getComponentName(),
+                    handle.getUserHandle());
+            if (service == null) {
+                mFailedPrebinds.add(handle);
+                continue;
+            }
+            mPrebindServices.put(handle, service);
+            Log.i(this, "prebindConnectionServices: binding %s", handle);
+            service.prebind(mCall, () -> mFailedPrebinds.add(handle));
+        }
+    }
+
+    /**
+     * Releases the bindings taken by {@link #prebindConnectionServices()}.  The ConnectionService
+     * which ends up handling the call holds its own binding via the call, so only unused services
+     * are unbound.
+     */
+    private void releasePrebinds() {
+        for (ConnectionServiceWrapper service : mPrebindServices.values()) {
+            service.releasePrebind();
+        }
+        mPrebindServices.clear();
+    }
+
+    private void recordAttemptLatency(String result) {
+        if (mAttemptStartElapsedMillis == 0) {
+            return;
+        }
+        long latencyMillis = SystemClock.elapsedRealtime() - mAttemptStartElapsedMillis;
+        mAttemptStartElapsedMillis = 0;
+        mAttemptLatenciesMillis.add(latencyMillis);
+        Log.i(this, "Attempt %d %s after %d ms", mConnectionAttempt, result, latencyMillis);
+    }
+
     boolean hasMorePhoneAccounts() {
         return mAttemptRecordIterator.hasNext();
     }
@@ -196,6 +311,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
         CreateConnectionResponse response = mCallResponse;
         mCallResponse = null;
         clearTimeout();
+        releasePrebinds();
 
         ConnectionServiceWrapper service = mCall.getConnectionService();
         if (service != null) {
@@ -233,6 +349,15 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
                 attemptNextPhoneAccount();
                 return;
             }
+
+            // Don't wait for an attempt to fail if its ConnectionService is already known to be
+            // unavailable, unless it is the last option left.
+            if (mFailedPrebinds.contains(attempt.connectionManagerPhoneAccount)
+                    && mAttemptRecordIterator.hasNext()) {
+                Log.i(this, "Skipping attempt %s; ConnectionService failed to bind", attempt);
+                attemptNextPhoneAccount();
+                return;
+            }
         }
 
         if (mCallResponse != null && attempt != null) {
@@ -245,6 +370,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
                 attemptNextPhoneAccount();
             } else {
                 mConnectionAttempt++;
+                mAttemptStartElapsedMillis = SystemClock.elapsedRealtime();
                 mCall.setConnectionManagerPhoneAccount(attempt.connectionManagerPhoneAccount);
                 mCall.setTargetPhoneAccount(attempt.targetPhoneAccount);
                 mCall.setConnectionService(mService);
@@ -500,6 +626,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     private void notifyCallConnectionFailure(DisconnectCause errorDisconnectCause) {
         if (mCallResponse != null) {
             clearTimeout();
+            releasePrebinds();
             mCallResponse.handleCreateConnectionFailure(errorDisconnectCause);
             mCallResponse = null;
             mCall.clearConnectionService();
@@ -509,6 +636,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     private void notifyConferenceCallFailure(DisconnectCause errorDisconnectCause) {
         if (mCallResponse != null) {
             clearTimeout();
+            releasePrebinds();
             mCallResponse.handleCreateConferenceFailure(errorDisconnectCause);
             mCallResponse = null;
             mCall.clearConnectionService();
@@ -527,6 +655,8 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
         } else {
             // Success -- share the good news and remember that we are no longer interested
             // in hearing about any more attempts
+            recordAttemptLatency("succeeded");
+            releasePrebinds();
             mCallResponse.handleCreateConnectionSuccess(idMapper, connection);
             mCallResponse = null;
             // If there's a timeout running then don't clear it. The timeout can be triggered
@@ -545,6 +675,8 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
         } else {
             // Success -- share the good news and remember that we are no longer interested
             // in hearing about any more attempts
+            recordAttemptLatency("succeeded");
+            releasePrebinds();
             mCallResponse.handleCreateConferenceSuccess(idMapper, conference);
             mCallResponse = null;
             // If there's a timeout running then don't clear it. The timeout can be triggered
@@ -592,6 +724,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     public void handleCreateConnectionFailure(DisconnectCause errorDisconnectCause) {
         // Failure of some sort; record the reasons for failure and try again if possible
         Log.d(CreateConnectionProcessor.this, "Connection failed: (%s)", errorDisconnectCause);
+        recordAttemptLatency("failed");
         if (shouldFailCallIfConnectionManagerFails(errorDisconnectCause)) {
             notifyCallConnectionFailure(errorDisconnectCause);
             return;
@@ -604,6 +737,7 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
     public void handleCreateConferenceFailure(DisconnectCause errorDisconnectCause) {
         // Failure of some sort; record the reasons for failure and try again if possible
         Log.d(CreateConnectionProcessor.this, "Conference failed: (%s)", errorDisconnectCause);
+        recordAttemptLatency("failed");
         if (shouldFailCallIfConnectionManagerFails(errorDisconnectCause)) {
             notifyConferenceCallFailure(errorDisconnectCause);
             return;
@@ -614,6 +748,21 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
 
     public void sortSimPhoneAccountsForEmergency(List<PhoneAccount> accounts,
             PhoneAccount userPreferredAccount) {
+        final boolean isServiceStateRankingEnabled = mCall != null && mCall.isEmergencyCall()
+                && isParallelEmergencyBindEnabled();
+        // Reading the service state is a binder call, so read it once per subscription up front
+        // rather than on every comparison.
+        final SparseBooleanArray isInServiceBySubId = new SparseBooleanArray();
+        if (isServiceStateRankingEnabled) {
+            for (PhoneAccount account : accounts) {
+                int subId = mTelephonyAdapter.getSubIdForPhoneAccount(mContext, account);
+                if (subId != SubscriptionManager.INVALID_SUBSCRIPTION_ID
+                        && isInServiceBySubId.indexOfKey(subId) < 0) {
+                    isInServiceBySubId.put(subId,
+                            mTelephonyAdapter.isInServiceForEmergency(mContext, subId));
+                }
+            }
+        }
         // Sort the accounts according to how we want to display them (ascending order).
         accounts.sort((account1, account2) -> {
             int retval = 0;
@@ -637,9 +786,20 @@ public class CreateConnectionProcessor implements CreateConnectionResponse {
                 return isSim1Preferred ? -1 : 1;
             }
 
-            // Return the PhoneAccount associated with a valid logical slot.
             int subId1 = mTelephonyAdapter.getSubIdForPhoneAccount(mContext, account1);
             int subId2 = mTelephonyAdapter.getSubIdForPhoneAccount(mContext, account2);
+
+            // When binding in parallel, prefer a subscription which can currently place the call
+            // over one which would have to fail or time out first.
+            if (isServiceStateRankingEnabled) {
+                boolean isInService1 = isInServiceBySubId.get(subId1);
+                boolean isInService2 = isInServiceBySubId.get(subId2);
+                if (isInService1 ^ isInService2) {
+                    return isInService1 ? -1 : 1;
+                }
+            }
+
+            // Return the PhoneAccount associated with a valid logical slot.
             int slotId1 = (subId1 != SubscriptionManager.INVALID_SUBSCRIPTION_ID)
                     ? mTelephonyAdapter.getSlotIndex(subId1)
                     : SubscriptionManager.INVALID_SIM_SLOT_INDEX;
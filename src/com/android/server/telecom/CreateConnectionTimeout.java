@@ -107,6 +107,11 @@ final class CreateConnectionTimeout extends Runnable {
         if (mIsRegistered && isCallBeingPlaced(mCall)) {
             Log.i(this, "run, call timed out, calling disconnect");
             mIsCallTimedOut = true;
+            EmergencyCallDiagnosticLogger diagnosticLogger =
+                    mConnectionService.getEmergencyCallDiagnosticLogger();
+            if (diagnosticLogger != null) {
+                diagnosticLogger.onCreateConnectionTimedOut(mCall);
+            }
             mConnectionService.disconnect(mCall);
         }
     }
@@ -20,7 +20,6 @@ import android.content.Context;
 import android.media.AudioManager;
 import android.media.ToneGenerator;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
 import android.provider.Settings;
@@ -35,17 +34,33 @@ import com.android.internal.annotations.VisibleForTesting;
  * Plays DTMF tones locally for the caller to hear. In order to reduce (1) the amount of times we
  * check the "play local tones" setting and (2) the length of time we keep the tone generator, this
  * class employs a concept of a call "session" that starts and stops when the foreground call
- * changes.
+ * changes.  Tones are played on the audio worker thread shared with the other tone players.
  */
 public class DtmfLocalTonePlayer {
     public static class ToneGeneratorProxy {
+        private static final int TONE_VOLUME = 80;
+
         /** Generator used to actually play the tone. */
         private ToneGenerator mToneGenerator;
 
+        /** The engine whose generators are reused, or null to create a generator each time. */
+        private final ToneEngine mToneEngine;
+
+        public ToneGeneratorProxy() {
+            this(null);
+        }
+
+        public ToneGeneratorProxy(ToneEngine toneEngine) {
+            mToneEngine = toneEngine;
+        }
+
         public void create() {
             if (mToneGenerator == null) {
                 try {
-                    mToneGenerator = new ToneGenerator(AudioManager.STREAM_DTMF, 80);
+                    mToneGenerator = mToneEngine != null
+                            ? mToneEngine.acquireToneGenerator(AudioManager.STREAM_DTMF,
+                                    TONE_VOLUME, ToneGenerator::new)
+                            : new ToneGenerator(AudioManager.STREAM_DTMF, TONE_VOLUME);
                 } catch (RuntimeException e) {
                     Log.e(this, e, "Error creating local tone generator.");
                     mToneGenerator = null;
@@ -55,7 +70,12 @@ public class DtmfLocalTonePlayer {
 
         public void release() {
             if (mToneGenerator != null) {
-                mToneGenerator.release();
+                if (mToneEngine != null) {
+                    mToneEngine.releaseToneGenerator(AudioManager.STREAM_DTMF, TONE_VOLUME,
+                            mToneGenerator);
+                } else {
+                    mToneGenerator.release();
+                }
                 mToneGenerator = null;
             }
         }
@@ -136,13 +156,19 @@ public class DtmfLocalTonePlayer {
     private static final int EVENT_PLAY_TONE = 3;
     private static final int EVENT_STOP_TONE = 4;
 
-    /** Handler running on the tonegenerator thread. */
+    /** Handler running on the tone worker thread. */
     private ToneHandler mHandler;
 
     private final ToneGeneratorProxy mToneGeneratorProxy;
+    private final Looper mLooper;
 
     public DtmfLocalTonePlayer(ToneGeneratorProxy toneGeneratorProxy) {
+        this(toneGeneratorProxy, ToneEngine.getWorkerLooper());
+    }
+
+    public DtmfLocalTonePlayer(ToneGeneratorProxy toneGeneratorProxy, Looper looper) {
         mToneGeneratorProxy = toneGeneratorProxy;
+        mLooper = looper;
     }
 
     public void onForegroundCallChanged(Call oldForegroundCall, Call newForegroundCall) {
@@ -227,15 +253,13 @@ public class DtmfLocalTonePlayer {
     }
 
     /**
-     * Creates a new ToneHandler on a separate thread if none exists, and returns it.
+     * Creates a new ToneHandler on the tone worker thread if none exists, and returns it.
      * No need for locking, since everything that calls this is protected by the Telecom lock.
      */
     @VisibleForTesting
     public ToneHandler getHandler() {
         if (mHandler == null) {
-            HandlerThread thread = new HandlerThread("tonegenerator-dtmf");
-            thread.start();
-            mHandler = new ToneHandler(thread.getLooper());
+            mHandler = new ToneHandler(mLooper);
         }
         return mHandler;
     }
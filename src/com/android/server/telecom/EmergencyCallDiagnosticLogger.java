@@ -21,6 +21,7 @@ import static android.telephony.TelephonyManager.EmergencyCallDiagnosticParams;
 import android.os.BugreportManager;
 import android.os.DropBoxManager;
 import android.provider.DeviceConfig;
+import android.telecom.CallAudioState;
 import android.telecom.DisconnectCause;
 import android.telecom.Log;
 import android.telephony.TelephonyManager;
@@ -29,6 +30,11 @@ import android.util.LocalLog;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.IndentingPrintWriter;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -42,6 +48,9 @@ import java.util.concurrent.Executor;
  * persist relevant information (dumpsys, logcat etc.) to the dropbox. This acts as a central place
  * to determine when and what to collect.
  *
+ * <p>It also keeps an {@link EmergencyCallFlightRecorder} of the Telecom events for emergency
+ * calls, which is persisted to the dropbox when a potential failure is detected.
+ *
  * <p>When a bugreport is triggered, this module will read the dropbox entries and add them to the
  * telecom dump.
  */
@@ -60,6 +69,8 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
     private static final int REPORT_REASON_CALL_CREATED_BUT_NEVER_ADDED = 3;
     private static final int REPORT_REASON_SHORT_DURATION_AFTER_GOING_ACTIVE = 4;
     private static final String DROPBOX_TAG = "ecall_diagnostic_data";
+    @VisibleForTesting
+    public static final String FLIGHT_RECORDER_DROPBOX_TAG = "ecall_flight_recorder";
     private static final String ENABLE_BUGREPORT_COLLECTION_FOR_EMERGENCY_CALL_DIAGNOSTICS =
             "enable_bugreport_collection_for_emergency_call_diagnostics";
     private static final String ENABLE_TELECOM_DUMP_COLLECTION_FOR_EMERGENCY_CALL_DIAGNOSTICS =
@@ -86,6 +97,7 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
     private final BugreportManager mBugreportManager;
     private final Executor mAsyncTaskExecutor;
     private final ClockProxy mClockProxy;
+    private final EmergencyCallFlightRecorder mFlightRecorder;
 
     public EmergencyCallDiagnosticLogger(
             TelephonyManager tm,
@@ -98,6 +110,8 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
         mBugreportManager = brm;
         mAsyncTaskExecutor = asyncTaskExecutor;
         mClockProxy = clockProxy;
+        mFlightRecorder = new EmergencyCallFlightRecorder(clockProxy,
+                EmergencyCallFlightRecorder.DEFAULT_CAPACITY);
     }
 
     // this calculates time from ACTIVE --> removed
@@ -151,8 +165,23 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
         return mEmergencyCallsMap;
     }
 
+    @VisibleForTesting
+    public EmergencyCallFlightRecorder getFlightRecorder() {
+        return mFlightRecorder;
+    }
+
     private void triggerDiagnosticsCollection(Call call, int reason) {
         Log.i(this, "Triggering diagnostics for call %s reason: %d", call.getId(), reason);
+        mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_DIAGNOSTICS_TRIGGERED, call,
+                reason, 0);
+        final byte[] flightRecord = mFlightRecorder.snapshot();
+        mAsyncTaskExecutor.execute(() -> {
+            try {
+                mDropBoxManager.addData(FLIGHT_RECORDER_DROPBOX_TAG, flightRecord, 0);
+            } catch (Exception e) {
+                Log.w(this, "Exception while persisting flight recorder %s", e.toString());
+            }
+        });
         List<Integer> dataCollectionTypes = getDataCollectionTypes(reason);
         boolean invokeTelephonyPersistApi = false;
         CallEventTimestamps ts = mEmergencyCallsMap.get(call);
@@ -249,6 +278,8 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
 
     public void reportStuckCall(Call call) {
         if (shouldTrackCall(call)) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_TIMEOUT, call,
+                    EmergencyCallFlightRecorder.TIMEOUT_STUCK_CALL, call.getState());
             Log.i(this, "Triggering diagnostics for stuck call %s", call.getId());
             triggerDiagnosticsCollection(call, REPORT_REASON_STUCK_CALL_DETECTED);
             call.removeListener(this);
@@ -263,6 +294,46 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
             call.addListener(this);
             Log.i(this, "Tracking call %s timestamp: %d", call.getId(), currentTime);
             mEmergencyCallsMap.put(call, new CallEventTimestamps(currentTime));
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_CALL_TRACKED, call, 0, 0);
+        }
+    }
+
+    /**
+     * Called when a {@link ConnectionServiceWrapper} starts binding to place a call.
+     *
+     * @param call the call
+     */
+    public void onConnectionServiceBindStarted(Call call) {
+        if (mEmergencyCallsMap.containsKey(call)) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_CS_BIND_STARTED, call, 0, 0);
+        }
+    }
+
+    /**
+     * Called when a {@link ConnectionServiceWrapper} has bound, or failed to bind, to place a
+     * call.
+     *
+     * @param call the call
+     * @param success whether the bind succeeded
+     * @param durationMillis how long the bind took
+     */
+    public void onConnectionServiceBindFinished(Call call, boolean success, long durationMillis) {
+        if (mEmergencyCallsMap.containsKey(call)) {
+            mFlightRecorder.record(success ? EmergencyCallFlightRecorder.EVENT_CS_BOUND
+                            : EmergencyCallFlightRecorder.EVENT_CS_BIND_FAILED, call,
+                    (int) Math.min(durationMillis, Integer.MAX_VALUE), 0);
+        }
+    }
+
+    /**
+     * Called when a call is disconnected because creating its connection timed out.
+     *
+     * @param call the call
+     */
+    public void onCreateConnectionTimedOut(Call call) {
+        if (mEmergencyCallsMap.containsKey(call)) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_TIMEOUT, call,
+                    EmergencyCallFlightRecorder.TIMEOUT_CREATE_CONNECTION, call.getState());
         }
     }
 
@@ -270,6 +341,8 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
     public void onCreateConnectionFailed(Call call) {
         if (shouldTrackCall(call)) {
             Log.i(this, "Triggering diagnostics for  call %s that was never added", call.getId());
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_CREATE_CONNECTION_FAILED,
+                    call, 0, 0);
             triggerDiagnosticsCollection(call, REPORT_REASON_CALL_CREATED_BUT_NEVER_ADDED);
             call.removeListener(this);
             mEmergencyCallsMap.remove(call);
@@ -289,6 +362,9 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
             CallEventTimestamps ts = mEmergencyCallsMap.get(call);
             long currentTime = mClockProxy.currentTimeMillis();
             ts.setCallRemovedTime(currentTime);
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_CALL_REMOVED, call,
+                    call.getDisconnectCause() == null ? DisconnectCause.UNKNOWN
+                            : call.getDisconnectCause().getCode(), 0);
 
             maybeTriggerDiagnosticsCollection(call, ts);
             mEmergencyCallsMap.remove(call);
@@ -336,6 +412,10 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
      */
     @Override
     public void onCallStateChanged(Call call, int oldState, int newState) {
+        if (call != null && mEmergencyCallsMap.containsKey(call)) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_STATE_CHANGED, call,
+                    oldState, newState);
+        }
 
         if (call != null && mEmergencyCallsMap.get(call) != null && newState == CallState.ACTIVE) {
             CallEventTimestamps ts = mEmergencyCallsMap.get(call);
@@ -346,32 +426,64 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
         }
     }
 
+    /**
+     * Override of {@link com.android.server.telecom.CallsManager.CallsManagerListener} to record
+     * audio route changes while an emergency call is tracked.
+     */
+    @Override
+    public void onCallAudioStateChanged(CallAudioState oldAudioState,
+            CallAudioState newAudioState) {
+        if (!mEmergencyCallsMap.isEmpty() && newAudioState != null) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_AUDIO_ROUTE_CHANGED, null,
+                    oldAudioState == null ? 0 : oldAudioState.getRoute(),
+                    newAudioState.getRoute());
+        }
+    }
+
+    /**
+     * Override of {@link com.android.server.telecom.CallsManager.CallsManagerListener} to record
+     * when an emergency call moves to another ConnectionService.
+     */
+    @Override
+    public void onConnectionServiceChanged(Call call, ConnectionServiceWrapper oldService,
+            ConnectionServiceWrapper newService) {
+        if (call != null && mEmergencyCallsMap.containsKey(call)) {
+            mFlightRecorder.record(EmergencyCallFlightRecorder.EVENT_CS_CHANGED, call, 0, 0);
+        }
+    }
+
+    private long getEntriesAfterTime() {
+        return mClockProxy.currentTimeMillis()
+                - (mTimeoutAdapter.getDaysBackToSearchEmergencyDiagnosticEntries() * 24
+                        * 60L * 60L * 1000L);
+    }
+
     private void dumpDiagnosticDataFromDropbox(IndentingPrintWriter pw) {
         pw.increaseIndent();
         pw.println("PERSISTED DIAGNOSTIC DATA FROM DROP BOX");
         int totalEntriesDumped = 0;
-        long currentTime = mClockProxy.currentTimeMillis();
-        long entriesAfterTime =
-                currentTime - (mTimeoutAdapter.getDaysBackToSearchEmergencyDiagnosticEntries() * 24
-                        * 60L * 60L * 1000L);
-        Log.i(this, "current time: %d entriesafter: %d", currentTime, entriesAfterTime);
+        long entriesAfterTime = getEntriesAfterTime();
+        Log.i(this, "entriesafter: %d", entriesAfterTime);
         DropBoxManager.Entry entry;
         entry = mDropBoxManager.getNextEntry(DROPBOX_TAG, entriesAfterTime);
         while (entry != null) {
             Log.i(this, "found entry with ts: %d", entry.getTimeMillis());
-            String content[] = entry.getText(getMaxBytesPerDropboxEntry()).split(
-                    System.lineSeparator());
             long entryTime = entry.getTimeMillis();
-            if (content != null) {
-                pw.increaseIndent();
-                pw.println("------------BEGIN ENTRY (" + entryTime + ")--------");
-                for (String line : content) {
-                    pw.println(line);
+            pw.increaseIndent();
+            pw.println("------------BEGIN ENTRY (" + entryTime + ")--------");
+            // Stream the entry rather than reading it into memory; entries can be large.
+            try (InputStream in = entry.getInputStream()) {
+                if (in != null) {
+                    dumpText(in, getMaxBytesPerDropboxEntry(), pw);
                 }
-                pw.println("--------END ENTRY--------");
-                pw.decreaseIndent();
-                totalEntriesDumped++;
+            } catch (IOException e) {
+                pw.println("Failed to read entry: " + e);
+            } finally {
+                entry.close();
             }
+            pw.println("--------END ENTRY--------");
+            pw.decreaseIndent();
+            totalEntriesDumped++;
             entry = mDropBoxManager.getNextEntry(DROPBOX_TAG, entryTime);
             if (totalEntriesDumped > MAX_DROPBOX_ENTRIES_TO_DUMP) {
                 /*
@@ -393,9 +505,65 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
         pw.decreaseIndent();
     }
 
+    /**
+     * Prints the lines of a stream until the stream ends or {@code maxChars} characters have been
+     * read.
+     */
+    private static void dumpText(InputStream in, int maxChars, IndentingPrintWriter pw)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+        int charsRead = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (charsRead + line.length() > maxChars) {
+                pw.println(line.substring(0, Math.max(0, maxChars - charsRead)));
+                pw.println("[truncated]");
+                return;
+            }
+            pw.println(line);
+            charsRead += line.length() + 1;
+        }
+    }
+
+    private void dumpFlightRecordsFromDropbox(IndentingPrintWriter pw, long entriesAfterTime) {
+        pw.increaseIndent();
+        pw.println("PERSISTED FLIGHT RECORDS FROM DROP BOX");
+        int totalEntriesDumped = 0;
+        DropBoxManager.Entry entry =
+                mDropBoxManager.getNextEntry(FLIGHT_RECORDER_DROPBOX_TAG, entriesAfterTime);
+        while (entry != null && totalEntriesDumped < MAX_DROPBOX_ENTRIES_TO_DUMP) {
+            long entryTime = entry.getTimeMillis();
+            pw.increaseIndent();
+            pw.println("------------BEGIN FLIGHT RECORD (" + entryTime + ")--------");
+            try (InputStream in = entry.getInputStream()) {
+                if (in != null) {
+                    EmergencyCallFlightRecorder.dumpSnapshot(in, pw);
+                }
+            } catch (IOException e) {
+                pw.println("Failed to read flight record: " + e);
+            } finally {
+                entry.close();
+            }
+            pw.println("--------END FLIGHT RECORD--------");
+            pw.decreaseIndent();
+            totalEntriesDumped++;
+            entry = mDropBoxManager.getNextEntry(FLIGHT_RECORDER_DROPBOX_TAG, entryTime);
+        }
+        if (entry != null) {
+            entry.close();
+        }
+        pw.println("END OF PERSISTED FLIGHT RECORDS FROM DROP BOX");
+        pw.decreaseIndent();
+    }
+
     public void dump(IndentingPrintWriter pw, String[] args) {
         pw.increaseIndent();
         mLocalLog.dump(pw);
+        pw.println("Flight recorder:");
+        pw.increaseIndent();
+        mFlightRecorder.dump(pw);
+        pw.decreaseIndent();
         pw.decreaseIndent();
         if (args != null && args.length > 0 && args[0].equals(DUMPSYS_ARG_FOR_DIAGNOSTICS)) {
             //dont read dropbox entries since this dump is triggered by telephony for diagnostics
@@ -403,6 +571,7 @@ public class EmergencyCallDiagnosticLogger extends CallsManagerListenerBase
             return;
         }
         dumpDiagnosticDataFromDropbox(pw);
+        dumpFlightRecordsFromDropbox(pw, getEntriesAfterTime());
     }
 
     private static class CallEventTimestamps {
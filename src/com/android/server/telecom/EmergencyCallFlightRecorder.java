@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.CallAudioState;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * An always-on, fixed-size record of the most recent Telecom events for emergency calls, such as
+ * state changes, audio route changes, ConnectionService binds and timeouts.
+ * <p>
+ * Events are kept in preallocated arrays which are overwritten oldest first, so recording an
+ * event never allocates and the memory used never grows.  When an emergency call fails, the
+ * events are snapshotted into a compact binary form which can be persisted, and which
+ * {@link #dumpSnapshot} decodes one event at a time rather than reading it all into memory.
+ * <p>
+ * The binary form is a header of the magic number {@link #MAGIC}, the format version and the
+ * number of events, followed by the events oldest first; each event is its time in milliseconds
+ * since the epoch, its type, the number of its call, and two arguments whose meaning depends on
+ * the type.  All values are big-endian.
+ */
+public class EmergencyCallFlightRecorder {
+    public static final int EVENT_CALL_TRACKED = 1;
+    public static final int EVENT_STATE_CHANGED = 2;
+    public static final int EVENT_AUDIO_ROUTE_CHANGED = 3;
+    public static final int EVENT_CS_BIND_STARTED = 4;
+    public static final int EVENT_CS_BOUND = 5;
+    public static final int EVENT_CS_BIND_FAILED = 6;
+    public static final int EVENT_CS_CHANGED = 7;
+    public static final int EVENT_TIMEOUT = 8;
+    public static final int EVENT_CREATE_CONNECTION_FAILED = 9;
+    public static final int EVENT_CALL_REMOVED = 10;
+    public static final int EVENT_DIAGNOSTICS_TRIGGERED = 11;
+
+    public static final int TIMEOUT_CREATE_CONNECTION = 1;
+    public static final int TIMEOUT_STUCK_CALL = 2;
+
+    /** The number used for events which do not belong to a call. */
+    public static final int NO_CALL = -1;
+
+    @VisibleForTesting
+    public static final int MAGIC = 0x45434652; // "ECFR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int EVENT_BYTES = 24;
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final ClockProxy mClockProxy;
+    private final long[] mTimes;
+    private final int[] mEvents;
+    private final int[] mCallNumbers;
+    private final int[] mArgs1;
+    private final int[] mArgs2;
+    // The index the next event is written to.
+    private int mNext;
+    // The number of events held, up to the capacity.
+    private int mSize;
+
+    public EmergencyCallFlightRecorder(ClockProxy clockProxy, int capacity) {
+        mClockProxy = clockProxy;
+        mTimes = new long[capacity];
+        mEvents = new int[capacity];
+        mCallNumbers = new int[capacity];
+        mArgs1 = new int[capacity];
+        mArgs2 = new int[capacity];
+    }
+
+    /**
+     * Records an event, overwriting the oldest event if the recorder is full.  Does not allocate.
+     *
+     * @param event The type of the event, one of the {@code EVENT_*} constants.
+     * @param call The call the event is for, or {@code null} if it is not for a call.
+     * @param arg1 The first argument of the event.
+     * @param arg2 The second argument of the event.
+     */
+    public void record(int event, Call call, int arg1, int arg2) {
+        int callNumber = call == null ? NO_CALL : getCallNumber(call.getId());
+        long time = mClockProxy.currentTimeMillis();
+        synchronized (this) {
+            mTimes[mNext] = time;
+            mEvents[mNext] = event;
+            mCallNumbers[mNext] = callNumber;
+            mArgs1[mNext] = arg1;
+            mArgs2[mNext] = arg2;
+            mNext = (mNext + 1) % mTimes.length;
+            if (mSize < mTimes.length) {
+                mSize++;
+            }
+        }
+    }
+
+    /**
+     * @return the events held, oldest first, in the binary form described above.
+     */
+    public byte[] snapshot() {
+        synchronized (this) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + mSize * EVENT_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(mSize);
+            int index = (mNext - mSize + mTimes.length) % mTimes.length;
+            for (int i = 0; i < mSize; i++) {
+                buffer.putLong(mTimes[index])
+                        .putInt(mEvents[index])
+                        .putInt(mCallNumbers[index])
+                        .putInt(mArgs1[index])
+                        .putInt(mArgs2[index]);
+                index = (index + 1) % mTimes.length;
+            }
+            return buffer.array();
+        }
+    }
+
+    @VisibleForTesting
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Prints the events currently held.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        try {
+            dumpSnapshot(new ByteArrayInputStream(snapshot()), pw);
+        } catch (IOException e) {
+            pw.println("Failed to dump flight recorder: " + e);
+        }
+    }
+
+    /**
+     * Decodes a snapshot from a stream and prints its events as they are read.
+     *
+     * @param in The stream, which is not closed.
+     * @param pw The writer to print to.
+     * @throws IOException if the stream could not be read or does not hold a snapshot.
+     */
+    public static void dumpSnapshot(InputStream in, IndentingPrintWriter pw) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a flight recorder snapshot");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("unknown flight recorder version " + version);
+        }
+        int count = data.readInt();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        StringBuilder line = new StringBuilder();
+        try {
+            for (int i = 0; i < count; i++) {
+                date.setTime(data.readLong());
+                int event = data.readInt();
+                int callNumber = data.readInt();
+                int arg1 = data.readInt();
+                int arg2 = data.readInt();
+                line.setLength(0);
+                line.append(dateFormat.format(date)).append(' ');
+                if (callNumber != NO_CALL) {
+                    line.append("call ").append(callNumber).append(' ');
+                }
+                appendEvent(line, event, arg1, arg2);
+                pw.println(line);
+            }
+        } catch (EOFException e) {
+            pw.println("Snapshot truncated");
+        }
+    }
+
+    private static void appendEvent(StringBuilder line, int event, int arg1, int arg2) {
+        switch (event) {
+            case EVENT_CALL_TRACKED:
+                line.append("CALL_TRACKED");
+                break;
+            case EVENT_STATE_CHANGED:
+                line.append("STATE_CHANGED ").append(CallState.toString(arg1)).append(" -> ")
+                        .append(CallState.toString(arg2));
+                break;
+            case EVENT_AUDIO_ROUTE_CHANGED:
+                line.append("AUDIO_ROUTE_CHANGED ")
+                        .append(CallAudioState.audioRouteToString(arg1)).append(" -> ")
+                        .append(CallAudioState.audioRouteToString(arg2));
+                break;
+            case EVENT_CS_BIND_STARTED:
+                line.append("CS_BIND_STARTED");
+                break;
+            case EVENT_CS_BOUND:
+                line.append("CS_BOUND after ").append(arg1).append("ms");
+                break;
+            case EVENT_CS_BIND_FAILED:
+                line.append("CS_BIND_FAILED after ").append(arg1).append("ms");
+                break;
+            case EVENT_CS_CHANGED:
+                line.append("CS_CHANGED");
+                break;
+            case EVENT_TIMEOUT:
+                line.append("TIMEOUT ").append(arg1 == TIMEOUT_CREATE_CONNECTION
+                        ? "CREATE_CONNECTION" : arg1 == TIMEOUT_STUCK_CALL ? "STUCK_CALL"
+                        : Integer.toString(arg1));
+                if (arg1 == TIMEOUT_STUCK_CALL) {
+                    line.append(" in ").append(CallState.toString(arg2));
+                }
+                break;
+            case EVENT_CREATE_CONNECTION_FAILED:
+                line.append("CREATE_CONNECTION_FAILED");
+                break;
+            case EVENT_CALL_REMOVED:
+                line.append("CALL_REMOVED disconnectCause=").append(arg1);
+                break;
+            case EVENT_DIAGNOSTICS_TRIGGERED:
+                line.append("DIAGNOSTICS_TRIGGERED reason=").append(arg1);
+                break;
+            default:
+                line.append("EVENT_").append(event).append(' ').append(arg1).append(' ')
+                        .append(arg2);
+        }
+    }
+
+    /**
+     * Gets the number of a call from its id, such as 5 for "TC@5", without allocating.
+     *
+     * @param callId The id of the call.
+     * @return the number, or {@link #NO_CALL} if the id does not end in one.
+     */
+    @VisibleForTesting
+    public static int getCallNumber(String callId) {
+        if (callId == null) {
+            return NO_CALL;
+        }
+        int number = 0;
+        int multiplier = 1;
+        int i = callId.length() - 1;
+        for (; i >= 0 && multiplier <= 100000000; i--) {
+            char c = callId.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            number += (c - '0') * multiplier;
+            multiplier *= 10;
+        }
+        return i == callId.length() - 1 ? NO_CALL : number;
+    }
+}
@@ -24,6 +24,7 @@ import android.telecom.CallEndpoint;
 import android.telecom.Log;
 import android.telecom.PhoneAccountHandle;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.telecom.IInCallAdapter;
 
 import java.util.List;
@@ -39,24 +40,37 @@ class InCallAdapter extends IInCallAdapter.Stub {
     private final TelecomSystem.SyncRoot mLock;
     private final String mOwnerPackageName;
     private final String mOwnerPackageAbbreviation;
+    private final TelecomEventLoop mEventLoop;
 
     /** Persists the specified parameters. */
     public InCallAdapter(CallsManager callsManager, CallIdMapper callIdMapper,
             TelecomSystem.SyncRoot lock, String ownerPackageName) {
+        this(callsManager, callIdMapper, lock, ownerPackageName, TelecomEventLoop.getInstance());
+    }
+
+    @VisibleForTesting
+    public InCallAdapter(CallsManager callsManager, CallIdMapper callIdMapper,
+            TelecomSystem.SyncRoot lock, String ownerPackageName, TelecomEventLoop eventLoop) {
         mCallsManager = callsManager;
         mCallIdMapper = callIdMapper;
         mLock = lock;
         mOwnerPackageName = ownerPackageName;
         mOwnerPackageAbbreviation = Log.getPackageAbbreviation(ownerPackageName);
+        mEventLoop = eventLoop;
     }
 
     @Override
     public void answerCall(String callId, int videoState) {
+        if (mEventLoop.maybePost(() -> answerCall(callId, videoState))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_ANSWER_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_ANSWER_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.d(this, "answerCall(%s,%d)", callId, videoState);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -66,6 +80,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -75,11 +90,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void deflectCall(String callId, Uri address) {
+        if (mEventLoop.maybePost(() -> deflectCall(callId, address))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_DEFLECT_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_DEFLECT_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "deflectCall - %s, %s ", callId, Log.pii(address));
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -89,6 +109,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -104,7 +125,9 @@ class InCallAdapter extends IInCallAdapter.Stub {
             int callingUid = Binder.getCallingUid();
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_REJECT_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     // Check to make sure the in-call app's user isn't restricted from sending SMS.
                     // If so, silently drop the outgoing message. Also drop message if the screen is
                     // locked.
@@ -122,6 +145,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -138,7 +162,10 @@ class InCallAdapter extends IInCallAdapter.Stub {
             int callingUid = Binder.getCallingUid();
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock,
+                        LogUtils.Sessions.ICA_REJECT_CALL_WITH_REASON);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.d(this, "rejectCallWithReason(%s,%d)", callId, rejectReason);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -148,6 +175,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -156,11 +184,17 @@ class InCallAdapter extends IInCallAdapter.Stub {
     }
 
     public void transferCall(String callId, Uri targetNumber, boolean isConfirmationRequired) {
+        if (mEventLoop.maybePost(
+                () -> transferCall(callId, targetNumber, isConfirmationRequired))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_TRANSFER_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_TRANSFER_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "transferCall - %s, %s, %b", callId, Log.pii(targetNumber),
                             isConfirmationRequired);
                     Call call = mCallIdMapper.getCall(callId);
@@ -171,6 +205,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -180,12 +215,18 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void consultativeTransfer(String callId, String otherCallId) {
+        if (mEventLoop.maybePost(() -> consultativeTransfer(callId, otherCallId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_CONSULTATIVE_TRANSFER,
                     mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock,
+                        LogUtils.Sessions.ICA_CONSULTATIVE_TRANSFER);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "consultativeTransfer - %s, %s", callId, otherCallId);
                     Call call = mCallIdMapper.getCall(callId);
                     Call otherCall = mCallIdMapper.getCall(otherCallId);
@@ -197,6 +238,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -206,11 +248,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void playDtmfTone(String callId, char digit) {
+        if (mEventLoop.maybePost(() -> playDtmfTone(callId, digit))) {
+            return;
+        }
         try {
             Log.startSession("ICA.pDT", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.pDT");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.d(this, "playDtmfTone(%s,%c)", callId, digit);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -220,6 +267,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -229,11 +277,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void stopDtmfTone(String callId) {
+        if (mEventLoop.maybePost(() -> stopDtmfTone(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sDT", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sDT");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.d(this, "stopDtmfTone(%s)", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -243,6 +296,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -252,11 +306,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void postDialContinue(String callId, boolean proceed) {
+        if (mEventLoop.maybePost(() -> postDialContinue(callId, proceed))) {
+            return;
+        }
         try {
             Log.startSession("ICA.pDC", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.pDC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.d(this, "postDialContinue(%s)", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -266,6 +325,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -275,11 +335,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void disconnectCall(String callId) {
+        if (mEventLoop.maybePost(() -> disconnectCall(callId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_DISCONNECT_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_DISCONNECT_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.v(this, "disconnectCall: %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
@@ -289,6 +354,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -298,11 +364,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void holdCall(String callId) {
+        if (mEventLoop.maybePost(() -> holdCall(callId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_HOLD_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_HOLD_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         mCallsManager.holdCall(call);
@@ -311,6 +382,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -320,11 +392,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void unholdCall(String callId) {
+        if (mEventLoop.maybePost(() -> unholdCall(callId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_UNHOLD_CALL, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_UNHOLD_CALL);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         mCallsManager.unholdCall(call);
@@ -333,6 +410,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -343,11 +421,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
     @Override
     public void phoneAccountSelected(String callId, PhoneAccountHandle accountHandle,
             boolean setDefault) {
+        if (mEventLoop.maybePost(() -> phoneAccountSelected(callId, accountHandle, setDefault))) {
+            return;
+        }
         try {
             Log.startSession("ICA.pAS", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.pAS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         mCallsManager.phoneAccountSelected(call, accountHandle, setDefault);
@@ -356,6 +439,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -365,14 +449,20 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void mute(boolean shouldMute) {
+        if (mEventLoop.maybePost(() -> mute(shouldMute))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_MUTE, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_MUTE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mCallsManager.mute(shouldMute);
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -382,14 +472,20 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void setAudioRoute(int route, String bluetoothAddress) {
+        if (mEventLoop.maybePost(() -> setAudioRoute(route, bluetoothAddress))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_SET_AUDIO_ROUTE, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_SET_AUDIO_ROUTE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mCallsManager.setAudioRoute(route, bluetoothAddress);
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -399,14 +495,20 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void requestCallEndpointChange(CallEndpoint endpoint, ResultReceiver callback) {
+        if (mEventLoop.maybePost(() -> requestCallEndpointChange(endpoint, callback))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_SET_AUDIO_ROUTE, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_SET_AUDIO_ROUTE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mCallsManager.requestCallEndpointChange(endpoint, callback);
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -416,6 +518,9 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void enterBackgroundAudioProcessing(String callId) {
+        if (mEventLoop.maybePost(() -> enterBackgroundAudioProcessing(callId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_ENTER_AUDIO_PROCESSING,
                     mOwnerPackageAbbreviation);
@@ -437,6 +542,9 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void exitBackgroundAudioProcessing(String callId, boolean shouldRing) {
+        if (mEventLoop.maybePost(() -> exitBackgroundAudioProcessing(callId, shouldRing))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_EXIT_AUDIO_PROCESSING,
                     mOwnerPackageAbbreviation);
@@ -458,11 +566,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void conference(String callId, String otherCallId) {
+        if (mEventLoop.maybePost(() -> conference(callId, otherCallId))) {
+            return;
+        }
         try {
             Log.startSession(LogUtils.Sessions.ICA_CONFERENCE, mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_CONFERENCE);
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     Call otherCall = mCallIdMapper.getCall(otherCallId);
                     if (call != null && otherCall != null) {
@@ -472,6 +585,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -481,11 +595,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void splitFromConference(String callId) {
+        if (mEventLoop.maybePost(() -> splitFromConference(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sFC", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sFC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.splitFromConference();
@@ -494,6 +613,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -503,11 +623,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void mergeConference(String callId) {
+        if (mEventLoop.maybePost(() -> mergeConference(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.mC", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.mC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.mergeConference();
@@ -516,6 +641,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -525,11 +651,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void swapConference(String callId) {
+        if (mEventLoop.maybePost(() -> swapConference(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sC", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.swapConference();
@@ -538,6 +669,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -547,11 +679,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void addConferenceParticipants(String callId, List<Uri> participants) {
+        if (mEventLoop.maybePost(() -> addConferenceParticipants(callId, participants))) {
+            return;
+        }
         try {
             Log.startSession("ICA.aCP", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.aCP");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.addConferenceParticipants(participants);
@@ -560,6 +697,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -570,11 +708,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void pullExternalCall(String callId) {
+        if (mEventLoop.maybePost(() -> pullExternalCall(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.pEC", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.pEC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.pullExternalCall();
@@ -583,6 +726,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -592,11 +736,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void sendCallEvent(String callId, String event, int targetSdkVer, Bundle extras) {
+        if (mEventLoop.maybePost(() -> sendCallEvent(callId, event, targetSdkVer, extras))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sCE", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sCE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.sendCallEvent(event, targetSdkVer, extras);
@@ -605,6 +754,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -614,11 +764,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void putExtras(String callId, Bundle extras) {
+        if (mEventLoop.maybePost(() -> putExtras(callId, extras))) {
+            return;
+        }
         try {
             Log.startSession("ICA.pE", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.pE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         // Make sure to identify the ICS that originated the extras change so that
@@ -629,6 +784,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -638,11 +794,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void removeExtras(String callId, List<String> keys) {
+        if (mEventLoop.maybePost(() -> removeExtras(callId, keys))) {
+            return;
+        }
         try {
             Log.startSession("ICA.rE", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.rE");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.removeExtras(Call.SOURCE_INCALL_SERVICE, keys);
@@ -651,6 +812,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -660,14 +822,20 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void turnOnProximitySensor() {
+        if (mEventLoop.maybePost(() -> turnOnProximitySensor())) {
+            return;
+        }
         try {
             Log.startSession("ICA.tOnPS", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.tOnPS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mCallsManager.turnOnProximitySensor();
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -677,14 +845,20 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void turnOffProximitySensor(boolean screenOnImmediately) {
+        if (mEventLoop.maybePost(() -> turnOffProximitySensor(screenOnImmediately))) {
+            return;
+        }
         try {
             Log.startSession("ICA.tOffPS", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.tOffPS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mCallsManager.turnOffProximitySensor(screenOnImmediately);
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -694,11 +868,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void sendRttRequest(String callId) {
+        if (mEventLoop.maybePost(() -> sendRttRequest(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sRR", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sRR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.sendRttRequest();
@@ -707,6 +886,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -716,11 +896,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void respondToRttRequest(String callId, int id, boolean accept) {
+        if (mEventLoop.maybePost(() -> respondToRttRequest(callId, id, accept))) {
+            return;
+        }
         try {
             Log.startSession("ICA.rTRR", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.rTRR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.handleRttRequestResponse(id, accept);
@@ -729,6 +914,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -738,11 +924,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void stopRtt(String callId) {
+        if (mEventLoop.maybePost(() -> stopRtt(callId))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sRTT", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sRTT");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.stopRtt();
@@ -751,6 +942,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -760,11 +952,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
 
     @Override
     public void setRttMode(String callId, int mode) {
+        if (mEventLoop.maybePost(() -> setRttMode(callId, mode))) {
+            return;
+        }
         try {
             Log.startSession("ICA.sRM", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.sRM");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.setRttMode(mode);
@@ -773,6 +970,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -783,11 +981,16 @@ class InCallAdapter extends IInCallAdapter.Stub {
     @Override
     public void handoverTo(String callId, PhoneAccountHandle destAcct, int videoState,
                            Bundle extras) {
+        if (mEventLoop.maybePost(() -> handoverTo(callId, destAcct, videoState, extras))) {
+            return;
+        }
         try {
             Log.startSession("ICA.hT", mOwnerPackageAbbreviation);
             long token = Binder.clearCallingIdentity();
             try {
+                LockContentionProfiler.beginAcquire(mLock, "ICA.hT");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Call call = mCallIdMapper.getCall(callId);
                     if (call != null) {
                         call.handoverTo(destAcct, videoState, extras);
@@ -796,6 +999,7 @@ class InCallAdapter extends IInCallAdapter.Stub {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Binder.restoreCallingIdentity(token);
             }
         } finally {
@@ -31,18 +31,16 @@ import android.telecom.Logging.Session;
 
 import com.android.internal.annotations.VisibleForTesting;
 
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Play a call-related tone (ringback, busy signal, etc.) either through ToneGenerator, or using a
  * media resource file.
  * To use, create an instance using InCallTonePlayer.Factory (passing in the TONE_* constant for
- * the tone you want) and start() it. Implemented on top of {@link Thread} so that the tone plays in
- * its own thread.
+ * the tone you want) and startTone() it. The tone is played by the {@link ToneEngine} shared by
+ * the factory's players, which plays one tone at a time in order of priority.
  */
-public class InCallTonePlayer extends Thread {
+public class InCallTonePlayer extends ToneEngine.Tone {
 
     /**
      * Factory used to create InCallTonePlayers. Exists to aid with testing mocks.
@@ -54,15 +52,25 @@ public class InCallTonePlayer extends Thread {
         private final ToneGeneratorFactory mToneGeneratorFactory;
         private final MediaPlayerFactory mMediaPlayerFactory;
         private final AudioManagerAdapter mAudioManagerAdapter;
+        private final ToneEngine mToneEngine;
 
         public Factory(CallAudioRoutePeripheralAdapter callAudioRoutePeripheralAdapter,
                 TelecomSystem.SyncRoot lock, ToneGeneratorFactory toneGeneratorFactory,
                 MediaPlayerFactory mediaPlayerFactory, AudioManagerAdapter audioManagerAdapter) {
+            this(callAudioRoutePeripheralAdapter, lock, toneGeneratorFactory, mediaPlayerFactory,
+                    audioManagerAdapter, new ToneEngine());
+        }
+
+        public Factory(CallAudioRoutePeripheralAdapter callAudioRoutePeripheralAdapter,
+                TelecomSystem.SyncRoot lock, ToneGeneratorFactory toneGeneratorFactory,
+                MediaPlayerFactory mediaPlayerFactory, AudioManagerAdapter audioManagerAdapter,
+                ToneEngine toneEngine) {
             mCallAudioRoutePeripheralAdapter = callAudioRoutePeripheralAdapter;
             mLock = lock;
             mToneGeneratorFactory = toneGeneratorFactory;
             mMediaPlayerFactory = mediaPlayerFactory;
             mAudioManagerAdapter = audioManagerAdapter;
+            mToneEngine = toneEngine;
         }
 
         public void setCallAudioManager(CallAudioManager callAudioManager) {
@@ -72,7 +80,7 @@ public class InCallTonePlayer extends Thread {
         public InCallTonePlayer createPlayer(int tone) {
             return new InCallTonePlayer(tone, mCallAudioManager,
                     mCallAudioRoutePeripheralAdapter, mLock, mToneGeneratorFactory,
-                    mMediaPlayerFactory, mAudioManagerAdapter);
+                    mMediaPlayerFactory, mAudioManagerAdapter, mToneEngine);
         }
     }
 
@@ -177,6 +185,9 @@ public class InCallTonePlayer extends Thread {
     // value for a tone is exact duration of the tone itself.
     private static final int TIMEOUT_BUFFER_MILLIS = 20;
 
+    // The length of tones which play until they are stopped.
+    private static final int TONE_LENGTH_UNTIL_STOPPED = Integer.MAX_VALUE - TIMEOUT_BUFFER_MILLIS;
+
     // The tone state.
     private static final int STATE_OFF = 0;
     private static final int STATE_ON = 1;
@@ -201,7 +212,15 @@ public class InCallTonePlayer extends Thread {
     private final int mToneId;
 
     /** Current state of the tone player. */
-    private int mState;
+    private volatile int mState;
+
+    /** How long the tone plays for; only used on the tone engine's worker thread. */
+    private int mToneLengthMillis;
+
+    /** For tones which are generated using ToneGenerator. */
+    private ToneGenerator mToneGenerator = null;
+    private int mToneGeneratorStream;
+    private int mToneGeneratorVolume;
 
     /** For tones which are not generated using ToneGenerator. */
     private MediaPlayerAdapter mToneMediaPlayer = null;
@@ -212,15 +231,10 @@ public class InCallTonePlayer extends Thread {
     private Session mSession;
     private final Object mSessionLock = new Object();
 
-    private final ToneGeneratorFactory mToneGenerator;
+    private final ToneGeneratorFactory mToneGeneratorFactory;
     private final MediaPlayerFactory mMediaPlayerFactory;
     private final AudioManagerAdapter mAudioManagerAdapter;
-
-    /**
-     * Latch used for awaiting on playback, which may be interrupted if the tone is stopped from
-     * outside the playback.
-     */
-    private final CountDownLatch mPlaybackLatch = new CountDownLatch(1);
+    private final ToneEngine mToneEngine;
 
     /**
      * Initializes the tone player. Private; use the {@link Factory} to create tone players.
@@ -234,28 +248,54 @@ public class InCallTonePlayer extends Thread {
             TelecomSystem.SyncRoot lock,
             ToneGeneratorFactory toneGeneratorFactory,
             MediaPlayerFactory mediaPlayerFactor,
-            AudioManagerAdapter audioManagerAdapter) {
+            AudioManagerAdapter audioManagerAdapter,
+            ToneEngine toneEngine) {
         mState = STATE_OFF;
         mToneId = toneId;
         mCallAudioManager = callAudioManager;
         mCallAudioRoutePeripheralAdapter = callAudioRoutePeripheralAdapter;
         mLock = lock;
-        mToneGenerator = toneGeneratorFactory;
+        mToneGeneratorFactory = toneGeneratorFactory;
         mMediaPlayerFactory = mediaPlayerFactor;
         mAudioManagerAdapter = audioManagerAdapter;
+        mToneEngine = toneEngine;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected int getPriority() {
+        switch (mToneId) {
+            case TONE_CALL_WAITING:
+            case TONE_REDIAL:
+            case TONE_RING_BACK:
+            case TONE_VOICE_PRIVACY:
+                return ToneEngine.PRIORITY_NORMAL;
+            case TONE_VIDEO_UPGRADE:
+            case TONE_RTT_REQUEST:
+            case TONE_IN_CALL_QUALITY_NOTIFICATION:
+                return ToneEngine.PRIORITY_LOW;
+            default:
+                return ToneEngine.PRIORITY_HIGH;
+        }
     }
 
     /** {@inheritDoc} */
     @Override
-    public void run() {
+    protected boolean isContinuous() {
+        return mToneLengthMillis == TONE_LENGTH_UNTIL_STOPPED;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean onStart() {
         try {
             synchronized (mSessionLock) {
                 if (mSession != null) {
-                    Log.continueSession(mSession, "ICTP.r");
+                    Log.continueSession(mSession, "ICTP.oS");
                     mSession = null;
                 }
             }
-            Log.d(this, "run(toneId = %s)", mToneId);
+            Log.d(this, "onStart(toneId = %s)", mToneId);
 
             final int toneType;  // Passed to ToneGenerator.startTone.
             final int toneVolume;  // Passed to the ToneGenerator constructor.
@@ -286,7 +326,7 @@ public class InCallTonePlayer extends Thread {
                 case TONE_CALL_WAITING:
                     toneType = ToneGenerator.TONE_SUP_CALL_WAITING;
                     toneVolume = RELATIVE_VOLUME_HIPRI;
-                    toneLengthMillis = Integer.MAX_VALUE - TIMEOUT_BUFFER_MILLIS;
+                    toneLengthMillis = TONE_LENGTH_UNTIL_STOPPED;
                     mediaResourceId = TONE_RESOURCE_ID_UNDEFINED;
                     break;
                 case TONE_CDMA_DROP:
@@ -328,7 +368,7 @@ public class InCallTonePlayer extends Thread {
                 case TONE_RING_BACK:
                     toneType = ToneGenerator.TONE_SUP_RINGTONE;
                     toneVolume = RELATIVE_VOLUME_HIPRI;
-                    toneLengthMillis = Integer.MAX_VALUE - TIMEOUT_BUFFER_MILLIS;
+                    toneLengthMillis = TONE_LENGTH_UNTIL_STOPPED;
                     mediaResourceId = TONE_RESOURCE_ID_UNDEFINED;
                     break;
                 case TONE_UNOBTAINABLE_NUMBER:
@@ -360,6 +400,7 @@ public class InCallTonePlayer extends Thread {
                 default:
                     throw new IllegalStateException("Bad toneId: " + mToneId);
             }
+            mToneLengthMillis = toneLengthMillis;
 
             int stream = AudioManager.STREAM_VOICE_CALL;
             if (mCallAudioRoutePeripheralAdapter.isBluetoothAudioOn()) {
@@ -373,66 +414,77 @@ public class InCallTonePlayer extends Thread {
                         stream = AudioManager.STREAM_VOICE_CALL;
                     }
                 }
-                playToneGeneratorTone(stream, toneVolume, toneType, toneLengthMillis);
+                return playToneGeneratorTone(stream, toneVolume, toneType, toneLengthMillis);
             } else if (mediaResourceId != TONE_RESOURCE_ID_UNDEFINED) {
-                playMediaTone(stream, mediaResourceId);
+                return playMediaTone(stream, mediaResourceId);
             }
+            return false;
         } finally {
-            cleanUpTonePlayer();
             Log.endSession();
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void onStop() {
+        if (mToneGenerator != null) {
+            mToneEngine.releaseToneGenerator(mToneGeneratorStream, mToneGeneratorVolume,
+                    mToneGenerator);
+            mToneGenerator = null;
+        }
+        if (mToneMediaPlayer != null) {
+            mToneMediaPlayer.release();
+            mToneMediaPlayer = null;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onFinished() {
+        // Redundant; don't want anyone re-using at this point.
+        mState = STATE_STOPPED;
+        cleanUpTonePlayer();
+    }
+
     /**
      * Play a tone generated by the {@link ToneGenerator}.
      * @param stream The stream on which the tone will be played.
      * @param toneVolume The volume of the tone.
      * @param toneType The type of tone to play.
      * @param toneLengthMillis How long to play the tone.
+     * @return {@code true} if the tone is playing.
      */
-    private void playToneGeneratorTone(int stream, int toneVolume, int toneType,
+    private boolean playToneGeneratorTone(int stream, int toneVolume, int toneType,
             int toneLengthMillis) {
-        ToneGenerator toneGenerator = null;
+        // If the ToneGenerator creation fails, just continue without it. It is a local audio
+        // signal, and is not as important.
         try {
-            // If the ToneGenerator creation fails, just continue without it. It is a local audio
-            // signal, and is not as important.
-            try {
-                toneGenerator = mToneGenerator.get(stream, toneVolume);
-            } catch (RuntimeException e) {
-                Log.w(this, "Failed to create ToneGenerator.", e);
-                return;
-            }
+            mToneGenerator = mToneEngine.acquireToneGenerator(stream, toneVolume,
+                    mToneGeneratorFactory);
+        } catch (RuntimeException e) {
+            Log.w(this, "Failed to create ToneGenerator.", e);
+            return false;
+        }
+        mToneGeneratorStream = stream;
+        mToneGeneratorVolume = toneVolume;
 
-            Log.i(this, "playToneGeneratorTone: toneType=%d", toneType);
+        Log.i(this, "playToneGeneratorTone: toneType=%d", toneType);
 
-            mState = STATE_ON;
-            toneGenerator.startTone(toneType);
-            try {
-                Log.v(this, "Starting tone %d...waiting for %d ms.", mToneId,
-                        toneLengthMillis + TIMEOUT_BUFFER_MILLIS);
-                if (mPlaybackLatch.await(toneLengthMillis + TIMEOUT_BUFFER_MILLIS,
-                        TimeUnit.MILLISECONDS)) {
-                    Log.i(this, "playToneGeneratorTone: tone playback stopped.");
-                }
-            } catch (InterruptedException e) {
-                Log.w(this, "playToneGeneratorTone: wait interrupted", e);
-            }
-            // Redundant; don't want anyone re-using at this point.
-            mState = STATE_STOPPED;
-        } finally {
-            if (toneGenerator != null) {
-                toneGenerator.release();
-            }
-        }
+        mToneGenerator.startTone(toneType);
+        Log.v(this, "Starting tone %d...waiting for %d ms.", mToneId,
+                toneLengthMillis + TIMEOUT_BUFFER_MILLIS);
+        // Playback can also be stopped via stopTone().
+        mToneEngine.finishToneAfter(this, (long) toneLengthMillis + TIMEOUT_BUFFER_MILLIS);
+        return true;
     }
 
     /**
      * Plays an audio-file based media tone.
      * @param stream The audio stream on which to play the tone.
      * @param toneResourceId The resource ID of the tone to play.
+     * @return {@code true} if the tone is playing.
      */
-    private void playMediaTone(int stream, int toneResourceId) {
-        mState = STATE_ON;
+    private boolean playMediaTone(int stream, int toneResourceId) {
         Log.i(this, "playMediaTone: toneResourceId=%d", toneResourceId);
         AudioAttributes attributes = new AudioAttributes.Builder()
                 .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
@@ -447,33 +499,24 @@ public class InCallTonePlayer extends Thread {
             public void onCompletion(MediaPlayer mp) {
                 Log.i(InCallTonePlayer.this, "playMediaTone: toneResourceId=%d completed.",
                         toneResourceId);
-                mPlaybackLatch.countDown();
+                mToneEngine.onToneFinished(InCallTonePlayer.this);
             }
         });
 
-        try {
-            mToneMediaPlayer.start();
-            // Wait for the tone to stop playing; timeout at 2x the length of the file just to
-            // be on the safe side.  Playback can also be stopped via stopTone().
-            if (mPlaybackLatch.await(durationMillis * 2, TimeUnit.MILLISECONDS)) {
-                Log.i(this, "playMediaTone: tone playback stopped.");
-            }
-        } catch (InterruptedException ie) {
-            Log.e(this, ie, "playMediaTone: tone playback interrupted.");
-        } finally {
-            // Redundant; don't want anyone re-using at this point.
-            mState = STATE_STOPPED;
-            mToneMediaPlayer.release();
-            mToneMediaPlayer = null;
-        }
+        mToneMediaPlayer.start();
+        // Wait for the tone to stop playing; timeout at 2x the length of the file just to
+        // be on the safe side.  Playback can also be stopped via stopTone().
+        mToneEngine.finishToneAfter(this, durationMillis * 2L);
+        return true;
     }
 
     @VisibleForTesting
     public boolean startTone() {
-        // Tone already done; don't allow re-used
-        if (mState == STATE_STOPPED) {
+        // Tone already started or done; don't allow re-used
+        if (mState != STATE_OFF) {
             return false;
         }
+        mState = STATE_ON;
 
         if (sTonesPlaying.incrementAndGet() == 1) {
             mCallAudioManager.setIsTonePlaying(true);
@@ -486,25 +529,19 @@ public class InCallTonePlayer extends Thread {
             mSession = Log.createSubsession();
         }
 
-        super.start();
+        mToneEngine.play(this);
         return true;
     }
 
-    @Override
-    public void start() {
-        Log.w(this, "Do not call the start method directly; use startTone instead.");
-    }
-
     /**
      * Stops the tone.
      */
     @VisibleForTesting
     public void stopTone() {
         Log.i(this, "stopTone: Stopping the tone %d.", mToneId);
-        // Notify the playback to end early.
-        mPlaybackLatch.countDown();
-
         mState = STATE_STOPPED;
+        // End the playback early, or drop the tone if it has not started yet.
+        mToneEngine.stop(this);
     }
 
     @VisibleForTesting
@@ -512,6 +549,11 @@ public class InCallTonePlayer extends Thread {
         sTonesPlaying.set(0);
     }
 
+    @Override
+    public String toString() {
+        return "InCallTonePlayer[" + mToneId + "]";
+    }
+
     private void cleanUpTonePlayer() {
         Log.d(this, "cleanUpTonePlayer(): posting cleanup");
         // Release focus on the main thread.
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.provider.DeviceConfig;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how long call sites wait for and hold the {@link TelecomSystem.SyncRoot} lock, and
+ * which call site was holding the lock when a call site had to wait for it.
+ * <p>
+ * An instrumented call site reports each acquisition of the lock as follows, where the release is
+ * reported from a {@code finally} block enclosing the {@code synchronized} block:
+ * <pre>
+ *     LockContentionProfiler.beginAcquire(mLock, LogUtils.Sessions.ICA_ANSWER_CALL);
+ *     synchronized (mLock) {
+ *         LockContentionProfiler.onAcquired();
+ *         ...
+ *     }
+ *     ...
+ *     } finally {
+ *         LockContentionProfiler.onReleased();
+ *     }
+ * </pre>
+ * Acquisitions by a thread which already holds the lock are not recorded, since they never wait.
+ * Profiling is off unless enabled through DeviceConfig; while it is off, each of the calls above
+ * is a single volatile read.
+ */
+public class LockContentionProfiler {
+    /**
+     * DeviceConfig flag which enables profiling the Telecom lock.  It is only read when
+     * {@link TelecomSystem} is created, so a change takes effect the next time Telecom starts.
+     */
+    private static final String ENABLE_LOCK_CONTENTION_PROFILER =
+            "enable_lock_contention_profiler";
+
+    /** Upper bounds of the histogram buckets, in microseconds; the last bucket is unbounded. */
+    private static final long[] BUCKET_BOUNDS_MICROS =
+            {100, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000};
+    private static final String[] BUCKET_LABELS =
+            {"<0.1ms", "<1ms", "<5ms", "<10ms", "<50ms", "<100ms", "<500ms", ">=500ms"};
+    private static final int MAX_TOP_OFFENDERS = 10;
+
+    /**
+     * The statistics kept for a call site.
+     */
+    @VisibleForTesting
+    public static class SiteStats {
+        public final String site;
+        public int acquisitions;
+        public int contendedAcquisitions;
+        public long totalWaitNanos;
+        public long maxWaitNanos;
+        public long totalHoldNanos;
+        public long maxHoldNanos;
+        // The time other call sites spent waiting for the lock while this call site held it.
+        public long causedWaitNanos;
+        public final int[] waitHistogram = new int[BUCKET_LABELS.length];
+        public final int[] holdHistogram = new int[BUCKET_LABELS.length];
+        // The number of times each call site was holding the lock when this call site waited.
+        public final Map<String, Integer> blockedBy = new HashMap<>();
+
+        SiteStats(String site) {
+            this.site = site;
+        }
+    }
+
+    // The acquisition the current thread is making; only the outermost one is recorded.
+    private static class ThreadState {
+        int generation;
+        int depth;
+        String site;
+        String holderSite;
+        long beginNanos;
+        long acquiredNanos;
+    }
+
+    private static volatile boolean sIsEnabled;
+    // Incremented each time profiling is enabled, so that acquisitions which were in progress
+    // when it was last disabled are forgotten.
+    private static volatile int sGeneration;
+    // The call site currently holding the lock and the state of the thread holding it, or null if
+    // the lock is not held by a recorded call site.
+    private static volatile String sHolderSite;
+    private static volatile ThreadState sHolder;
+    private static final ThreadLocal<ThreadState> sThreadState =
+            ThreadLocal.withInitial(ThreadState::new);
+    private static final Object sStatsLock = new Object();
+    // Guarded by sStatsLock.
+    private static final Map<String, SiteStats> sSiteStats = new HashMap<>();
+
+    /**
+     * Enables or disables profiling based on DeviceConfig.  Changes to the flag after this is
+     * called are not picked up.
+     */
+    public static void loadEnabledFromDeviceConfig() {
+        setEnabled(DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_TELEPHONY,
+                ENABLE_LOCK_CONTENTION_PROFILER, false));
+    }
+
+    public static void setEnabled(boolean isEnabled) {
+        if (isEnabled && !sIsEnabled) {
+            sGeneration++;
+        }
+        sIsEnabled = isEnabled;
+    }
+
+    public static boolean isEnabled() {
+        return sIsEnabled;
+    }
+
+    /**
+     * Called by a call site just before it enters a block synchronized on the lock.
+     *
+     * @param lock The lock being acquired.
+     * @param site The name of the call site, typically its log session name.
+     */
+    public static void beginAcquire(TelecomSystem.SyncRoot lock, String site) {
+        if (!sIsEnabled) {
+            return;
+        }
+        ThreadState state = sThreadState.get();
+        if (state.generation != sGeneration) {
+            state.generation = sGeneration;
+            state.depth = 0;
+        }
+        state.depth++;
+        if (state.depth > 1) {
+            return;
+        }
+        state.site = null;
+        if (Thread.holdsLock(lock)) {
+            return;
+        }
+        state.site = site;
+        state.holderSite = sHolderSite;
+        state.beginNanos = System.nanoTime();
+        state.acquiredNanos = 0;
+    }
+
+    /**
+     * Called by a call site as the first statement of a block synchronized on the lock.
+     */
+    public static void onAcquired() {
+        if (!sIsEnabled) {
+            return;
+        }
+        ThreadState state = sThreadState.get();
+        if (state.depth != 1 || state.site == null) {
+            return;
+        }
+        state.acquiredNanos = System.nanoTime();
+        sHolderSite = state.site;
+        sHolder = state;
+        long waitNanos = state.acquiredNanos - state.beginNanos;
+        synchronized (sStatsLock) {
+            SiteStats stats = getSiteStats(state.site);
+            stats.acquisitions++;
+            stats.totalWaitNanos += waitNanos;
+            stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waitNanos);
+            stats.waitHistogram[getBucket(waitNanos)]++;
+            if (state.holderSite != null) {
+                stats.contendedAcquisitions++;
+                stats.blockedBy.merge(state.holderSite, 1, Integer::sum);
+                getSiteStats(state.holderSite).causedWaitNanos += waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Called by a call site once it has left a block synchronized on the lock.  Does nothing if
+     * the call site returned before calling {@link #beginAcquire}.
+     */
+    public static void onReleased() {
+        if (!sIsEnabled) {
+            return;
+        }
+        ThreadState state = sThreadState.get();
+        if (state.depth == 0 || state.generation != sGeneration) {
+            return;
+        }
+        state.depth--;
+        if (state.depth > 0 || state.site == null) {
+            return;
+        }
+        String site = state.site;
+        state.site = null;
+        if (state.acquiredNanos == 0) {
+            return;
+        }
+        long holdNanos = System.nanoTime() - state.acquiredNanos;
+        if (sHolder == state) {
+            sHolder = null;
+            sHolderSite = null;
+        }
+        synchronized (sStatsLock) {
+            SiteStats stats = getSiteStats(site);
+            stats.totalHoldNanos += holdNanos;
+            stats.maxHoldNanos = Math.max(stats.maxHoldNanos, holdNanos);
+            stats.holdHistogram[getBucket(holdNanos)]++;
+        }
+    }
+
+    /**
+     * @return a copy of the statistics for a call site, or {@code null} if there are none.
+     */
+    @VisibleForTesting
+    public static SiteStats getSiteStatsSnapshot(String site) {
+        synchronized (sStatsLock) {
+            SiteStats stats = sSiteStats.get(site);
+            if (stats == null) {
+                return null;
+            }
+            SiteStats copy = new SiteStats(site);
+            copy.acquisitions = stats.acquisitions;
+            copy.contendedAcquisitions = stats.contendedAcquisitions;
+            copy.totalWaitNanos = stats.totalWaitNanos;
+            copy.maxWaitNanos = stats.maxWaitNanos;
+            copy.totalHoldNanos = stats.totalHoldNanos;
+            copy.maxHoldNanos = stats.maxHoldNanos;
+            copy.causedWaitNanos = stats.causedWaitNanos;
+            System.arraycopy(stats.waitHistogram, 0, copy.waitHistogram, 0,
+                    stats.waitHistogram.length);
+            System.arraycopy(stats.holdHistogram, 0, copy.holdHistogram, 0,
+                    stats.holdHistogram.length);
+            copy.blockedBy.putAll(stats.blockedBy);
+            return copy;
+        }
+    }
+
+    @VisibleForTesting
+    public static void reset() {
+        synchronized (sStatsLock) {
+            sSiteStats.clear();
+        }
+        sHolder = null;
+        sHolderSite = null;
+    }
+
+    // Must be called with sStatsLock held.
+    private static SiteStats getSiteStats(String site) {
+        return sSiteStats.computeIfAbsent(site, SiteStats::new);
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = nanos / 1000;
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (micros < BUCKET_BOUNDS_MICROS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MICROS.length;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String formatHistogram(int[] histogram) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(BUCKET_LABELS[i]).append('=').append(histogram[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Dumps the call sites which caused the most waiting for the lock, followed by the wait and
+     * hold time histograms of each call site.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public static void dump(IndentingPrintWriter pw) {
+        pw.print("Lock contention (enabled=");
+        pw.print(sIsEnabled);
+        pw.println("):");
+        List<SiteStats> sites;
+        synchronized (sStatsLock) {
+            sites = new ArrayList<>(sSiteStats.size());
+            for (SiteStats stats : sSiteStats.values()) {
+                sites.add(getSiteStatsSnapshot(stats.site));
+            }
+        }
+        if (sites.isEmpty()) {
+            return;
+        }
+        pw.increaseIndent();
+        pw.println("Top offenders (time others waited while held):");
+        pw.increaseIndent();
+        sites.sort((a, b) -> Long.compare(b.causedWaitNanos, a.causedWaitNanos));
+        for (int i = 0; i < Math.min(MAX_TOP_OFFENDERS, sites.size()); i++) {
+            SiteStats stats = sites.get(i);
+            if (stats.causedWaitNanos == 0) {
+                break;
+            }
+            pw.print(stats.site);
+            pw.print(": caused=");
+            pw.print(formatMillis(stats.causedWaitNanos));
+            pw.print(", totalHold=");
+            pw.print(formatMillis(stats.totalHoldNanos));
+            pw.print(", maxHold=");
+            pw.println(formatMillis(stats.maxHoldNanos));
+        }
+        pw.decreaseIndent();
+
+        pw.println("Sites (by total wait):");
+        pw.increaseIndent();
+        sites.sort((a, b) -> Long.compare(b.totalWaitNanos, a.totalWaitNanos));
+        for (SiteStats stats : sites) {
+            pw.print(stats.site);
+            pw.print(": acquisitions=");
+            pw.print(stats.acquisitions);
+            pw.print(", contended=");
+            pw.print(stats.contendedAcquisitions);
+            pw.print(", totalWait=");
+            pw.print(formatMillis(stats.totalWaitNanos));
+            pw.print(", maxWait=");
+            pw.println(formatMillis(stats.maxWaitNanos));
+            pw.increaseIndent();
+            pw.print("wait: ");
+            pw.println(formatHistogram(stats.waitHistogram));
+            pw.print("hold: ");
+            pw.println(formatHistogram(stats.holdHistogram));
+            if (!stats.blockedBy.isEmpty()) {
+                pw.print("blockedBy: ");
+                pw.println(stats.blockedBy);
+            }
+            pw.decreaseIndent();
+        }
+        pw.decreaseIndent();
+        pw.decreaseIndent();
+    }
+}
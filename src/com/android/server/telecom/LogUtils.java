@@ -25,6 +25,7 @@ import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Temporary location of new Logging class
@@ -68,6 +69,9 @@ public class LogUtils {
         public static final String ICA_ANSWER_CALL = "ICA.aC";
         public static final String ICA_DEFLECT_CALL = "ICA.defC";
         public static final String ICA_REJECT_CALL = "ICA.rC";
+        // Only used as a lock contention site; the session is logged as ICA_REJECT_CALL so that
+        // it is counted in the same analytics timing.
+        public static final String ICA_REJECT_CALL_WITH_REASON = "ICA.rCWR";
         public static final String ICA_TRANSFER_CALL = "ICA.tC";
         public static final String ICA_CONSULTATIVE_TRANSFER = "ICA.cT";
         public static final String ICA_DISCONNECT_CALL = "ICA.dC";
@@ -167,6 +171,7 @@ public class LogUtils {
         public static final String SCREENING_BOUND = "SCREENING_BOUND";
         public static final String SCREENING_SENT = "SCREENING_SENT";
         public static final String SCREENING_SKIPPED = "SCREENING_SKIPPED";
+        public static final String SCREENING_CACHED = "SCREENING_CACHED";
         public static final String CONTROLLER_SCREENING_COMPLETED =
                 "CONTROLLER_SCREENING_COMPLETED";
         public static final String SCREENING_COMPLETED = "SCREENING_COMPLETED";
@@ -273,6 +278,69 @@ public class LogUtils {
         }
     }
 
+    /**
+     * High frequency informational call events which do not feed {@link Analytics} or any of the
+     * {@link Events.Timings}.  These are recorded only in the call's {@link CallEventJournal}, so
+     * that they do not allocate an event record in the Telecom event log.
+     */
+    public static final Set<String> JOURNAL_ONLY_EVENTS = Set.of(
+            Events.CAPABILITY_CHANGE,
+            Events.PROPERTY_CHANGE,
+            Events.IS_EXTERNAL,
+            Events.START_DTMF,
+            Events.STOP_DTMF,
+            Events.VERSTAT_CHANGED,
+            Events.ICS_EXTRAS_CHANGED,
+            Events.CALL_EVENT,
+            Events.CONNECTION_EVENT,
+            Events.BT_QUALITY_REPORT,
+            Events.VIDEO_STATE_CHANGED,
+            Events.SET_VOIP_MODE,
+            Events.SET_RRT_MODE,
+            Events.CONF_STATE_CHANGED,
+            Events.CALL_DIRECTION_CHANGED);
+
+    /**
+     * @param event The event name.
+     * @return {@code true} if the event is recorded only in the {@link CallEventJournal}.
+     */
+    public static boolean isJournalOnlyEvent(String event) {
+        return JOURNAL_ONLY_EVENTS.contains(event);
+    }
+
+    /**
+     * Records a call event.  Journal-only events are recorded in the call's compact
+     * {@link CallEventJournal}; all other events go to the Telecom event log.
+     *
+     * @param call The call.
+     * @param event The event name.
+     * @param data The event data, or {@code null}.
+     */
+    public static void addCallEvent(Call call, String event, Object data) {
+        CallEventJournal journal = call == null ? null : call.getEventJournal();
+        if (journal != null && isJournalOnlyEvent(event)) {
+            journal.record(event, data);
+        } else {
+            android.telecom.Log.addEvent(call, event, data);
+        }
+    }
+
+    /**
+     * Records a journal-only call event with primitive arguments, which are only rendered to a
+     * string when the journal is dumped.
+     *
+     * @param call The call.
+     * @param event The event name; must be one of {@link #JOURNAL_ONLY_EVENTS}.
+     * @param arg0 The first argument.
+     * @param arg1 The second argument.
+     */
+    public static void addCallEvent(Call call, String event, long arg0, long arg1) {
+        CallEventJournal journal = call == null ? null : call.getEventJournal();
+        if (journal != null) {
+            journal.record(event, arg0, arg1);
+        }
+    }
+
     private static void eventRecordAdded(EventManager.EventRecord eventRecord) {
         // Only Calls will be added as event records in this case
         EventManager.Loggable recordEntry = eventRecord.getRecordEntry();
@@ -35,10 +35,23 @@ public class LoggedHandlerExecutor implements Executor {
 
     @Override
     public void execute(java.lang.Runnable command) {
-        mHandler.post(new Runnable(mSessionName, mLock) {
+        // The lock is taken here rather than by the Runnable so that waiting for it is profiled.
+        mHandler.post(new Runnable(mSessionName, null /*lock*/) {
             @Override
             public void loggedRun() {
-                command.run();
+                if (mLock == null) {
+                    command.run();
+                    return;
+                }
+                try {
+                    LockContentionProfiler.beginAcquire(mLock, mSessionName);
+                    synchronized (mLock) {
+                        LockContentionProfiler.onAcquired();
+                        command.run();
+                    }
+                } finally {
+                    LockContentionProfiler.onReleased();
+                }
             }
         }.prepare());
     }
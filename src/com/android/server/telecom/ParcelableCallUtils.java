@@ -30,6 +30,8 @@ import android.telecom.TelecomManager;
 import android.telephony.ims.ImsCallProfile;
 import android.text.TextUtils;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -220,7 +222,7 @@ public class ParcelableCallUtils {
         if (isForSystemInCallService) {
             extras = call.getExtras();
         } else {
-            extras = sanitizeExtras(call.getExtras());
+            extras = call.getNonSystemExtras();
         }
 
         return new ParcelableCall.ParcelableCallBuilder()
@@ -294,7 +296,7 @@ public class ParcelableCallUtils {
         }
         Bundle callExtras;
         if (areRestrictedExtrasIncluded) {
-            callExtras = sanitizeRestrictedCallExtras(call.getExtras());
+            callExtras = call.getRestrictedScreeningExtras();
         } else {
             callExtras = new Bundle();
         }
@@ -339,7 +341,7 @@ public class ParcelableCallUtils {
      * @param oldExtras Extras bundle to sanitize.
      * @return The sanitized extras bundle.
      */
-    private static Bundle sanitizeExtras(Bundle oldExtras) {
+    static Bundle sanitizeExtras(Bundle oldExtras) {
         if (oldExtras == null) {
             return new Bundle();
         }
@@ -365,7 +367,7 @@ public class ParcelableCallUtils {
      * @param oldExtras Extras bundle to sanitize.
      * @return The sanitized extras bundle.
      */
-    private static Bundle sanitizeRestrictedCallExtras(Bundle oldExtras) {
+    static Bundle sanitizeRestrictedCallExtras(Bundle oldExtras) {
         if (oldExtras == null) {
             return new Bundle();
         }
@@ -515,16 +517,16 @@ public class ParcelableCallUtils {
         android.telecom.Call.Details.CAPABILITY_REMOTE_PARTY_SUPPORTS_RTT
     };
 
+    private static final BitmaskTranslator CAPABILITY_TRANSLATOR =
+            new BitmaskTranslator(CONNECTION_TO_CALL_CAPABILITY);
+
     private static int convertConnectionToCallCapabilities(int connectionCapabilities) {
-        int callCapabilities = 0;
-        for (int i = 0; i < CONNECTION_TO_CALL_CAPABILITY.length; i += 2) {
-            if ((CONNECTION_TO_CALL_CAPABILITY[i] & connectionCapabilities) ==
-                    CONNECTION_TO_CALL_CAPABILITY[i]) {
+        return CAPABILITY_TRANSLATOR.translate(connectionCapabilities);
+    }
 
-                callCapabilities |= CONNECTION_TO_CALL_CAPABILITY[i + 1];
-            }
-        }
-        return callCapabilities;
+    @VisibleForTesting
+    public static BitmaskTranslator getCapabilityTranslator() {
+        return CAPABILITY_TRANSLATOR;
     }
 
     private static final int[] CONNECTION_TO_CALL_PROPERTIES = new int[] {
@@ -565,16 +567,16 @@ public class ParcelableCallUtils {
         android.telecom.Call.Details.PROPERTY_CROSS_SIM
     };
 
+    private static final BitmaskTranslator PROPERTY_TRANSLATOR =
+            new BitmaskTranslator(CONNECTION_TO_CALL_PROPERTIES);
+
     private static int convertConnectionToCallProperties(int connectionProperties) {
-        int callProperties = 0;
-        for (int i = 0; i < CONNECTION_TO_CALL_PROPERTIES.length; i += 2) {
-            if ((CONNECTION_TO_CALL_PROPERTIES[i] & connectionProperties) ==
-                    CONNECTION_TO_CALL_PROPERTIES[i]) {
+        return PROPERTY_TRANSLATOR.translate(connectionProperties);
+    }
 
-                callProperties |= CONNECTION_TO_CALL_PROPERTIES[i + 1];
-            }
-        }
-        return callProperties;
+    @VisibleForTesting
+    public static BitmaskTranslator getPropertyTranslator() {
+        return PROPERTY_TRANSLATOR;
     }
 
     /**
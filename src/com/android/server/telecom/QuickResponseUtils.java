@@ -17,6 +17,7 @@
 package com.android.server.telecom;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
@@ -32,6 +33,10 @@ public class QuickResponseUtils {
 
     // SharedPreferences file name for our persistent settings.
     public static final String SHARED_PREFERENCES_NAME = "respond_via_sms_prefs";
+    // Sent within Telecom when the quick responses are changed from the settings, which run in
+    // a different process from the one which caches them.
+    public static final String ACTION_QUICK_RESPONSES_CHANGED =
+            "com.android.server.telecom.QUICK_RESPONSES_CHANGED";
     private static final String PACKAGE_NAME_TELEPHONY = "com.android.phone";
 
     // Preference keys for the 4 "canned responses"; see RespondViaSmsManager$Settings.
@@ -44,6 +49,17 @@ public class QuickResponseUtils {
     public static final String KEY_CANNED_RESPONSE_PREF_3 = "canned_response_pref_3";
     public static final String KEY_CANNED_RESPONSE_PREF_4 = "canned_response_pref_4";
 
+    /**
+     * Tells Telecom that the quick responses have changed, so that it reads them again.  Called by
+     * the settings after the responses are saved.
+     *
+     * @param context The current context.
+     */
+    public static void notifyQuickResponsesChanged(Context context) {
+        context.sendBroadcast(new Intent(ACTION_QUICK_RESPONSES_CHANGED)
+                .setPackage(context.getPackageName()));
+    }
+
     /**
      * As of L, QuickResponses were moved from Telephony to Telecom. Because of
      * this, we need to make sure that we migrate any old QuickResponses to our
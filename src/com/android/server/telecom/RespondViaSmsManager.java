@@ -37,9 +37,13 @@ import android.text.SpannableString;
 import android.text.TextUtils;
 import android.widget.Toast;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import java.text.Bidi;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Helper class to manage the "Respond via Message" feature for incoming calls.
@@ -75,68 +79,200 @@ public class RespondViaSmsManager extends CallsManagerListenerBase {
 
     private final CallsManager mCallsManager;
     private final TelecomSystem.SyncRoot mLock;
+    private final Context mContext;
+    private final Executor mAsyncTaskExecutor;
+
+    // Guards the cache of canned responses below.
+    private final Object mCacheLock = new Object();
+    // The canned responses, or null if they have not been loaded or have changed since.
+    private List<String> mCannedResponses;
+    // Incremented whenever the canned responses change, so that a load which started before the
+    // change does not cache what it read.
+    private int mCacheGeneration;
+    private boolean mIsLoadScheduled;
+    private boolean mAreListenersRegistered;
+    private final List<Response<Void, List<String>>> mPendingResponses = new ArrayList<>();
+    // Held so that the listener is not garbage collected; SharedPreferences only keeps a weak
+    // reference to it.
+    private SharedPreferences mPrefs;
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            (prefs, key) -> {
+                Log.d(RespondViaSmsManager.this, "Canned responses changed: %s", key);
+                invalidateCannedResponses();
+            };
+
+    // Receives locale changes, which change the default responses, and changes made to the
+    // responses from the settings, which run in another process.
+    private final BroadcastReceiver mCannedResponsesChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(RespondViaSmsManager.this, "Canned responses changed: %s", intent.getAction());
+            invalidateCannedResponses();
+        }
+    };
 
-    public RespondViaSmsManager(CallsManager callsManager, TelecomSystem.SyncRoot lock) {
+    public RespondViaSmsManager(CallsManager callsManager, TelecomSystem.SyncRoot lock,
+            Context context, Executor asyncTaskExecutor) {
         mCallsManager = callsManager;
         mLock = lock;
+        mContext = context;
+        mAsyncTaskExecutor = asyncTaskExecutor;
     }
 
     /**
-     * Read the (customizable) canned responses from SharedPreferences,
-     * or from defaults if the user has never actually brought up
-     * the Settings UI.
+     * Gets the (customizable) canned responses, which are read from SharedPreferences, or from
+     * defaults if the user has never actually brought up the Settings UI.
      *
-     * The interface of this method is asynchronous since it does disk I/O.
+     * The responses are cached once read, and read again in the background when they change, so
+     * this does no disk I/O unless they have never been read.  In that case the reply is made
+     * once they have been read in the background.
      *
-     * @param response An object to receive an async reply, which will be called from
-     *                 the main thread.
-     * @param context The context.
+     * @param response An object to receive the reply, which is made with the Telecom lock held.
+     */
+    public void loadCannedTextMessages(final Response<Void, List<String>> response) {
+        List<String> cannedResponses;
+        synchronized (mCacheLock) {
+            cannedResponses = mCannedResponses;
+            if (cannedResponses == null) {
+                mPendingResponses.add(response);
+                scheduleLoadLocked();
+            }
+        }
+        if (cannedResponses != null) {
+            Log.d(this, "loadCannedTextMessages: using cached responses");
+            synchronized (mLock) {
+                response.onResult(null, cannedResponses);
+            }
+        }
+    }
+
+    /**
+     * Starts reading the canned responses in the background if they are not cached, so that
+     * they are ready by the time a ringing call needs them.
      */
-    public void loadCannedTextMessages(final Response<Void, List<String>> response,
-            final Context context) {
-        new Thread() {
-            @Override
-            public void run() {
-                Log.d(RespondViaSmsManager.this, "loadCannedResponses() starting");
-
-                // This function guarantees that QuickResponses will be in our
-                // SharedPreferences with the proper values considering there may be
-                // old QuickResponses in Telephony pre L.
-                QuickResponseUtils.maybeMigrateLegacyQuickResponses(context);
-
-                final SharedPreferences prefs = context.getSharedPreferences(
-                        QuickResponseUtils.SHARED_PREFERENCES_NAME,
-                        Context.MODE_PRIVATE | Context.MODE_MULTI_PROCESS);
-                final Resources res = context.getResources();
-
-                final ArrayList<String> textMessages = new ArrayList<>(
-                        QuickResponseUtils.NUM_CANNED_RESPONSES);
-
-                // Where the user has changed a quick response back to the same text as the
-                // original text, clear the shared pref.  This ensures we always load the resource
-                // in the current active language.
-                QuickResponseUtils.maybeResetQuickResponses(context, prefs);
-
-                // Note the default values here must agree with the corresponding
-                // android:defaultValue attributes in respond_via_sms_settings.xml.
-                textMessages.add(0, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1,
-                        res.getString(R.string.respond_via_sms_canned_response_1)));
-                textMessages.add(1, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_2,
-                        res.getString(R.string.respond_via_sms_canned_response_2)));
-                textMessages.add(2, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_3,
-                        res.getString(R.string.respond_via_sms_canned_response_3)));
-                textMessages.add(3, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_4,
-                        res.getString(R.string.respond_via_sms_canned_response_4)));
-
-                Log.d(RespondViaSmsManager.this,
-                        "loadCannedResponses() completed, found responses: %s",
-                        textMessages.toString());
-
-                synchronized (mLock) {
-                    response.onResult(null, textMessages);
+    public void prewarmCannedResponses() {
+        synchronized (mCacheLock) {
+            if (mCannedResponses == null) {
+                scheduleLoadLocked();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public void invalidateCannedResponses() {
+        synchronized (mCacheLock) {
+            mCacheGeneration++;
+            mCannedResponses = null;
+            // Read them again now, rather than when a call next rings.
+            scheduleLoadLocked();
+        }
+    }
+
+    private void scheduleLoadLocked() {
+        if (!mIsLoadScheduled) {
+            mIsLoadScheduled = true;
+            mAsyncTaskExecutor.execute(this::loadCannedResponses);
+        }
+    }
+
+    private void loadCannedResponses() {
+        int generation;
+        synchronized (mCacheLock) {
+            mIsLoadScheduled = false;
+            generation = mCacheGeneration;
+        }
+        Log.d(this, "loadCannedResponses() starting");
+        List<String> cannedResponses = null;
+        try {
+            maybeRegisterListeners();
+            cannedResponses = Collections.unmodifiableList(readCannedResponses());
+            Log.d(this, "loadCannedResponses() completed, found responses: %s",
+                    cannedResponses.toString());
+        } catch (RuntimeException e) {
+            // For instance, if storage is not yet unlocked; the next ringing call tries again.
+            Log.w(this, "loadCannedResponses() failed: %s", e);
+        }
+
+        List<Response<Void, List<String>>> pendingResponses;
+        synchronized (mCacheLock) {
+            if (cannedResponses != null && generation == mCacheGeneration) {
+                mCannedResponses = cannedResponses;
+            }
+            pendingResponses = new ArrayList<>(mPendingResponses);
+            mPendingResponses.clear();
+        }
+        synchronized (mLock) {
+            for (Response<Void, List<String>> response : pendingResponses) {
+                if (cannedResponses != null) {
+                    response.onResult(null, cannedResponses);
+                } else {
+                    response.onError(null, 0, "Failed to load canned responses");
                 }
             }
-        }.start();
+        }
+    }
+
+    private void maybeRegisterListeners() {
+        synchronized (mCacheLock) {
+            if (mAreListenersRegistered) {
+                return;
+            }
+            mAreListenersRegistered = true;
+        }
+        // Changes made in this process are seen through the listener; the settings run in
+        // another process, so they also announce their changes.
+        mPrefs = mContext.getSharedPreferences(QuickResponseUtils.SHARED_PREFERENCES_NAME,
+                Context.MODE_PRIVATE);
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+        IntentFilter filter = new IntentFilter(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(QuickResponseUtils.ACTION_QUICK_RESPONSES_CHANGED);
+        mContext.registerReceiver(mCannedResponsesChangedReceiver, filter,
+                Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    private List<String> readCannedResponses() {
+        // This function guarantees that QuickResponses will be in our
+        // SharedPreferences with the proper values considering there may be
+        // old QuickResponses in Telephony pre L.
+        QuickResponseUtils.maybeMigrateLegacyQuickResponses(mContext);
+
+        // Other processes write the responses too, so reload them if the file changed.
+        final SharedPreferences prefs = mContext.getSharedPreferences(
+                QuickResponseUtils.SHARED_PREFERENCES_NAME,
+                Context.MODE_PRIVATE | Context.MODE_MULTI_PROCESS);
+        final Resources res = mContext.getResources();
+
+        final ArrayList<String> textMessages = new ArrayList<>(
+                QuickResponseUtils.NUM_CANNED_RESPONSES);
+
+        // Where the user has changed a quick response back to the same text as the
+        // original text, clear the shared pref.  This ensures we always load the resource
+        // in the current active language.
+        QuickResponseUtils.maybeResetQuickResponses(mContext, prefs);
+
+        // Note the default values here must agree with the corresponding
+        // android:defaultValue attributes in respond_via_sms_settings.xml.
+        textMessages.add(0, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1,
+                res.getString(R.string.respond_via_sms_canned_response_1)));
+        textMessages.add(1, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_2,
+                res.getString(R.string.respond_via_sms_canned_response_2)));
+        textMessages.add(2, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_3,
+                res.getString(R.string.respond_via_sms_canned_response_3)));
+        textMessages.add(3, prefs.getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_4,
+                res.getString(R.string.respond_via_sms_canned_response_4)));
+        return textMessages;
+    }
+
+    /**
+     * Override of {@link CallsManagerListenerBase} to start reading the canned responses as soon
+     * as an incoming call starts, well before it rings.
+     */
+    @Override
+    public void onStartCreateConnection(Call call) {
+        if (call.isIncoming()) {
+            prewarmCannedResponses();
+        }
     }
 
     @Override
@@ -120,6 +120,9 @@ public class RespondViaSmsSettings extends PreferenceActivity
         // If the user just reset the quick response to its original text, clear the pref.
         QuickResponseUtils.maybeResetQuickResponses(this, mPrefs);
 
+        // This runs in a different process from Telecom, so let it know to read them again.
+        QuickResponseUtils.notifyQuickResponsesChanged(this);
+
         return true;  // means it's OK to update the state of the Preference with the new value
     }
 
@@ -66,6 +66,12 @@ public interface RoleManagerAdapter {
      */
     void setTestDefaultCallScreeningApp(String packageName);
 
+    /**
+     * Observe changes to the package name of the app which fills the
+     * {@link android.app.role.RoleManager} call screening role.
+     */
+    void observeCallScreeningApp(Executor executor, IntConsumer observer);
+
     /**
      * Returns the package name of the app which fills the {@link android.app.role.RoleManager}
      * {@link android.app.role.RoleManager#ROLE_DIALER} role.
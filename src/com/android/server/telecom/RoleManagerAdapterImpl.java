@@ -93,6 +93,15 @@ public class RoleManagerAdapterImpl implements RoleManagerAdapter {
                 }, UserHandle.ALL);
     }
 
+    @Override
+    public void observeCallScreeningApp(Executor executor, IntConsumer observer) {
+        mRoleManager.addOnRoleHoldersChangedListenerAsUser(executor, (roleName, user) -> {
+                    if (ROLE_CALL_SCREENING.equals(roleName)) {
+                        observer.accept(user.getIdentifier());
+                    }
+                }, UserHandle.ALL);
+    }
+
     @Override
     public void setTestDefaultDialer(String packageName) {
         mOverrideDefaultDialerApp = packageName;
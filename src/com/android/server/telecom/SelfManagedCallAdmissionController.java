@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.provider.DeviceConfig;
+import android.telecom.PhoneAccountHandle;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.stats.CallFailureCause;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the number of self-managed calls per {@link PhoneAccountHandle} so that incoming
+ * self-managed and transactional calls can be admitted without scanning every call known to
+ * {@link CallsManager}.
+ * <p>
+ * The counters are maintained from {@link CallsManagerListener} callbacks and mirror the criteria
+ * used by {@link CallsManager#getNumCallsWithState(boolean, Call, PhoneAccountHandle, int...)}:
+ * only top level, non-external self-managed calls are counted.  Admission latency for incoming
+ * self-managed calls is recorded and reported as percentiles in {@link #dump}.
+ * <p>
+ * All methods are expected to be called while holding the Telecom lock.
+ */
+public class SelfManagedCallAdmissionController extends CallsManagerListenerBase {
+    /**
+     * DeviceConfig flag which enables admitting incoming self-managed calls using the counters
+     * maintained by this class rather than by scanning all calls.
+     */
+    private static final String ENABLE_SELF_MANAGED_ADMISSION_FAST_PATH =
+            "enable_self_managed_admission_fast_path";
+    private static final int MAX_LATENCY_SAMPLES = 256;
+
+    private static class AccountCounts {
+        int mCalls;
+        int mRingingCalls;
+    }
+
+    // The account and ringing state each tracked call is currently counted under.
+    private static class CountedState {
+        final PhoneAccountHandle mHandle;
+        final boolean mIsRinging;
+
+        CountedState(PhoneAccountHandle handle, boolean isRinging) {
+            mHandle = handle;
+            mIsRinging = isRinging;
+        }
+    }
+
+    private final int mMaxRingingCalls;
+    private final int mMaxCalls;
+    private final Map<PhoneAccountHandle, AccountCounts> mAccountCounts = new HashMap<>();
+    private final Map<Call, CountedState> mCountedCalls = new HashMap<>();
+    private final long[] mLatencySamplesNanos = new long[MAX_LATENCY_SAMPLES];
+    private int mNextLatencySample;
+    private int mNumLatencySamples;
+    // Overrides the DeviceConfig flag when non-null.
+    private Boolean mIsFastPathEnabled;
+
+    public SelfManagedCallAdmissionController(int maxRingingCalls, int maxCalls) {
+        mMaxRingingCalls = maxRingingCalls;
+        mMaxCalls = maxCalls;
+    }
+
+    @VisibleForTesting
+    public void setFastPathEnabled(boolean isEnabled) {
+        mIsFastPathEnabled = isEnabled;
+    }
+
+    /**
+     * @return {@code true} if incoming self-managed calls should be admitted using
+     * {@link #checkIncomingCallPermitted(Call, PhoneAccountHandle)}.
+     */
+    public boolean isFastPathEnabled() {
+        if (mIsFastPathEnabled != null) {
+            return mIsFastPathEnabled;
+        }
+        return DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_TELEPHONY,
+                ENABLE_SELF_MANAGED_ADMISSION_FAST_PATH, false);
+    }
+
+    @Override
+    public void onCallAdded(Call call) {
+        updateCall(call, true /* isTracked */);
+    }
+
+    @Override
+    public void onCallRemoved(Call call) {
+        updateCall(call, false /* isTracked */);
+    }
+
+    @Override
+    public void onCallStateChanged(Call call, int oldState, int newState) {
+        updateCall(call, true /* isTracked */);
+    }
+
+    @Override
+    public void onIsConferencedChanged(Call call) {
+        updateCall(call, true /* isTracked */);
+    }
+
+    @Override
+    public void onExternalCallChanged(Call call, boolean isExternalCall) {
+        updateCall(call, true /* isTracked */);
+    }
+
+    /**
+     * Determines whether an incoming self-managed call may be added for the given account.
+     *
+     * @param excludeCall Where {@code non-null}, this call is excluded from the counts.
+     * @param phoneAccountHandle The self-managed account of the incoming call.
+     * @return {@link CallFailureCause#NONE} if the call is permitted, otherwise the reason why
+     * it is not.
+     */
+    public CallFailureCause checkIncomingCallPermitted(Call excludeCall,
+            PhoneAccountHandle phoneAccountHandle) {
+        if (getNumRingingCalls(excludeCall, phoneAccountHandle) >= mMaxRingingCalls) {
+            return CallFailureCause.MAX_RINGING_CALLS;
+        }
+        if (getNumCalls(excludeCall, phoneAccountHandle) >= mMaxCalls) {
+            return CallFailureCause.MAX_SELF_MANAGED_CALLS;
+        }
+        return CallFailureCause.NONE;
+    }
+
+    /**
+     * @return the number of counted self-managed calls for the account, excluding
+     * {@code excludeCall}.
+     */
+    @VisibleForTesting
+    public int getNumCalls(Call excludeCall, PhoneAccountHandle phoneAccountHandle) {
+        AccountCounts counts = mAccountCounts.get(phoneAccountHandle);
+        int numCalls = counts == null ? 0 : counts.mCalls;
+        CountedState excluded = excludeCall == null ? null : mCountedCalls.get(excludeCall);
+        if (excluded != null && Objects.equals(excluded.mHandle, phoneAccountHandle)) {
+            numCalls--;
+        }
+        return numCalls;
+    }
+
+    /**
+     * @return the number of counted ringing or answered self-managed calls for the account,
+     * excluding {@code excludeCall}.
+     */
+    @VisibleForTesting
+    public int getNumRingingCalls(Call excludeCall, PhoneAccountHandle phoneAccountHandle) {
+        AccountCounts counts = mAccountCounts.get(phoneAccountHandle);
+        int numCalls = counts == null ? 0 : counts.mRingingCalls;
+        CountedState excluded = excludeCall == null ? null : mCountedCalls.get(excludeCall);
+        if (excluded != null && excluded.mIsRinging
+                && Objects.equals(excluded.mHandle, phoneAccountHandle)) {
+            numCalls--;
+        }
+        return numCalls;
+    }
+
+    /**
+     * Records the time taken to admit an incoming self-managed call.
+     *
+     * @param latencyNanos The admission latency, in nanoseconds.
+     */
+    public void recordAdmissionLatency(long latencyNanos) {
+        mLatencySamplesNanos[mNextLatencySample] = latencyNanos;
+        mNextLatencySample = (mNextLatencySample + 1) % MAX_LATENCY_SAMPLES;
+        if (mNumLatencySamples < MAX_LATENCY_SAMPLES) {
+            mNumLatencySamples++;
+        }
+    }
+
+    /**
+     * Determines a percentile of the recently recorded admission latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return the latency in nanoseconds, or {@code -1} if no latencies have been recorded.
+     */
+    @VisibleForTesting
+    public long getAdmissionLatencyPercentileNanos(int percentile) {
+        if (mNumLatencySamples == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mLatencySamplesNanos, mNumLatencySamples);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * mNumLatencySamples) - 1;
+        return sorted[Math.max(0, Math.min(index, mNumLatencySamples - 1))];
+    }
+
+    private void updateCall(Call call, boolean isTracked) {
+        CountedState previous = mCountedCalls.remove(call);
+        if (previous != null) {
+            AccountCounts counts = mAccountCounts.get(previous.mHandle);
+            counts.mCalls--;
+            if (previous.mIsRinging) {
+                counts.mRingingCalls--;
+            }
+            if (counts.mCalls == 0) {
+                mAccountCounts.remove(previous.mHandle);
+            }
+        }
+        if (!isTracked || !call.isSelfManaged() || call.getParentCall() != null
+                || call.isExternalCall()) {
+            return;
+        }
+        int state = call.getState();
+        CountedState current = new CountedState(call.getTargetPhoneAccount(),
+                state == CallState.RINGING || state == CallState.ANSWERED);
+        mCountedCalls.put(call, current);
+        AccountCounts counts = mAccountCounts.computeIfAbsent(current.mHandle,
+                k -> new AccountCounts());
+        counts.mCalls++;
+        if (current.mIsRinging) {
+            counts.mRingingCalls++;
+        }
+    }
+
+    /**
+     * Dumps the state of the controller.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.print("fastPathEnabled: ");
+        pw.println(isFastPathEnabled());
+        pw.println("Self-managed calls per account:");
+        pw.increaseIndent();
+        for (Map.Entry<PhoneAccountHandle, AccountCounts> entry : mAccountCounts.entrySet()) {
+            pw.print(entry.getKey());
+            pw.print(": calls=");
+            pw.print(entry.getValue().mCalls);
+            pw.print(", ringing=");
+            pw.println(entry.getValue().mRingingCalls);
+        }
+        pw.decreaseIndent();
+        pw.print("Admission latency (us, n=");
+        pw.print(mNumLatencySamples);
+        pw.print("): p50=");
+        pw.print(toMicros(getAdmissionLatencyPercentileNanos(50)));
+        pw.print(", p90=");
+        pw.print(toMicros(getAdmissionLatencyPercentileNanos(90)));
+        pw.print(", p99=");
+        pw.println(toMicros(getAdmissionLatencyPercentileNanos(99)));
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos < 0 ? nanos : TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom;
+
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.DeviceConfig;
+import android.telecom.Log;
+import android.util.SparseIntArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Arrays;
+
+/**
+ * Runs the oneway binder calls Telecom receives from apps on a single Telecom thread, so that
+ * binder threads are not held waiting for the Telecom lock.
+ * <p>
+ * The binder thread checks the interface token and decodes the call as usual; the adapter method
+ * it reaches then posts a command holding the decoded arguments and returns.  Methods which check
+ * the identity of their caller run on the binder thread as before, since the identity is not
+ * carried to the Telecom thread.  Commands run in the order they were posted, which keeps the
+ * updates for each call in order, and any log session travels with the decoded arguments.
+ * <p>
+ * Each caller may only have {@link #MAX_QUEUED_PER_CALLER} commands waiting; further commands
+ * from it are dropped until it catches up, so that an app flooding Telecom with oneway calls can
+ * neither grow the queue without limit nor delay the other apps for long.
+ */
+public class TelecomEventLoop {
+    /**
+     * DeviceConfig flag which enables handling oneway calls from apps on the event loop.
+     */
+    private static final String ENABLE_BINDER_EVENT_LOOP = "enable_binder_event_loop";
+    /** The number of commands each calling UID may have waiting on the event loop. */
+    @VisibleForTesting
+    public static final int MAX_QUEUED_PER_CALLER = 256;
+    private static final int MAX_SAMPLES = 256;
+
+    private static TelecomEventLoop sInstance;
+
+    private final Object mLock = new Object();
+    private final boolean mIsEnabled;
+    private Handler mHandler;
+    // Guarded by mLock.
+    private final SparseIntArray mQueueDepthByUid = new SparseIntArray();
+    private final SparseIntArray mNumDroppedByUid = new SparseIntArray();
+    private int mQueueDepth;
+    private int mMaxQueueDepth;
+    private long mNumEnqueued;
+    private long mNumHandled;
+    private long mNumDropped;
+    private final long[] mBinderNanos = new long[MAX_SAMPLES];
+    private final long[] mQueueNanos = new long[MAX_SAMPLES];
+    private final long[] mExecutionNanos = new long[MAX_SAMPLES];
+
+    /**
+     * @return the event loop shared by the binder interfaces Telecom exposes to apps.
+     */
+    public static synchronized TelecomEventLoop getInstance() {
+        if (sInstance == null) {
+            sInstance = new TelecomEventLoop(DeviceConfig.getBoolean(
+                    DeviceConfig.NAMESPACE_TELEPHONY, ENABLE_BINDER_EVENT_LOOP, false), null);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param isEnabled Whether commands are posted; read once so that commands are never run out
+     *                  of order by the mode changing.
+     * @param looper The looper to run commands on, or {@code null} to start a thread for them
+     *               when the first one is posted.
+     */
+    @VisibleForTesting
+    public TelecomEventLoop(boolean isEnabled, Looper looper) {
+        mIsEnabled = isEnabled;
+        if (looper != null) {
+            mHandler = new Handler(looper);
+        }
+    }
+
+    public boolean isEnabled() {
+        return mIsEnabled;
+    }
+
+    /**
+     * Posts a command decoded from a oneway binder call to run on the event loop, if the event
+     * loop is enabled and the call came from another process.  Must be called on the binder
+     * thread which received the call, and the command must not depend on the identity of the
+     * caller.
+     *
+     * @param command Runs the call with its decoded arguments.
+     * @return {@code true} if the command was posted, or dropped because its caller has too many
+     * waiting, {@code false} if the caller should run it now.
+     */
+    public boolean maybePost(Runnable command) {
+        return maybePost(Binder.getCallingUid(), Binder.getCallingPid(), command);
+    }
+
+    @VisibleForTesting
+    public boolean maybePost(int callingUid, int callingPid, Runnable command) {
+        // Calls from within Telecom, including the commands themselves, run straight away.
+        if (!mIsEnabled || callingPid == Process.myPid()) {
+            return false;
+        }
+        final long enqueuedNanos = System.nanoTime();
+        Handler eventHandler;
+        synchronized (mLock) {
+            int callerQueueDepth = mQueueDepthByUid.get(callingUid);
+            if (callerQueueDepth >= MAX_QUEUED_PER_CALLER) {
+                int numDropped = mNumDroppedByUid.get(callingUid) + 1;
+                mNumDroppedByUid.put(callingUid, numDropped);
+                mNumDropped++;
+                if (numDropped % MAX_QUEUED_PER_CALLER == 1) {
+                    Log.w(this, "maybePost: uid %d has %d commands waiting; dropped %d",
+                            callingUid, callerQueueDepth, numDropped);
+                }
+                return true;
+            }
+            if (mHandler == null) {
+                HandlerThread thread = new HandlerThread("TelecomEventLoop");
+                thread.start();
+                mHandler = new Handler(thread.getLooper());
+            }
+            eventHandler = mHandler;
+            mQueueDepthByUid.put(callingUid, callerQueueDepth + 1);
+            mQueueDepth++;
+            mMaxQueueDepth = Math.max(mMaxQueueDepth, mQueueDepth);
+        }
+        eventHandler.post(() -> run(callingUid, command, enqueuedNanos));
+        synchronized (mLock) {
+            mBinderNanos[(int) (mNumEnqueued++ % MAX_SAMPLES)] =
+                    System.nanoTime() - enqueuedNanos;
+        }
+        return true;
+    }
+
+    private void run(int callingUid, Runnable command, long enqueuedNanos) {
+        long startNanos = System.nanoTime();
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            // The caller does not wait for a oneway call, so there is nobody to report the
+            // failure to.
+            Log.e(this, e, "run: command from uid %d failed", callingUid);
+        } finally {
+            synchronized (mLock) {
+                int callerQueueDepth = mQueueDepthByUid.get(callingUid) - 1;
+                if (callerQueueDepth > 0) {
+                    mQueueDepthByUid.put(callingUid, callerQueueDepth);
+                } else {
+                    mQueueDepthByUid.delete(callingUid);
+                }
+                mQueueDepth--;
+                int sample = (int) (mNumHandled++ % MAX_SAMPLES);
+                mQueueNanos[sample] = startNanos - enqueuedNanos;
+                mExecutionNanos[sample] = System.nanoTime() - startNanos;
+            }
+        }
+    }
+
+    /**
+     * @return the number of commands dropped because their caller had too many waiting.
+     */
+    @VisibleForTesting
+    public long getNumDropped() {
+        synchronized (mLock) {
+            return mNumDropped;
+        }
+    }
+
+    /**
+     * @return the given percentile of the time binder threads spent enqueueing transactions.
+     */
+    @VisibleForTesting
+    public long getBinderNanosPercentile(int percentile) {
+        synchronized (mLock) {
+            return getPercentile(mBinderNanos, mNumEnqueued, percentile);
+        }
+    }
+
+    private static long getPercentile(long[] samples, long numSamples, int percentile) {
+        int count = (int) Math.min(numSamples, MAX_SAMPLES);
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    /**
+     * Dumps how long commands occupied binder threads, waited in the queue and took to run, and
+     * which callers had commands dropped.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("Event loop (enabled=");
+            pw.print(mIsEnabled);
+            pw.print("): enqueued=");
+            pw.print(mNumEnqueued);
+            pw.print(", queued=");
+            pw.print(mQueueDepth);
+            pw.print(", maxQueued=");
+            pw.print(mMaxQueueDepth);
+            pw.print(", dropped=");
+            pw.println(mNumDropped);
+            if (mNumEnqueued == 0) {
+                return;
+            }
+            pw.increaseIndent();
+            for (int i = 0; i < mNumDroppedByUid.size(); i++) {
+                pw.print("uid ");
+                pw.print(mNumDroppedByUid.keyAt(i));
+                pw.print(": dropped=");
+                pw.println(mNumDroppedByUid.valueAt(i));
+            }
+            dumpPercentiles(pw, "binder", mBinderNanos, mNumEnqueued);
+            dumpPercentiles(pw, "queue", mQueueNanos, mNumHandled);
+            dumpPercentiles(pw, "execution", mExecutionNanos, mNumHandled);
+            pw.decreaseIndent();
+        }
+    }
+
+    private static void dumpPercentiles(IndentingPrintWriter pw, String name, long[] samples,
+            long numSamples) {
+        pw.print(name);
+        pw.print(": p50=");
+        pw.print(getPercentile(samples, numSamples, 50) / 1000);
+        pw.print("us, p99=");
+        pw.print(getPercentile(samples, numSamples, 99) / 1000);
+        pw.println("us");
+    }
+}
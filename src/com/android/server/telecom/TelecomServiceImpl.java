@@ -55,6 +55,7 @@ import android.os.Bundle;
 import android.os.OutcomeReceiver;
 import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.BlockedNumberContract;
 import android.provider.Settings;
@@ -90,9 +91,11 @@ import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 // TODO: Needed for move to system service: import com.android.internal.R;
 
@@ -133,6 +136,27 @@ public class TelecomServiceImpl {
 
     private static final String TAG = "TelecomServiceImpl";
     private static final String TIME_LINE_ARG = "timeline";
+    // Selects the sections of the dump to write, e.g. "--section=calls,analytics".
+    private static final String DUMP_SECTION_ARG_PREFIX = "--section=";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_CALLS = "calls";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_ACCOUNTS = "accounts";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_ANALYTICS = "analytics";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_EMERGENCY = "emergency";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_EVENTS = "events";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_JOURNAL = "journal";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_LOCKS = "locks";
+    @VisibleForTesting
+    public static final String DUMP_SECTION_EVENT_LOOP = "eventloop";
+    private static final List<String> DUMP_SECTIONS = List.of(DUMP_SECTION_CALLS,
+            DUMP_SECTION_ACCOUNTS, DUMP_SECTION_ANALYTICS, DUMP_SECTION_EMERGENCY,
+            DUMP_SECTION_EVENTS, DUMP_SECTION_JOURNAL, DUMP_SECTION_LOCKS, DUMP_SECTION_EVENT_LOOP);
     private static final int DEFAULT_VIDEO_STATE = -1;
     private static final String PERMISSION_HANDLE_CALL_INTENT =
             "android.permission.HANDLE_CALL_INTENT";
@@ -279,7 +303,9 @@ public class TelecomServiceImpl {
                 String callingPackage, String callingFeatureId) {
             try {
                 Log.startSession("TSI.gDOPA", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.gDOPA");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     PhoneAccountHandle phoneAccountHandle = null;
                     final UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -302,6 +328,7 @@ public class TelecomServiceImpl {
                     return null;
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -331,7 +358,9 @@ public class TelecomServiceImpl {
         public void setUserSelectedOutgoingPhoneAccount(PhoneAccountHandle accountHandle) {
             try {
                 Log.startSession("TSI.sUSOPA");
+                LockContentionProfiler.beginAcquire(mLock, "TSI.sUSOPA");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforceModifyPermission();
                     UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -348,6 +377,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -722,7 +752,9 @@ public class TelecomServiceImpl {
         public void registerPhoneAccount(PhoneAccount account, String callingPackage) {
             try {
                 Log.startSession("TSI.rPA", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.rPA");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     try {
                         enforcePhoneAccountModificationForPackage(
                                 account.getAccountHandle().getComponentName().getPackageName());
@@ -797,6 +829,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -850,7 +883,9 @@ public class TelecomServiceImpl {
                 String callingPackage, String callingFeatureId) {
             try {
                 Log.startSession("TSI.iVMN", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.iVMN");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     if (!canReadPhoneState(callingPackage, callingFeatureId, "isVoiceMailNumber")) {
                         return false;
                     }
@@ -871,6 +906,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -956,7 +992,9 @@ public class TelecomServiceImpl {
         public void silenceRinger(String callingPackage) {
             try {
                 Log.startSession("TSI.sR", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.sR");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
                     UserHandle callingUserHandle = Binder.getCallingUserHandle();
                     boolean crossUserAccess = hasInAppCrossUserPermission();
@@ -972,6 +1010,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1249,7 +1288,9 @@ public class TelecomServiceImpl {
         public boolean endCall(String callingPackage) {
             try {
                 Log.startSession("TSI.eC", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.eC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     if (!enforceAnswerCallPermission(callingPackage, Binder.getCallingUid())) {
                         throw new SecurityException("requires ANSWER_PHONE_CALLS permission");
                     }
@@ -1262,6 +1303,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1273,7 +1315,9 @@ public class TelecomServiceImpl {
         public void acceptRingingCall(String packageName) {
             try {
                 Log.startSession("TSI.aRC", Log.getPackageAbbreviation(packageName));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.aRC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     if (!enforceAnswerCallPermission(packageName, Binder.getCallingUid())) return;
 
                     long token = Binder.clearCallingIdentity();
@@ -1284,6 +1328,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1295,7 +1340,9 @@ public class TelecomServiceImpl {
         public void acceptRingingCallWithVideoState(String packageName, int videoState) {
             try {
                 Log.startSession("TSI.aRCWVS", Log.getPackageAbbreviation(packageName));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.aRCWVS");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     if (!enforceAnswerCallPermission(packageName, Binder.getCallingUid())) return;
 
                     long token = Binder.clearCallingIdentity();
@@ -1306,6 +1353,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1344,7 +1392,9 @@ public class TelecomServiceImpl {
         public void cancelMissedCallsNotification(String callingPackage) {
             try {
                 Log.startSession("TSI.cMCN", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.cMCN");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforcePermissionOrPrivilegedDialer(MODIFY_PHONE_STATE, callingPackage);
                     UserHandle userHandle = Binder.getCallingUserHandle();
                     long token = Binder.clearCallingIdentity();
@@ -1355,6 +1405,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1509,7 +1560,9 @@ public class TelecomServiceImpl {
                 String callingPackage) {
             try {
                 Log.startSession("TSI.aNIC", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.aNIC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "Adding new incoming call with phoneAccountHandle %s",
                             phoneAccountHandle);
                     if (phoneAccountHandle != null &&
@@ -1560,6 +1613,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1572,7 +1626,9 @@ public class TelecomServiceImpl {
                 String callingPackage) {
             try {
                 Log.startSession("TSI.aNIC", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.aNIC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "Adding new incoming conference with phoneAccountHandle %s",
                             phoneAccountHandle);
                     if (phoneAccountHandle != null &&
@@ -1609,6 +1665,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1622,7 +1679,9 @@ public class TelecomServiceImpl {
                 String callingPackage) {
             try {
                 Log.startSession("TSI.aHO", Log.getPackageAbbreviation(callingPackage));
+                LockContentionProfiler.beginAcquire(mLock, "TSI.aHO");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     Log.i(this, "acceptHandover; srcAddr=%s, videoState=%s, dest=%s",
                             Log.pii(srcAddr), VideoProfile.videoStateToString(videoState),
                             destAcct);
@@ -1660,6 +1719,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -1952,26 +2012,76 @@ public class TelecomServiceImpl {
                     (args != null && args.length > 0 && TIME_LINE_ARG.equalsIgnoreCase(args[0]));
 
             final IndentingPrintWriter pw = new IndentingPrintWriter(writer, "  ");
+            Set<String> sections = parseDumpSections(args);
+            if (sections == null) {
+                pw.println("Unknown dump section; sections are: "
+                        + String.join(",", DUMP_SECTIONS));
+                return;
+            }
             if (mCallsManager != null) {
-                pw.println("CallsManager: ");
-                pw.increaseIndent();
-                mCallsManager.dump(pw, args);
-                pw.decreaseIndent();
-
-                pw.println("PhoneAccountRegistrar: ");
-                pw.increaseIndent();
-                mPhoneAccountRegistrar.dump(pw);
-                pw.decreaseIndent();
-
-                pw.println("Analytics:");
-                pw.increaseIndent();
-                Analytics.dump(pw);
-                pw.decreaseIndent();
-            }
-            if (isTimeLineView) {
-                Log.dumpEventsTimeline(pw);
-            } else {
-                Log.dumpEvents(pw);
+                if (sections.contains(DUMP_SECTION_CALLS)) {
+                    // Only copy the state of the calls under the lock; everything is formatted
+                    // and written after it is released.
+                    CallsManager.DumpSnapshot snapshot;
+                    LockContentionProfiler.beginAcquire(mLock, "TSI.dump");
+                    try {
+                        synchronized (mLock) {
+                            LockContentionProfiler.onAcquired();
+                            long acquiredNanos = SystemClock.elapsedRealtimeNanos();
+                            snapshot = mCallsManager.snapshotForDump();
+                            mLastDumpLockHoldNanos =
+                                    SystemClock.elapsedRealtimeNanos() - acquiredNanos;
+                        }
+                    } finally {
+                        LockContentionProfiler.onReleased();
+                    }
+                    pw.println("CallsManager: ");
+                    pw.increaseIndent();
+                    mCallsManager.dump(pw, args, snapshot);
+                    pw.decreaseIndent();
+                    pw.println("Telecom lock held for dump: "
+                            + TimeUnit.NANOSECONDS.toMicros(mLastDumpLockHoldNanos) + "us");
+                }
+
+                if (sections.contains(DUMP_SECTION_ACCOUNTS)) {
+                    pw.println("PhoneAccountRegistrar: ");
+                    pw.increaseIndent();
+                    mPhoneAccountRegistrar.dump(pw);
+                    pw.decreaseIndent();
+                }
+
+                if (sections.contains(DUMP_SECTION_ANALYTICS)) {
+                    pw.println("Analytics:");
+                    pw.increaseIndent();
+                    Analytics.dump(pw);
+                    pw.decreaseIndent();
+                }
+
+                EmergencyCallDiagnosticLogger emergencyCallDiagnosticLogger =
+                        mCallsManager.getEmergencyCallDiagnosticLogger();
+                if (sections.contains(DUMP_SECTION_EMERGENCY)
+                        && emergencyCallDiagnosticLogger != null) {
+                    pw.println("EmergencyCallDiagnosticLogger:");
+                    pw.increaseIndent();
+                    emergencyCallDiagnosticLogger.dump(pw, args);
+                    pw.decreaseIndent();
+                }
+            }
+            if (sections.contains(DUMP_SECTION_EVENTS)) {
+                if (isTimeLineView) {
+                    Log.dumpEventsTimeline(pw);
+                } else {
+                    Log.dumpEvents(pw);
+                }
+            }
+            if (sections.contains(DUMP_SECTION_JOURNAL)) {
+                CallEventJournal.dumpRecent(pw);
+            }
+            if (sections.contains(DUMP_SECTION_LOCKS)) {
+                LockContentionProfiler.dump(pw);
+            }
+            if (sections.contains(DUMP_SECTION_EVENT_LOOP)) {
+                TelecomEventLoop.getInstance().dump(pw);
             }
         }
 
@@ -2130,7 +2240,9 @@ public class TelecomServiceImpl {
         public void handleCallIntent(Intent intent, String callingPackage) {
             try {
                 Log.startSession("TSI.hCI");
+                LockContentionProfiler.beginAcquire(mLock, "TSI.hCI");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     mContext.enforceCallingOrSelfPermission(PERMISSION_HANDLE_CALL_INTENT,
                             "handleCallIntent is for internal use only.");
 
@@ -2144,6 +2256,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -2163,7 +2276,9 @@ public class TelecomServiceImpl {
         public void cleanupStuckCalls() {
             Log.startSession("TCI.cSC");
             try {
+                LockContentionProfiler.beginAcquire(mLock, "TCI.cSC");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforceShellOnly(Binder.getCallingUid(), "cleanupStuckCalls");
                     Binder.withCleanCallingIdentity(() -> {
                         Set<UserHandle> userHandles = new HashSet<>();
@@ -2181,6 +2296,7 @@ public class TelecomServiceImpl {
                     });
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -2197,7 +2313,9 @@ public class TelecomServiceImpl {
         public int cleanupOrphanPhoneAccounts() {
             Log.startSession("TCI.cOPA");
             try {
+                LockContentionProfiler.beginAcquire(mLock, "TCI.cOPA");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforceShellOnly(Binder.getCallingUid(), "cleanupOrphanPhoneAccounts");
                     long token = Binder.clearCallingIdentity();
                     try {
@@ -2207,6 +2325,7 @@ public class TelecomServiceImpl {
                     }
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -2220,7 +2339,9 @@ public class TelecomServiceImpl {
         public void resetCarMode() {
             Log.startSession("TCI.rCM");
             try {
+                LockContentionProfiler.beginAcquire(mLock, "TCI.rCM");
                 synchronized (mLock) {
+                    LockContentionProfiler.onAcquired();
                     enforceShellOnly(Binder.getCallingUid(), "resetCarMode");
                     Binder.withCleanCallingIdentity(() -> {
                         UiModeManager uiModeManager =
@@ -2229,6 +2350,7 @@ public class TelecomServiceImpl {
                     });
                 }
             } finally {
+                LockContentionProfiler.onReleased();
                 Log.endSession();
             }
         }
@@ -2268,6 +2390,7 @@ public class TelecomServiceImpl {
                     try {
                         mCallsManager.getRoleManagerAdapter().setTestDefaultCallScreeningApp(
                                 packageName);
+                        mCallsManager.getCallFilterConfigCache().invalidateRoles();
                     } finally {
                         Binder.restoreCallingIdentity(token);
                     }
@@ -2345,6 +2468,7 @@ public class TelecomServiceImpl {
                     long token = Binder.clearCallingIdentity();
                     try {
                         mCallsManager.getRoleManagerAdapter().setTestDefaultDialer(packageName);
+                        mCallsManager.getCallFilterConfigCache().invalidateRoles();
                     } finally {
                         Binder.restoreCallingIdentity(token);
                     }
@@ -2477,8 +2601,44 @@ public class TelecomServiceImpl {
     private final SettingsSecureAdapter mSettingsSecureAdapter;
     private final TelecomSystem.SyncRoot mLock;
     private TransactionManager mTransactionManager;
+    // How long the last dump held the Telecom lock.
+    private volatile long mLastDumpLockHoldNanos;
     private final TransactionalServiceRepository mTransactionalServiceRepository;
 
+    /**
+     * Gets the sections of the dump selected by a {@code --section=} argument, such as
+     * {@code --section=calls,analytics}.
+     *
+     * @param args The arguments of the dump.
+     * @return the selected sections, all of the sections if none are selected, or {@code null}
+     * if an unknown section is selected.
+     */
+    @VisibleForTesting
+    public static Set<String> parseDumpSections(String[] args) {
+        if (args != null) {
+            for (String arg : args) {
+                if (arg != null && arg.startsWith(DUMP_SECTION_ARG_PREFIX)) {
+                    Set<String> sections = new HashSet<>();
+                    for (String section : arg.substring(DUMP_SECTION_ARG_PREFIX.length())
+                            .split(",")) {
+                        section = section.trim().toLowerCase(Locale.ROOT);
+                        if (!DUMP_SECTIONS.contains(section)) {
+                            return null;
+                        }
+                        sections.add(section);
+                    }
+                    return sections;
+                }
+            }
+        }
+        return new HashSet<>(DUMP_SECTIONS);
+    }
+
+    @VisibleForTesting
+    public long getLastDumpLockHoldNanos() {
+        return mLastDumpLockHoldNanos;
+    }
+
     public TelecomServiceImpl(
             Context context,
             CallsManager callsManager,
@@ -28,6 +28,8 @@ import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.BugreportManager;
 import android.os.DropBoxManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.telecom.Log;
@@ -226,6 +228,7 @@ public class TelecomSystem {
             BlockedNumbersAdapter blockedNumbersAdapter) {
         mContext = context.getApplicationContext();
         LogUtils.initLogging(mContext);
+        LockContentionProfiler.loadEnabledFromDeviceConfig();
         android.telecom.Log.setLock(mLock);
         AnomalyReporter.initialize(mContext);
         DefaultDialerManagerAdapter defaultDialerAdapter =
@@ -423,8 +426,13 @@ public class TelecomSystem {
                 }
             });
             mCallsManager.setIncomingCallNotifier(mIncomingCallNotifier);
+            // Changes to the block list are handled on the main thread; the list itself is
+            // loaded in the background.
+            mCallsManager.getBlockedNumberIndex().startObserving(
+                    new Handler(Looper.getMainLooper()), asyncTaskExecutor);
 
-            mRespondViaSmsManager = new RespondViaSmsManager(mCallsManager, mLock);
+            mRespondViaSmsManager = new RespondViaSmsManager(mCallsManager, mLock, mContext,
+                    asyncTaskExecutor);
             mCallsManager.setRespondViaSmsManager(mRespondViaSmsManager);
 
             mContext.registerReceiverAsUser(mUserSwitchedReceiver, UserHandle.ALL,
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import java.util.function.Consumer;
+
+/**
+ * A hashed timer wheel used to track a large number of deadlines which are frequently
+ * rescheduled or cancelled before they expire.
+ * <p>
+ * Each tracked item owns a single {@link Node} which is allocated once and then moved between
+ * tick buckets; scheduling, rescheduling and cancelling a node are O(1) and do not allocate.
+ * Expired nodes are collected in batches by {@link #expire(long, Consumer)}.
+ * <p>
+ * This class is not thread safe; callers are expected to provide their own synchronization.
+ *
+ * @param <T> The type of item tracked by the wheel.
+ */
+public class TimerWheel<T> {
+    /**
+     * A deadline entry in the wheel.  Nodes are reused across reschedules of the same item.
+     *
+     * @param <T> The type of item tracked by the wheel.
+     */
+    public static final class Node<T> {
+        private final T mItem;
+        private long mDeadlineMillis;
+        private int mBucket = -1;
+        private Node<T> mPrev;
+        private Node<T> mNext;
+
+        public Node(T item) {
+            mItem = item;
+        }
+
+        public T getItem() {
+            return mItem;
+        }
+
+        /**
+         * @return the deadline of this node, in the time base used by the wheel.
+         */
+        public long getDeadlineMillis() {
+            return mDeadlineMillis;
+        }
+
+        /**
+         * @return {@code true} if the node is currently scheduled in a wheel.
+         */
+        public boolean isScheduled() {
+            return mBucket >= 0;
+        }
+    }
+
+    private final long mTickMillis;
+    private final int mMask;
+    private final Node<T>[] mBuckets;
+    private int mSize;
+    // The earliest tick which may still hold an expired node; the next sweep starts here.
+    private long mSweepCursorTick = Long.MAX_VALUE;
+
+    /**
+     * Creates a new timer wheel.
+     *
+     * @param tickMillis The duration of a single tick bucket, in milliseconds.
+     * @param numBuckets The number of buckets in the wheel; rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int numBuckets) {
+        if (tickMillis <= 0 || numBuckets <= 0) {
+            throw new IllegalArgumentException("tickMillis and numBuckets must be positive");
+        }
+        int size = Integer.highestOneBit(numBuckets);
+        if (size < numBuckets) {
+            size <<= 1;
+        }
+        mTickMillis = tickMillis;
+        mMask = size - 1;
+        mBuckets = (Node<T>[]) new Node[size];
+    }
+
+    /**
+     * Schedules or reschedules a node to expire at the given deadline.
+     *
+     * @param node The node to schedule.
+     * @param deadlineMillis The deadline, in the same time base passed to
+     *                       {@link #expire(long, Consumer)}.
+     */
+    public void schedule(Node<T> node, long deadlineMillis) {
+        if (node.isScheduled()) {
+            unlink(node);
+        }
+        node.mDeadlineMillis = deadlineMillis;
+        int bucket = (int) (tickOf(deadlineMillis) & mMask);
+        node.mBucket = bucket;
+        node.mPrev = null;
+        node.mNext = mBuckets[bucket];
+        if (node.mNext != null) {
+            node.mNext.mPrev = node;
+        }
+        mBuckets[bucket] = node;
+        mSize++;
+        mSweepCursorTick = Math.min(mSweepCursorTick, tickOf(deadlineMillis));
+    }
+
+    /**
+     * Removes a node from the wheel if it is scheduled.
+     *
+     * @param node The node to cancel.
+     * @return {@code true} if the node was scheduled, {@code false} otherwise.
+     */
+    public boolean cancel(Node<T> node) {
+        if (!node.isScheduled()) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Removes all nodes whose deadline is strictly before {@code nowMillis} and passes their items
+     * to {@code onExpired}.  All buckets between the previous sweep and {@code nowMillis} are
+     * visited in a single pass.
+     *
+     * @param nowMillis The current time.
+     * @param onExpired Consumer invoked for each expired item.
+     * @return The number of items which expired.
+     */
+    public int expire(long nowMillis, Consumer<T> onExpired) {
+        if (mSize == 0) {
+            mSweepCursorTick = Long.MAX_VALUE;
+            return 0;
+        }
+        long nowTick = tickOf(nowMillis);
+        // A full revolution visits every bucket; no need to go around more than once.
+        long ticksToSweep = Math.min(nowTick - mSweepCursorTick, mMask) + 1;
+        int expired = 0;
+        for (long i = 0; i < ticksToSweep && mSize > 0; i++) {
+            int bucket = (int) ((nowTick - i) & mMask);
+            Node<T> node = mBuckets[bucket];
+            while (node != null) {
+                Node<T> next = node.mNext;
+                if (node.mDeadlineMillis < nowMillis) {
+                    unlink(node);
+                    expired++;
+                    onExpired.accept(node.mItem);
+                }
+                node = next;
+            }
+        }
+        // Nodes in the current tick which have not yet expired are revisited by the next sweep.
+        mSweepCursorTick = mSize == 0 ? Long.MAX_VALUE : nowTick;
+        return expired;
+    }
+
+    /**
+     * Determines the earliest deadline of all scheduled nodes.  Buckets are scanned in tick order
+     * starting at the sweep cursor, so this typically terminates at the first non-empty bucket.
+     *
+     * @return The earliest deadline, or {@code -1} if the wheel is empty.
+     */
+    public long getEarliestDeadlineMillis() {
+        if (mSize == 0) {
+            return -1;
+        }
+        long earliest = Long.MAX_VALUE;
+        // No scheduled node has a tick before the sweep cursor.
+        for (int i = 0; i <= mMask; i++) {
+            long tick = mSweepCursorTick + i;
+            Node<T> node = mBuckets[(int) (tick & mMask)];
+            while (node != null) {
+                // Skip nodes which belong to a later revolution of the wheel.
+                if (tickOf(node.mDeadlineMillis) <= tick) {
+                    earliest = Math.min(earliest, node.mDeadlineMillis);
+                }
+                node = node.mNext;
+            }
+            if (earliest != Long.MAX_VALUE) {
+                return earliest;
+            }
+        }
+        // All deadlines are more than one revolution away; fall back to a full scan.
+        for (Node<T> bucket : mBuckets) {
+            for (Node<T> node = bucket; node != null; node = node.mNext) {
+                earliest = Math.min(earliest, node.mDeadlineMillis);
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * @return the number of scheduled nodes.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Invokes {@code consumer} for the item of every scheduled node.
+     *
+     * @param consumer The consumer.
+     */
+    public void forEach(Consumer<T> consumer) {
+        for (Node<T> bucket : mBuckets) {
+            for (Node<T> node = bucket; node != null; node = node.mNext) {
+                consumer.accept(node.mItem);
+            }
+        }
+    }
+
+    private long tickOf(long timeMillis) {
+        return Math.max(0, timeMillis) / mTickMillis;
+    }
+
+    private void unlink(Node<T> node) {
+        if (node.mPrev != null) {
+            node.mPrev.mNext = node.mNext;
+        } else {
+            mBuckets[node.mBucket] = node.mNext;
+        }
+        if (node.mNext != null) {
+            node.mNext.mPrev = node.mPrev;
+        }
+        node.mPrev = null;
+        node.mNext = null;
+        node.mBucket = -1;
+        mSize--;
+    }
+}
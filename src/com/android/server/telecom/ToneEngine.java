@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.media.ToneGenerator;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.telecom.Log;
+import android.util.SparseArray;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Plays the tones Telecom generates locally on one shared audio worker thread.
+ * <p>
+ * In-call tones such as ringback, busy and call waiting are {@link Tone}s which are queued by
+ * priority; only one plays at a time.  A tone of the same or a higher priority than the one
+ * playing preempts it, and a tone of a lower priority waits until the tones ahead of it are done.
+ * Tones never block the worker: a tone starts playing and then tells the engine when it is done.
+ * <p>
+ * {@link ToneGenerator}s are expensive to create, so the engine keeps one idle generator for each
+ * stream type and volume, and releases them once they have been idle for a while.
+ * <p>
+ * The worker thread is shared by every engine in the process; DTMF and call recording tones,
+ * which are not queued, run their own handlers on {@link #getLooper()}.
+ */
+public class ToneEngine {
+    /** Notification tones, such as a video upgrade request. */
+    public static final int PRIORITY_LOW = 0;
+    /** Call progress tones, such as ringback and call waiting. */
+    public static final int PRIORITY_NORMAL = 1;
+    /** Tones which tell the user a call has ended or failed. */
+    public static final int PRIORITY_HIGH = 2;
+
+    private static final String WORKER_THREAD_NAME = "telecom-tones";
+    private static final long DEFAULT_IDLE_GENERATOR_TIMEOUT_MILLIS = 10000L;
+
+    /**
+     * A tone played by the engine.  All of its methods are called on the worker thread.
+     */
+    public abstract static class Tone {
+        // The order the tone was played in, which orders tones of the same priority.
+        private long mSequence;
+
+        /**
+         * @return the priority of the tone, one of the {@code PRIORITY_*} constants.
+         */
+        protected abstract int getPriority();
+
+        /**
+         * @return {@code true} if the tone plays until it is stopped, such as ringback.  Such a
+         * tone is not ended when it is preempted; it goes back in the queue and starts again once
+         * the tones ahead of it are done.
+         */
+        protected boolean isContinuous() {
+            return false;
+        }
+
+        /**
+         * Starts playing the tone.  When it is done, the tone calls
+         * {@link ToneEngine#onToneFinished}.
+         *
+         * @return {@code true} if the tone is playing, {@code false} if it could not be played.
+         */
+        protected abstract boolean onStart();
+
+        /**
+         * Stops playing the tone and releases what it used, whether it finished, was stopped or
+         * was preempted.  Only called if {@link #onStart()} returned {@code true}, and may be
+         * followed by another {@link #onStart()} if the tone is continuous.
+         */
+        protected abstract void onStop();
+
+        /**
+         * Called once the tone is done, whether or not it was played.
+         */
+        protected abstract void onFinished();
+    }
+
+    private static final Comparator<Tone> TONE_ORDER = (first, second) ->
+            first.getPriority() != second.getPriority()
+                    ? Integer.compare(second.getPriority(), first.getPriority())
+                    : Long.compare(first.mSequence, second.mSequence);
+
+    private static HandlerThread sWorkerThread;
+
+    private final Handler mHandler;
+    private final long mIdleGeneratorTimeoutMillis;
+    // Only used on the worker thread.
+    private final PriorityQueue<Tone> mPendingTones = new PriorityQueue<>(TONE_ORDER);
+    private Tone mPlayingTone;
+    private long mNextSequence;
+    // The idle generators, keyed by stream type and volume; guarded by itself.
+    private final SparseArray<ToneGenerator> mIdleToneGenerators = new SparseArray<>();
+    private final Runnable mReleaseIdleToneGenerators = this::releaseIdleToneGenerators;
+
+    public ToneEngine() {
+        this(getWorkerLooper(), DEFAULT_IDLE_GENERATOR_TIMEOUT_MILLIS);
+    }
+
+    @VisibleForTesting
+    public ToneEngine(Looper looper, long idleGeneratorTimeoutMillis) {
+        mHandler = new Handler(looper);
+        mIdleGeneratorTimeoutMillis = idleGeneratorTimeoutMillis;
+    }
+
+    /**
+     * @return the looper of the audio worker thread shared by all tone players, which is started
+     * the first time it is needed and never stopped.
+     */
+    public static synchronized Looper getWorkerLooper() {
+        if (sWorkerThread == null) {
+            sWorkerThread = new HandlerThread(WORKER_THREAD_NAME);
+            sWorkerThread.start();
+        }
+        return sWorkerThread.getLooper();
+    }
+
+    public Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
+    @VisibleForTesting
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Queues a tone to be played, preempting the tone playing if it has the same or a lower
+     * priority.
+     */
+    public void play(Tone tone) {
+        mHandler.post(() -> enqueue(tone));
+    }
+
+    /**
+     * Stops a tone, or removes it from the queue if it has not started.
+     */
+    public void stop(Tone tone) {
+        mHandler.post(() -> finish(tone));
+    }
+
+    /**
+     * Tells the engine that a tone it is playing has finished.  May be called from any thread.
+     */
+    public void onToneFinished(Tone tone) {
+        mHandler.post(() -> finish(tone));
+    }
+
+    /**
+     * Finishes a tone after a delay unless it has finished before then.
+     */
+    public void finishToneAfter(Tone tone, long delayMillis) {
+        mHandler.postDelayed(() -> finish(tone), tone, delayMillis);
+    }
+
+    private void enqueue(Tone tone) {
+        tone.mSequence = mNextSequence++;
+        if (mPlayingTone != null) {
+            if (tone.getPriority() < mPlayingTone.getPriority()) {
+                mPendingTones.add(tone);
+                return;
+            }
+            Tone preempted = mPlayingTone;
+            Log.i(this, "enqueue: %s preempts %s", tone, preempted);
+            mPlayingTone = null;
+            if (preempted.isContinuous()) {
+                mHandler.removeCallbacksAndMessages(preempted);
+                preempted.onStop();
+                mPendingTones.add(preempted);
+            } else {
+                stopTone(preempted);
+            }
+        }
+        startTone(tone);
+        startNextTone();
+    }
+
+    private void finish(Tone tone) {
+        if (mPlayingTone == tone) {
+            mPlayingTone = null;
+            stopTone(tone);
+            startNextTone();
+        } else if (mPendingTones.remove(tone)) {
+            tone.onFinished();
+        }
+    }
+
+    private void stopTone(Tone tone) {
+        mHandler.removeCallbacksAndMessages(tone);
+        try {
+            tone.onStop();
+        } finally {
+            tone.onFinished();
+        }
+    }
+
+    private void startNextTone() {
+        while (mPlayingTone == null && !mPendingTones.isEmpty()) {
+            startTone(mPendingTones.poll());
+        }
+    }
+
+    private void startTone(Tone tone) {
+        mPlayingTone = tone;
+        boolean isPlaying = false;
+        try {
+            isPlaying = tone.onStart();
+        } catch (RuntimeException e) {
+            Log.e(this, e, "startTone: failed to start %s", tone);
+        }
+        if (!isPlaying) {
+            mPlayingTone = null;
+            mHandler.removeCallbacksAndMessages(tone);
+            tone.onFinished();
+        }
+    }
+
+    /**
+     * Gets a tone generator, reusing an idle one for the same stream type and volume if there is
+     * one.  Return it with {@link #releaseToneGenerator} when done.
+     *
+     * @throws RuntimeException if a new generator could not be created.
+     */
+    public ToneGenerator acquireToneGenerator(int streamType, int volume,
+            InCallTonePlayer.ToneGeneratorFactory factory) {
+        int key = getToneGeneratorKey(streamType, volume);
+        synchronized (mIdleToneGenerators) {
+            ToneGenerator toneGenerator = mIdleToneGenerators.get(key);
+            if (toneGenerator != null) {
+                mIdleToneGenerators.remove(key);
+                return toneGenerator;
+            }
+        }
+        return factory.get(streamType, volume);
+    }
+
+    /**
+     * Returns a tone generator from {@link #acquireToneGenerator}, stopping its tone.
+     */
+    public void releaseToneGenerator(int streamType, int volume, ToneGenerator toneGenerator) {
+        toneGenerator.stopTone();
+        int key = getToneGeneratorKey(streamType, volume);
+        synchronized (mIdleToneGenerators) {
+            if (mIdleToneGenerators.get(key) == null) {
+                mIdleToneGenerators.put(key, toneGenerator);
+                toneGenerator = null;
+            }
+        }
+        if (toneGenerator != null) {
+            // There is already an idle generator for this stream type and volume.
+            toneGenerator.release();
+        }
+        mHandler.removeCallbacks(mReleaseIdleToneGenerators);
+        mHandler.postDelayed(mReleaseIdleToneGenerators, mIdleGeneratorTimeoutMillis);
+    }
+
+    @VisibleForTesting
+    public int getIdleToneGeneratorCount() {
+        synchronized (mIdleToneGenerators) {
+            return mIdleToneGenerators.size();
+        }
+    }
+
+    private void releaseIdleToneGenerators() {
+        SparseArray<ToneGenerator> idleToneGenerators;
+        synchronized (mIdleToneGenerators) {
+            idleToneGenerators = mIdleToneGenerators.clone();
+            mIdleToneGenerators.clear();
+        }
+        Log.d(this, "releaseIdleToneGenerators: releasing %d", idleToneGenerators.size());
+        for (int i = 0; i < idleToneGenerators.size(); i++) {
+            idleToneGenerators.valueAt(i).release();
+        }
+    }
+
+    private static int getToneGeneratorKey(int streamType, int volume) {
+        return (streamType << 8) | (volume & 0xff);
+    }
+}
@@ -21,6 +21,7 @@ import android.app.AppOpsManager;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.RemoteException;
@@ -39,6 +40,8 @@ import com.android.internal.telecom.IVideoProvider;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Proxies video provider messages from {@link InCallService.VideoCall}
@@ -58,6 +61,13 @@ public class VideoProviderProxy extends Connection.VideoProvider {
         void onSetCamera(Call call, String cameraId);
     }
 
+    /**
+     * Default interval over which call data usage updates from the video provider are coalesced
+     * before being relayed to the {@link InCallService}s.
+     */
+    @VisibleForTesting
+    public static final long DATA_USAGE_RELAY_INTERVAL_MILLIS = 1000L;
+
     /**
      * Set of listeners on this VideoProviderProxy.
      *
@@ -94,6 +104,33 @@ public class VideoProviderProxy extends Connection.VideoProvider {
      */
     private CurrentUserProxy mCurrentUserProxy;
 
+    /**
+     * Handler used to relay coalesced call data usage updates; informational callbacks from the
+     * video provider are relayed without acquiring {@link #mLock}.
+     */
+    private final Handler mRelayHandler;
+
+    /**
+     * The most recent call data usage reported by the video provider which has not yet been
+     * relayed to the {@link InCallService}s.
+     */
+    private final AtomicLong mPendingDataUsage = new AtomicLong(Call.DATA_USAGE_NOT_SET);
+
+    /**
+     * {@code true} when a data usage relay is already scheduled on {@link #mRelayHandler}.
+     */
+    private final AtomicBoolean mIsDataUsageRelayScheduled = new AtomicBoolean(false);
+
+    private long mDataUsageRelayIntervalMillis = DATA_USAGE_RELAY_INTERVAL_MILLIS;
+
+    private final Runnable mRelayDataUsageRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsDataUsageRelayScheduled.set(false);
+            VideoProviderProxy.this.setCallDataUsage(mPendingDataUsage.get());
+        }
+    };
+
     private IBinder.DeathRecipient mDeathRecipient = new IBinder.DeathRecipient() {
         @Override
         public void binderDied() {
@@ -126,6 +163,7 @@ public class VideoProviderProxy extends Connection.VideoProvider {
         mConectionServiceVideoProvider.addVideoCallback(mVideoCallListenerBinder);
         mCall = call;
         mCurrentUserProxy = currentUserProxy;
+        mRelayHandler = new Handler(Looper.getMainLooper());
     }
 
     public void clearVideoCallback() {
@@ -133,6 +171,19 @@ public class VideoProviderProxy extends Connection.VideoProvider {
             mConectionServiceVideoProvider.removeVideoCallback(mVideoCallListenerBinder);
         } catch (RemoteException e) {
         }
+        mRelayHandler.removeCallbacks(mRelayDataUsageRunnable);
+        mIsDataUsageRelayScheduled.set(false);
+    }
+
+    /**
+     * Sets the interval over which call data usage updates are coalesced before being relayed to
+     * the {@link InCallService}s.  An interval of {@code 0} relays every update immediately.
+     *
+     * @param intervalMillis The coalescing interval, in milliseconds.
+     */
+    @VisibleForTesting
+    public void setDataUsageRelayIntervalMillis(long intervalMillis) {
+        mDataUsageRelayIntervalMillis = intervalMillis;
     }
 
     @VisibleForTesting
@@ -229,31 +280,32 @@ public class VideoProviderProxy extends Connection.VideoProvider {
          * Proxies a request from the {@link #mConectionServiceVideoProvider} to the
          * {@link InCallService} when a call session event occurs.
          *
+         * Call session events are purely informational for Telecom, so they are relayed without
+         * acquiring the Telecom lock.
+         *
          * @param event The call session event.
          */
         @Override
         public void handleCallSessionEvent(int event) {
-            synchronized (mLock) {
-                logFromVideoProvider("handleCallSessionEvent: " +
-                        Connection.VideoProvider.sessionEventToString(event));
-                VideoProviderProxy.this.handleCallSessionEvent(event);
-            }
+            logFromVideoProvider("handleCallSessionEvent: " +
+                    Connection.VideoProvider.sessionEventToString(event));
+            VideoProviderProxy.this.handleCallSessionEvent(event);
         }
 
         /**
          * Proxies a request from the {@link #mConectionServiceVideoProvider} to the
          * {@link InCallService} when the peer dimensions change.
          *
+         * Peer dimension changes can arrive several times a second, so they are relayed without
+         * acquiring the Telecom lock.
+         *
          * @param width The width of the peer's video.
          * @param height The height of the peer's video.
          */
         @Override
         public void changePeerDimensions(int width, int height) {
-            synchronized (mLock) {
-                logFromVideoProvider("changePeerDimensions: width=" + width + " height=" +
-                        height);
-                VideoProviderProxy.this.changePeerDimensions(width, height);
-            }
+            logFromVideoProvider("changePeerDimensions: width=" + width + " height=" + height);
+            VideoProviderProxy.this.changePeerDimensions(width, height);
         }
 
         /**
@@ -264,10 +316,8 @@ public class VideoProviderProxy extends Connection.VideoProvider {
          */
         @Override
         public void changeVideoQuality(int videoQuality) {
-            synchronized (mLock) {
-                logFromVideoProvider("changeVideoQuality: " + videoQuality);
-                VideoProviderProxy.this.changeVideoQuality(videoQuality);
-            }
+            logFromVideoProvider("changeVideoQuality: " + videoQuality);
+            VideoProviderProxy.this.changeVideoQuality(videoQuality);
         }
 
         /**
@@ -275,16 +325,27 @@ public class VideoProviderProxy extends Connection.VideoProvider {
          * {@link InCallService} when the call data usage changes.
          *
          * Also tracks the current call data usage on the {@link Call} for use when writing to the
-         * call log.
+         * call log.  The call's data usage is always updated immediately, however updates relayed
+         * to the {@link InCallService}s are coalesced so that at most one is sent per
+         * {@link #DATA_USAGE_RELAY_INTERVAL_MILLIS}; the most recent value is always the one
+         * relayed.  Neither path acquires the Telecom lock.
          *
          * @param dataUsage The data usage.
          */
         @Override
         public void changeCallDataUsage(long dataUsage) {
-            synchronized (mLock) {
+            if (Log.VERBOSE) {
                 logFromVideoProvider("changeCallDataUsage: " + dataUsage);
+            }
+            mCall.setCallDataUsage(dataUsage);
+            mPendingDataUsage.set(dataUsage);
+            if (mDataUsageRelayIntervalMillis <= 0) {
                 VideoProviderProxy.this.setCallDataUsage(dataUsage);
-                mCall.setCallDataUsage(dataUsage);
+                return;
+            }
+            if (mIsDataUsageRelayScheduled.compareAndSet(false, true)) {
+                mRelayHandler.postDelayed(mRelayDataUsageRunnable,
+                        mDataUsageRelayIntervalMillis);
             }
         }
 
@@ -296,10 +357,10 @@ public class VideoProviderProxy extends Connection.VideoProvider {
          */
         @Override
         public void changeCameraCapabilities(VideoProfile.CameraCapabilities cameraCapabilities) {
-            synchronized (mLock) {
+            if (Log.VERBOSE) {
                 logFromVideoProvider("changeCameraCapabilities: " + cameraCapabilities);
-                VideoProviderProxy.this.changeCameraCapabilities(cameraCapabilities);
             }
+            VideoProviderProxy.this.changeCameraCapabilities(cameraCapabilities);
         }
     }
 
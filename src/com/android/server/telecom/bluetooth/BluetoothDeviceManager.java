@@ -32,6 +32,7 @@ import android.telecom.Log;
 import android.util.LocalLog;
 
 import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.AudioDeviceRegistry;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -193,6 +194,7 @@ public class BluetoothDeviceManager {
     private BluetoothDevice mBluetoothHearingAidActiveDeviceCache;
     private BluetoothAdapter mBluetoothAdapter;
     private AudioManager mAudioManager;
+    private AudioDeviceRegistry mAudioDeviceRegistry;
     private Executor mExecutor;
 
     public BluetoothDeviceManager(Context context, BluetoothAdapter bluetoothAdapter) {
@@ -205,6 +207,7 @@ public class BluetoothDeviceManager {
             bluetoothAdapter.getProfileProxy(context, mBluetoothProfileServiceListener,
                     BluetoothProfile.LE_AUDIO);
             mAudioManager = context.getSystemService(AudioManager.class);
+            mAudioDeviceRegistry = new AudioDeviceRegistry(mAudioManager);
             mExecutor = context.getMainExecutor();
         }
     }
@@ -213,6 +216,13 @@ public class BluetoothDeviceManager {
         mBluetoothRouteManager = brm;
     }
 
+    /**
+     * @return the registry of audio devices, or {@code null} if there is no Bluetooth adapter.
+     */
+    public AudioDeviceRegistry getAudioDeviceRegistry() {
+        return mAudioDeviceRegistry;
+    }
+
     private List<BluetoothDevice> getLeAudioConnectedDevices() {
         synchronized (mLock) {
             // Let's get devices which are a group leaders
@@ -481,22 +491,8 @@ public class BluetoothDeviceManager {
             return false;
         }
 
-        AudioDeviceInfo bleHeadset = null;
-        List<AudioDeviceInfo> devices = mAudioManager.getAvailableCommunicationDevices();
-        if (devices.size() == 0) {
-            Log.w(this, " No communication devices available.");
-            return false;
-        }
-
-        for (AudioDeviceInfo device : devices) {
-            Log.i(this, " Available device type:  " + device.getType()
-                    + ":: address: " + device.getAddress());
-            if (device.getType() == AudioDeviceInfo.TYPE_BLE_HEADSET) {
-                bleHeadset = device;
-                break;
-            }
-        }
-
+        AudioDeviceInfo bleHeadset = mAudioDeviceRegistry.getCommunicationDevice(
+                AudioDeviceInfo.TYPE_BLE_HEADSET);
         if (bleHeadset == null) {
             Log.w(this, " No bleHeadset device available");
             return false;
@@ -531,21 +527,8 @@ public class BluetoothDeviceManager {
             return false;
         }
 
-        AudioDeviceInfo hearingAid = null;
-        List<AudioDeviceInfo> devices = mAudioManager.getAvailableCommunicationDevices();
-        if (devices.size() == 0) {
-            Log.w(this, " No communication devices available.");
-            return false;
-        }
-
-        for (AudioDeviceInfo device : devices) {
-            Log.i(this, " Available device type:  " + device.getType());
-            if (device.getType() == AudioDeviceInfo.TYPE_HEARING_AID) {
-                hearingAid = device;
-                break;
-            }
-        }
-
+        AudioDeviceInfo hearingAid = mAudioDeviceRegistry.getCommunicationDevice(
+                AudioDeviceInfo.TYPE_HEARING_AID);
         if (hearingAid == null) {
             Log.w(this, " No hearingAid device available");
             return false;
@@ -566,6 +549,23 @@ public class BluetoothDeviceManager {
         return result;
     }
 
+    /**
+     * @return the {@code DEVICE_TYPE_*} of the connected device at an address, or -1 if no device
+     * with that address is connected.
+     */
+    public int getDeviceTypeForAddress(String address) {
+        synchronized (mLock) {
+            if (mLeAudioDevicesByAddress.containsKey(address)) {
+                return DEVICE_TYPE_LE_AUDIO;
+            } else if (mHearingAidDevicesByAddress.containsKey(address)) {
+                return DEVICE_TYPE_HEARING_AID;
+            } else if (mHfpDevicesByAddress.containsKey(address)) {
+                return DEVICE_TYPE_HEADSET;
+            }
+            return -1;
+        }
+    }
+
     // Connect audio to the bluetooth device at address, checking to see whether it's
     // le audio, hearing aid or a HFP device, and using the proper BT API.
     public boolean connectAudio(String address, boolean switchingBtDevices) {
@@ -668,5 +668,11 @@ public class BluetoothDeviceManager {
 
     public void dump(IndentingPrintWriter pw) {
         mLocalLog.dump(pw);
+        if (mAudioDeviceRegistry != null) {
+            pw.println("AudioDeviceRegistry:");
+            pw.increaseIndent();
+            mAudioDeviceRegistry.dump(pw);
+            pw.decreaseIndent();
+        }
     }
 }
@@ -30,9 +30,10 @@ import android.util.SparseArray;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.os.SomeArgs;
-import com.android.internal.util.IState;
 import com.android.internal.util.State;
 import com.android.internal.util.StateMachine;
+import com.android.server.telecom.AudioDeviceRegistry;
+import com.android.server.telecom.AudioRouteSwitchTracer;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 
@@ -46,9 +47,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 public class BluetoothRouteManager extends StateMachine {
     private static final String LOG_TAG = BluetoothRouteManager.class.getSimpleName();
@@ -62,7 +60,6 @@ public class BluetoothRouteManager extends StateMachine {
          put(BT_AUDIO_IS_ON, "BT_AUDIO_IS_ON");
          put(BT_AUDIO_LOST, "BT_AUDIO_LOST");
          put(CONNECTION_TIMEOUT, "CONNECTION_TIMEOUT");
-         put(GET_CURRENT_STATE, "GET_CURRENT_STATE");
          put(RUN_RUNNABLE, "RUN_RUNNABLE");
     }};
 
@@ -70,9 +67,6 @@ public class BluetoothRouteManager extends StateMachine {
     public static final String AUDIO_CONNECTING_STATE_NAME_PREFIX = "Connecting";
     public static final String AUDIO_CONNECTED_STATE_NAME_PREFIX = "Connected";
 
-    // Timeout for querying the current state from the state machine handler.
-    private static final int GET_STATE_TIMEOUT = 1000;
-
     public interface BluetoothStateListener {
         void onBluetoothDeviceListChanged();
         void onBluetoothActiveDevicePresent();
@@ -112,15 +106,46 @@ public class BluetoothRouteManager extends StateMachine {
     // No args; only used internally
     public static final int CONNECTION_TIMEOUT = 300;
 
-    // Get the current state and send it through the BlockingQueue<IState> provided as the object
-    // arg.
-    public static final int GET_CURRENT_STATE = 400;
-
     // arg2: Runnable
     public static final int RUN_RUNNABLE = 9001;
 
     private static final int MAX_CONNECTION_RETRIES = 2;
 
+    /**
+     * An immutable view of the Bluetooth audio state.  A new snapshot is published on every
+     * state transition and active device change, so that it can be read from any thread without
+     * waiting on the state machine's handler.
+     */
+    public static final class AudioStateSnapshot {
+        public static final int AUDIO_OFF = 0;
+        public static final int AUDIO_CONNECTING = 1;
+        public static final int AUDIO_CONNECTED = 2;
+
+        /** One of {@link #AUDIO_OFF}, {@link #AUDIO_CONNECTING} or {@link #AUDIO_CONNECTED}. */
+        public final int audioState;
+        /** The device audio is connected or connecting to, or {@code null} if audio is off. */
+        public final String audioDeviceAddress;
+        /** The active device reported by the Bluetooth stack, or {@code null} if none. */
+        public final BluetoothDevice activeDevice;
+
+        AudioStateSnapshot(int audioState, String audioDeviceAddress,
+                BluetoothDevice activeDevice) {
+            this.audioState = audioState;
+            this.audioDeviceAddress = audioDeviceAddress;
+            this.activeDevice = activeDevice;
+        }
+
+        public boolean isAudioConnectedOrPending() {
+            return audioState != AUDIO_OFF;
+        }
+
+        @Override
+        public String toString() {
+            return "[state=" + audioState + ", audioDevice=" + audioDeviceAddress
+                    + ", activeDevice=" + activeDevice + "]";
+        }
+    }
+
     // States
     private final class AudioOffState extends State {
         @Override
@@ -130,6 +155,7 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            publishAudioState(AudioStateSnapshot.AUDIO_OFF, null);
             BluetoothDevice erroneouslyConnectedDevice = getBluetoothAudioConnectedDevice();
             if (erroneouslyConnectedDevice != null) {
                 Log.w(LOG_TAG, "Entering AudioOff state but device %s appears to be connected. " +
@@ -200,10 +226,6 @@ public class BluetoothRouteManager extends StateMachine {
                                 (String) args.arg2);
                         mListener.onUnexpectedBluetoothStateChange();
                         break;
-                    case GET_CURRENT_STATE:
-                        BlockingQueue<IState> sink = (BlockingQueue<IState>) args.arg3;
-                        sink.offer(this);
-                        break;
                 }
             } finally {
                 args.recycle();
@@ -226,6 +248,7 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            publishAudioState(AudioStateSnapshot.AUDIO_CONNECTING, mDeviceAddress);
             SomeArgs args = SomeArgs.obtain();
             args.arg1 = Log.createSubsession();
             sendMessageDelayed(CONNECTION_TIMEOUT, args,
@@ -327,10 +350,6 @@ public class BluetoothRouteManager extends StateMachine {
                             mListener.onUnexpectedBluetoothStateChange();
                         }
                         break;
-                    case GET_CURRENT_STATE:
-                        BlockingQueue<IState> sink = (BlockingQueue<IState>) args.arg3;
-                        sink.offer(this);
-                        break;
                 }
             } finally {
                 args.recycle();
@@ -353,6 +372,7 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            publishAudioState(AudioStateSnapshot.AUDIO_CONNECTED, mDeviceAddress);
             // Remove any of the retries that are still in the queue once any device becomes
             // connected.
             removeMessages(RETRY_BT_CONNECTION);
@@ -448,10 +468,6 @@ public class BluetoothRouteManager extends StateMachine {
                             mListener.onUnexpectedBluetoothStateChange();
                         }
                         break;
-                    case GET_CURRENT_STATE:
-                        BlockingQueue<IState> sink = (BlockingQueue<IState>) args.arg3;
-                        sink.offer(this);
-                        break;
                 }
             } finally {
                 args.recycle();
@@ -472,11 +488,16 @@ public class BluetoothRouteManager extends StateMachine {
 
     private BluetoothStateListener mListener;
     private BluetoothDeviceManager mDeviceManager;
+    private AudioRouteSwitchTracer mAudioRouteSwitchTracer;
     // Tracks the active devices in the BT stack (HFP or hearing aid or le audio).
     private BluetoothDevice mHfpActiveDeviceCache = null;
     private BluetoothDevice mHearingAidActiveDeviceCache = null;
     private BluetoothDevice mLeAudioActiveDeviceCache = null;
     private BluetoothDevice mMostRecentlyReportedActiveDevice = null;
+    private final Object mSnapshotLock = new Object();
+    // Written under mSnapshotLock, read without it.
+    private volatile AudioStateSnapshot mAudioStateSnapshot =
+            new AudioStateSnapshot(AudioStateSnapshot.AUDIO_OFF, null, null);
 
     public BluetoothRouteManager(Context context, TelecomSystem.SyncRoot lock,
             BluetoothDeviceManager deviceManager, Timeouts.Adapter timeoutsAdapter) {
@@ -525,30 +546,37 @@ public class BluetoothRouteManager extends StateMachine {
     }
 
     /**
-     * This method needs be synchronized with the local looper because getCurrentState() depends
-     * on the internal state of the state machine being consistent. Therefore, there may be a
-     * delay when calling this method.
-     * @return
+     * Returns whether Bluetooth audio is connected or a connection is pending.  This reads the
+     * most recently published state and never waits on the state machine's handler, so it does
+     * not reflect messages which are still queued.
+     * @return true if audio is connected or connecting, false otherwise.
      */
     public boolean isBluetoothAudioConnectedOrPending() {
-        SomeArgs args = SomeArgs.obtain();
-        args.arg1 = Log.createSubsession();
-        BlockingQueue<IState> stateQueue = new LinkedBlockingQueue<>();
-        // Use arg3 because arg2 is reserved for the device address
-        args.arg3 = stateQueue;
-        sendMessage(GET_CURRENT_STATE, args);
-
-        try {
-            IState currentState = stateQueue.poll(GET_STATE_TIMEOUT, TimeUnit.MILLISECONDS);
-            if (currentState == null) {
-                Log.w(LOG_TAG, "Failed to get a state from the state machine in time -- Handler " +
-                        "stuck?");
-                return false;
-            }
-            return currentState != mAudioOffState;
-        } catch (InterruptedException e) {
-            Log.w(LOG_TAG, "isBluetoothAudioConnectedOrPending -- interrupted getting state");
-            return false;
+        return mAudioStateSnapshot.isAudioConnectedOrPending();
+    }
+
+    /**
+     * @return the most recently published Bluetooth audio state.
+     */
+    public AudioStateSnapshot getAudioStateSnapshot() {
+        return mAudioStateSnapshot;
+    }
+
+    private void publishAudioState(int audioState, String address) {
+        synchronized (mSnapshotLock) {
+            mAudioStateSnapshot = new AudioStateSnapshot(audioState, address,
+                    mAudioStateSnapshot.activeDevice);
+        }
+    }
+
+    private void publishActiveDevice() {
+        BluetoothDevice activeDevice = mLeAudioActiveDeviceCache != null
+                ? mLeAudioActiveDeviceCache : mHearingAidActiveDeviceCache != null
+                ? mHearingAidActiveDeviceCache : mHfpActiveDeviceCache;
+        synchronized (mSnapshotLock) {
+            AudioStateSnapshot current = mAudioStateSnapshot;
+            mAudioStateSnapshot = new AudioStateSnapshot(current.audioState,
+                    current.audioDeviceAddress, activeDevice);
         }
     }
 
@@ -590,6 +618,22 @@ public class BluetoothRouteManager extends StateMachine {
         mListener = listener;
     }
 
+    /**
+     * @return the registry of audio devices shared with the route state machine, or
+     * {@code null} if there is none.
+     */
+    public AudioDeviceRegistry getAudioDeviceRegistry() {
+        return mDeviceManager.getAudioDeviceRegistry();
+    }
+
+    /**
+     * Sets the tracer which is told about each hop of an audio route switch through the
+     * Bluetooth stack.
+     */
+    public void setAudioRouteSwitchTracer(AudioRouteSwitchTracer tracer) {
+        mAudioRouteSwitchTracer = tracer;
+    }
+
     public void onDeviceAdded(String newDeviceAddress) {
         SomeArgs args = SomeArgs.obtain();
         args.arg1 = Log.createSubsession();
@@ -609,6 +653,9 @@ public class BluetoothRouteManager extends StateMachine {
     }
 
     public void onAudioOn(String address) {
+        if (mAudioRouteSwitchTracer != null) {
+            mAudioRouteSwitchTracer.recordHop("btAudioOn");
+        }
         Session session = Log.createSubsession();
         SomeArgs args = SomeArgs.obtain();
         args.arg1 = session;
@@ -644,6 +691,7 @@ public class BluetoothRouteManager extends StateMachine {
         }
 
         if (device != null) mMostRecentlyReportedActiveDevice = device;
+        publishActiveDevice();
 
         boolean isActiveDevicePresent = hasBtActiveDevice();
 
@@ -740,6 +788,10 @@ public class BluetoothRouteManager extends StateMachine {
             }
             return null;
         }
+        if (mAudioRouteSwitchTracer != null) {
+            mAudioRouteSwitchTracer.recordBluetoothHop("connectAudio",
+                    mDeviceManager.getDeviceTypeForAddress(actualAddress));
+        }
 
         return actualAddress;
     }
@@ -953,5 +1005,6 @@ public class BluetoothRouteManager extends StateMachine {
         } else if (deviceType == BluetoothDeviceManager.DEVICE_TYPE_HEADSET) {
             mHfpActiveDeviceCache = device;
         }
+        publishActiveDevice();
     }
 }
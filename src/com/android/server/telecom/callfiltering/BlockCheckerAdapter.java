@@ -24,7 +24,19 @@ import android.telecom.Log;
 public class BlockCheckerAdapter {
     private static final String TAG = BlockCheckerAdapter.class.getSimpleName();
 
-    public BlockCheckerAdapter() { }
+    private final BlockedNumberIndex mBlockedNumberIndex;
+
+    public BlockCheckerAdapter() {
+        this(null /* blockedNumberIndex */);
+    }
+
+    /**
+     * @param blockedNumberIndex Where {@code non-null}, an index consulted before querying the
+     *                           provider.
+     */
+    public BlockCheckerAdapter(BlockedNumberIndex blockedNumberIndex) {
+        mBlockedNumberIndex = blockedNumberIndex;
+    }
 
     /**
      * Returns the call blocking status for the {@code phoneNumber}.
@@ -47,6 +59,16 @@ public class BlockCheckerAdapter {
         int blockStatus = BlockedNumberContract.STATUS_NOT_BLOCKED;
         long startTimeNano = System.nanoTime();
 
+        if (mBlockedNumberIndex != null) {
+            int indexStatus = mBlockedNumberIndex.getBlockStatus(phoneNumber, extras);
+            if (indexStatus != BlockedNumberIndex.STATUS_UNKNOWN) {
+                if (indexStatus != BlockedNumberContract.STATUS_NOT_BLOCKED) {
+                    Log.d(TAG, phoneNumber + " is blocked.");
+                }
+                return indexStatus;
+            }
+        }
+
         try {
             blockStatus = BlockedNumberContract.SystemContract.shouldSystemBlockNumber(
                     context, phoneNumber, extras);
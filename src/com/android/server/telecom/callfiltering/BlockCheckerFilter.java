@@ -17,13 +17,12 @@
 package com.android.server.telecom.callfiltering;
 
 import android.content.Context;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.provider.BlockedNumberContract;
 import android.provider.CallLog;
-import android.telecom.CallerInfo;
 import android.telecom.Log;
 import android.telecom.TelecomManager;
 
@@ -39,21 +38,32 @@ import java.util.concurrent.CompletionStage;
 public class BlockCheckerFilter extends CallFilter {
     private final Call mCall;
     private final Context mContext;
-    private final CallerInfoLookupHelper mCallerInfoLookupHelper;
+    private final CallerInfoFuture mCallerInfoFuture;
     private final BlockCheckerAdapter mBlockCheckerAdapter;
     private final String TAG = "BlockCheckerFilter";
     private boolean mContactExists;
     private HandlerThread mHandlerThread;
     private Handler mHandler;
+    private long mStartElapsedMillis;
+    private long mBlockStatusDurationMillis;
 
     public static final long CALLER_INFO_QUERY_TIMEOUT = 5000;
 
     public BlockCheckerFilter(Context context, Call call,
             CallerInfoLookupHelper callerInfoLookupHelper,
             BlockCheckerAdapter blockCheckerAdapter) {
+        this(context, call, new CallerInfoFuture(call, callerInfoLookupHelper),
+                blockCheckerAdapter);
+    }
+
+    /**
+     * @param callerInfoFuture The contact lookup for the call, shared with other filters.
+     */
+    public BlockCheckerFilter(Context context, Call call, CallerInfoFuture callerInfoFuture,
+            BlockCheckerAdapter blockCheckerAdapter) {
         mCall = call;
         mContext = context;
-        mCallerInfoLookupHelper = callerInfoLookupHelper;
+        mCallerInfoFuture = callerInfoFuture;
         mBlockCheckerAdapter = blockCheckerAdapter;
         mContactExists = false;
         mHandlerThread = new HandlerThread(TAG);
@@ -64,45 +74,44 @@ public class BlockCheckerFilter extends CallFilter {
     @Override
     public CompletionStage<CallFilteringResult> startFilterLookup(CallFilteringResult result) {
         Log.addEvent(mCall, LogUtils.Events.BLOCK_CHECK_INITIATED);
+        mStartElapsedMillis = SystemClock.elapsedRealtime();
         CompletableFuture<CallFilteringResult> resultFuture = new CompletableFuture<>();
-        Bundle extras = new Bundle();
-        if (BlockedNumbersUtil.isEnhancedCallBlockingEnabledByPlatform(mContext)) {
-            int presentation = mCall.getHandlePresentation();
-            extras.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION, presentation);
-            if (presentation == TelecomManager.PRESENTATION_ALLOWED) {
-                mCallerInfoLookupHelper.startLookup(mCall.getHandle(),
-                        new CallerInfoLookupHelper.OnQueryCompleteListener() {
-                            @Override
-                            public void onCallerInfoQueryComplete(Uri handle, CallerInfo info) {
-                                if (info != null && info.contactExists) {
-                                    mContactExists = true;
-                                }
-                                getBlockStatus(resultFuture);
-                            }
-
-                            @Override
-                            public void onContactPhotoQueryComplete(Uri handle, CallerInfo info) {
-                                // Ignore
-                            }
-                        });
-            } else {
-                getBlockStatus(resultFuture);
-            }
+        final boolean isEnhancedBlockingEnabled =
+                BlockedNumbersUtil.isEnhancedCallBlockingEnabledByPlatform(mContext);
+        final int presentation = isEnhancedBlockingEnabled ? mCall.getHandlePresentation()
+                : TelecomManager.PRESENTATION_UNKNOWN;
+        LoggedHandlerExecutor executor = new LoggedHandlerExecutor(mHandler, "BCF.gBS", null);
+
+        // The block check runs in parallel with the contact lookup; whether the caller is a
+        // contact only matters if the number would otherwise be blocked for not being one.
+        CompletableFuture<Integer> blockStatusFuture = CompletableFuture.supplyAsync(
+                () -> getBlockStatus(isEnhancedBlockingEnabled, presentation,
+                        false /* contactExists */), executor);
+        if (isEnhancedBlockingEnabled && presentation == TelecomManager.PRESENTATION_ALLOWED) {
+            blockStatusFuture.thenCombineAsync(mCallerInfoFuture.get(), (blockStatus, info) -> {
+                mContactExists = info != null && info.contactExists;
+                if (mContactExists
+                        && blockStatus == BlockedNumberContract.STATUS_BLOCKED_NOT_IN_CONTACTS) {
+                    blockStatus = getBlockStatus(isEnhancedBlockingEnabled, presentation,
+                            true /* contactExists */);
+                }
+                return completeResult(resultFuture, blockStatus);
+            }, executor);
         } else {
-            getBlockStatus(resultFuture);
+            blockStatusFuture.thenApplyAsync((x) -> completeResult(resultFuture, x), executor);
         }
         return resultFuture;
     }
 
-    private void getBlockStatus(
-            CompletableFuture<CallFilteringResult> resultFuture) {
+    private int getBlockStatus(boolean isEnhancedBlockingEnabled, int presentation,
+            boolean contactExists) {
+        long startMillis = SystemClock.elapsedRealtime();
         // Set extras
         Bundle extras = new Bundle();
-        if (BlockedNumbersUtil.isEnhancedCallBlockingEnabledByPlatform(mContext)) {
-            int presentation = mCall.getHandlePresentation();
+        if (isEnhancedBlockingEnabled) {
             extras.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION, presentation);
             if (presentation == TelecomManager.PRESENTATION_ALLOWED) {
-                extras.putBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, mContactExists);
+                extras.putBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, contactExists);
             }
         }
 
@@ -110,11 +119,9 @@ public class BlockCheckerFilter extends CallFilter {
         final String number = mCall.getHandle() == null ? null :
                 mCall.getHandle().getSchemeSpecificPart();
 
-        CompletableFuture.supplyAsync(
-                () -> mBlockCheckerAdapter.getBlockStatus(mContext, number, extras),
-                new LoggedHandlerExecutor(mHandler, "BCF.gBS", null))
-                .thenApplyAsync((x) -> completeResult(resultFuture, x),
-                        new LoggedHandlerExecutor(mHandler, "BCF.gBS", null));
+        int blockStatus = mBlockCheckerAdapter.getBlockStatus(mContext, number, extras);
+        mBlockStatusDurationMillis += SystemClock.elapsedRealtime() - startMillis;
+        return blockStatus;
     }
 
     private int completeResult(CompletableFuture<CallFilteringResult> resultFuture,
@@ -144,6 +151,9 @@ public class BlockCheckerFilter extends CallFilter {
         Log.addEvent(mCall, LogUtils.Events.BLOCK_CHECK_FINISHED,
                 BlockedNumberContract.SystemContract.blockStatusToString(blockStatus) + " "
                         + result);
+        Log.i(this, "Block check took %d ms, contact lookup %d ms, total %d ms",
+                mBlockStatusDurationMillis, mCallerInfoFuture.getDurationMillis(),
+                SystemClock.elapsedRealtime() - mStartElapsedMillis);
         resultFuture.complete(result);
         mHandlerThread.quitSafely();
         return blockStatus;
@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.provider.BlockedNumberContract;
+import android.provider.BlockedNumberContract.BlockedNumbers;
+import android.provider.BlockedNumberContract.SystemContract;
+import android.telecom.Log;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.ClockProxy;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory index of the numbers in the {@link BlockedNumberContract} provider, so that the
+ * common case of checking an incoming number against the block list does not require a provider
+ * round trip.
+ * <p>
+ * The index holds both the original and the E.164 normalized form of each blocked number, which
+ * mirrors how the provider matches numbers.  It is kept current by a {@link ContentObserver} on
+ * {@link BlockedNumbers#CONTENT_URI} and by the block suppression state broadcast, and is fully
+ * reloaded every {@link #RESYNC_INTERVAL_MILLIS}.  A reload which fails, for example because the
+ * provider is not available until the user unlocks, is retried after
+ * {@link #RETRY_INTERVAL_MILLIS} and when the user unlocks.  Whenever the index cannot answer
+ * with certainty it returns {@link #STATUS_UNKNOWN} and the caller must query the provider.
+ * <p>
+ * Lookups follow the provider's rules: no number is blocked for a user who the provider does not
+ * allow to block numbers, and the enhanced call blocking rules, which the index does not hold,
+ * take precedence over the block list.
+ */
+public class BlockedNumberIndex {
+    private static final String TAG = BlockedNumberIndex.class.getSimpleName();
+
+    /**
+     * Returned by {@link #getBlockStatus(String)} when the provider must be queried.
+     */
+    public static final int STATUS_UNKNOWN = -1;
+
+    /**
+     * Interval at which the index is fully reloaded from the provider.
+     */
+    public static final long RESYNC_INTERVAL_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     * Interval at which a failed reload is retried.
+     */
+    public static final long RETRY_INTERVAL_MILLIS = 30 * 1000L;
+
+    /**
+     * The index is not trusted if it has not been reloaded within this duration, for example
+     * because reloads are failing.
+     */
+    public static final long MAX_STALENESS_MILLIS = 2 * RESYNC_INTERVAL_MILLIS;
+
+    private static final String[] PROJECTION = new String[] {
+            BlockedNumbers.COLUMN_ORIGINAL_NUMBER,
+            BlockedNumbers.COLUMN_E164_NUMBER
+    };
+
+    private final Context mContext;
+    private final ClockProxy mClockProxy;
+    private final Supplier<String> mCountryIsoSupplier;
+    private final Predicate<String> mEmergencyNumberChecker;
+    private final Object mLock = new Object();
+    // Null when the index is not observing the provider.
+    private volatile Handler mHandler;
+    private Executor mExecutor;
+    private ContentObserver mContentObserver;
+    private BroadcastReceiver mReceiver;
+    private final Runnable mResyncRunnable = this::startResync;
+
+    // Only used on the handler thread.
+    private boolean mIsResyncing;
+    private boolean mIsResyncPending;
+
+    // Guarded by mLock.
+    private Set<String> mBlockedNumbers = Collections.emptySet();
+    private boolean mIsBlockingSuppressed;
+    // False when the provider refuses access because the user cannot block numbers.
+    private boolean mCanBlockNumbers = true;
+    // True when the provider may have changed since the index was last loaded.
+    private boolean mIsDirty = true;
+    private long mLastSyncElapsedMillis;
+    private int mNumHits;
+    private int mNumMisses;
+    private int mNumFallbacks;
+    private int mNumFailedResyncs;
+
+    public BlockedNumberIndex(Context context, ClockProxy clockProxy,
+            Supplier<String> countryIsoSupplier, Predicate<String> emergencyNumberChecker) {
+        mContext = context;
+        mClockProxy = clockProxy;
+        mCountryIsoSupplier = countryIsoSupplier;
+        mEmergencyNumberChecker = emergencyNumberChecker;
+    }
+
+    /**
+     * Loads the index and starts observing the provider for changes.
+     *
+     * @param handler The handler which changes are delivered and reloads are scheduled on.
+     * @param executor The executor which the index is loaded on, off the handler thread.
+     */
+    public void startObserving(Handler handler, Executor executor) {
+        mHandler = handler;
+        mExecutor = executor;
+        mContentObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onProviderChanged();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(BlockedNumbers.CONTENT_URI,
+                true /* notifyForDescendants */, mContentObserver);
+        mReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onProviderChanged();
+            }
+        };
+        IntentFilter filter = new IntentFilter(
+                SystemContract.ACTION_BLOCK_SUPPRESSION_STATE_CHANGED);
+        // The provider cannot be read until the user unlocks.
+        filter.addAction(Intent.ACTION_USER_UNLOCKED);
+        mContext.registerReceiver(mReceiver, filter, null, mHandler, Context.RECEIVER_EXPORTED);
+        mHandler.post(mResyncRunnable);
+    }
+
+    /**
+     * Stops observing the provider and reloading the index.  Lookups fall back to the provider
+     * once the index is stale.
+     */
+    public void stopObserving() {
+        if (mHandler == null) {
+            return;
+        }
+        mContext.getContentResolver().unregisterContentObserver(mContentObserver);
+        mContext.unregisterReceiver(mReceiver);
+        mHandler.removeCallbacks(mResyncRunnable);
+        mHandler = null;
+    }
+
+    /**
+     * Determines whether a number should be blocked using only the in-memory index.
+     *
+     * @param phoneNumber The number to check.
+     * @param extras The extras passed to
+     *               {@link SystemContract#shouldSystemBlockNumber(Context, String, Bundle)}.
+     * @return {@link BlockedNumberContract#STATUS_BLOCKED_IN_LIST},
+     * {@link BlockedNumberContract#STATUS_NOT_BLOCKED}, or {@link #STATUS_UNKNOWN} if the
+     * provider must be queried.
+     */
+    public int getBlockStatus(String phoneNumber, Bundle extras) {
+        Set<String> blockedNumbers;
+        synchronized (mLock) {
+            if (mIsDirty || mClockProxy.elapsedRealtime() - mLastSyncElapsedMillis
+                    > MAX_STALENESS_MILLIS) {
+                mNumFallbacks++;
+                return STATUS_UNKNOWN;
+            }
+            // The provider refuses the lookup, which is treated as not blocked.
+            if (!mCanBlockNumbers) {
+                mNumMisses++;
+                return BlockedNumberContract.STATUS_NOT_BLOCKED;
+            }
+            // The provider evaluates the enhanced call blocking rules, which are only given
+            // extras when enabled, before the block list.
+            if (mIsBlockingSuppressed || (extras != null && !extras.isEmpty())
+                    || TextUtils.isEmpty(phoneNumber)) {
+                mNumFallbacks++;
+                return STATUS_UNKNOWN;
+            }
+            blockedNumbers = mBlockedNumbers;
+        }
+        boolean isBlocked = blockedNumbers.contains(phoneNumber);
+        if (!isBlocked) {
+            String e164Number = PhoneNumberUtils.formatNumberToE164(phoneNumber,
+                    mCountryIsoSupplier.get());
+            isBlocked = e164Number != null && blockedNumbers.contains(e164Number);
+        }
+        // The provider never blocks emergency numbers; let it make that determination.
+        if (isBlocked && mEmergencyNumberChecker.test(phoneNumber)) {
+            return fallback();
+        }
+        synchronized (mLock) {
+            if (isBlocked) {
+                mNumHits++;
+            } else {
+                mNumMisses++;
+            }
+        }
+        return isBlocked ? BlockedNumberContract.STATUS_BLOCKED_IN_LIST
+                : BlockedNumberContract.STATUS_NOT_BLOCKED;
+    }
+
+    private int fallback() {
+        synchronized (mLock) {
+            mNumFallbacks++;
+        }
+        return STATUS_UNKNOWN;
+    }
+
+    private void onProviderChanged() {
+        synchronized (mLock) {
+            mIsDirty = true;
+        }
+        Handler handler = mHandler;
+        if (handler != null) {
+            // Coalesce bursts of changes, such as a bulk import, into a single reload.
+            handler.removeCallbacks(mResyncRunnable);
+            handler.post(mResyncRunnable);
+        }
+    }
+
+    private void startResync() {
+        Handler handler = mHandler;
+        if (handler == null) {
+            return;
+        }
+        handler.removeCallbacks(mResyncRunnable);
+        if (mIsResyncing) {
+            // Reload again once the one under way is done, as it may have missed the change.
+            mIsResyncPending = true;
+            return;
+        }
+        mIsResyncing = true;
+        mExecutor.execute(() -> {
+            boolean isLoaded = resync();
+            handler.post(() -> onResyncFinished(isLoaded));
+        });
+    }
+
+    private void onResyncFinished(boolean isLoaded) {
+        mIsResyncing = false;
+        if (mHandler == null) {
+            return;
+        }
+        if (mIsResyncPending) {
+            mIsResyncPending = false;
+            startResync();
+        } else {
+            mHandler.postDelayed(mResyncRunnable,
+                    isLoaded ? RESYNC_INTERVAL_MILLIS : RETRY_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Reloads the index from the provider.  Failures leave the index marked dirty so that
+     * lookups fall back to the provider.
+     *
+     * @return {@code true} if the index was loaded.
+     */
+    @VisibleForTesting
+    public boolean resync() {
+        synchronized (mLock) {
+            // Changes which arrive during the load mark the index dirty again.
+            mIsDirty = false;
+        }
+        Set<String> blockedNumbers = new HashSet<>();
+        boolean isSuppressed;
+        try (Cursor cursor = mContext.getContentResolver().query(BlockedNumbers.CONTENT_URI,
+                PROJECTION, null, null, null)) {
+            if (cursor == null) {
+                onResyncFailed();
+                return false;
+            }
+            while (cursor.moveToNext()) {
+                addNumber(blockedNumbers, cursor.getString(0));
+                addNumber(blockedNumbers, cursor.getString(1));
+            }
+            isSuppressed = SystemContract.getBlockSuppressionStatus(mContext).isSuppressed;
+        } catch (SecurityException e) {
+            // Only the primary user may block numbers; the provider refuses other users.
+            Log.i(TAG, "User cannot block numbers: " + e);
+            update(Collections.emptySet(), false /* isBlockingSuppressed */,
+                    false /* canBlockNumbers */);
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load blocked numbers: " + e);
+            onResyncFailed();
+            return false;
+        }
+        update(blockedNumbers, isSuppressed, true /* canBlockNumbers */);
+        return true;
+    }
+
+    private void onResyncFailed() {
+        synchronized (mLock) {
+            mIsDirty = true;
+            mNumFailedResyncs++;
+        }
+    }
+
+    /**
+     * Replaces the contents of the index.
+     *
+     * @param blockedNumbers The blocked numbers, in original and E.164 form.
+     * @param isBlockingSuppressed Whether blocking is suppressed after an emergency call.
+     */
+    @VisibleForTesting
+    public void update(Set<String> blockedNumbers, boolean isBlockingSuppressed) {
+        update(blockedNumbers, isBlockingSuppressed, true /* canBlockNumbers */);
+    }
+
+    /**
+     * Replaces the contents of the index.
+     *
+     * @param blockedNumbers The blocked numbers, in original and E.164 form.
+     * @param isBlockingSuppressed Whether blocking is suppressed after an emergency call.
+     * @param canBlockNumbers Whether the provider allows the user to block numbers.
+     */
+    @VisibleForTesting
+    public void update(Set<String> blockedNumbers, boolean isBlockingSuppressed,
+            boolean canBlockNumbers) {
+        synchronized (mLock) {
+            mBlockedNumbers = blockedNumbers;
+            mIsBlockingSuppressed = isBlockingSuppressed;
+            mCanBlockNumbers = canBlockNumbers;
+            mLastSyncElapsedMillis = mClockProxy.elapsedRealtime();
+        }
+        Log.i(TAG, "Loaded " + blockedNumbers.size() + " blocked numbers, suppressed="
+                + isBlockingSuppressed + ", canBlock=" + canBlockNumbers);
+    }
+
+    @VisibleForTesting
+    public int getNumFailedResyncs() {
+        synchronized (mLock) {
+            return mNumFailedResyncs;
+        }
+    }
+
+    @VisibleForTesting
+    public void markDirty() {
+        synchronized (mLock) {
+            mIsDirty = true;
+        }
+    }
+
+    private static void addNumber(Set<String> numbers, String number) {
+        if (!TextUtils.isEmpty(number)) {
+            numbers.add(number);
+        }
+    }
+
+    /**
+     * Dumps the state of the index.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("size=");
+            pw.print(mBlockedNumbers.size());
+            pw.print(", dirty=");
+            pw.print(mIsDirty);
+            pw.print(", suppressed=");
+            pw.print(mIsBlockingSuppressed);
+            pw.print(", canBlock=");
+            pw.print(mCanBlockNumbers);
+            pw.print(", ageMs=");
+            pw.println(mClockProxy.elapsedRealtime() - mLastSyncElapsedMillis);
+            pw.print("hits=");
+            pw.print(mNumHits);
+            pw.print(", misses=");
+            pw.print(mNumMisses);
+            pw.print(", fallbacks=");
+            pw.print(mNumFallbacks);
+            pw.print(", failedResyncs=");
+            pw.println(mNumFailedResyncs);
+        }
+    }
+}
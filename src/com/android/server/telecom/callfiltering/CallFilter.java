@@ -28,6 +28,10 @@ public class CallFilter {
     public CallFilteringResult mPriorStageResult;
     public CallFilteringResult result;
     private CompletableFuture<CallFilteringResult> mResultFuture;
+    // Timestamps recorded by IncomingCallFilterGraph, in elapsed realtime nanoseconds.
+    long mScheduledNanos;
+    long mStartedNanos;
+    long mFinishedNanos;
 
     public CallFilter() {
         mDependencies = new ArrayList<>();
@@ -40,6 +44,13 @@ public class CallFilter {
         return CompletableFuture.completedFuture(priorStageResult);
     }
 
+    /**
+     * @return the name under which this filter's timings are reported.
+     */
+    public String getTelemetryName() {
+        return getClass().getSimpleName();
+    }
+
     List<CallFilter> getDependencies() {
         return mDependencies;
     }
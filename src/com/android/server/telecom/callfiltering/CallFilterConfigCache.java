@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.os.Handler;
+import android.os.UserHandle;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.AppLabelProxy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches the configuration used to set up the filter graph for an incoming call, so that doing
+ * so requires no calls to the carrier config, role, package or settings services while holding
+ * the Telecom lock.  The cache holds the packages which take part in filtering, their labels and
+ * the flags which enable the call screening verdict cache and connection sharing.
+ * <p>
+ * The packages are reloaded on the given {@link Handler} when the carrier config, the default
+ * subscription, a filtering role or the current user changes, and the flags are reloaded there
+ * each time they are read.  Until a reload completes, the previously loaded values are returned.
+ * Only a value which has never been loaded, such as the role holders of a user who has just been
+ * added, is loaded by the caller.
+ */
+public class CallFilterConfigCache {
+    private static class UserConfig {
+        String mDefaultDialerPackage;
+        String mCallScreeningPackage;
+    }
+
+    private final Handler mHandler;
+    private final Supplier<String> mCarrierPackageLoader;
+    private final Function<UserHandle, String> mDefaultDialerLoader;
+    private final Function<UserHandle, String> mCallScreeningLoader;
+    private final AppLabelProxy mAppLabelLoader;
+    private final BooleanSupplier mVerdictCacheFlagLoader;
+    private final BooleanSupplier mConnectionSharingFlagLoader;
+    private final Object mLock = new Object();
+
+    // Guarded by mLock.
+    private boolean mIsCarrierPackageLoaded;
+    private String mCarrierPackage;
+    private final Map<UserHandle, UserConfig> mUserConfigs = new HashMap<>();
+    private final Map<String, CharSequence> mAppLabels = new HashMap<>();
+    private boolean mAreFlagsLoaded;
+    private boolean mIsFlagReloadPending;
+    private boolean mIsVerdictCacheEnabled;
+    private boolean mIsConnectionSharingEnabled;
+    private int mNumHits;
+    private int mNumLoads;
+
+    /**
+     * @param handler The handler to reload values on.
+     * @param carrierPackageLoader Loads the package of the carrier call screening app.
+     * @param defaultDialerLoader Loads the default dialer package of a user.
+     * @param callScreeningLoader Loads the package filling the call screening role for a user.
+     * @param appLabelLoader Loads the label of a package.
+     * @param verdictCacheFlagLoader Loads whether call screening responses are cached.
+     * @param connectionSharingFlagLoader Loads whether call screening connections are shared.
+     */
+    public CallFilterConfigCache(Handler handler, Supplier<String> carrierPackageLoader,
+            Function<UserHandle, String> defaultDialerLoader,
+            Function<UserHandle, String> callScreeningLoader, AppLabelProxy appLabelLoader,
+            BooleanSupplier verdictCacheFlagLoader, BooleanSupplier connectionSharingFlagLoader) {
+        mHandler = handler;
+        mCarrierPackageLoader = carrierPackageLoader;
+        mDefaultDialerLoader = defaultDialerLoader;
+        mCallScreeningLoader = callScreeningLoader;
+        mAppLabelLoader = appLabelLoader;
+        mVerdictCacheFlagLoader = verdictCacheFlagLoader;
+        mConnectionSharingFlagLoader = connectionSharingFlagLoader;
+    }
+
+    /**
+     * Loads the configuration in the background, so that it is ready for the first incoming
+     * call.
+     *
+     * @param userHandle The current user.
+     */
+    public void preload(UserHandle userHandle) {
+        mHandler.post(() -> {
+            loadCarrierPackage(false /* isMiss */);
+            loadUserConfig(userHandle, false /* isMiss */);
+            loadFlags(false /* isMiss */);
+        });
+    }
+
+    /**
+     * @return the package of the carrier call screening app, or {@code null} if there is none.
+     */
+    public String getCarrierPackageName() {
+        synchronized (mLock) {
+            if (mIsCarrierPackageLoaded) {
+                mNumHits++;
+                return mCarrierPackage;
+            }
+        }
+        return loadCarrierPackage(true /* isMiss */);
+    }
+
+    /**
+     * @return the default dialer package for a user.
+     */
+    public String getDefaultDialerPackage(UserHandle userHandle) {
+        return getUserConfig(userHandle).mDefaultDialerPackage;
+    }
+
+    /**
+     * @return the package filling the call screening role for a user.
+     */
+    public String getCallScreeningPackage(UserHandle userHandle) {
+        return getUserConfig(userHandle).mCallScreeningPackage;
+    }
+
+    /**
+     * @return the label of a package, which is loaded along with the packages above.
+     */
+    public CharSequence getAppLabel(String packageName) {
+        if (packageName == null) {
+            return null;
+        }
+        synchronized (mLock) {
+            if (mAppLabels.containsKey(packageName)) {
+                mNumHits++;
+                return mAppLabels.get(packageName);
+            }
+        }
+        return loadAppLabel(packageName);
+    }
+
+    /**
+     * @return {@code true} if call screening responses should be cached.
+     */
+    public boolean isVerdictCacheEnabled() {
+        synchronized (mLock) {
+            if (mAreFlagsLoaded) {
+                reloadFlagsLocked();
+                return mIsVerdictCacheEnabled;
+            }
+        }
+        loadFlags(true /* isMiss */);
+        synchronized (mLock) {
+            return mIsVerdictCacheEnabled;
+        }
+    }
+
+    /**
+     * @return {@code true} if call screening service connections should be shared.
+     */
+    public boolean isConnectionSharingEnabled() {
+        synchronized (mLock) {
+            if (mAreFlagsLoaded) {
+                reloadFlagsLocked();
+                return mIsConnectionSharingEnabled;
+            }
+        }
+        loadFlags(true /* isMiss */);
+        synchronized (mLock) {
+            return mIsConnectionSharingEnabled;
+        }
+    }
+
+    /**
+     * Called when the carrier config changes, or when the default subscription whose carrier
+     * config is used changes.
+     */
+    public void onCarrierConfigChanged() {
+        mHandler.post(() -> loadCarrierPackage(false /* isMiss */));
+    }
+
+    /**
+     * Called when the dialer or call screening role changes for a user.
+     *
+     * @param userId The user whose role holders changed.
+     */
+    public void onRoleChanged(int userId) {
+        UserHandle userHandle = UserHandle.of(userId);
+        mHandler.post(() -> loadUserConfig(userHandle, false /* isMiss */));
+    }
+
+    /**
+     * Called when the current user changes.  The role holders of every user are reloaded, since
+     * they may have changed while another user was current.
+     *
+     * @param userHandle The new current user.
+     */
+    public void onUserSwitch(UserHandle userHandle) {
+        List<UserHandle> userHandles = getLoadedUsers();
+        if (!userHandles.contains(userHandle)) {
+            userHandles.add(userHandle);
+        }
+        reloadUserConfigs(userHandles);
+    }
+
+    /**
+     * Reloads the role holders of all users, for example when they are overridden for testing.
+     */
+    public void invalidateRoles() {
+        reloadUserConfigs(getLoadedUsers());
+    }
+
+    @VisibleForTesting
+    public int getNumLoads() {
+        synchronized (mLock) {
+            return mNumLoads;
+        }
+    }
+
+    private List<UserHandle> getLoadedUsers() {
+        synchronized (mLock) {
+            return new ArrayList<>(mUserConfigs.keySet());
+        }
+    }
+
+    private void reloadUserConfigs(List<UserHandle> userHandles) {
+        mHandler.post(() -> {
+            for (UserHandle userHandle : userHandles) {
+                loadUserConfig(userHandle, false /* isMiss */);
+            }
+        });
+    }
+
+    private UserConfig getUserConfig(UserHandle userHandle) {
+        synchronized (mLock) {
+            UserConfig config = mUserConfigs.get(userHandle);
+            if (config != null) {
+                mNumHits++;
+                return config;
+            }
+        }
+        return loadUserConfig(userHandle, true /* isMiss */);
+    }
+
+    // Must be called with mLock held.
+    private void reloadFlagsLocked() {
+        if (!mIsFlagReloadPending) {
+            mIsFlagReloadPending = true;
+            mHandler.post(() -> loadFlags(false /* isMiss */));
+        }
+    }
+
+    // A value loaded on a miss is only stored if no reload has completed in the meantime, since
+    // that reload may have seen a newer value.
+    private String loadCarrierPackage(boolean isMiss) {
+        String carrierPackage;
+        try {
+            carrierPackage = mCarrierPackageLoader.get();
+        } catch (RuntimeException e) {
+            Log.w(this, "loadCarrierPackage: %s", e);
+            return null;
+        }
+        loadAppLabel(carrierPackage);
+        synchronized (mLock) {
+            mNumLoads++;
+            if (isMiss && mIsCarrierPackageLoaded) {
+                return mCarrierPackage;
+            }
+            mIsCarrierPackageLoaded = true;
+            mCarrierPackage = carrierPackage;
+        }
+        return carrierPackage;
+    }
+
+    private UserConfig loadUserConfig(UserHandle userHandle, boolean isMiss) {
+        UserConfig config = new UserConfig();
+        try {
+            config.mDefaultDialerPackage = mDefaultDialerLoader.apply(userHandle);
+            config.mCallScreeningPackage = mCallScreeningLoader.apply(userHandle);
+        } catch (RuntimeException e) {
+            Log.w(this, "loadUserConfig: %s", e);
+            return config;
+        }
+        loadAppLabel(config.mDefaultDialerPackage);
+        loadAppLabel(config.mCallScreeningPackage);
+        synchronized (mLock) {
+            mNumLoads++;
+            if (isMiss && mUserConfigs.containsKey(userHandle)) {
+                return mUserConfigs.get(userHandle);
+            }
+            mUserConfigs.put(userHandle, config);
+        }
+        return config;
+    }
+
+    private CharSequence loadAppLabel(String packageName) {
+        if (packageName == null) {
+            return null;
+        }
+        CharSequence label;
+        try {
+            label = mAppLabelLoader.getAppLabel(packageName);
+        } catch (RuntimeException e) {
+            Log.w(this, "loadAppLabel: %s", e);
+            return null;
+        }
+        synchronized (mLock) {
+            mAppLabels.put(packageName, label);
+        }
+        return label;
+    }
+
+    private void loadFlags(boolean isMiss) {
+        boolean isVerdictCacheEnabled = false;
+        boolean isConnectionSharingEnabled = false;
+        try {
+            isVerdictCacheEnabled = mVerdictCacheFlagLoader.getAsBoolean();
+            isConnectionSharingEnabled = mConnectionSharingFlagLoader.getAsBoolean();
+        } catch (RuntimeException e) {
+            Log.w(this, "loadFlags: %s", e);
+        }
+        synchronized (mLock) {
+            if (isMiss && mAreFlagsLoaded) {
+                return;
+            }
+            mIsFlagReloadPending = false;
+            mAreFlagsLoaded = true;
+            mIsVerdictCacheEnabled = isVerdictCacheEnabled;
+            mIsConnectionSharingEnabled = isConnectionSharingEnabled;
+        }
+    }
+
+    /**
+     * Dumps the state of the cache.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("carrierPackage=");
+            pw.print(mIsCarrierPackageLoaded ? mCarrierPackage : "<not loaded>");
+            pw.print(", verdictCache=");
+            pw.print(mIsVerdictCacheEnabled);
+            pw.print(", connectionSharing=");
+            pw.print(mIsConnectionSharingEnabled);
+            pw.print(", hits=");
+            pw.print(mNumHits);
+            pw.print(", loads=");
+            pw.println(mNumLoads);
+            pw.increaseIndent();
+            for (Map.Entry<UserHandle, UserConfig> entry : mUserConfigs.entrySet()) {
+                pw.print(entry.getKey());
+                pw.print(": dialer=");
+                pw.print(entry.getValue().mDefaultDialerPackage);
+                pw.print(", screening=");
+                pw.println(entry.getValue().mCallScreeningPackage);
+            }
+            pw.decreaseIndent();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates the per-filter timings reported by {@link IncomingCallFilterGraph} across incoming
+ * calls into histograms, so that it is possible to tell which filters use up the call screening
+ * timeout.
+ */
+public class CallFilterTelemetry {
+    /**
+     * Upper bounds of the histogram buckets, in milliseconds.  The last bucket holds everything
+     * above the last bound.
+     */
+    @VisibleForTesting
+    public static final long[] BUCKET_BOUNDS_MILLIS =
+            {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    private static class FilterStats {
+        final int[] mQueueDelayHistogram = new int[BUCKET_BOUNDS_MILLIS.length + 1];
+        final int[] mExecutionHistogram = new int[BUCKET_BOUNDS_MILLIS.length + 1];
+        int mNumRuns;
+        int mNumIncomplete;
+        int mNumOnCriticalPath;
+    }
+
+    private final Map<String, FilterStats> mFilterStats = new LinkedHashMap<>();
+    private final int[] mGraphHistogram = new int[BUCKET_BOUNDS_MILLIS.length + 1];
+    private int mNumGraphs;
+    private int mNumTimedOut;
+
+    /**
+     * Records the timing of one filter in a filter graph.
+     *
+     * @param filterName The name of the filter.
+     * @param queueDelayMillis Time between the filter's dependencies completing and it starting.
+     * @param executionMillis Time between the filter starting and producing a result.
+     * @param isOnCriticalPath Whether the filter determined when filtering finished.
+     * @param isCompleted Whether the filter produced a result before the graph timed out.
+     */
+    public synchronized void recordFilter(String filterName, long queueDelayMillis,
+            long executionMillis, boolean isOnCriticalPath, boolean isCompleted) {
+        FilterStats stats = mFilterStats.computeIfAbsent(filterName, k -> new FilterStats());
+        stats.mNumRuns++;
+        stats.mQueueDelayHistogram[getBucket(queueDelayMillis)]++;
+        stats.mExecutionHistogram[getBucket(executionMillis)]++;
+        if (!isCompleted) {
+            stats.mNumIncomplete++;
+        }
+        if (isOnCriticalPath) {
+            stats.mNumOnCriticalPath++;
+        }
+    }
+
+    /**
+     * Records the total time taken by a filter graph.
+     *
+     * @param durationMillis Time between filtering starting and finishing or timing out.
+     * @param isTimedOut Whether the graph timed out.
+     */
+    public synchronized void recordGraph(long durationMillis, boolean isTimedOut) {
+        mNumGraphs++;
+        mGraphHistogram[getBucket(durationMillis)]++;
+        if (isTimedOut) {
+            mNumTimedOut++;
+        }
+    }
+
+    /**
+     * @return the execution time histogram of a filter, or {@code null} if it has not run.
+     */
+    @VisibleForTesting
+    public synchronized int[] getExecutionHistogram(String filterName) {
+        FilterStats stats = mFilterStats.get(filterName);
+        return stats == null ? null : Arrays.copyOf(stats.mExecutionHistogram,
+                stats.mExecutionHistogram.length);
+    }
+
+    /**
+     * @return how many times a filter was on the critical path of its graph.
+     */
+    @VisibleForTesting
+    public synchronized int getNumOnCriticalPath(String filterName) {
+        FilterStats stats = mFilterStats.get(filterName);
+        return stats == null ? 0 : stats.mNumOnCriticalPath;
+    }
+
+    @VisibleForTesting
+    public static int getBucket(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (millis <= BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    /**
+     * Dumps the aggregated timings.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.print("buckets(ms): ");
+        pw.print(Arrays.toString(BUCKET_BOUNDS_MILLIS));
+        pw.println(" +inf");
+        pw.print("graphs=");
+        pw.print(mNumGraphs);
+        pw.print(", timedOut=");
+        pw.print(mNumTimedOut);
+        pw.print(", total=");
+        pw.println(Arrays.toString(mGraphHistogram));
+        pw.increaseIndent();
+        for (Map.Entry<String, FilterStats> entry : mFilterStats.entrySet()) {
+            FilterStats stats = entry.getValue();
+            pw.print(entry.getKey());
+            pw.print(": runs=");
+            pw.print(stats.mNumRuns);
+            pw.print(", incomplete=");
+            pw.print(stats.mNumIncomplete);
+            pw.print(", criticalPath=");
+            pw.println(stats.mNumOnCriticalPath);
+            pw.increaseIndent();
+            pw.print("queue=");
+            pw.println(Arrays.toString(stats.mQueueDelayHistogram));
+            pw.print("execution=");
+            pw.println(Arrays.toString(stats.mExecutionHistogram));
+            pw.decreaseIndent();
+        }
+        pw.decreaseIndent();
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.provider.DeviceConfig;
+import android.telecom.CallScreeningService;
+import android.telecom.Log;
+import android.util.Pair;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.telecom.ICallScreeningAdapter;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallScreeningServiceHelper;
+import com.android.server.telecom.ClockProxy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps connections to call screening services alive between incoming calls, so that a burst of
+ * incoming calls does not pay for starting and binding to the screening app for every call.
+ * <p>
+ * Call filters bind and unbind through this class rather than through the {@link Context}.  All
+ * filters screening with the same package for the same user share one connection, which is only
+ * unbound once it has had no filters for {@link #getIdleMillis()}.  A call screening service only
+ * keeps the most recent adapter it was given, so filters sharing a connection pass the shared
+ * adapter returned by {@link #registerCallAdapter} to the service, which routes each response to
+ * the filter screening that call.
+ */
+public class CallScreeningServiceConnectionManager {
+    /**
+     * DeviceConfig flag holding how long an unused connection is kept, in milliseconds.  Where
+     * zero, connections are not shared.
+     */
+    private static final String CALL_SCREENING_CONNECTION_IDLE_MILLIS =
+            "call_screening_connection_idle_millis";
+
+    private class SharedConnection implements ServiceConnection {
+        final String mPackageName;
+        final UserHandle mUserHandle;
+        final List<ServiceConnection> mClients = new ArrayList<>();
+        final Map<String, ICallScreeningAdapter> mCallAdapters = new HashMap<>();
+        final long mBindStartElapsedMillis;
+        ComponentName mComponentName;
+        IBinder mService;
+
+        final Runnable mUnbindRunnable = () -> {
+            synchronized (mLock) {
+                if (!mClients.isEmpty()) {
+                    return;
+                }
+                Log.i(CallScreeningServiceConnectionManager.this, "Unbinding idle %s",
+                        mPackageName);
+                removeConnection(this);
+            }
+        };
+
+        final ICallScreeningAdapter mAdapter = new ICallScreeningAdapter.Stub() {
+            @Override
+            public void onScreeningResponse(String callId, ComponentName componentName,
+                    CallScreeningService.ParcelableCallResponse callResponse)
+                    throws RemoteException {
+                ICallScreeningAdapter adapter;
+                synchronized (mLock) {
+                    adapter = mCallAdapters.get(callId);
+                }
+                if (adapter == null) {
+                    Log.w(CallScreeningServiceConnectionManager.this,
+                            "Response for unknown call id %s from %s", callId, mPackageName);
+                    return;
+                }
+                adapter.onScreeningResponse(callId, componentName, callResponse);
+            }
+        };
+
+        SharedConnection(String packageName, UserHandle userHandle) {
+            mPackageName = packageName;
+            mUserHandle = userHandle;
+            mBindStartElapsedMillis = mClockProxy.elapsedRealtime();
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            List<ServiceConnection> clients;
+            synchronized (mLock) {
+                if (mConnections.get(getKey(mPackageName, mUserHandle)) != this) {
+                    return;
+                }
+                mComponentName = name;
+                mService = service;
+                mTotalBindMillis += mClockProxy.elapsedRealtime() - mBindStartElapsedMillis;
+                mNumBinds++;
+                clients = new ArrayList<>(mClients);
+            }
+            for (ServiceConnection client : clients) {
+                client.onServiceConnected(name, service);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            for (ServiceConnection client : drop()) {
+                client.onServiceDisconnected(name);
+            }
+        }
+
+        @Override
+        public void onBindingDied(ComponentName name) {
+            for (ServiceConnection client : drop()) {
+                client.onBindingDied(name);
+            }
+        }
+
+        @Override
+        public void onNullBinding(ComponentName name) {
+            for (ServiceConnection client : drop()) {
+                client.onNullBinding(name);
+            }
+        }
+
+        // Forgets a connection which can no longer be used, returning its clients.
+        private List<ServiceConnection> drop() {
+            synchronized (mLock) {
+                List<ServiceConnection> clients = new ArrayList<>(mClients);
+                if (mConnections.get(getKey(mPackageName, mUserHandle)) == this) {
+                    removeConnection(this);
+                }
+                return clients;
+            }
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final ClockProxy mClockProxy;
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private final Map<Pair<String, UserHandle>, SharedConnection> mConnections = new HashMap<>();
+    private final Map<ServiceConnection, SharedConnection> mClientConnections = new HashMap<>();
+    private int mNumBinds;
+    private long mTotalBindMillis;
+    private int mNumReuses;
+    // Overrides the DeviceConfig flag when non-null.
+    private Long mIdleMillis;
+
+    public CallScreeningServiceConnectionManager(Context context, Handler handler,
+            ClockProxy clockProxy) {
+        mContext = context;
+        mHandler = handler;
+        mClockProxy = clockProxy;
+    }
+
+    @VisibleForTesting
+    public void setIdleMillis(long idleMillis) {
+        mIdleMillis = idleMillis;
+    }
+
+    /**
+     * @return how long an unused connection is kept, or zero if connections are not shared.
+     */
+    public long getIdleMillis() {
+        if (mIdleMillis != null) {
+            return mIdleMillis;
+        }
+        return Math.max(0, DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+                CALL_SCREENING_CONNECTION_IDLE_MILLIS, 0));
+    }
+
+    /**
+     * @return {@code true} if call filters should bind through this class.
+     */
+    public boolean isEnabled() {
+        return getIdleMillis() > 0;
+    }
+
+    /**
+     * Binds a call filter to the call screening service in a package, reusing an existing
+     * connection where there is one.  The client is always notified of the connection
+     * asynchronously.
+     *
+     * @param userHandle The user to bind as.
+     * @param packageName The package of the call screening service.
+     * @param client The connection of the call filter.
+     * @return {@code true} if the bind succeeded or a connection already exists.
+     */
+    public boolean bind(UserHandle userHandle, String packageName, ServiceConnection client) {
+        synchronized (mLock) {
+            Pair<String, UserHandle> key = getKey(packageName, userHandle);
+            SharedConnection connection = mConnections.get(key);
+            if (connection == null) {
+                connection = new SharedConnection(packageName, userHandle);
+                if (!CallScreeningServiceHelper.bindCallScreeningService(mContext, userHandle,
+                        packageName, connection)) {
+                    return false;
+                }
+                mConnections.put(key, connection);
+            } else {
+                mNumReuses++;
+                mHandler.removeCallbacks(connection.mUnbindRunnable);
+                if (connection.mService != null) {
+                    final ComponentName name = connection.mComponentName;
+                    final IBinder service = connection.mService;
+                    mHandler.post(() -> {
+                        if (isBound(client)) {
+                            client.onServiceConnected(name, service);
+                        }
+                    });
+                }
+            }
+            connection.mClients.add(client);
+            mClientConnections.put(client, connection);
+            return true;
+        }
+    }
+
+    /**
+     * Registers the adapter which handles the response for a call.
+     *
+     * @param client The connection of the call filter, as passed to {@link #bind}.
+     * @param callId The ID of the call being screened.
+     * @param callAdapter The adapter for the call.
+     * @return the adapter to pass to the call screening service.
+     */
+    public ICallScreeningAdapter registerCallAdapter(ServiceConnection client, String callId,
+            ICallScreeningAdapter callAdapter) {
+        synchronized (mLock) {
+            SharedConnection connection = mClientConnections.get(client);
+            if (connection == null) {
+                return callAdapter;
+            }
+            connection.mCallAdapters.put(callId, callAdapter);
+            return connection.mAdapter;
+        }
+    }
+
+    /**
+     * Releases a call filter's connection.  The shared connection is unbound once it has been
+     * unused for {@link #getIdleMillis()}.
+     *
+     * @param client The connection of the call filter, as passed to {@link #bind}.
+     * @param callId The ID of the call which was screened.
+     */
+    public void unbind(ServiceConnection client, String callId) {
+        synchronized (mLock) {
+            SharedConnection connection = mClientConnections.remove(client);
+            if (connection == null) {
+                return;
+            }
+            connection.mClients.remove(client);
+            connection.mCallAdapters.remove(callId);
+            if (connection.mClients.isEmpty()
+                    && mConnections.get(getKey(connection.mPackageName,
+                            connection.mUserHandle)) == connection) {
+                mHandler.postDelayed(connection.mUnbindRunnable, getIdleMillis());
+            }
+        }
+    }
+
+    /**
+     * Unbinds all connections which are not in use.
+     */
+    public void unbindIdleConnections() {
+        synchronized (mLock) {
+            for (SharedConnection connection : new ArrayList<>(mConnections.values())) {
+                if (connection.mClients.isEmpty()) {
+                    removeConnection(connection);
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public int getNumConnections() {
+        synchronized (mLock) {
+            return mConnections.size();
+        }
+    }
+
+    @VisibleForTesting
+    public int getNumReuses() {
+        synchronized (mLock) {
+            return mNumReuses;
+        }
+    }
+
+    private boolean isBound(ServiceConnection client) {
+        synchronized (mLock) {
+            return mClientConnections.containsKey(client);
+        }
+    }
+
+    // Must be called with mLock held.
+    private void removeConnection(SharedConnection connection) {
+        mConnections.remove(getKey(connection.mPackageName, connection.mUserHandle));
+        mHandler.removeCallbacks(connection.mUnbindRunnable);
+        for (ServiceConnection client : connection.mClients) {
+            mClientConnections.remove(client);
+        }
+        connection.mClients.clear();
+        connection.mCallAdapters.clear();
+        try {
+            mContext.unbindService(connection);
+        } catch (IllegalArgumentException e) {
+            Log.i(this, "Exception when unbinding %s: %s", connection.mPackageName,
+                    e.getMessage());
+        }
+    }
+
+    private static Pair<String, UserHandle> getKey(String packageName, UserHandle userHandle) {
+        return new Pair<>(packageName, userHandle);
+    }
+
+    /**
+     * Dumps the state of the connections.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.print("idleMillis=");
+            pw.print(getIdleMillis());
+            pw.print(", binds=");
+            pw.print(mNumBinds);
+            pw.print(", avgBindMillis=");
+            pw.print(mNumBinds == 0 ? 0 : mTotalBindMillis / mNumBinds);
+            pw.print(", reuses=");
+            pw.println(mNumReuses);
+            pw.increaseIndent();
+            for (SharedConnection connection : mConnections.values()) {
+                pw.print(connection.mPackageName);
+                pw.print(" (");
+                pw.print(connection.mUserHandle);
+                pw.print("): connected=");
+                pw.print(connection.mService != null);
+                pw.print(", clients=");
+                pw.println(connection.mClients.size());
+            }
+            pw.decreaseIndent();
+        }
+    }
+}
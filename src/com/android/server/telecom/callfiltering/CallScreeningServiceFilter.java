@@ -57,12 +57,22 @@ public class CallScreeningServiceFilter extends CallFilter {
     private final CallsManager mCallsManager;
     private CharSequence mAppName;
     private final ParcelableCallUtils.Converter mParcelableCallUtilsConverter;
+    private final CallScreeningVerdictCache mVerdictCache;
+    private final CallScreeningServiceConnectionManager mConnectionManager;
 
     private class CallScreeningAdapter extends ICallScreeningAdapter.Stub {
         private CompletableFuture<CallFilteringResult> mResultFuture;
+        // True when replaying a cached response, which must not refresh the cache entry.
+        private final boolean mIsCachedResponse;
 
         public CallScreeningAdapter(CompletableFuture<CallFilteringResult> resultFuture) {
+            this(resultFuture, false);
+        }
+
+        CallScreeningAdapter(CompletableFuture<CallFilteringResult> resultFuture,
+                boolean isCachedResponse) {
             mResultFuture = resultFuture;
+            mIsCachedResponse = isCachedResponse;
         }
 
         @Override
@@ -72,6 +82,10 @@ public class CallScreeningServiceFilter extends CallFilter {
                 Log.w(this, "Null responses are only supposed to happen for outgoing calls");
                 return;
             }
+            if (mVerdictCache != null && !mIsCachedResponse && mCall != null
+                    && mCall.getId().equals(callId)) {
+                mVerdictCache.put(mCall, mPackageName, componentName, callResponse);
+            }
             if (callResponse.shouldDisallowCall()) {
                 disallowCall(callId, componentName, callResponse);
             } else if (callResponse.shouldSilenceCall()) {
@@ -220,8 +234,13 @@ public class CallScreeningServiceFilter extends CallFilter {
         public void onServiceConnected(ComponentName componentName, IBinder service) {
             ICallScreeningService callScreeningService =
                     ICallScreeningService.Stub.asInterface(service);
+            ICallScreeningAdapter adapter = new CallScreeningAdapter(mResultFuture);
+            if (mConnectionManager != null) {
+                // A shared connection routes the response to this call's adapter.
+                adapter = mConnectionManager.registerCallAdapter(this, mCall.getId(), adapter);
+            }
             try {
-                callScreeningService.screenCall(new CallScreeningAdapter(mResultFuture),
+                callScreeningService.screenCall(adapter,
                         mParcelableCallUtilsConverter.
                                 toParcelableCallForScreening(mCall, isSystemDialer()));
             } catch (RemoteException e) {
@@ -262,6 +281,33 @@ public class CallScreeningServiceFilter extends CallFilter {
             CallsManager callsManager,
             AppLabelProxy appLabelProxy,
             ParcelableCallUtils.Converter parcelableCallUtilsConverter) {
+        this(call, packageName, packageType, context, callsManager, appLabelProxy,
+                parcelableCallUtilsConverter, null);
+    }
+
+    public CallScreeningServiceFilter(
+            Call call,
+            String packageName,
+            int packageType,
+            Context context,
+            CallsManager callsManager,
+            AppLabelProxy appLabelProxy,
+            ParcelableCallUtils.Converter parcelableCallUtilsConverter,
+            CallScreeningVerdictCache verdictCache) {
+        this(call, packageName, packageType, context, callsManager, appLabelProxy,
+                parcelableCallUtilsConverter, verdictCache, null);
+    }
+
+    public CallScreeningServiceFilter(
+            Call call,
+            String packageName,
+            int packageType,
+            Context context,
+            CallsManager callsManager,
+            AppLabelProxy appLabelProxy,
+            ParcelableCallUtils.Converter parcelableCallUtilsConverter,
+            CallScreeningVerdictCache verdictCache,
+            CallScreeningServiceConnectionManager connectionManager) {
         super();
         mCall = call;
         mPackageName = packageName;
@@ -271,6 +317,8 @@ public class CallScreeningServiceFilter extends CallFilter {
         mCallsManager = callsManager;
         mAppName = appLabelProxy.getAppLabel(mPackageName);
         mParcelableCallUtilsConverter = parcelableCallUtilsConverter;
+        mVerdictCache = verdictCache;
+        mConnectionManager = connectionManager;
     }
 
     @Override
@@ -294,6 +342,16 @@ public class CallScreeningServiceFilter extends CallFilter {
 
         CompletableFuture<CallFilteringResult> resultFuture = new CompletableFuture<>();
 
+        CallScreeningVerdictCache.Verdict verdict = mVerdictCache == null ? null
+                : mVerdictCache.get(mCall, mPackageName);
+        if (verdict != null) {
+            // Replay the cached response as though the service had just sent it.
+            Log.addEvent(mCall, LogUtils.Events.SCREENING_CACHED, verdict.componentName);
+            new CallScreeningAdapter(resultFuture, true).onScreeningResponse(mCall.getId(),
+                    verdict.componentName, verdict.response);
+            return resultFuture;
+        }
+
         bindCallScreeningService(resultFuture);
         return resultFuture;
     }
@@ -303,6 +361,18 @@ public class CallScreeningServiceFilter extends CallFilter {
         return super.toString() + ": " + mPackageName;
     }
 
+    @Override
+    public String getTelemetryName() {
+        switch (mPackagetype) {
+            case PACKAGE_TYPE_CARRIER:
+                return "CarrierCallScreening";
+            case PACKAGE_TYPE_DEFAULT_DIALER:
+                return "DialerCallScreening";
+            default:
+                return "UserCallScreening";
+        }
+    }
+
     private boolean hasReadContactsPermission() {
         int permission = PackageManager.PERMISSION_DENIED;
         if (mPackagetype == PACKAGE_TYPE_CARRIER || mPackagetype == PACKAGE_TYPE_DEFAULT_DIALER) {
@@ -318,8 +388,11 @@ public class CallScreeningServiceFilter extends CallFilter {
             CompletableFuture<CallFilteringResult> resultFuture) {
         CallScreeningServiceConnection connection = new CallScreeningServiceConnection(
                 resultFuture);
-        if (!CallScreeningServiceHelper.bindCallScreeningService(mContext,
-                mCall.getAssociatedUser(), mPackageName, connection)) {
+        boolean isBound = mConnectionManager != null
+                ? mConnectionManager.bind(mCall.getAssociatedUser(), mPackageName, connection)
+                : CallScreeningServiceHelper.bindCallScreeningService(mContext,
+                        mCall.getAssociatedUser(), mPackageName, connection);
+        if (!isBound) {
             Log.i(this, "Call screening service binding failed.");
             resultFuture.complete(mPriorStageResult);
         } else {
@@ -328,7 +401,9 @@ public class CallScreeningServiceFilter extends CallFilter {
     }
 
     public void unbindCallScreeningService() {
-        if (mConnection != null) {
+        if (mConnection != null && mConnectionManager != null) {
+            mConnectionManager.unbind(mConnection, mCall.getId());
+        } else if (mConnection != null) {
             try {
                 mContext.unbindService(mConnection);
             } catch (IllegalArgumentException e) {
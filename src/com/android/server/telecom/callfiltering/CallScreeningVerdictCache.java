@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ComponentName;
+import android.net.Uri;
+import android.provider.DeviceConfig;
+import android.telecom.CallScreeningService;
+import android.telecom.Log;
+import android.telecom.TelecomManager;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A short-lived cache of call screening service responses, so that repeat calls from the same
+ * number can be screened without binding to the call screening service again.
+ * <p>
+ * Responses are keyed by the normalized caller number, the package of the screening service and
+ * the user the call is associated with.  Entries expire after {@link #TTL_MILLIS} and the cache
+ * holds at most {@link #MAX_ENTRIES} entries, evicting the least recently used.  Responses which
+ * request further screening via call audio are never cached, since they require the screening
+ * app to take part in the call.  The cache for a user is cleared whenever the screening or
+ * dialer role for that user changes.
+ */
+public class CallScreeningVerdictCache {
+    /**
+     * DeviceConfig flag which enables caching call screening service responses.
+     */
+    private static final String ENABLE_CALL_SCREENING_VERDICT_CACHE =
+            "enable_call_screening_verdict_cache";
+
+    @VisibleForTesting
+    public static final int MAX_ENTRIES = 64;
+
+    @VisibleForTesting
+    public static final long TTL_MILLIS = 30 * 1000L;
+
+    private static class Key {
+        final String mNumber;
+        final String mPackageName;
+        final int mUserId;
+
+        Key(String number, String packageName, int userId) {
+            mNumber = number;
+            mPackageName = packageName;
+            mUserId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mUserId == key.mUserId && mNumber.equals(key.mNumber)
+                    && mPackageName.equals(key.mPackageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mNumber, mPackageName, mUserId);
+        }
+    }
+
+    /**
+     * A cached response from a call screening service.
+     */
+    public static class Verdict {
+        public final ComponentName componentName;
+        public final CallScreeningService.ParcelableCallResponse response;
+        final long mCachedElapsedMillis;
+
+        Verdict(ComponentName componentName,
+                CallScreeningService.ParcelableCallResponse response, long cachedElapsedMillis) {
+            this.componentName = componentName;
+            this.response = response;
+            mCachedElapsedMillis = cachedElapsedMillis;
+        }
+    }
+
+    private final ClockProxy mClockProxy;
+    private final Map<Key, Verdict> mVerdicts = new LinkedHashMap<Key, Verdict>(
+            16, 0.75f, true /* accessOrder */) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Verdict> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private int mNumHits;
+    private int mNumMisses;
+    // Overrides the DeviceConfig flag when non-null.
+    private Boolean mIsEnabled;
+
+    public CallScreeningVerdictCache(ClockProxy clockProxy) {
+        mClockProxy = clockProxy;
+    }
+
+    @VisibleForTesting
+    public void setEnabled(boolean isEnabled) {
+        mIsEnabled = isEnabled;
+    }
+
+    /**
+     * @return {@code true} if call screening responses should be cached.
+     */
+    public boolean isEnabled() {
+        if (mIsEnabled != null) {
+            return mIsEnabled;
+        }
+        return DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_TELEPHONY,
+                ENABLE_CALL_SCREENING_VERDICT_CACHE, false);
+    }
+
+    /**
+     * Finds a cached response for a call.
+     *
+     * @param call The incoming call.
+     * @param packageName The package of the call screening service.
+     * @return the cached response, or {@code null} if there is none.
+     */
+    public synchronized Verdict get(Call call, String packageName) {
+        Key key = getKey(call, packageName);
+        if (key == null) {
+            return null;
+        }
+        Verdict verdict = mVerdicts.get(key);
+        if (verdict != null
+                && mClockProxy.elapsedRealtime() - verdict.mCachedElapsedMillis > TTL_MILLIS) {
+            mVerdicts.remove(key);
+            verdict = null;
+        }
+        if (verdict == null) {
+            mNumMisses++;
+        } else {
+            mNumHits++;
+        }
+        return verdict;
+    }
+
+    /**
+     * Caches the response of a call screening service for a call.
+     *
+     * @param call The incoming call.
+     * @param packageName The package of the call screening service.
+     * @param componentName The call screening service which responded.
+     * @param response The response.
+     */
+    public synchronized void put(Call call, String packageName, ComponentName componentName,
+            CallScreeningService.ParcelableCallResponse response) {
+        if (response == null || response.shouldScreenCallViaAudioProcessing()) {
+            return;
+        }
+        Key key = getKey(call, packageName);
+        if (key == null) {
+            return;
+        }
+        mVerdicts.put(key, new Verdict(componentName, response, mClockProxy.elapsedRealtime()));
+    }
+
+    /**
+     * Removes all cached responses for a user.
+     *
+     * @param userId The user whose responses should be removed.
+     */
+    public synchronized void invalidate(int userId) {
+        Iterator<Key> iterator = mVerdicts.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mUserId == userId) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public synchronized void invalidateAll() {
+        if (!mVerdicts.isEmpty()) {
+            Log.i(this, "invalidateAll: removing %d verdicts", mVerdicts.size());
+        }
+        mVerdicts.clear();
+    }
+
+    @VisibleForTesting
+    public synchronized int size() {
+        return mVerdicts.size();
+    }
+
+    @VisibleForTesting
+    public synchronized int getNumHits() {
+        return mNumHits;
+    }
+
+    @VisibleForTesting
+    public synchronized int getNumMisses() {
+        return mNumMisses;
+    }
+
+    private static Key getKey(Call call, String packageName) {
+        Uri handle = call.getHandle();
+        // Restricted and unknown numbers all share an empty handle; never cache them.
+        if (packageName == null || handle == null || call.getAssociatedUser() == null
+                || call.getHandlePresentation() != TelecomManager.PRESENTATION_ALLOWED) {
+            return null;
+        }
+        String number = handle.getSchemeSpecificPart();
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        String normalized = PhoneNumberUtils.normalizeNumber(number);
+        return new Key(TextUtils.isEmpty(normalized) ? number : normalized, packageName,
+                call.getAssociatedUser().getIdentifier());
+    }
+
+    /**
+     * Dumps the state of the cache.
+     *
+     * @param pw The {@code IndentingPrintWriter} to write the state to.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.print("enabled=");
+        pw.print(isEnabled());
+        pw.print(", size=");
+        pw.print(mVerdicts.size());
+        pw.print(", hits=");
+        pw.print(mNumHits);
+        pw.print(", misses=");
+        pw.println(mNumMisses);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import android.telecom.CallerInfo;
+import android.telecom.Log;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallerInfoLookupHelper;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves the contact information for an incoming call once and shares the result between the
+ * call filters which need it.  The lookup is started by the first filter to ask for it.
+ */
+public class CallerInfoFuture {
+    private final Call mCall;
+    private final CallerInfoLookupHelper mCallerInfoLookupHelper;
+    private CompletableFuture<CallerInfo> mFuture;
+    private long mStartElapsedMillis;
+    private long mDurationMillis = -1;
+
+    public CallerInfoFuture(Call call, CallerInfoLookupHelper callerInfoLookupHelper) {
+        mCall = call;
+        mCallerInfoLookupHelper = callerInfoLookupHelper;
+    }
+
+    /**
+     * Starts the lookup if it has not already been started.
+     *
+     * @return a future which completes with the {@link CallerInfo} for the call's handle, or
+     * {@code null} if no caller info could be found.
+     */
+    public synchronized CompletableFuture<CallerInfo> get() {
+        if (mFuture != null) {
+            return mFuture;
+        }
+        final CompletableFuture<CallerInfo> future = new CompletableFuture<>();
+        mFuture = future;
+        mStartElapsedMillis = SystemClock.elapsedRealtime();
+        mCallerInfoLookupHelper.startLookup(mCall.getHandle(),
+                new CallerInfoLookupHelper.OnQueryCompleteListener() {
+                    @Override
+                    public void onCallerInfoQueryComplete(Uri handle, CallerInfo info) {
+                        synchronized (CallerInfoFuture.this) {
+                            mDurationMillis = SystemClock.elapsedRealtime()
+                                    - mStartElapsedMillis;
+                        }
+                        if (info == null) {
+                            Log.w(this, "CallerInfo lookup returned a null CallerInfo.");
+                            future.complete(null);
+                        } else if (handle == null || !Objects.equals(mCall.getHandle(), handle)) {
+                            Log.w(this, "CallerInfo lookup returned with handle %s, should be %s",
+                                    handle, mCall.getHandle());
+                            future.complete(null);
+                        } else {
+                            future.complete(info);
+                        }
+                    }
+
+                    @Override
+                    public void onContactPhotoQueryComplete(Uri handle, CallerInfo info) {
+                        // Ignore
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * @return how long the lookup took, or {@code -1} if it has not completed.
+     */
+    public synchronized long getDurationMillis() {
+        return mDurationMillis;
+    }
+}
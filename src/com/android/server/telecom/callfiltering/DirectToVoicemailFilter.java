@@ -16,67 +16,53 @@
 
 package com.android.server.telecom.callfiltering;
 
-import android.net.Uri;
 import android.provider.CallLog;
-import android.telecom.CallerInfo;
 import android.telecom.Log;
 
 import com.android.server.telecom.Call;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.LogUtils;
 
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
 public class DirectToVoicemailFilter extends CallFilter {
     private final Call mCall;
-    private final CallerInfoLookupHelper mCallerInfoLookupHelper;
+    private final CallerInfoFuture mCallerInfoFuture;
 
     public DirectToVoicemailFilter(Call call, CallerInfoLookupHelper callerInfoLookupHelper) {
+        this(call, new CallerInfoFuture(call, callerInfoLookupHelper));
+    }
+
+    /**
+     * @param callerInfoFuture The contact lookup for the call, shared with other filters.
+     */
+    public DirectToVoicemailFilter(Call call, CallerInfoFuture callerInfoFuture) {
         mCall = call;
-        mCallerInfoLookupHelper = callerInfoLookupHelper;
+        mCallerInfoFuture = callerInfoFuture;
     }
 
     @Override
     public CompletionStage<CallFilteringResult> startFilterLookup(CallFilteringResult result) {
         Log.addEvent(mCall, LogUtils.Events.DIRECT_TO_VM_INITIATED);
-        CompletableFuture<CallFilteringResult> resultFuture = new CompletableFuture<>();
-        mCallerInfoLookupHelper.startLookup(mCall.getHandle(),
-                new CallerInfoLookupHelper.OnQueryCompleteListener() {
-                    @Override
-                    public void onCallerInfoQueryComplete(Uri handle, CallerInfo info) {
-                        if ((handle != null) && Objects.equals(mCall.getHandle(), handle)
-                                && (info != null)) {
-                            resultFuture.complete(new CallFilteringResult.Builder()
-                                    .setShouldAllowCall(!info.shouldSendToVoicemail)
-                                    .setShouldReject(info.shouldSendToVoicemail)
-                                    .setShouldAddToCallLog(true)
-                                    .setShouldShowNotification(true)
-                                    .setCallBlockReason(info.shouldSendToVoicemail ?
-                                            CallLog.Calls.BLOCK_REASON_DIRECT_TO_VOICEMAIL
-                                            : CallLog.Calls.BLOCK_REASON_NOT_BLOCKED)
-                                    .setContactExists(info.contactExists)
-                                    .build());
-                        } else {
-                            if (info == null) {
-                                Log.w(this, "CallerInfo lookup returned a null " +
-                                        "CallerInfo.");
-                            } else {
-                                Log.w(this, "CallerInfo lookup returned with "
-                                                + "handle %s, should be %s", handle,
-                                        mCall.getHandle());
-                            }
-                            resultFuture.complete(IncomingCallFilterGraph.DEFAULT_RESULT);
-                        }
-                        Log.addEvent(mCall, LogUtils.Events.DIRECT_TO_VM_FINISHED);
-                    }
-
-                    @Override
-                    public void onContactPhotoQueryComplete(Uri handle, CallerInfo info) {
-                        // Ignore
-                    }
-                });
-        return resultFuture;
+        return mCallerInfoFuture.get().thenApply(info -> {
+            CallFilteringResult filterResult;
+            if (info != null) {
+                filterResult = new CallFilteringResult.Builder()
+                        .setShouldAllowCall(!info.shouldSendToVoicemail)
+                        .setShouldReject(info.shouldSendToVoicemail)
+                        .setShouldAddToCallLog(true)
+                        .setShouldShowNotification(true)
+                        .setCallBlockReason(info.shouldSendToVoicemail ?
+                                CallLog.Calls.BLOCK_REASON_DIRECT_TO_VOICEMAIL
+                                : CallLog.Calls.BLOCK_REASON_NOT_BLOCKED)
+                        .setContactExists(info.contactExists)
+                        .build();
+            } else {
+                filterResult = IncomingCallFilterGraph.DEFAULT_RESULT;
+            }
+            Log.addEvent(mCall, LogUtils.Events.DIRECT_TO_VM_FINISHED);
+            Log.i(this, "Contact lookup took %d ms", mCallerInfoFuture.getDurationMillis());
+            return filterResult;
+        });
     }
 }
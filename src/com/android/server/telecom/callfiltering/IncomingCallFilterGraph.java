@@ -19,9 +19,12 @@ package com.android.server.telecom.callfiltering;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.telecom.Analytics;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.LoggedHandlerExecutor;
 import com.android.server.telecom.LogUtils;
@@ -29,11 +32,12 @@ import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class IncomingCallFilterGraph {
-    //TODO: Add logging for control flow.
     public static final String TAG = "IncomingCallFilterGraph";
     public static final CallFilteringResult DEFAULT_RESULT =
             new CallFilteringResult.Builder()
@@ -55,6 +59,10 @@ public class IncomingCallFilterGraph {
     private CallFilteringResult mCurrentResult;
     private Context mContext;
     private Timeouts.Adapter mTimeoutsAdapter;
+    private final CallFilterTelemetry mTelemetry;
+    private CallFilter mStartSentinel;
+    private long mStartNanos;
+    private boolean mTimingsReported;
 
     private class PostFilterTask {
         private final CallFilter mFilter;
@@ -64,6 +72,7 @@ public class IncomingCallFilterGraph {
         }
 
         public CallFilteringResult whenDone(CallFilteringResult result) {
+            mFilter.mFinishedNanos = SystemClock.elapsedRealtimeNanos();
             Log.i(TAG, "Filter %s done, result: %s.", mFilter, result);
             mFilter.result = result;
             for (CallFilter filter : mFilter.getFollowings()) {
@@ -77,6 +86,7 @@ public class IncomingCallFilterGraph {
                     mListener.onCallFilteringComplete(mCall, result, false);
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED, result);
                 }
+                reportTimings(false /* isTimedOut */);
                 mHandlerThread.quit();
             }
             return result;
@@ -85,6 +95,12 @@ public class IncomingCallFilterGraph {
 
     public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
             Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock) {
+        this(call, listener, context, timeoutsAdapter, lock, null);
+    }
+
+    public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
+            Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock,
+            CallFilterTelemetry telemetry) {
         mListener = listener;
         mCall = call;
         mFiltersList = new ArrayList<>();
@@ -97,6 +113,7 @@ public class IncomingCallFilterGraph {
         mContext = context;
         mTimeoutsAdapter = timeoutsAdapter;
         mCurrentResult = DEFAULT_RESULT;
+        mTelemetry = telemetry;
     }
 
     public void addFilter(CallFilter filter) {
@@ -105,7 +122,9 @@ public class IncomingCallFilterGraph {
 
     public void performFiltering() {
         Log.addEvent(mCall, LogUtils.Events.FILTERING_INITIATED);
+        mStartNanos = SystemClock.elapsedRealtimeNanos();
         CallFilter dummyStart = new CallFilter();
+        mStartSentinel = dummyStart;
         mCompletionSentinel = new CallFilter();
 
         for (CallFilter filter : mFiltersList) {
@@ -125,6 +144,7 @@ public class IncomingCallFilterGraph {
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_TIMED_OUT);
                     mListener.onCallFilteringComplete(mCall, mCurrentResult, true);
                     mFinished = true;
+                    reportTimings(true /* isTimedOut */);
                     mHandlerThread.quit();
                 }
                 for (CallFilter filter : mFiltersList) {
@@ -151,6 +171,7 @@ public class IncomingCallFilterGraph {
         }
         mCurrentResult = result;
         final CallFilteringResult input = result;
+        filter.mScheduledNanos = SystemClock.elapsedRealtimeNanos();
 
         CompletableFuture<CallFilteringResult> startFuture =
                 CompletableFuture.completedFuture(input);
@@ -158,8 +179,10 @@ public class IncomingCallFilterGraph {
 
         // TODO: improve these filter logging names to be more reflective of the filters that are
         // executing
-        startFuture.thenComposeAsync(filter::startFilterLookup,
-                new LoggedHandlerExecutor(mHandler, "ICFG.sF", null))
+        startFuture.thenComposeAsync(priorStageResult -> {
+                    filter.mStartedNanos = SystemClock.elapsedRealtimeNanos();
+                    return filter.startFilterLookup(priorStageResult);
+                }, new LoggedHandlerExecutor(mHandler, "ICFG.sF", null))
                 .thenApplyAsync(postFilterTask::whenDone,
                         new LoggedHandlerExecutor(mHandler, "ICFG.sF", null))
                 .exceptionally((t) -> {
@@ -169,6 +192,92 @@ public class IncomingCallFilterGraph {
         Log.i(TAG, "Filter %s scheduled.", filter);
     }
 
+    /**
+     * Determines the filters which determined when filtering finished.  For a graph which
+     * completed, this is the chain of filters which each completed last among the dependencies
+     * of the next.  For a graph which timed out, it is the filters which had not completed.
+     *
+     * @param isTimedOut Whether the graph timed out.
+     * @return the filters on the critical path, in the order they ran.
+     */
+    @VisibleForTesting
+    public List<CallFilter> getCriticalPath(boolean isTimedOut) {
+        List<CallFilter> criticalPath = new ArrayList<>();
+        if (isTimedOut) {
+            for (CallFilter filter : mFiltersList) {
+                if (filter.mFinishedNanos == 0) {
+                    criticalPath.add(filter);
+                }
+            }
+            return criticalPath;
+        }
+        CallFilter current = mCompletionSentinel;
+        while (current != null) {
+            CallFilter gating = null;
+            for (CallFilter dependency : current.getDependencies()) {
+                if (gating == null || dependency.mFinishedNanos > gating.mFinishedNanos) {
+                    gating = dependency;
+                }
+            }
+            if (gating == null || gating == mStartSentinel) {
+                break;
+            }
+            criticalPath.add(gating);
+            current = gating;
+        }
+        Collections.reverse(criticalPath);
+        return criticalPath;
+    }
+
+    /**
+     * Reports the queueing delay and execution time of each filter to the call's analytics and to
+     * the aggregated telemetry.
+     */
+    private void reportTimings(boolean isTimedOut) {
+        if (mTimingsReported) {
+            return;
+        }
+        mTimingsReported = true;
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        List<CallFilter> criticalPath = getCriticalPath(isTimedOut);
+        Analytics.CallInfo analytics = mCall.getAnalytics();
+        StringBuilder summary = new StringBuilder();
+        for (CallFilter filter : mFiltersList) {
+            boolean isCompleted = filter.mFinishedNanos != 0;
+            long queueDelayMillis = 0;
+            long executionMillis = 0;
+            if (filter.mScheduledNanos != 0) {
+                long startedNanos = filter.mStartedNanos != 0 ? filter.mStartedNanos : nowNanos;
+                queueDelayMillis = toMillis(startedNanos - filter.mScheduledNanos);
+                executionMillis = toMillis(
+                        (isCompleted ? filter.mFinishedNanos : nowNanos) - startedNanos);
+            }
+            boolean isOnCriticalPath = criticalPath.contains(filter);
+            String name = filter.getTelemetryName();
+            if (analytics != null) {
+                analytics.addCallFilterTiming(name, queueDelayMillis, executionMillis,
+                        isOnCriticalPath, isCompleted);
+            }
+            if (mTelemetry != null) {
+                mTelemetry.recordFilter(name, queueDelayMillis, executionMillis,
+                        isOnCriticalPath, isCompleted);
+            }
+            summary.append(name).append("(q=").append(queueDelayMillis)
+                    .append(", e=").append(executionMillis)
+                    .append(isCompleted ? "" : ", incomplete")
+                    .append(isOnCriticalPath ? ", critical" : "").append(") ");
+        }
+        long totalMillis = toMillis(nowNanos - mStartNanos);
+        if (mTelemetry != null) {
+            mTelemetry.recordGraph(totalMillis, isTimedOut);
+        }
+        Log.i(TAG, "Filtering took %d ms, timedOut=%b: %s", totalMillis, isTimedOut, summary);
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     public static void addEdge(CallFilter before, CallFilter after) {
         before.addFollowings(after);
         after.addDependency(before);
@@ -41,8 +41,10 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Binder;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.CallLog.Calls;
+import android.provider.DeviceConfig;
 import android.telecom.CallerInfo;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
@@ -57,6 +59,7 @@ import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.CallsManagerListenerBase;
 import com.android.server.telecom.Constants;
@@ -127,6 +130,13 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
     private static final String NOTIFICATION_TAG = MissedCallNotifierImpl.class.getSimpleName();
     private static final String MISSED_CALL_POWER_SAVE_REASON = "missed-call";
 
+    /**
+     * DeviceConfig flag which enables reloading the missed calls in the call log with a single
+     * caller info lookup and notification, rather than one of each per missed call.
+     */
+    private static final String ENABLE_BATCHED_MISSED_CALL_RELOAD =
+            "enable_batched_missed_call_reload";
+
     private final Context mContext;
     private final PhoneAccountRegistrar mPhoneAccountRegistrar;
     private final NotificationManager mNotificationManager;
@@ -141,6 +151,8 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
     private final Map<UserHandle, Integer> mMissedCallCounts;
 
     private Set<UserHandle> mUsersToLoadAfterBootComplete = new ArraySet<>();
+    // Overrides the DeviceConfig flag when non-null.
+    private Boolean mIsBatchedReloadEnabled;
 
     public MissedCallNotifierImpl(Context context, PhoneAccountRegistrar phoneAccountRegistrar,
             DefaultDialerCache defaultDialerCache,
@@ -310,11 +322,23 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
     }
 
     private void showMissedCallNotification(@NonNull CallInfo callInfo, UserHandle userHandle) {
+        showMissedCallNotification(callInfo, userHandle, 1);
+    }
+
+    /**
+     * Adds missed calls to the count for a user and updates the notification.
+     *
+     * @param callInfo The most recent of the missed calls.
+     * @param userHandle The user the calls were missed by.
+     * @param numCalls The number of missed calls being added.
+     */
+    private void showMissedCallNotification(@NonNull CallInfo callInfo, UserHandle userHandle,
+            int numCalls) {
         int missedCallCounts;
         synchronized (mMissedCallCountsLock) {
             Integer currentCount = mMissedCallCounts.get(userHandle);
             missedCallCounts = currentCount == null ? 0 : currentCount;
-            missedCallCounts++;
+            missedCallCounts += numCalls;
             mMissedCallCounts.put(userHandle, missedCallCounts);
         }
 
@@ -628,6 +652,11 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
                         synchronized(mMissedCallCountsLock) {
                             mMissedCallCounts.remove(userHandle);
                         }
+                        if (isBatchedReloadEnabled()) {
+                            reloadBatched(cursor, callerInfoLookupHelper, callInfoFactory,
+                                    userHandle);
+                            return;
+                        }
                         while (cursor.moveToNext()) {
                             // Get data about the missed call from the cursor
                             final String handleString = cursor.getString(CALL_LOG_COLUMN_NUMBER);
@@ -635,16 +664,8 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
                                     cursor.getInt(CALL_LOG_COLUMN_NUMBER_PRESENTATION);
                             final long date = cursor.getLong(CALL_LOG_COLUMN_DATE);
 
-                            final Uri handle;
-                            if (presentation != Calls.PRESENTATION_ALLOWED
-                                    || TextUtils.isEmpty(handleString)) {
-                                handle = null;
-                            } else {
-                                // TODO: Remove the assumption that numbers are SIP or TEL only.
-                                handle = Uri.fromParts(PhoneNumberUtils.isUriNumber(handleString) ?
-                                        PhoneAccount.SCHEME_SIP : PhoneAccount.SCHEME_TEL,
-                                                handleString, null);
-                            }
+                            final Uri handle = getHandleForCallLogEntry(handleString,
+                                    presentation);
 
                             callerInfoLookupHelper.startLookup(handle,
                                     new CallerInfoLookupHelper.OnQueryCompleteListener() {
@@ -698,6 +719,100 @@ public class MissedCallNotifierImpl extends CallsManagerListenerBase implements
                 CALL_LOG_WHERE_CLAUSE, null, Calls.DEFAULT_SORT_ORDER);
     }
 
+    @VisibleForTesting
+    public void setBatchedReloadEnabled(boolean isEnabled) {
+        mIsBatchedReloadEnabled = isEnabled;
+    }
+
+    private boolean isBatchedReloadEnabled() {
+        if (mIsBatchedReloadEnabled != null) {
+            return mIsBatchedReloadEnabled;
+        }
+        return DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_TELEPHONY,
+                ENABLE_BATCHED_MISSED_CALL_RELOAD, false);
+    }
+
+    private static Uri getHandleForCallLogEntry(String handleString, int presentation) {
+        if (presentation != Calls.PRESENTATION_ALLOWED || TextUtils.isEmpty(handleString)) {
+            return null;
+        }
+        // TODO: Remove the assumption that numbers are SIP or TEL only.
+        return Uri.fromParts(PhoneNumberUtils.isUriNumber(handleString) ?
+                PhoneAccount.SCHEME_SIP : PhoneAccount.SCHEME_TEL, handleString, null);
+    }
+
+    /**
+     * Reloads all of the unread missed calls in the call log with a single notification.
+     * <p>
+     * Only the most recent missed call is shown when there is one; otherwise the notification
+     * just shows how many calls were missed.  Either way, only the caller info of the most recent
+     * call is needed, so it is looked up once regardless of how many calls were missed or how
+     * many times each caller called.
+     *
+     * @param cursor The missed calls, most recent first.
+     */
+    private void reloadBatched(Cursor cursor, CallerInfoLookupHelper callerInfoLookupHelper,
+            CallInfoFactory callInfoFactory, UserHandle userHandle) {
+        final long startMillis = SystemClock.elapsedRealtime();
+        Set<Uri> uniqueHandles = new ArraySet<>();
+        Uri latestHandle = null;
+        long latestDate = 0;
+        int numCalls = 0;
+        while (cursor.moveToNext()) {
+            Uri handle = getHandleForCallLogEntry(cursor.getString(CALL_LOG_COLUMN_NUMBER),
+                    cursor.getInt(CALL_LOG_COLUMN_NUMBER_PRESENTATION));
+            long date = cursor.getLong(CALL_LOG_COLUMN_DATE);
+            if (numCalls == 0 || date > latestDate) {
+                latestHandle = handle;
+                latestDate = date;
+            }
+            uniqueHandles.add(handle);
+            numCalls++;
+        }
+        if (numCalls == 0) {
+            return;
+        }
+
+        final Uri handle = latestHandle;
+        final long date = latestDate;
+        final int numUniqueHandles = uniqueHandles.size();
+        final int numMissedCalls = numCalls;
+        callerInfoLookupHelper.startLookup(handle,
+                new CallerInfoLookupHelper.OnQueryCompleteListener() {
+                    @Override
+                    public void onCallerInfoQueryComplete(Uri queryHandle, CallerInfo info) {
+                        if (!Objects.equals(queryHandle, handle)) {
+                            Log.w(MissedCallNotifierImpl.this,
+                                    "CallerInfo query returned with different handle.");
+                            return;
+                        }
+                        if (info == null || info.getContactDisplayPhotoUri() == null) {
+                            showReloadedNotification(info);
+                        }
+                    }
+
+                    @Override
+                    public void onContactPhotoQueryComplete(Uri queryHandle, CallerInfo info) {
+                        if (!Objects.equals(queryHandle, handle)) {
+                            Log.w(MissedCallNotifierImpl.this,
+                                    "CallerInfo query for photo returned with different handle.");
+                            return;
+                        }
+                        showReloadedNotification(info);
+                    }
+
+                    private void showReloadedNotification(CallerInfo info) {
+                        CallInfo callInfo = callInfoFactory.makeCallInfo(info, null, handle,
+                                date);
+                        showMissedCallNotification(callInfo, userHandle, numMissedCalls);
+                        Log.i(MissedCallNotifierImpl.this, "reloadBatched: user=%d, calls=%d, "
+                                + "uniqueHandles=%d, took %dms", userHandle.getIdentifier(),
+                                numMissedCalls, numUniqueHandles,
+                                SystemClock.elapsedRealtime() - startMillis);
+                    }
+                });
+    }
+
     @Override
     public void setCurrentUserHandle(UserHandle currentUserHandle) {
         mCurrentUserHandle = currentUserHandle;
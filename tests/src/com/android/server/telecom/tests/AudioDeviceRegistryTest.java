@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.AudioDeviceRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class AudioDeviceRegistryTest extends TelecomTestCase {
+    private AudioManager mAudioManager;
+    private AudioDeviceCallback mCallback;
+    private AudioDeviceRegistry mRegistry;
+    private final List<AudioDeviceInfo> mCommunicationDevices = new ArrayList<>();
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mAudioManager = mock(AudioManager.class);
+        when(mAudioManager.getAvailableCommunicationDevices()).thenAnswer(
+                invocation -> new ArrayList<>(mCommunicationDevices));
+        mRegistry = new AudioDeviceRegistry(mAudioManager);
+        ArgumentCaptor<AudioDeviceCallback> captor =
+                ArgumentCaptor.forClass(AudioDeviceCallback.class);
+        verify(mAudioManager).registerAudioDeviceCallback(captor.capture(),
+                nullable(Handler.class));
+        mCallback = captor.getValue();
+    }
+
+    /**
+     * Verifies that repeated lookups are served from memory until a device change is reported.
+     */
+    @SmallTest
+    @Test
+    public void testLookupsServedFromMemory() {
+        AudioDeviceInfo speaker = createDevice(1, AudioDeviceInfo.TYPE_BUILTIN_SPEAKER, "");
+        mCommunicationDevices.add(speaker);
+
+        for (int i = 0; i < 5; i++) {
+            assertSame(speaker,
+                    mRegistry.getCommunicationDevice(AudioDeviceInfo.TYPE_BUILTIN_SPEAKER));
+        }
+        verify(mAudioManager, times(1)).getAvailableCommunicationDevices();
+
+        AudioDeviceInfo hearingAid = createDevice(2, AudioDeviceInfo.TYPE_HEARING_AID, "AA");
+        mCommunicationDevices.add(hearingAid);
+        mCallback.onAudioDevicesAdded(new AudioDeviceInfo[] {hearingAid});
+        assertSame(hearingAid, mRegistry.getCommunicationDevice(
+                AudioDeviceInfo.TYPE_HEARING_AID, "AA"));
+        assertSame(speaker,
+                mRegistry.getCommunicationDevice(AudioDeviceInfo.TYPE_BUILTIN_SPEAKER));
+        assertEquals(2, mRegistry.getNumAudioManagerCalls());
+    }
+
+    /**
+     * Verifies that a device which connected before its callback arrived is still found.
+     */
+    @SmallTest
+    @Test
+    public void testMissReloadsOnce() {
+        assertNull(mRegistry.getCommunicationDevice(AudioDeviceInfo.TYPE_BLE_HEADSET));
+        AudioDeviceInfo bleHeadset = createDevice(3, AudioDeviceInfo.TYPE_BLE_HEADSET, "BB");
+        mCommunicationDevices.add(bleHeadset);
+
+        assertSame(bleHeadset, mRegistry.getCommunicationDevice(AudioDeviceInfo.TYPE_BLE_HEADSET));
+        assertNull(mRegistry.getCommunicationDevice(AudioDeviceInfo.TYPE_BLE_HEADSET, "CC"));
+        assertEquals(3, mRegistry.getNumAudioManagerCalls());
+    }
+
+    /**
+     * Verifies that output devices are tracked from the callback after the initial load.
+     */
+    @SmallTest
+    @Test
+    public void testOutputDevicesTracked() {
+        AudioDeviceInfo earpiece = createDevice(4, AudioDeviceInfo.TYPE_BUILTIN_EARPIECE, "");
+        when(mAudioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS)).thenReturn(
+                new AudioDeviceInfo[] {earpiece});
+        assertTrue(mRegistry.hasOutputDevice(AudioDeviceInfo.TYPE_BUILTIN_EARPIECE));
+        assertFalse(mRegistry.hasOutputDevice(AudioDeviceInfo.TYPE_WIRED_HEADSET));
+
+        AudioDeviceInfo headset = createDevice(5, AudioDeviceInfo.TYPE_WIRED_HEADSET, "");
+        mCallback.onAudioDevicesAdded(new AudioDeviceInfo[] {headset});
+        assertTrue(mRegistry.hasOutputDevice(AudioDeviceInfo.TYPE_WIRED_HEADSET));
+        mCallback.onAudioDevicesRemoved(new AudioDeviceInfo[] {headset});
+        assertFalse(mRegistry.hasOutputDevice(AudioDeviceInfo.TYPE_WIRED_HEADSET));
+        verify(mAudioManager, times(1)).getDevices(anyInt());
+    }
+
+    private static AudioDeviceInfo createDevice(int id, int type, String address) {
+        AudioDeviceInfo device = mock(AudioDeviceInfo.class);
+        when(device.getId()).thenReturn(id);
+        when(device.getType()).thenReturn(type);
+        when(device.getAddress()).thenReturn(address);
+        when(device.isSink()).thenReturn(true);
+        return device;
+    }
+}
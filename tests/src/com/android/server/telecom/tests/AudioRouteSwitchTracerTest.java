@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.telecom.CallAudioState;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.AudioRouteSwitchTracer;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class AudioRouteSwitchTracerTest extends TelecomTestCase {
+    private ClockProxy mClockProxy;
+    private final List<AudioRouteSwitchTracer.Span> mFinishedSpans = new ArrayList<>();
+    private AudioRouteSwitchTracer mTracer;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mClockProxy = mock(ClockProxy.class);
+        setTime(1000L);
+        mTracer = new AudioRouteSwitchTracer(mClockProxy, mFinishedSpans::add);
+    }
+
+    /**
+     * Verifies that a switch to speaker completes once the speaker route is entered, and that
+     * the time spent queued is included.
+     */
+    @SmallTest
+    @Test
+    public void testSwitchToSpeakerCompletesOnRouteEntry() {
+        mTracer.beginSwitch("session", CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_SPEAKER, 5);
+        setTime(1020L);
+        mTracer.recordHop("setCommunicationDevice");
+        mTracer.onRouteEntered("ActiveEarpieceRoute", CallAudioState.ROUTE_EARPIECE);
+        assertTrue(mFinishedSpans.isEmpty());
+        setTime(1030L);
+        mTracer.onRouteEntered("ActiveSpeakerRoute", CallAudioState.ROUTE_SPEAKER);
+
+        assertEquals(1, mFinishedSpans.size());
+        AudioRouteSwitchTracer.Span span = mFinishedSpans.get(0);
+        assertTrue(span.isCompleted());
+        assertEquals(35, span.getDurationMillis());
+        assertEquals(4, span.getHops().size());
+        assertEquals(35, mTracer.getPercentileMillis(CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_SPEAKER, AudioRouteSwitchTracer.DEVICE_TYPE_NONE, 50));
+    }
+
+    /**
+     * Verifies that a switch to Bluetooth only completes once audio connects, and that its
+     * latency is kept under the type of device connected.
+     */
+    @SmallTest
+    @Test
+    public void testSwitchToBluetoothKeyedByDeviceType() {
+        mTracer.beginSwitch("session", CallAudioState.ROUTE_SPEAKER,
+                CallAudioState.ROUTE_BLUETOOTH, 0);
+        mTracer.recordBluetoothHop("connectAudio", BluetoothDeviceManager.DEVICE_TYPE_LE_AUDIO);
+        setTime(1100L);
+        mTracer.onRouteEntered("ActiveBluetoothRoute", CallAudioState.ROUTE_BLUETOOTH);
+        assertTrue(mFinishedSpans.isEmpty());
+        setTime(1250L);
+        mTracer.onBluetoothAudioConnected();
+
+        assertEquals(1, mFinishedSpans.size());
+        assertEquals(BluetoothDeviceManager.DEVICE_TYPE_LE_AUDIO,
+                mFinishedSpans.get(0).getDeviceType());
+        assertEquals(250, mTracer.getPercentileMillis(CallAudioState.ROUTE_SPEAKER,
+                CallAudioState.ROUTE_BLUETOOTH, BluetoothDeviceManager.DEVICE_TYPE_LE_AUDIO, 99));
+        assertEquals(-1, mTracer.getPercentileMillis(CallAudioState.ROUTE_SPEAKER,
+                CallAudioState.ROUTE_BLUETOOTH, BluetoothDeviceManager.DEVICE_TYPE_HEADSET, 99));
+    }
+
+    /**
+     * Verifies that a switch which has not completed is abandoned by the next switch, and that
+     * percentiles are computed over the completed switches.
+     */
+    @SmallTest
+    @Test
+    public void testAbandonedSwitchAndPercentiles() {
+        mTracer.beginSwitch("first", CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_WIRED_HEADSET, 0);
+        mTracer.beginSwitch("second", CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_SPEAKER, 0);
+        assertEquals(1, mTracer.getNumAbandoned());
+        assertFalse(mFinishedSpans.get(0).isCompleted());
+
+        long time = 1000L;
+        for (int i = 1; i <= 10; i++) {
+            mTracer.beginSwitch("session" + i, CallAudioState.ROUTE_EARPIECE,
+                    CallAudioState.ROUTE_SPEAKER, 0);
+            time += i * 10;
+            setTime(time);
+            mTracer.onRouteEntered("ActiveSpeakerRoute", CallAudioState.ROUTE_SPEAKER);
+        }
+        // The "second" switch was abandoned by the first of the loop.
+        assertEquals(2, mTracer.getNumAbandoned());
+        assertEquals(50, mTracer.getPercentileMillis(CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_SPEAKER, AudioRouteSwitchTracer.DEVICE_TYPE_NONE, 50));
+        assertEquals(90, mTracer.getPercentileMillis(CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_SPEAKER, AudioRouteSwitchTracer.DEVICE_TYPE_NONE, 90));
+    }
+
+    /**
+     * Verifies that a switch to the route already in use, which enters no new route, completes
+     * straight away rather than being left to be counted as abandoned.
+     */
+    @SmallTest
+    @Test
+    public void testSwitchToCurrentRouteCompletesImmediately() {
+        mTracer.beginSwitch("speaker", CallAudioState.ROUTE_SPEAKER,
+                CallAudioState.ROUTE_SPEAKER, 5);
+        mTracer.beginSwitch("bluetooth", CallAudioState.ROUTE_BLUETOOTH,
+                CallAudioState.ROUTE_BLUETOOTH, 0);
+        mTracer.beginSwitch("earpiece", CallAudioState.ROUTE_SPEAKER,
+                CallAudioState.ROUTE_EARPIECE, 0);
+        mTracer.onRouteEntered("ActiveEarpieceRoute", CallAudioState.ROUTE_EARPIECE);
+
+        assertEquals(0, mTracer.getNumAbandoned());
+        assertEquals(3, mFinishedSpans.size());
+        assertTrue(mFinishedSpans.get(0).isCompleted());
+        assertEquals(5, mFinishedSpans.get(0).getDurationMillis());
+        assertTrue(mFinishedSpans.get(1).isCompleted());
+        assertEquals(0, mTracer.getPercentileMillis(CallAudioState.ROUTE_BLUETOOTH,
+                CallAudioState.ROUTE_BLUETOOTH, AudioRouteSwitchTracer.DEVICE_TYPE_NONE, 50));
+    }
+
+    /**
+     * Verifies that a switch from one Bluetooth device to another is traced until audio connects
+     * to the new device, while a switch to the device already in use completes straight away.
+     */
+    @SmallTest
+    @Test
+    public void testSwitchBetweenBluetoothDevices() {
+        mTracer.beginSwitch("sameDevice", CallAudioState.ROUTE_BLUETOOTH,
+                CallAudioState.ROUTE_BLUETOOTH, "00:00:00:00:00:01", "00:00:00:00:00:01", 0);
+        assertEquals(1, mFinishedSpans.size());
+        assertTrue(mFinishedSpans.get(0).isCompleted());
+
+        mTracer.beginSwitch("otherDevice", CallAudioState.ROUTE_BLUETOOTH,
+                CallAudioState.ROUTE_BLUETOOTH, "00:00:00:00:00:02", "00:00:00:00:00:01", 0);
+        mTracer.recordBluetoothHop("connectAudio", BluetoothDeviceManager.DEVICE_TYPE_HEADSET);
+        mTracer.onRouteEntered("ActiveBluetoothRoute", CallAudioState.ROUTE_BLUETOOTH);
+        assertEquals(1, mFinishedSpans.size());
+        setTime(1200L);
+        mTracer.onBluetoothAudioConnected();
+
+        assertEquals(2, mFinishedSpans.size());
+        AudioRouteSwitchTracer.Span span = mFinishedSpans.get(1);
+        assertTrue(span.isCompleted());
+        assertEquals(200, span.getDurationMillis());
+        assertEquals(4, span.getHops().size());
+        assertEquals(200, mTracer.getPercentileMillis(CallAudioState.ROUTE_BLUETOOTH,
+                CallAudioState.ROUTE_BLUETOOTH, BluetoothDeviceManager.DEVICE_TYPE_HEADSET, 50));
+        assertEquals(0, mTracer.getNumAbandoned());
+    }
+
+    private void setTime(long elapsedRealtime) {
+        when(mClockProxy.elapsedRealtime()).thenReturn(elapsedRealtime);
+    }
+}
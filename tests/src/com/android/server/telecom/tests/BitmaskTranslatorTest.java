@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.BitmaskTranslator;
+import com.android.server.telecom.ParcelableCallUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class BitmaskTranslatorTest extends TelecomTestCase {
+    private static final int NUM_RANDOM_MASKS = 100000;
+
+    /**
+     * Verifies that the capability and property mappings can be translated with the tables.
+     */
+    @SmallTest
+    @Test
+    public void testCallMappingsUseTables() {
+        assertTrue(ParcelableCallUtils.getCapabilityTranslator().isTableExact());
+        assertTrue(ParcelableCallUtils.getPropertyTranslator().isTableExact());
+    }
+
+    /**
+     * Verifies that the tables translate the capability and property mappings exactly as checking
+     * each pair does.  Every bit of a mapped mask lies in a single byte, so it suffices to check
+     * every value of every pair of bytes; random masks are checked as well.
+     */
+    @SmallTest
+    @Test
+    public void testCallMappingsMatchPairs() {
+        assertMatchesPairs(ParcelableCallUtils.getCapabilityTranslator());
+        assertMatchesPairs(ParcelableCallUtils.getPropertyTranslator());
+    }
+
+    /**
+     * Verifies that a mapping with a mask spanning two bytes is still translated exactly.
+     */
+    @SmallTest
+    @Test
+    public void testMaskSpanningBytes() {
+        BitmaskTranslator translator = new BitmaskTranslator(new int[] {
+                0x180, 0x1,
+                0x1, 0x2,
+        });
+        assertFalse(translator.isTableExact());
+        assertEquals(0, translator.translate(0x80));
+        assertEquals(0, translator.translate(0x100));
+        assertEquals(0x1, translator.translate(0x180));
+        assertEquals(0x3, translator.translate(0x181));
+        assertMatchesPairs(translator);
+    }
+
+    private static void assertMatchesPairs(BitmaskTranslator translator) {
+        for (int lowLane = 0; lowLane < 4; lowLane++) {
+            for (int highLane = lowLane + 1; highLane < 4; highLane++) {
+                for (int value = 0; value < 0x10000; value++) {
+                    int mask = ((value & 0xff) << (8 * lowLane))
+                            | ((value >>> 8) << (8 * highLane));
+                    assertTranslatedEqually(translator, mask);
+                }
+            }
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < NUM_RANDOM_MASKS; i++) {
+            assertTranslatedEqually(translator, random.nextInt());
+        }
+        assertTranslatedEqually(translator, 0xffffffff);
+    }
+
+    private static void assertTranslatedEqually(BitmaskTranslator translator, int mask) {
+        int expected = translator.translateByPairs(mask);
+        int actual = translator.translate(mask);
+        if (expected != actual) {
+            assertEquals("mask 0x" + Integer.toHexString(mask), expected, actual);
+        }
+    }
+}
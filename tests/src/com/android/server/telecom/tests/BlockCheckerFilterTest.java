@@ -17,6 +17,7 @@
 package com.android.server.telecom.tests;
 
 import static android.provider.BlockedNumberContract.STATUS_BLOCKED_IN_LIST;
+import static android.provider.BlockedNumberContract.STATUS_BLOCKED_NOT_IN_CONTACTS;
 import static android.provider.BlockedNumberContract.STATUS_NOT_BLOCKED;
 
 import static junit.framework.TestCase.assertEquals;
@@ -31,6 +32,7 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.PersistableBundle;
+import android.provider.BlockedNumberContract;
 import android.provider.CallLog;
 import android.telecom.CallerInfo;
 import android.telecom.TelecomManager;
@@ -142,6 +144,46 @@ public class BlockCheckerFilterTest extends TelecomTestCase {
                 .get(BlockCheckerFilter.CALLER_INFO_QUERY_TIMEOUT, TimeUnit.MILLISECONDS));
     }
 
+    /**
+     * Verifies that the block check starts before the contact lookup completes, and that a
+     * number blocked for not being a contact is re-checked once the caller is found to be one.
+     */
+    @SmallTest
+    @Test
+    public void testBlockCheckRunsInParallelWithContactLookup() throws Exception {
+        when(mBlockCheckerAdapter.getBlockStatus(any(Context.class),
+                eq(TEST_HANDLE.getSchemeSpecificPart()), any(Bundle.class)))
+                .thenAnswer(invocation -> {
+                    Bundle extras = invocation.getArgument(2);
+                    return extras.getBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST)
+                            ? STATUS_NOT_BLOCKED : STATUS_BLOCKED_NOT_IN_CONTACTS;
+                });
+
+        setEnhancedBlockingEnabled(true);
+        CompletionStage<CallFilteringResult> resultFuture = mFilter.startFilterLookup(PASS_RESULT);
+        verify(mBlockCheckerAdapter, timeout(BlockCheckerFilter.CALLER_INFO_QUERY_TIMEOUT))
+                .getBlockStatus(any(Context.class), eq(TEST_HANDLE.getSchemeSpecificPart()),
+                        any(Bundle.class));
+
+        ArgumentCaptor<CallerInfoLookupHelper.OnQueryCompleteListener> captor =
+                ArgumentCaptor.forClass(CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        verify(mCallerInfoLookupHelper).startLookup(eq(TEST_HANDLE), captor.capture());
+        CallerInfo info = new CallerInfo();
+        info.contactExists = true;
+        captor.getValue().onCallerInfoQueryComplete(TEST_HANDLE, info);
+
+        CallFilteringResult expected = new CallFilteringResult.Builder()
+                .setShouldAllowCall(true)
+                .setShouldReject(false)
+                .setShouldSilence(false)
+                .setShouldAddToCallLog(true)
+                .setShouldShowNotification(true)
+                .setContactExists(true)
+                .build();
+        assertEquals(expected, resultFuture.toCompletableFuture()
+                .get(BlockCheckerFilter.CALLER_INFO_QUERY_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
     private void setEnhancedBlockingEnabled(boolean value) {
         PersistableBundle bundle = new PersistableBundle();
         bundle.putBoolean(CarrierConfigManager.KEY_SUPPORT_ENHANCED_CALL_BLOCKING_BOOL, value);
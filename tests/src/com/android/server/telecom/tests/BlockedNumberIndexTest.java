@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static android.provider.BlockedNumberContract.STATUS_BLOCKED_IN_LIST;
+import static android.provider.BlockedNumberContract.STATUS_NOT_BLOCKED;
+
+import static com.android.server.telecom.callfiltering.BlockedNumberIndex.STATUS_UNKNOWN;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BlockedNumberContract;
+import android.telecom.TelecomManager;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
+import com.android.server.telecom.callfiltering.BlockedNumberIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class BlockedNumberIndexTest extends TelecomTestCase {
+    private static final String BLOCKED_NUMBER = "6505551212";
+    private static final String BLOCKED_NUMBER_E164 = "+16505551212";
+    private static final String EMERGENCY_NUMBER = "911";
+    private static final long TEST_TIMEOUT = 5000L;
+
+    private ClockProxy mClockProxy;
+    private BlockedNumberIndex mIndex;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mClockProxy = mock(ClockProxy.class);
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        mIndex = new BlockedNumberIndex(mContext, mClockProxy, () -> "US",
+                EMERGENCY_NUMBER::equals);
+    }
+
+    /**
+     * Verifies that numbers are matched in both their original and E.164 form.
+     */
+    @SmallTest
+    @Test
+    public void testLookupMatchesOriginalAndE164() {
+        mIndex.update(Set.of(BLOCKED_NUMBER, BLOCKED_NUMBER_E164), false /* isSuppressed */);
+        assertEquals(STATUS_BLOCKED_IN_LIST, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+        assertEquals(STATUS_BLOCKED_IN_LIST, mIndex.getBlockStatus("650-555-1212", null));
+        assertEquals(STATUS_NOT_BLOCKED, mIndex.getBlockStatus("6505550000", null));
+    }
+
+    /**
+     * Verifies that the index defers to the provider whenever it cannot answer with certainty.
+     */
+    @SmallTest
+    @Test
+    public void testFallsBackWhenUncertain() {
+        // Never loaded.
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+
+        mIndex.update(Set.of(BLOCKED_NUMBER, EMERGENCY_NUMBER), false /* isSuppressed */);
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(null, null));
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(EMERGENCY_NUMBER, null));
+
+        // Changed since the last load.
+        mIndex.markDirty();
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+
+        // Blocking suppressed after an emergency call.
+        mIndex.update(Set.of(BLOCKED_NUMBER), true /* isSuppressed */);
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+
+        // Too long since the last load.
+        mIndex.update(Set.of(BLOCKED_NUMBER), false /* isSuppressed */);
+        when(mClockProxy.elapsedRealtime()).thenReturn(
+                1001L + BlockedNumberIndex.MAX_STALENESS_MILLIS);
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+    }
+
+    /**
+     * Verifies that the adapter answers from the index whenever the index can answer.
+     */
+    @SmallTest
+    @Test
+    public void testAdapterUsesIndex() {
+        BlockedNumberIndex index = mock(BlockedNumberIndex.class);
+        Bundle extras = new Bundle();
+        when(index.getBlockStatus(anyString(), any())).thenReturn(STATUS_BLOCKED_IN_LIST);
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(index);
+        assertEquals(STATUS_BLOCKED_IN_LIST,
+                adapter.getBlockStatus(mContext, BLOCKED_NUMBER, extras));
+        verify(index).getBlockStatus(BLOCKED_NUMBER, extras);
+
+        when(index.getBlockStatus(anyString(), any())).thenReturn(STATUS_NOT_BLOCKED);
+        assertEquals(STATUS_NOT_BLOCKED,
+                adapter.getBlockStatus(mContext, BLOCKED_NUMBER, extras));
+    }
+
+    /**
+     * Verifies that a number in the block list is left to the provider when enhanced call
+     * blocking is enabled, since the provider applies those rules first and may give another
+     * reason, such as {@link BlockedNumberContract#STATUS_BLOCKED_NOT_IN_CONTACTS}.
+     */
+    @SmallTest
+    @Test
+    public void testEnhancedRulesEvaluatedBeforeBlockList() {
+        mIndex.update(Set.of(BLOCKED_NUMBER), false /* isSuppressed */);
+        Bundle enhancedExtras = new Bundle();
+        enhancedExtras.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION,
+                TelecomManager.PRESENTATION_ALLOWED);
+        enhancedExtras.putBoolean(BlockedNumberContract.EXTRA_CONTACT_EXIST, false);
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, enhancedExtras));
+        assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus("6505550000", enhancedExtras));
+
+        // Without enhanced call blocking the extras are empty.
+        assertEquals(STATUS_BLOCKED_IN_LIST, mIndex.getBlockStatus(BLOCKED_NUMBER, new Bundle()));
+    }
+
+    /**
+     * Verifies that no number is blocked for a user who the provider does not allow to block
+     * numbers, as the provider refuses the lookup for them.
+     */
+    @SmallTest
+    @Test
+    public void testNotBlockedWhenUserCannotBlockNumbers() {
+        mIndex.update(Set.of(BLOCKED_NUMBER), false /* isSuppressed */,
+                false /* canBlockNumbers */);
+        Bundle enhancedExtras = new Bundle();
+        enhancedExtras.putInt(BlockedNumberContract.EXTRA_CALL_PRESENTATION,
+                TelecomManager.PRESENTATION_PAYPHONE);
+        assertEquals(STATUS_NOT_BLOCKED, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+        assertEquals(STATUS_NOT_BLOCKED, mIndex.getBlockStatus(BLOCKED_NUMBER, enhancedExtras));
+
+        BlockCheckerAdapter adapter = new BlockCheckerAdapter(mIndex);
+        assertEquals(STATUS_NOT_BLOCKED,
+                adapter.getBlockStatus(mContext, BLOCKED_NUMBER, enhancedExtras));
+    }
+
+    /**
+     * Verifies that a load which fails because the provider cannot be read yet is retried when
+     * the user unlocks, rather than at the next periodic reload.
+     */
+    @SmallTest
+    @Test
+    public void testFailedLoadRetriedOnUserUnlock() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        // The test provider has no blocked numbers table, so every load fails.
+        mIndex.startObserving(handler, Runnable::run);
+        try {
+            waitForHandlerAction(handler, TEST_TIMEOUT);
+            assertEquals(1, mIndex.getNumFailedResyncs());
+            assertEquals(STATUS_UNKNOWN, mIndex.getBlockStatus(BLOCKED_NUMBER, null));
+
+            ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                    ArgumentCaptor.forClass(BroadcastReceiver.class);
+            ArgumentCaptor<IntentFilter> filterCaptor =
+                    ArgumentCaptor.forClass(IntentFilter.class);
+            verify(mContext).registerReceiver(receiverCaptor.capture(), filterCaptor.capture(),
+                    isNull(), eq(handler), eq(Context.RECEIVER_EXPORTED));
+            assertEquals(true, filterCaptor.getValue().hasAction(Intent.ACTION_USER_UNLOCKED));
+
+            receiverCaptor.getValue().onReceive(mContext, new Intent(Intent.ACTION_USER_UNLOCKED));
+            waitForHandlerAction(handler, TEST_TIMEOUT);
+            assertEquals(2, mIndex.getNumFailedResyncs());
+        } finally {
+            mIndex.stopObserving();
+        }
+        verify(mContext).unregisterReceiver(any(BroadcastReceiver.class));
+    }
+}
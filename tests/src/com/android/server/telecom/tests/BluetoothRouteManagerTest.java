@@ -43,10 +43,15 @@ import org.mockito.Mock;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.nullable;
@@ -171,6 +176,41 @@ public class BluetoothRouteManagerTest extends TelecomTestCase {
         sm.quitNow();
     }
 
+    @SmallTest
+    @Test
+    public void testAudioStateSnapshotReadWithoutHandler() throws Exception {
+        BluetoothRouteManager sm = setupStateMachine(
+                BluetoothRouteManager.AUDIO_CONNECTED_STATE_NAME_PREFIX, DEVICE1);
+        setupConnectedDevices(new BluetoothDevice[]{DEVICE1}, null, null, DEVICE1, null, null);
+        sm.onActiveDeviceChanged(DEVICE1, BluetoothDeviceManager.DEVICE_TYPE_HEADSET);
+        BluetoothRouteManager.AudioStateSnapshot snapshot = sm.getAudioStateSnapshot();
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.AUDIO_CONNECTED,
+                snapshot.audioState);
+        assertEquals(DEVICE1.getAddress(), snapshot.audioDeviceAddress);
+        assertEquals(DEVICE1, snapshot.activeDevice);
+        sm.onActiveDeviceChanged(null, BluetoothDeviceManager.DEVICE_TYPE_HEADSET);
+        assertNull(sm.getAudioStateSnapshot().activeDevice);
+
+        // The state is still readable while the state machine's handler is stuck.
+        CountDownLatch handlerBlocked = new CountDownLatch(1);
+        sm.getHandler().post(() -> {
+            try {
+                handlerBlocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        });
+        assertTrue(sm.isBluetoothAudioConnectedOrPending());
+        handlerBlocked.countDown();
+
+        when(mBluetoothHeadset.getAudioState(DEVICE1))
+                .thenReturn(BluetoothHeadset.STATE_AUDIO_DISCONNECTED);
+        executeRoutingAction(sm, BluetoothRouteManager.BT_AUDIO_LOST, DEVICE1.getAddress());
+        assertFalse(sm.isBluetoothAudioConnectedOrPending());
+        assertNull(sm.getAudioStateSnapshot().audioDeviceAddress);
+        sm.quitNow();
+    }
+
     private BluetoothRouteManager setupStateMachine(String initialState,
             BluetoothDevice initialDevice) {
         resetMocks();
@@ -798,6 +798,47 @@ public class CallAudioRouteStateMachineTest extends TelecomTestCase {
         assertEquals(initState, stateMachine.getCurrentCallAudioState());
     }
 
+    @SmallTest
+    @Test
+    public void testRouteTransitionsServedFromDeviceRegistry() {
+        ComponentContextFixture.FakeAudioManager fakeAudioManager =
+                (ComponentContextFixture.FakeAudioManager) mockAudioManager;
+        CallAudioRouteStateMachine stateMachine = new CallAudioRouteStateMachine(
+                mContext,
+                mockCallsManager,
+                mockBluetoothRouteManager,
+                mockWiredHeadsetManager,
+                mockStatusBarNotifier,
+                mAudioServiceFactory,
+                CallAudioRouteStateMachine.EARPIECE_FORCE_ENABLED,
+                mThreadHandler.getLooper(),
+                Runnable::run /** do async stuff sync for test purposes */);
+        stateMachine.setCallAudioManager(mockCallAudioManager);
+
+        CallAudioState initState = new CallAudioState(false, CallAudioState.ROUTE_EARPIECE,
+                CallAudioState.ROUTE_EARPIECE | CallAudioState.ROUTE_SPEAKER);
+        stateMachine.initialize(initState);
+        stateMachine.sendMessageWithSessionInfo(CallAudioRouteStateMachine.SWITCH_FOCUS,
+                CallAudioRouteStateMachine.ACTIVE_FOCUS);
+        stateMachine.sendMessageWithSessionInfo(CallAudioRouteStateMachine.USER_SWITCH_SPEAKER);
+        waitForHandlerAction(stateMachine.getHandler(), TEST_TIMEOUT);
+        fakeAudioManager.resetNumDeviceQueries();
+
+        for (int i = 0; i < 3; i++) {
+            stateMachine.sendMessageWithSessionInfo(
+                    CallAudioRouteStateMachine.USER_SWITCH_EARPIECE);
+            stateMachine.sendMessageWithSessionInfo(
+                    CallAudioRouteStateMachine.USER_SWITCH_SPEAKER);
+            waitForHandlerAction(stateMachine.getHandler(), TEST_TIMEOUT);
+        }
+
+        // Device lists are only reloaded if the audio service reports a device change, so the
+        // transitions should not need to query it again.
+        assertTrue(fakeAudioManager.getNumDeviceQueries() <= 1);
+        assertEquals(CallAudioState.ROUTE_SPEAKER,
+                stateMachine.getCurrentCallAudioState().getRoute());
+    }
+
     private void initializationTestHelper(CallAudioState expectedState,
             int earpieceControl) {
         when(mockWiredHeadsetManager.isPluggedIn()).thenReturn(
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.telecom.Connection;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Analytics;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallEventJournal;
+import com.android.server.telecom.LogUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CallEventJournalTest extends TelecomTestCase {
+    private static final String TEST_CALL_ID = "TC@1";
+
+    /**
+     * Verifies that known event names are interned to stable small IDs.
+     */
+    @SmallTest
+    @Test
+    public void testEventNamesInterned() {
+        int id = CallEventJournal.internEventName(LogUtils.Events.PROPERTY_CHANGE);
+        assertTrue(id > 0);
+        assertEquals(id, CallEventJournal.internEventName(LogUtils.Events.PROPERTY_CHANGE));
+        assertEquals(LogUtils.Events.PROPERTY_CHANGE, CallEventJournal.getEventName(id));
+        for (String event : Analytics.sLogEventToAnalyticsEvent.keySet()) {
+            assertEquals(event,
+                    CallEventJournal.getEventName(CallEventJournal.internEventName(event)));
+        }
+    }
+
+    /**
+     * Verifies that journal-only events never overlap with events which feed analytics.
+     */
+    @SmallTest
+    @Test
+    public void testJournalOnlyEventsExcludeAnalyticsEvents() {
+        for (String event : Analytics.sLogEventToAnalyticsEvent.keySet()) {
+            assertFalse(event, LogUtils.isJournalOnlyEvent(event));
+        }
+    }
+
+    /**
+     * Verifies that primitive arguments are rendered by the event's formatter at dump time.
+     */
+    @SmallTest
+    @Test
+    public void testPrimitiveArgsRenderedAtDump() {
+        CallEventJournal journal = new CallEventJournal(TEST_CALL_ID, 4);
+        journal.record(LogUtils.Events.CAPABILITY_CHANGE, Connection.CAPABILITY_HOLD,
+                Connection.CAPABILITY_MUTE);
+        journal.record(LogUtils.Events.CONNECTION_EVENT, "foo");
+        journal.record(LogUtils.Events.STOP_DTMF, null);
+
+        List<String> events = journal.renderEvents();
+        assertEquals(3, events.size());
+        assertTrue(events.get(0).contains(LogUtils.Events.CAPABILITY_CHANGE));
+        assertTrue(events.get(0).contains("Current: [" + Connection.capabilitiesToStringShort(
+                Connection.CAPABILITY_MUTE) + "]"));
+        assertTrue(events.get(1).endsWith(LogUtils.Events.CONNECTION_EVENT + " (foo)"));
+        assertTrue(events.get(2).endsWith(LogUtils.Events.STOP_DTMF));
+    }
+
+    /**
+     * Verifies that journal-only events, with or without primitive arguments, are recorded in
+     * the call's journal.
+     */
+    @SmallTest
+    @Test
+    public void testJournalOnlyEventsRecordedInJournal() {
+        CallEventJournal journal = new CallEventJournal(TEST_CALL_ID, 4);
+        Call call = mock(Call.class);
+        when(call.getEventJournal()).thenReturn(journal);
+        LogUtils.addCallEvent(call, LogUtils.Events.SET_RRT_MODE, 2, 0);
+        LogUtils.addCallEvent(call, LogUtils.Events.CONNECTION_EVENT, "foo");
+
+        List<String> events = journal.renderEvents();
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).endsWith(LogUtils.Events.SET_RRT_MODE + " (mode=2)"));
+        assertTrue(events.get(1).endsWith(LogUtils.Events.CONNECTION_EVENT + " (foo)"));
+    }
+
+    /**
+     * Verifies that the journal retains only the most recent events once it wraps.
+     */
+    @SmallTest
+    @Test
+    public void testRingBufferWraps() {
+        CallEventJournal journal = new CallEventJournal(TEST_CALL_ID, 2);
+        journal.record(LogUtils.Events.SET_RRT_MODE, 1, 0);
+        journal.record(LogUtils.Events.SET_RRT_MODE, 2, 0);
+        journal.record(LogUtils.Events.SET_RRT_MODE, 3, 0);
+
+        List<String> events = journal.renderEvents();
+        assertEquals(2, journal.size());
+        assertTrue(events.get(0).endsWith("(mode=2)"));
+        assertTrue(events.get(1).endsWith("(mode=3)"));
+    }
+}
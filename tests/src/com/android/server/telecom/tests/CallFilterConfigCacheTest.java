@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.UserHandle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.callfiltering.CallFilterConfigCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class CallFilterConfigCacheTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+    private static final UserHandle USER_0 = UserHandle.of(0);
+    private static final UserHandle USER_10 = UserHandle.of(10);
+
+    private HandlerThread mHandlerThread;
+    private Handler mHandler;
+    private String mCarrierPackage = "com.carrier";
+    private final Map<UserHandle, String> mDialers = new HashMap<>();
+    private final Map<UserHandle, String> mScreeningApps = new HashMap<>();
+    private final Map<String, CharSequence> mLabels = new HashMap<>();
+    private int mNumLabelLoads;
+    private boolean mIsVerdictCacheEnabled = true;
+    private int mNumFlagLoads;
+    private CallFilterConfigCache mCache;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mHandlerThread = new HandlerThread("CallFilterConfigCacheTest");
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+        mDialers.put(USER_0, "com.dialer");
+        mScreeningApps.put(USER_0, "com.screener");
+        mLabels.put("com.dialer", "Dialer");
+        mLabels.put("com.screener", "Screener");
+        mCache = new CallFilterConfigCache(mHandler, () -> mCarrierPackage, mDialers::get,
+                mScreeningApps::get,
+                packageName -> {
+                    mNumLabelLoads++;
+                    return mLabels.get(packageName);
+                },
+                () -> {
+                    mNumFlagLoads++;
+                    return mIsVerdictCacheEnabled;
+                },
+                () -> false);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mHandlerThread.quitSafely();
+        super.tearDown();
+    }
+
+    /**
+     * Verifies that repeated lookups are answered without reloading.
+     */
+    @SmallTest
+    @Test
+    public void testLookupsCached() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("com.carrier", mCache.getCarrierPackageName());
+            assertEquals("com.dialer", mCache.getDefaultDialerPackage(USER_0));
+            assertEquals("com.screener", mCache.getCallScreeningPackage(USER_0));
+        }
+        // One load for the carrier package and one for the user's role holders.
+        assertEquals(2, mCache.getNumLoads());
+    }
+
+    /**
+     * Verifies that carrier config and role changes refresh the cached values in the background.
+     */
+    @SmallTest
+    @Test
+    public void testRefreshedOnChange() {
+        assertEquals("com.carrier", mCache.getCarrierPackageName());
+        assertEquals("com.screener", mCache.getCallScreeningPackage(USER_0));
+
+        mCarrierPackage = null;
+        mCache.onCarrierConfigChanged();
+        mScreeningApps.put(USER_0, "com.other.screener");
+        mCache.onRoleChanged(USER_0.getIdentifier());
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        int numLoads = mCache.getNumLoads();
+
+        assertEquals(null, mCache.getCarrierPackageName());
+        assertEquals("com.other.screener", mCache.getCallScreeningPackage(USER_0));
+        assertEquals(numLoads, mCache.getNumLoads());
+    }
+
+    /**
+     * Verifies that role holders are tracked per user and reloaded on a user switch.
+     */
+    @SmallTest
+    @Test
+    public void testUserSwitch() {
+        mDialers.put(USER_10, "com.work.dialer");
+        assertEquals("com.dialer", mCache.getDefaultDialerPackage(USER_0));
+        assertEquals("com.work.dialer", mCache.getDefaultDialerPackage(USER_10));
+
+        mDialers.put(USER_0, "com.new.dialer");
+        mCache.onUserSwitch(USER_10);
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        assertEquals("com.new.dialer", mCache.getDefaultDialerPackage(USER_0));
+    }
+
+    /**
+     * Verifies that a changed value is not loaded by the caller, which instead gets the previous
+     * value until the reload on the handler completes.
+     */
+    @SmallTest
+    @Test
+    public void testPreviousValueServedUntilReloaded() throws Exception {
+        assertEquals("com.screener", mCache.getCallScreeningPackage(USER_0));
+        int numLoads = mCache.getNumLoads();
+
+        CountDownLatch blocker = new CountDownLatch(1);
+        mHandler.post(() -> {
+            try {
+                blocker.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through.
+            }
+        });
+        mScreeningApps.put(USER_0, "com.other.screener");
+        mCache.onRoleChanged(USER_0.getIdentifier());
+        mCache.invalidateRoles();
+        assertEquals("com.screener", mCache.getCallScreeningPackage(USER_0));
+        assertEquals(numLoads, mCache.getNumLoads());
+
+        blocker.countDown();
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        assertEquals("com.other.screener", mCache.getCallScreeningPackage(USER_0));
+    }
+
+    /**
+     * Verifies that flags and labels are served from the cache, with the flags refreshed on the
+     * handler after being read.
+     */
+    @SmallTest
+    @Test
+    public void testFlagsAndLabelsCached() {
+        assertEquals("com.dialer", mCache.getDefaultDialerPackage(USER_0));
+        int numLabelLoads = mNumLabelLoads;
+        assertEquals("Dialer", mCache.getAppLabel("com.dialer"));
+        assertEquals("Screener", mCache.getAppLabel("com.screener"));
+        assertEquals(numLabelLoads, mNumLabelLoads);
+
+        assertTrue(mCache.isVerdictCacheEnabled());
+        assertFalse(mCache.isConnectionSharingEnabled());
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        // One load on the first read and one refresh for the reads before the handler ran.
+        assertEquals(2, mNumFlagLoads);
+
+        mIsVerdictCacheEnabled = false;
+        assertTrue(mCache.isVerdictCacheEnabled());
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        assertFalse(mCache.isVerdictCacheEnabled());
+    }
+}
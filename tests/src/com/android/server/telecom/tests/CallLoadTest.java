@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.OutcomeReceiver;
+import android.os.SystemClock;
+import android.telecom.Call;
+import android.telecom.CallException;
+import android.telecom.CallerInfo;
+import android.telecom.DisconnectCause;
+import android.telecom.ParcelableCall;
+import android.telecom.PhoneAccount;
+import android.telecom.TelecomManager;
+import android.telecom.VideoProfile;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import androidx.test.InstrumentationRegistry;
+
+import com.android.internal.telecom.IInCallAdapter;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.voip.TransactionManager;
+import com.android.server.telecom.voip.VoipCallTransaction;
+import com.android.server.telecom.voip.VoipCallTransactionResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Drives synthetic call load through a full {@link TelecomSystem}, using the
+ * {@link ConnectionServiceFixture} and {@link InCallServiceFixture}, to catch scaling regressions
+ * in call processing.
+ * <p>
+ * Each scenario measures end-to-end latencies, from a request made to Telecom to the resulting
+ * update reaching the InCallService, along with the peak and new thread counts and the bytes
+ * allocated while it ran.  Results are reported as JSON through {@link MicroBenchmark}.  The
+ * number of iterations and of concurrent callers can be raised with the
+ * {@link #ARG_ITERATIONS} and {@link #ARG_CONCURRENCY} instrumentation arguments; the defaults
+ * keep the scenarios fast enough to run with the other tests.
+ */
+@RunWith(JUnit4.class)
+public class CallLoadTest extends TelecomSystemTest {
+    public static final String ARG_ITERATIONS = "telecom_load_iterations";
+    public static final String ARG_CONCURRENCY = "telecom_load_concurrency";
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int NUM_TRANSACTIONS_PER_CALLER = 10;
+    private static final long LOAD_TIMEOUT = 10000;
+    private static final long THREAD_SAMPLE_PERIOD_MILLIS = 2;
+
+    /**
+     * An update of a call received by an InCallService.
+     */
+    private static class CallUpdate {
+        final long nanos;
+        final ParcelableCall call;
+        final boolean isAdded;
+
+        CallUpdate(long nanos, ParcelableCall call, boolean isAdded) {
+            this.nanos = nanos;
+            this.call = call;
+            this.isAdded = isAdded;
+        }
+    }
+
+    /**
+     * Records when each call update reaches an InCallService, and waits for updates.
+     */
+    private static class CallTracker implements InCallServiceFixture.CallListener {
+        private final List<CallUpdate> mUpdates = new ArrayList<>();
+
+        @Override
+        public synchronized void onCallAddedOrUpdated(ParcelableCall call, boolean isAdded) {
+            mUpdates.add(new CallUpdate(System.nanoTime(), call, isAdded));
+            notifyAll();
+        }
+
+        /**
+         * @return the first update received no earlier than {@code sinceNanos} which matches.
+         */
+        synchronized CallUpdate await(long sinceNanos, Predicate<CallUpdate> predicate)
+                throws InterruptedException {
+            long deadline = SystemClock.elapsedRealtime() + LOAD_TIMEOUT;
+            int index = 0;
+            while (true) {
+                for (; index < mUpdates.size(); index++) {
+                    CallUpdate update = mUpdates.get(index);
+                    if (update.nanos >= sinceNanos && predicate.test(update)) {
+                        return update;
+                    }
+                }
+                long remaining = deadline - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    fail("Timed out waiting for a call update");
+                }
+                wait(remaining);
+            }
+        }
+
+        CallUpdate awaitState(long sinceNanos, String callId, int state)
+                throws InterruptedException {
+            return await(sinceNanos, u -> u.call.getId().equals(callId)
+                    && u.call.getState() == state);
+        }
+    }
+
+    /**
+     * Samples the threads of the process and the bytes allocated while a scenario runs.
+     */
+    private static class LoadProbe {
+        private final Set<String> mBaselineThreads = getThreadIds();
+        private final Set<String> mNewThreads = new HashSet<>();
+        private final long mStartBytes = getAllocatedBytes();
+        private final long mStartNanos = System.nanoTime();
+        private final ScheduledExecutorService mSampler =
+                Executors.newSingleThreadScheduledExecutor();
+        private int mPeakThreads = mBaselineThreads.size();
+
+        LoadProbe() {
+            mSampler.scheduleAtFixedRate(this::sample, 0, THREAD_SAMPLE_PERIOD_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void sample() {
+            Set<String> threads = getThreadIds();
+            mPeakThreads = Math.max(mPeakThreads, threads.size());
+            threads.removeAll(mBaselineThreads);
+            mNewThreads.addAll(threads);
+        }
+
+        void stop(MicroBenchmark benchmark) throws InterruptedException {
+            mSampler.shutdown();
+            mSampler.awaitTermination(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+            long elapsedNanos = System.nanoTime() - mStartNanos;
+            long allocatedBytes = getAllocatedBytes() - mStartBytes;
+            synchronized (this) {
+                sample();
+                benchmark.putMetric("peakThreads", mPeakThreads);
+                benchmark.putMetric("threadsStarted", mNewThreads.size());
+            }
+            benchmark.putMetric("threadsRemaining",
+                    getThreadIds().size() - mBaselineThreads.size());
+            benchmark.putMetric("allocatedBytes", allocatedBytes);
+            benchmark.putMetric("allocatedBytesPerSecond",
+                    allocatedBytes * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos));
+        }
+
+        private static Set<String> getThreadIds() {
+            Set<String> ids = new HashSet<>();
+            String[] tasks = new File("/proc/self/task").list();
+            if (tasks != null) {
+                for (String task : tasks) {
+                    ids.add(task);
+                }
+            }
+            return ids;
+        }
+
+        private static long getAllocatedBytes() {
+            try {
+                return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    private final CallTracker mCallTracker = new CallTracker();
+    // Responds to requests from Telecom as a ConnectionService would, asynchronously.
+    private final ExecutorService mResponder = Executors.newSingleThreadExecutor();
+    private final Set<String> mEndedConnectionIds = ConcurrentHashMap.newKeySet();
+    private int mIterations;
+    private int mConcurrency;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        mIterations = Integer.parseInt(arguments.getString(ARG_ITERATIONS,
+                String.valueOf(DEFAULT_ITERATIONS)));
+        mConcurrency = Integer.parseInt(arguments.getString(ARG_CONCURRENCY,
+                String.valueOf(DEFAULT_CONCURRENCY)));
+        mInCallServiceFixtureX.mCallListener = mCallTracker;
+        mConnectionServiceFixtureA.mRequestListener = (request, connectionId) ->
+                mResponder.execute(() -> respond(request, connectionId));
+        // Answer caller info lookups immediately, rather than waiting for the test to.
+        mCallerInfoAsyncQueryFactoryFixture.setResponse(new CallerInfo());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mConnectionServiceFixtureA.mRequestListener = null;
+        mInCallServiceFixtureX.mCallListener = null;
+        mResponder.shutdown();
+        mResponder.awaitTermination(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        super.tearDown();
+    }
+
+    /**
+     * Repeatedly receives, answers and hangs up an incoming call.
+     */
+    @LargeTest
+    @Test
+    public void testIncomingCallCycles() throws Exception {
+        // Binds the InCallServices, which only happens for the first call.
+        runIncomingCallCycle(null, null, null);
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_incomingCallCycles");
+        long[] addedNanos = new long[mIterations];
+        long[] activeNanos = new long[mIterations];
+        long[] disconnectedNanos = new long[mIterations];
+        LoadProbe probe = new LoadProbe();
+        for (int i = 0; i < mIterations; i++) {
+            runIncomingCallCycle(addedNanos, activeNanos, disconnectedNanos, i);
+        }
+        probe.stop(benchmark);
+        benchmark.record("addNewIncomingCall_to_icsAddCall", addedNanos);
+        benchmark.record("answer_to_active", activeNanos);
+        benchmark.record("disconnect_to_disconnected", disconnectedNanos);
+        benchmark.report();
+    }
+
+    /**
+     * Has several apps report incoming calls at once; Telecom rings one of them and rejects the
+     * others.
+     */
+    @LargeTest
+    @Test
+    public void testConcurrentIncomingCalls() throws Exception {
+        runIncomingCallCycle(null, null, null);
+        Set<String> existingConnections = getConnectionIds();
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_concurrentIncomingCalls");
+        long[] binderNanos = new long[mConcurrency];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < mConcurrency; i++) {
+            final int caller = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    long startNanos = System.nanoTime();
+                    addNewIncomingCall("650-555-" + (2000 + caller));
+                    binderNanos[caller] = System.nanoTime() - startNanos;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            callers.add(thread);
+        }
+        LoadProbe probe = new LoadProbe();
+        long burstStartNanos = System.nanoTime();
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join(LOAD_TIMEOUT);
+        }
+        assertTrueWithTimeout(v -> getConnectionIds().size()
+                >= existingConnections.size() + mConcurrency);
+        benchmark.putMetric("burst_to_connectionsCreated_us",
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - burstStartNanos));
+        CallUpdate ringing = mCallTracker.await(burstStartNanos, u -> u.isAdded);
+        benchmark.putMetric("burst_to_icsAddCall_us",
+                TimeUnit.NANOSECONDS.toMicros(ringing.nanos - burstStartNanos));
+        probe.stop(benchmark);
+        benchmark.record("addNewIncomingCall_binder", binderNanos);
+        benchmark.report();
+
+        // Hang up whatever Telecom did not already end.
+        mTelecomSystem.getCallsManager().waitOnHandlers();
+        mResponder.submit(() -> { }).get(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        for (String connectionId : getConnectionIds()) {
+            if (!existingConnections.contains(connectionId)) {
+                endConnection(connectionId, DisconnectCause.LOCAL);
+            }
+        }
+        assertTrueWithTimeout(v -> mTelecomSystem.getCallsManager().getCalls().isEmpty());
+    }
+
+    /**
+     * Holds and unholds an active call repeatedly.
+     */
+    @LargeTest
+    @Test
+    public void testHoldUnholdChurn() throws Exception {
+        IdPair ids = startAndMakeActiveOutgoingCall("650-555-1212",
+                mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA);
+        IInCallAdapter adapter = mInCallServiceFixtureX.getInCallAdapter();
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_holdUnholdChurn");
+        long[] holdNanos = new long[mIterations];
+        long[] unholdNanos = new long[mIterations];
+        LoadProbe probe = new LoadProbe();
+        for (int i = 0; i < mIterations; i++) {
+            long startNanos = System.nanoTime();
+            adapter.holdCall(ids.mCallId);
+            holdNanos[i] = mCallTracker.awaitState(startNanos, ids.mCallId, Call.STATE_HOLDING)
+                    .nanos - startNanos;
+
+            startNanos = System.nanoTime();
+            adapter.unholdCall(ids.mCallId);
+            unholdNanos[i] = mCallTracker.awaitState(startNanos, ids.mCallId, Call.STATE_ACTIVE)
+                    .nanos - startNanos;
+        }
+        probe.stop(benchmark);
+        benchmark.record("hold_to_holding", holdNanos);
+        benchmark.record("unhold_to_active", unholdNanos);
+        benchmark.report();
+
+        hangUp(ids.mCallId);
+    }
+
+    /**
+     * Dials calls and hangs them up as soon as they are dialing.
+     */
+    @LargeTest
+    @Test
+    public void testRapidDialHangup() throws Exception {
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_rapidDialHangup");
+        long[] dialingNanos = new long[mIterations];
+        long[] disconnectedNanos = new long[mIterations];
+        long[] cycleNanos = new long[mIterations];
+        LoadProbe probe = new LoadProbe();
+        for (int i = 0; i < mIterations; i++) {
+            long cycleStartNanos = System.nanoTime();
+            IdPair ids = startOutgoingPhoneCall("650-555-" + (3000 + i),
+                    mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA,
+                    android.os.Process.myUserHandle());
+
+            long startNanos = System.nanoTime();
+            mConnectionServiceFixtureA.sendSetDialing(ids.mConnectionId);
+            dialingNanos[i] = mCallTracker.awaitState(startNanos, ids.mCallId, Call.STATE_DIALING)
+                    .nanos - startNanos;
+
+            disconnectedNanos[i] = hangUp(ids.mCallId);
+            cycleNanos[i] = System.nanoTime() - cycleStartNanos;
+        }
+        probe.stop(benchmark);
+        benchmark.record("setDialing_to_dialing", dialingNanos);
+        benchmark.record("disconnect_to_disconnected", disconnectedNanos);
+        // Includes the waits and verifications of the fixture which places the call.
+        benchmark.record("cycle_with_fixture", cycleNanos);
+        benchmark.report();
+    }
+
+    /**
+     * Merges two active calls into a conference.
+     */
+    @LargeTest
+    @Test
+    public void testConferenceMerge() throws Exception {
+        IdPair first = startAndMakeActiveOutgoingCall("650-555-1212",
+                mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA);
+        IdPair second = startAndMakeActiveOutgoingCall("650-555-1213",
+                mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA);
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_conferenceMerge");
+        LoadProbe probe = new LoadProbe();
+        long startNanos = System.nanoTime();
+        mInCallServiceFixtureX.getInCallAdapter().conference(first.mCallId, second.mCallId);
+        CallUpdate firstMerged = mCallTracker.await(startNanos,
+                u -> u.call.getId().equals(first.mCallId) && u.call.getParentCallId() != null);
+        CallUpdate secondMerged = mCallTracker.await(startNanos,
+                u -> u.call.getId().equals(second.mCallId) && u.call.getParentCallId() != null);
+        probe.stop(benchmark);
+        benchmark.record("conference_to_merged", new long[] {
+                Math.max(firstMerged.nanos, secondMerged.nanos) - startNanos});
+        benchmark.report();
+        assertEquals(firstMerged.call.getParentCallId(), secondMerged.call.getParentCallId());
+    }
+
+    /**
+     * Has several callers submit VoIP call transactions at once, as transactional VoIP apps do
+     * through their call control.
+     */
+    @LargeTest
+    @Test
+    public void testVoipTransactionFlood() throws Exception {
+        TransactionManager transactionManager = TransactionManager.getTestInstance();
+        TelecomSystem.SyncRoot lock = (TelecomSystem.SyncRoot) mTelecomSystem.getLock();
+        int numTransactions = mConcurrency * NUM_TRANSACTIONS_PER_CALLER;
+        long[] latencyNanos = new long[numTransactions];
+        AtomicInteger numFailed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(numTransactions);
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallLoad_voipTransactionFlood");
+        LoadProbe probe = new LoadProbe();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < mConcurrency; i++) {
+            final int caller = i;
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < NUM_TRANSACTIONS_PER_CALLER; j++) {
+                    final int index = caller * NUM_TRANSACTIONS_PER_CALLER + j;
+                    final long startNanos = System.nanoTime();
+                    transactionManager.addTransaction(new VoipCallTransaction(lock),
+                            new OutcomeReceiver<VoipCallTransactionResult, CallException>() {
+                                @Override
+                                public void onResult(VoipCallTransactionResult result) {
+                                    latencyNanos[index] = System.nanoTime() - startNanos;
+                                    done.countDown();
+                                }
+
+                                @Override
+                                public void onError(CallException exception) {
+                                    latencyNanos[index] = System.nanoTime() - startNanos;
+                                    numFailed.incrementAndGet();
+                                    done.countDown();
+                                }
+                            });
+                }
+            });
+            thread.start();
+            callers.add(thread);
+        }
+        for (Thread caller : callers) {
+            caller.join(LOAD_TIMEOUT);
+        }
+        assertTrue(done.await(LOAD_TIMEOUT, TimeUnit.MILLISECONDS));
+        probe.stop(benchmark);
+        benchmark.putMetric("failedTransactions", numFailed.get());
+        benchmark.record("addTransaction_to_result", latencyNanos);
+        benchmark.report();
+        assertEquals(0, numFailed.get());
+    }
+
+    private void runIncomingCallCycle(long[] addedNanos, long[] activeNanos,
+            long[] disconnectedNanos) throws Exception {
+        runIncomingCallCycle(addedNanos, activeNanos, disconnectedNanos, 0);
+    }
+
+    /**
+     * Receives an incoming call, answers it and hangs it up, optionally recording how long each
+     * step took to reach the InCallService.
+     */
+    private void runIncomingCallCycle(long[] addedNanos, long[] activeNanos,
+            long[] disconnectedNanos, int iteration) throws Exception {
+        long startNanos = System.nanoTime();
+        addNewIncomingCall("650-555-" + (1000 + iteration));
+        CallUpdate added = mCallTracker.await(startNanos, u -> u.isAdded);
+        String callId = added.call.getId();
+        assertEquals(Call.STATE_RINGING, added.call.getState());
+
+        long answerNanos = System.nanoTime();
+        IInCallAdapter adapter = mInCallServiceFixtureX.getInCallAdapter();
+        assertNotNull(adapter);
+        adapter.answerCall(callId, VideoProfile.STATE_AUDIO_ONLY);
+        long activeAtNanos = mCallTracker.awaitState(answerNanos, callId, Call.STATE_ACTIVE).nanos;
+
+        long disconnectNanos = hangUp(callId);
+        if (addedNanos != null) {
+            addedNanos[iteration] = added.nanos - startNanos;
+            activeNanos[iteration] = activeAtNanos - answerNanos;
+            disconnectedNanos[iteration] = disconnectNanos;
+        }
+    }
+
+    private void addNewIncomingCall(String number) throws Exception {
+        Bundle extras = new Bundle();
+        extras.putParcelable(TelecomManager.EXTRA_INCOMING_CALL_ADDRESS,
+                Uri.fromParts(PhoneAccount.SCHEME_TEL, number, null));
+        mTelecomSystem.getTelecomServiceImpl().getBinder().addNewIncomingCall(
+                mPhoneAccountA0.getAccountHandle(), extras,
+                CallLoadTest.class.getPackageName());
+    }
+
+    /**
+     * Hangs up a call from the InCallService and waits for it to be disconnected.
+     *
+     * @return the time from the request to the InCallService seeing the call disconnected.
+     */
+    private long hangUp(String callId) throws Exception {
+        long startNanos = System.nanoTime();
+        mInCallServiceFixtureX.getInCallAdapter().disconnectCall(callId);
+        return mCallTracker.awaitState(startNanos, callId, Call.STATE_DISCONNECTED).nanos
+                - startNanos;
+    }
+
+    private void respond(String request, String connectionId) {
+        try {
+            switch (request) {
+                case ConnectionServiceFixture.REQUEST_ANSWER:
+                case ConnectionServiceFixture.REQUEST_UNHOLD:
+                    mConnectionServiceFixtureA.sendSetActive(connectionId);
+                    break;
+                case ConnectionServiceFixture.REQUEST_HOLD:
+                    mConnectionServiceFixtureA.sendSetOnHold(connectionId);
+                    break;
+                case ConnectionServiceFixture.REQUEST_DISCONNECT:
+                    endConnection(connectionId, DisconnectCause.LOCAL);
+                    break;
+                case ConnectionServiceFixture.REQUEST_REJECT:
+                    endConnection(connectionId, DisconnectCause.REJECTED);
+                    break;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Disconnects and destroys a connection, as a ConnectionService does when a call ends.
+     */
+    private void endConnection(String connectionId, int disconnectCause) throws Exception {
+        if (!mEndedConnectionIds.add(connectionId)) {
+            return;
+        }
+        mConnectionServiceFixtureA.sendSetDisconnected(connectionId, disconnectCause);
+        mConnectionServiceFixtureA.sendRemoveCall(connectionId);
+    }
+
+    private Set<String> getConnectionIds() {
+        synchronized (mTelecomSystem.getLock()) {
+            return new HashSet<>(mConnectionServiceFixtureA.mConnectionById.keySet());
+        }
+    }
+}
@@ -24,7 +24,10 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,6 +39,8 @@ import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.UserHandle;
 import android.provider.CallLog;
@@ -50,9 +55,11 @@ import com.android.internal.telecom.ICallScreeningService;
 import com.android.server.telecom.AppLabelProxy;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.ClockProxy;
 import com.android.server.telecom.ParcelableCallUtils;
 import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.CallScreeningServiceConnectionManager;
 import com.android.server.telecom.callfiltering.CallScreeningServiceFilter;
 
 import org.junit.Before;
@@ -396,6 +403,68 @@ public class CallScreeningServiceFilterTest extends TelecomTestCase {
         serviceConnection.onServiceDisconnected(COMPONENT_NAME);
     }
 
+    /**
+     * Verifies that a second incoming call reuses the connection made for the first call, and
+     * that each call's response is routed to its own filter.
+     */
+    @SmallTest
+    @Test
+    public void testSharedConnectionReusedAcrossCalls() throws Exception {
+        HandlerThread handlerThread = new HandlerThread("CallScreeningConnectionTest");
+        handlerThread.start();
+        CallScreeningServiceConnectionManager connectionManager =
+                new CallScreeningServiceConnectionManager(mContext,
+                        new Handler(handlerThread.getLooper()), mock(ClockProxy.class));
+        connectionManager.setIdleMillis(CallScreeningServiceFilter.CALL_SCREENING_FILTER_TIMEOUT);
+        Call secondCall = mock(Call.class);
+        when(secondCall.getId()).thenReturn(CALL_ID + "2");
+        when(secondCall.getAssociatedUser()).thenReturn(PA_HANDLE.getUserHandle());
+        CallScreeningService.ParcelableCallResponse allowCallResponse =
+                new CallScreeningService.CallResponse.Builder()
+                        .setDisallowCall(false)
+                        .setRejectCall(false)
+                        .setSilenceCall(false)
+                        .build()
+                        .toParcelable();
+
+        CallScreeningServiceFilter filter = new CallScreeningServiceFilter(mCall, PKG_NAME,
+                CallScreeningServiceFilter.PACKAGE_TYPE_CARRIER, mContext, mCallsManager,
+                mAppLabelProxy, mParcelableCallUtilsConverter, null, connectionManager);
+        CompletionStage<CallFilteringResult> resultFuture = filter.startFilterLookup(inputResult);
+        ServiceConnection serviceConnection = verifyBindingIntent();
+        serviceConnection.onServiceConnected(COMPONENT_NAME, mBinder);
+
+        CallScreeningServiceFilter secondFilter = new CallScreeningServiceFilter(secondCall,
+                PKG_NAME, CallScreeningServiceFilter.PACKAGE_TYPE_CARRIER, mContext,
+                mCallsManager, mAppLabelProxy, mParcelableCallUtilsConverter, null,
+                connectionManager);
+        CompletionStage<CallFilteringResult> secondResultFuture =
+                secondFilter.startFilterLookup(inputResult);
+        ArgumentCaptor<ICallScreeningAdapter> captor =
+                ArgumentCaptor.forClass(ICallScreeningAdapter.class);
+        verify(mCallScreeningService,
+                timeout(CallScreeningServiceFilter.CALL_SCREENING_FILTER_TIMEOUT).times(2))
+                .screenCall(captor.capture(), nullable(ParcelableCall.class));
+
+        // The service only keeps the latest adapter, which must route both responses.
+        ICallScreeningAdapter csAdapter = captor.getValue();
+        csAdapter.onScreeningResponse(CALL_ID + "2", COMPONENT_NAME, allowCallResponse);
+        csAdapter.onScreeningResponse(CALL_ID, COMPONENT_NAME, allowCallResponse);
+        assertEquals(PASS_RESULT_WITH_NAME, resultFuture.toCompletableFuture().get(
+                CallScreeningServiceFilter.CALL_SCREENING_FILTER_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(PASS_RESULT_WITH_NAME, secondResultFuture.toCompletableFuture().get(
+                CallScreeningServiceFilter.CALL_SCREENING_FILTER_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        verify(mContext, times(1)).bindServiceAsUser(nullable(Intent.class),
+                nullable(ServiceConnection.class), anyInt(), eq(PA_HANDLE.getUserHandle()));
+        verify(mContext, never()).unbindService(nullable(ServiceConnection.class));
+        assertEquals(1, connectionManager.getNumConnections());
+        assertEquals(1, connectionManager.getNumReuses());
+        connectionManager.unbindIdleConnections();
+        verify(mContext).unbindService(serviceConnection);
+        handlerThread.quitSafely();
+    }
+
     private ServiceConnection verifyBindingIntent() {
         ArgumentCaptor<Intent> intentCaptor = ArgumentCaptor.forClass(Intent.class);
         ArgumentCaptor<ServiceConnection> serviceCaptor = ArgumentCaptor
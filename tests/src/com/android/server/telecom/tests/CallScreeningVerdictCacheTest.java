@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.telecom.CallScreeningService;
+import android.telecom.TelecomManager;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.callfiltering.CallScreeningVerdictCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CallScreeningVerdictCacheTest extends TelecomTestCase {
+    private static final String PKG_NAME = "com.android.services.telecom.tests";
+    private static final ComponentName COMPONENT_NAME = new ComponentName(PKG_NAME,
+            "TestCallScreeningService");
+    private static final UserHandle USER = UserHandle.of(0);
+
+    private ClockProxy mClockProxy;
+    private CallScreeningVerdictCache mCache;
+    private CallScreeningService.ParcelableCallResponse mDisallowResponse;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mClockProxy = mock(ClockProxy.class);
+        when(mClockProxy.elapsedRealtime()).thenReturn(1000L);
+        mCache = new CallScreeningVerdictCache(mClockProxy);
+        mDisallowResponse = new CallScreeningService.CallResponse.Builder()
+                .setDisallowCall(true)
+                .setRejectCall(true)
+                .build()
+                .toParcelable();
+    }
+
+    /**
+     * Verifies that a cached response is found for a repeat call from the same number, even
+     * when the number is formatted differently, and that hits and misses are counted.
+     */
+    @SmallTest
+    @Test
+    public void testRepeatCallHitsCache() {
+        assertNull(mCache.get(createCall("650-555-1212", USER), PKG_NAME));
+        mCache.put(createCall("650-555-1212", USER), PKG_NAME, COMPONENT_NAME,
+                mDisallowResponse);
+
+        CallScreeningVerdictCache.Verdict verdict =
+                mCache.get(createCall("6505551212", USER), PKG_NAME);
+        assertNotNull(verdict);
+        assertEquals(COMPONENT_NAME, verdict.componentName);
+        assertTrue(verdict.response.shouldDisallowCall());
+        assertNull(mCache.get(createCall("6505551212", USER), "other.package"));
+        assertNull(mCache.get(createCall("6505551212", UserHandle.of(10)), PKG_NAME));
+        assertEquals(1, mCache.getNumHits());
+        assertEquals(3, mCache.getNumMisses());
+    }
+
+    /**
+     * Verifies that cached responses expire.
+     */
+    @SmallTest
+    @Test
+    public void testVerdictExpires() {
+        mCache.put(createCall("6505551212", USER), PKG_NAME, COMPONENT_NAME, mDisallowResponse);
+        when(mClockProxy.elapsedRealtime()).thenReturn(
+                1000L + CallScreeningVerdictCache.TTL_MILLIS + 1);
+        assertNull(mCache.get(createCall("6505551212", USER), PKG_NAME));
+        assertEquals(0, mCache.size());
+    }
+
+    /**
+     * Verifies that responses requesting audio screening and calls without a presentable number
+     * are never cached.
+     */
+    @SmallTest
+    @Test
+    public void testUncacheableResponsesSkipped() {
+        CallScreeningService.ParcelableCallResponse audioResponse =
+                new CallScreeningService.CallResponse.Builder()
+                        .setShouldScreenCallViaAudioProcessing(true)
+                        .build()
+                        .toParcelable();
+        mCache.put(createCall("6505551212", USER), PKG_NAME, COMPONENT_NAME, audioResponse);
+
+        Call restrictedCall = createCall("6505551234", USER);
+        when(restrictedCall.getHandlePresentation()).thenReturn(
+                TelecomManager.PRESENTATION_RESTRICTED);
+        mCache.put(restrictedCall, PKG_NAME, COMPONENT_NAME, mDisallowResponse);
+        assertEquals(0, mCache.size());
+    }
+
+    /**
+     * Verifies that the cache is bounded and invalidated per user.
+     */
+    @SmallTest
+    @Test
+    public void testBoundedAndInvalidated() {
+        for (int i = 0; i < CallScreeningVerdictCache.MAX_ENTRIES + 5; i++) {
+            mCache.put(createCall("650555" + (1000 + i), USER), PKG_NAME, COMPONENT_NAME,
+                    mDisallowResponse);
+        }
+        assertEquals(CallScreeningVerdictCache.MAX_ENTRIES, mCache.size());
+        assertNull(mCache.get(createCall("6505551000", USER), PKG_NAME));
+
+        mCache.invalidate(10);
+        assertEquals(CallScreeningVerdictCache.MAX_ENTRIES, mCache.size());
+        mCache.invalidate(USER.getIdentifier());
+        assertEquals(0, mCache.size());
+    }
+
+    private static Call createCall(String number, UserHandle user) {
+        Call call = mock(Call.class);
+        when(call.getHandle()).thenReturn(Uri.fromParts("tel", number, null));
+        when(call.getHandlePresentation()).thenReturn(TelecomManager.PRESENTATION_ALLOWED);
+        when(call.getAssociatedUser()).thenReturn(user);
+        return call;
+    }
+}
@@ -56,6 +56,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.OutcomeReceiver;
+import android.os.PersistableBundle;
 import android.os.Process;
 import android.os.ResultReceiver;
 import android.os.SystemClock;
@@ -74,6 +75,7 @@ import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
 import android.telephony.CarrierConfigManager;
 import android.telephony.PhoneCapability;
+import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
@@ -3115,6 +3117,37 @@ public class CallsManagerTest extends TelecomTestCase {
                 eq(false));
     }
 
+    /**
+     * Verifies that the carrier call screening app is read again when the default subscription,
+     * whose carrier config it comes from, changes.
+     */
+    @SmallTest
+    @Test
+    public void testCarrierScreeningAppRefreshedOnDefaultSubscriptionChange() {
+        PersistableBundle config = new PersistableBundle();
+        config.putString(CarrierConfigManager.KEY_CARRIER_CALL_SCREENING_APP_STRING,
+                "com.carrier/.Screener");
+        when(mComponentContextFixture.getCarrierConfigManager().getConfig()).thenReturn(config);
+        // The cache is preloaded in the background, so wait for that before checking it.
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        mCallsManager.getCallFilterConfigCache().onCarrierConfigChanged();
+        waitForHandlerAction(mainHandler, TEST_TIMEOUT);
+        assertEquals("com.carrier",
+                mCallsManager.getCallFilterConfigCache().getCarrierPackageName());
+
+        PersistableBundle otherConfig = new PersistableBundle();
+        otherConfig.putString(CarrierConfigManager.KEY_CARRIER_CALL_SCREENING_APP_STRING,
+                "com.other.carrier/.Screener");
+        when(mComponentContextFixture.getCarrierConfigManager().getConfig())
+                .thenReturn(otherConfig);
+        mComponentContextFixture.getBroadcastReceivers().forEach(c -> c.onReceive(mContext,
+                new Intent(SubscriptionManager.ACTION_DEFAULT_SUBSCRIPTION_CHANGED)));
+        // The previous value is served until the reload on the main thread completes.
+        waitForHandlerAction(mainHandler, TEST_TIMEOUT);
+        assertEquals("com.other.carrier",
+                mCallsManager.getCallFilterConfigCache().getCarrierPackageName());
+    }
+
     /**
      * Verifies when {@link CallsManager} receives a signal from the blocked number provider that
      * the call blocking enabled state changes, it will trigger an update of the emergency call
@@ -393,6 +393,11 @@ public class ComponentContextFixture implements TestFixture<Context> {
             return null;
         }
 
+        @Override
+        public void unregisterReceiver(BroadcastReceiver receiver) {
+            mBroadcastReceivers.remove(receiver);
+        }
+
         @Override
         public void sendBroadcast(Intent intent) {
             // TODO -- need to ensure this is captured
@@ -475,11 +480,36 @@ public class ComponentContextFixture implements TestFixture<Context> {
         private int mMode = AudioManager.MODE_NORMAL;
         private int mRingerMode = AudioManager.RINGER_MODE_NORMAL;
         private AudioDeviceInfo mCommunicationDevice;
+        private int mNumDeviceQueries;
 
         public FakeAudioManager(Context context) {
             super(context);
         }
 
+        @Override
+        public List<AudioDeviceInfo> getAvailableCommunicationDevices() {
+            mNumDeviceQueries++;
+            return super.getAvailableCommunicationDevices();
+        }
+
+        @Override
+        public AudioDeviceInfo[] getDevices(int flags) {
+            mNumDeviceQueries++;
+            return super.getDevices(flags);
+        }
+
+        /**
+         * @return the number of device list queries made to the audio service, which tests use
+         * to count the calls made for each audio route transition.
+         */
+        public int getNumDeviceQueries() {
+            return mNumDeviceQueries;
+        }
+
+        public void resetNumDeviceQueries() {
+            mNumDeviceQueries = 0;
+        }
+
         @Override
         public void setMicrophoneMute(boolean value) {
             mMute = value;
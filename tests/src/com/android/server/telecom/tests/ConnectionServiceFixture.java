@@ -315,7 +315,9 @@ public class ConnectionServiceFixture implements TestFixture<IConnectionService>
                 Session.Info info) throws RemoteException { }
 
         @Override
-        public void answer(String callId, Session.Info info) throws RemoteException { }
+        public void answer(String callId, Session.Info info) throws RemoteException {
+            notifyRequest(REQUEST_ANSWER, callId);
+        }
 
         @Override
         public void deflect(String callId, Uri address, Session.Info info)
@@ -332,30 +334,39 @@ public class ConnectionServiceFixture implements TestFixture<IConnectionService>
         @Override
         public void reject(String callId, Session.Info info) throws RemoteException {
             rejectedCallIds.add(callId);
+            notifyRequest(REQUEST_REJECT, callId);
         }
 
         @Override public void rejectWithReason(java.lang.String callId, int rejectReason,
                 android.telecom.Logging.Session.Info sessionInfo) throws RemoteException {
             rejectedCallIds.add(callId);
+            notifyRequest(REQUEST_REJECT, callId);
         }
 
         @Override
         public void rejectWithMessage(String callId, String message,
                 Session.Info info) throws RemoteException {
             rejectedCallIds.add(callId);
+            notifyRequest(REQUEST_REJECT, callId);
         }
 
         @Override
-        public void disconnect(String callId, Session.Info info) throws RemoteException { }
+        public void disconnect(String callId, Session.Info info) throws RemoteException {
+            notifyRequest(REQUEST_DISCONNECT, callId);
+        }
 
         @Override
         public void silence(String callId, Session.Info info) throws RemoteException { }
 
         @Override
-        public void hold(String callId, Session.Info info) throws RemoteException { }
+        public void hold(String callId, Session.Info info) throws RemoteException {
+            notifyRequest(REQUEST_HOLD, callId);
+        }
 
         @Override
-        public void unhold(String callId, Session.Info info) throws RemoteException { }
+        public void unhold(String callId, Session.Info info) throws RemoteException {
+            notifyRequest(REQUEST_UNHOLD, callId);
+        }
 
         @Override
         public void onCallAudioStateChanged(String activeCallId, CallAudioState audioState,
@@ -524,6 +535,21 @@ public class ConnectionServiceFixture implements TestFixture<IConnectionService>
         Bundle extras;
     }
 
+    public static final String REQUEST_ANSWER = "answer";
+    public static final String REQUEST_DISCONNECT = "disconnect";
+    public static final String REQUEST_HOLD = "hold";
+    public static final String REQUEST_REJECT = "reject";
+    public static final String REQUEST_UNHOLD = "unhold";
+
+    /**
+     * Notified of requests from Telecom which a real ConnectionService would respond to, so a test
+     * can respond to them; called on the thread Telecom makes the request on.
+     */
+    public interface RequestListener {
+        void onRequest(String request, String connectionId);
+    }
+
+    public volatile RequestListener mRequestListener;
     public String mLatestConnectionId;
     public Connection mLatestConnection;
     public ParcelableConnection mLatestParcelableConnection;
@@ -540,6 +566,13 @@ public class ConnectionServiceFixture implements TestFixture<IConnectionService>
                 mConnectionServiceDelegate.onBind(null));
     }
 
+    private void notifyRequest(String request, String connectionId) {
+        RequestListener listener = mRequestListener;
+        if (listener != null) {
+            listener.onRequest(request, connectionId);
+        }
+    }
+
     @Override
     public IConnectionService getTestDouble() {
         return mConnectionServiceSpy;
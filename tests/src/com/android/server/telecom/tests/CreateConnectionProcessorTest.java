@@ -52,10 +52,12 @@ import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -67,6 +69,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -97,6 +100,8 @@ public class CreateConnectionProcessorTest extends TelecomTestCase {
     private ArrayList<PhoneAccount> phoneAccounts;
     private HashMap<Integer,Integer> mSubToSlot;
     private HashMap<PhoneAccount,Integer> mAccountToSub;
+    private HashSet<Integer> mOutOfServiceSubs;
+    private int mNumServiceStateQueries;
 
     @Override
     @Before
@@ -128,6 +133,7 @@ public class CreateConnectionProcessorTest extends TelecomTestCase {
         mAccountToSub = new HashMap<>();
         phoneAccounts = new ArrayList<>();
         mSubToSlot = new HashMap<>();
+        mOutOfServiceSubs = new HashSet<>();
         mTestCreateConnectionProcessor.setTelephonyManagerAdapter(
                 new CreateConnectionProcessor.ITelephonyManagerAdapter() {
                     @Override
@@ -141,6 +147,12 @@ public class CreateConnectionProcessorTest extends TelecomTestCase {
                         return mSubToSlot.getOrDefault(subId,
                                 SubscriptionManager.INVALID_SIM_SLOT_INDEX);
                     }
+
+                    @Override
+                    public boolean isInServiceForEmergency(Context context, int subId) {
+                        mNumServiceStateQueries++;
+                        return !mOutOfServiceSubs.contains(subId);
+                    }
                 });
         when(mMockAccountRegistrar.getAllPhoneAccounts(any(UserHandle.class), anyBoolean()))
                 .thenReturn(phoneAccounts);
@@ -690,6 +702,75 @@ public class CreateConnectionProcessorTest extends TelecomTestCase {
         verify(service).createConnection(eq(mMockCall), any(CreateConnectionResponse.class));
     }
 
+    /**
+     * Verifies that when parallel emergency binding is enabled, an in service SIM is tried before
+     * an out of service one, every candidate ConnectionService is bound up front, and the up front
+     * bindings are released once the call is created.
+     */
+    @SmallTest
+    @Test
+    public void testParallelEmergencyBindPrefersInServiceSim() throws Exception {
+        mTestCreateConnectionProcessor.setParallelEmergencyBindEnabled(true);
+        when(mMockCall.isEmergencyCall()).thenReturn(true);
+        when(mMockCall.isTestEmergencyCall()).thenReturn(false);
+        when(mMockCall.getHandle()).thenReturn(Uri.parse(""));
+        ConnectionServiceWrapper service = makeConnectionServiceWrapper();
+        PhoneAccount outOfServiceAccount = makeEmergencyPhoneAccount("tel_emer1", 0, null);
+        phoneAccounts.add(outOfServiceAccount);
+        mapToSubSlot(outOfServiceAccount, 1 /*subId*/, 0 /*slotId*/);
+        mOutOfServiceSubs.add(1);
+        PhoneAccount inServiceAccount = makeEmergencyPhoneAccount("tel_emer2", 0, null);
+        phoneAccounts.add(inServiceAccount);
+        mapToSubSlot(inServiceAccount, 2 /*subId*/, 1 /*slotId*/);
+        // Include a connection manager which can place emergency calls as a backup.
+        PhoneAccount emerCallManagerPA = getNewEmergencyConnectionManagerPhoneAccount("cm_acct",
+                PhoneAccount.CAPABILITY_PLACE_EMERGENCY_CALLS);
+        when(mMockAccountRegistrar.getOutgoingPhoneAccountForSchemeOfCurrentUser(
+                nullable(String.class))).thenReturn(inServiceAccount.getAccountHandle());
+
+        mTestCreateConnectionProcessor.process();
+
+        // Both the SIM and the connection manager attempts are bound before the first attempt.
+        verify(service, times(2)).prebind(eq(mMockCall), any(Runnable.class));
+        verify(mMockCall).setTargetPhoneAccount(eq(inServiceAccount.getAccountHandle()));
+        verify(mMockCall, never()).setTargetPhoneAccount(
+                eq(outOfServiceAccount.getAccountHandle()));
+        verify(mMockCall, never()).setConnectionManagerPhoneAccount(
+                eq(emerCallManagerPA.getAccountHandle()));
+        verify(service).createConnection(eq(mMockCall), any(CreateConnectionResponse.class));
+
+        CallIdMapper mockCallIdMapper = mock(CallIdMapper.class);
+        mTestCreateConnectionProcessor.handleCreateConnectionSuccess(mockCallIdMapper, null);
+        verify(mMockCreateConnectionResponse).handleCreateConnectionSuccess(mockCallIdMapper,
+                null);
+        verify(service, times(2)).releasePrebind();
+        assertEquals(1, mTestCreateConnectionProcessor.getAttemptLatenciesMillis().size());
+    }
+
+    /**
+     * Verifies that when ranking SIMs by service state, the service state of each subscription
+     * is read once rather than on every comparison.
+     */
+    @SmallTest
+    @Test
+    public void testServiceStateReadOncePerSubscription() {
+        mTestCreateConnectionProcessor.setParallelEmergencyBindEnabled(true);
+        when(mMockCall.isEmergencyCall()).thenReturn(true);
+        ArrayList<PhoneAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            PhoneAccount account = makeEmergencyPhoneAccount("tel_emer" + i, 0, null);
+            accounts.add(account);
+            mapToSubSlot(account, i + 1 /*subId*/, i /*slotId*/);
+        }
+        mOutOfServiceSubs.add(1);
+
+        mTestCreateConnectionProcessor.sortSimPhoneAccountsForEmergency(accounts, null);
+
+        assertEquals(4, mNumServiceStateQueries);
+        assertEquals(2, mAccountToSub.get(accounts.get(0)).intValue());
+        assertEquals(1, mAccountToSub.get(accounts.get(accounts.size() - 1)).intValue());
+    }
+
     /**
      * Tests to verify that the
      * {@link CreateConnectionProcessor#sortSimPhoneAccountsForEmergency(List, PhoneAccount)} can
@@ -40,12 +40,14 @@ import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telephony.TelephonyManager;
 
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.CallState;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.CallsManager;
 import com.android.server.telecom.ClockProxy;
 import com.android.server.telecom.EmergencyCallDiagnosticLogger;
+import com.android.server.telecom.EmergencyCallFlightRecorder;
 import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.PhoneNumberUtilsAdapter;
 import com.android.server.telecom.TelecomSystem;
@@ -60,6 +62,8 @@ import org.junit.runners.JUnit4;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -250,6 +254,47 @@ public class EmergencyCallDiagnosticLoggerTest extends TelecomTestCase {
         assertEquals(0, mEmergencyCallDiagnosticLogger.getEmergencyCallsMap().size());
     }
 
+    /**
+     * Test that the flight recorder is persisted when diagnostics are collected
+     */
+    @Test
+    public void testFlightRecorderPersistedForStuckCall() throws Exception {
+        Call call = createCall(true, Call.CALL_DIRECTION_OUTGOING);
+        mEmergencyCallDiagnosticLogger.onCallAdded(call);
+        mEmergencyCallDiagnosticLogger.onConnectionServiceBindStarted(call);
+        mEmergencyCallDiagnosticLogger.onConnectionServiceBindFinished(call, true, 20L);
+        mEmergencyCallDiagnosticLogger.onCallStateChanged(call, CallState.CONNECTING,
+                CallState.DIALING);
+        mEmergencyCallDiagnosticLogger.reportStuckCall(call);
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mDbm, times(1)).addData(
+                eq(EmergencyCallDiagnosticLogger.FLIGHT_RECORDER_DROPBOX_TAG), captor.capture(),
+                eq(0));
+        StringWriter out = new StringWriter();
+        EmergencyCallFlightRecorder.dumpSnapshot(new ByteArrayInputStream(captor.getValue()),
+                new IndentingPrintWriter(out, "  "));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("CALL_TRACKED"));
+        assertTrue(dump, dump.contains("CS_BIND_STARTED"));
+        assertTrue(dump, dump.contains("CS_BOUND after 20ms"));
+        assertTrue(dump, dump.contains("STATE_CHANGED CONNECTING -> DIALING"));
+        assertTrue(dump, dump.contains("TIMEOUT STUCK_CALL"));
+        assertTrue(dump, dump.contains("DIAGNOSTICS_TRIGGERED"));
+    }
+
+    /**
+     * Test that events for calls which are not tracked are not recorded
+     */
+    @Test
+    public void testFlightRecorderIgnoresUntrackedCalls() {
+        Call call = createCall(false, Call.CALL_DIRECTION_OUTGOING);
+        mEmergencyCallDiagnosticLogger.onConnectionServiceBindStarted(call);
+        mEmergencyCallDiagnosticLogger.onCallStateChanged(call, CallState.CONNECTING,
+                CallState.DIALING);
+        assertEquals(0, mEmergencyCallDiagnosticLogger.getFlightRecorder().size());
+    }
+
     @Test
     public void testEmergencyCallNeverWentActiveWithNonLocalDisconnectCause() {
         Call call = createCall(true, Call.CALL_DIRECTION_OUTGOING);
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import android.telecom.CallAudioState;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallState;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.EmergencyCallFlightRecorder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+@RunWith(JUnit4.class)
+public class EmergencyCallFlightRecorderTest extends TelecomTestCase {
+    private static final int CAPACITY = 4;
+
+    @Mock private ClockProxy mClockProxy;
+
+    private EmergencyCallFlightRecorder mRecorder;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mClockProxy.currentTimeMillis()).thenReturn(1000L);
+        mRecorder = new EmergencyCallFlightRecorder(mClockProxy, CAPACITY);
+    }
+
+    /**
+     * Verifies that once full, the recorder keeps only the most recent events, oldest first.
+     */
+    @SmallTest
+    @Test
+    public void testKeepsMostRecentEvents() {
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            mRecorder.record(EmergencyCallFlightRecorder.EVENT_STATE_CHANGED, null, i, i + 1);
+        }
+        assertEquals(CAPACITY, mRecorder.size());
+
+        ByteBuffer snapshot = ByteBuffer.wrap(mRecorder.snapshot());
+        assertEquals(EmergencyCallFlightRecorder.MAGIC, snapshot.getInt());
+        snapshot.getInt(); // version
+        assertEquals(CAPACITY, snapshot.getInt());
+        for (int i = 2; i < CAPACITY + 2; i++) {
+            assertEquals(1000L, snapshot.getLong());
+            assertEquals(EmergencyCallFlightRecorder.EVENT_STATE_CHANGED, snapshot.getInt());
+            assertEquals(EmergencyCallFlightRecorder.NO_CALL, snapshot.getInt());
+            assertEquals(i, snapshot.getInt());
+            assertEquals(i + 1, snapshot.getInt());
+        }
+        assertEquals(0, snapshot.remaining());
+    }
+
+    /**
+     * Verifies that a snapshot can be decoded from a stream.
+     */
+    @SmallTest
+    @Test
+    public void testDumpSnapshot() throws Exception {
+        mRecorder.record(EmergencyCallFlightRecorder.EVENT_STATE_CHANGED, null,
+                CallState.CONNECTING, CallState.DIALING);
+        mRecorder.record(EmergencyCallFlightRecorder.EVENT_AUDIO_ROUTE_CHANGED, null,
+                CallAudioState.ROUTE_EARPIECE, CallAudioState.ROUTE_SPEAKER);
+        mRecorder.record(EmergencyCallFlightRecorder.EVENT_TIMEOUT, null,
+                EmergencyCallFlightRecorder.TIMEOUT_CREATE_CONNECTION, CallState.DIALING);
+
+        StringWriter out = new StringWriter();
+        EmergencyCallFlightRecorder.dumpSnapshot(new ByteArrayInputStream(mRecorder.snapshot()),
+                new IndentingPrintWriter(out, "  "));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("STATE_CHANGED CONNECTING -> DIALING"));
+        assertTrue(dump, dump.contains("AUDIO_ROUTE_CHANGED EARPIECE -> SPEAKER"));
+        assertTrue(dump, dump.contains("TIMEOUT CREATE_CONNECTION"));
+    }
+
+    /**
+     * Verifies that data which is not a snapshot is rejected.
+     */
+    @SmallTest
+    @Test
+    public void testDumpSnapshotRejectsOtherData() {
+        try {
+            EmergencyCallFlightRecorder.dumpSnapshot(
+                    new ByteArrayInputStream("not a snapshot".getBytes()),
+                    new IndentingPrintWriter(new StringWriter(), "  "));
+            fail("expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testGetCallNumber() {
+        assertEquals(5, EmergencyCallFlightRecorder.getCallNumber("TC@5"));
+        assertEquals(123, EmergencyCallFlightRecorder.getCallNumber("TC@123"));
+        assertEquals(EmergencyCallFlightRecorder.NO_CALL,
+                EmergencyCallFlightRecorder.getCallNumber("TC@"));
+        assertEquals(EmergencyCallFlightRecorder.NO_CALL,
+                EmergencyCallFlightRecorder.getCallNumber(null));
+    }
+}
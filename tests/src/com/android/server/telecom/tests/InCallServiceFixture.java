@@ -53,6 +53,16 @@ public class InCallServiceFixture implements TestFixture<IInCallService> {
     public CountDownLatch mUpdateCallLock = new CountDownLatch(1);
     public CountDownLatch mAddCallLock = new CountDownLatch(1);
 
+    /**
+     * Notified as calls are added and updated, for tests which measure when they arrive; called on
+     * the thread Telecom makes the call on.
+     */
+    public interface CallListener {
+        void onCallAddedOrUpdated(ParcelableCall call, boolean isAdded);
+    }
+
+    public volatile CallListener mCallListener;
+
     public class FakeInCallService extends IInCallService.Stub {
         @Override
         public void setInCallAdapter(IInCallAdapter inCallAdapter) throws RemoteException {
@@ -72,6 +82,7 @@ public class InCallServiceFixture implements TestFixture<IInCallService> {
             }
             mLatestCallId = call.getId();
             mCallById.put(call.getId(), call);
+            notifyCall(call, true /* isAdded */);
             mAddCallLock.countDown();
         }
 
@@ -86,6 +97,7 @@ public class InCallServiceFixture implements TestFixture<IInCallService> {
             }
             mLatestCallId = call.getId();
             mCallById.put(call.getId(), call);
+            notifyCall(call, false /* isAdded */);
             mUpdateCallLock.countDown();
         }
 
@@ -171,6 +183,13 @@ public class InCallServiceFixture implements TestFixture<IInCallService> {
         return mInCallServiceSpy;
     }
 
+    private void notifyCall(ParcelableCall call, boolean isAdded) {
+        CallListener listener = mCallListener;
+        if (listener != null) {
+            listener.onCallAddedOrUpdated(call, isAdded);
+        }
+    }
+
     public ParcelableCall getCall(String id) {
         return mCallById.get(id);
     }
@@ -27,6 +27,7 @@ import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.callfiltering.CallFilter;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
+import com.android.server.telecom.callfiltering.CallFilterTelemetry;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
 
@@ -40,6 +41,7 @@ import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
@@ -66,6 +68,7 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
     private final long FILTER_TIMEOUT = 5000;
     private final long TEST_TIMEOUT = 7000;
     private final long TIMEOUT_FILTER_SLEEP_TIME = 10000;
+    private final long SLOW_FILTER_SLEEP_TIME = 100;
 
     private class AllowFilter extends CallFilter {
         @Override
@@ -98,6 +101,23 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
         }
     }
 
+    private class SlowFilter extends CallFilter {
+        private final Handler mHandler;
+
+        SlowFilter(Handler handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            CompletableFuture<CallFilteringResult> resultFuture = new CompletableFuture<>();
+            mHandler.postDelayed(() -> resultFuture.complete(PASS_CALL_RESULT),
+                    SLOW_FILTER_SLEEP_TIME);
+            return resultFuture;
+        }
+    }
+
     @Before
     @Override
     public void setUp() throws Exception {
@@ -175,4 +195,37 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
 
         assertEquals(REJECT_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
     }
+
+    @SmallTest
+    @Test
+    public void testFilterTimingsReported() throws Exception {
+        HandlerThread handlerThread = new HandlerThread("SlowFilter");
+        handlerThread.start();
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> testResult.complete(result);
+        CallFilterTelemetry telemetry = new CallFilterTelemetry();
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock, telemetry);
+        AllowFilter allowFilter1 = new AllowFilter();
+        AllowFilter allowFilter2 = new AllowFilter();
+        SlowFilter slowFilter = new SlowFilter(new Handler(handlerThread.getLooper()));
+        graph.addFilter(allowFilter1);
+        graph.addFilter(allowFilter2);
+        graph.addFilter(slowFilter);
+        IncomingCallFilterGraph.addEdge(allowFilter1, slowFilter);
+        graph.performFiltering();
+
+        assertEquals(PASS_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        graph.getHandlerThread().join(TEST_TIMEOUT);
+        handlerThread.quitSafely();
+
+        // The slow filter and the filter it waited on determine when filtering completes.
+        assertEquals(List.of(allowFilter1, slowFilter), graph.getCriticalPath(false));
+        assertEquals(1, telemetry.getNumOnCriticalPath("SlowFilter"));
+        assertEquals(1, telemetry.getNumOnCriticalPath("AllowFilter"));
+        int[] histogram = telemetry.getExecutionHistogram("SlowFilter");
+        assertEquals(1, histogram[CallFilterTelemetry.getBucket(SLOW_FILTER_SLEEP_TIME)]
+                + histogram[CallFilterTelemetry.getBucket(SLOW_FILTER_SLEEP_TIME) + 1]);
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.LockContentionProfiler;
+import com.android.server.telecom.TelecomSystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class LockContentionProfilerTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        LockContentionProfiler.reset();
+        LockContentionProfiler.setEnabled(true);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        LockContentionProfiler.setEnabled(false);
+        LockContentionProfiler.reset();
+        super.tearDown();
+    }
+
+    /**
+     * Verifies that an uncontended acquisition is recorded once, and that a nested acquisition by
+     * the thread already holding the lock is not recorded.
+     */
+    @SmallTest
+    @Test
+    public void testUncontendedAcquisition() {
+        runSite("outer", () -> runSite("inner", null));
+
+        LockContentionProfiler.SiteStats stats = LockContentionProfiler.getSiteStatsSnapshot(
+                "outer");
+        assertEquals(1, stats.acquisitions);
+        assertEquals(0, stats.contendedAcquisitions);
+        assertEquals(1, Arrays.stream(stats.waitHistogram).sum());
+        assertEquals(1, Arrays.stream(stats.holdHistogram).sum());
+        assertNull(LockContentionProfiler.getSiteStatsSnapshot("inner"));
+    }
+
+    /**
+     * Verifies that an acquisition which waits for another call site is attributed to it.
+     */
+    @SmallTest
+    @Test
+    public void testContentionAttributedToHolder() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> runSite("holder", () -> {
+            holding.countDown();
+            try {
+                release.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Release the lock.
+            }
+        }));
+        holder.start();
+        assertTrue(holding.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        Thread waiter = new Thread(() -> runSite("waiter", null));
+        waiter.start();
+        long deadline = System.currentTimeMillis() + TEST_TIMEOUT;
+        while (waiter.getState() != Thread.State.BLOCKED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        holder.join(TEST_TIMEOUT);
+        waiter.join(TEST_TIMEOUT);
+
+        LockContentionProfiler.SiteStats waiterStats =
+                LockContentionProfiler.getSiteStatsSnapshot("waiter");
+        assertEquals(1, waiterStats.contendedAcquisitions);
+        assertEquals(Integer.valueOf(1), waiterStats.blockedBy.get("holder"));
+        LockContentionProfiler.SiteStats holderStats =
+                LockContentionProfiler.getSiteStatsSnapshot("holder");
+        assertEquals(0, holderStats.contendedAcquisitions);
+        assertEquals(waiterStats.totalWaitNanos, holderStats.causedWaitNanos);
+    }
+
+    /**
+     * Verifies that nothing is recorded while profiling is disabled.
+     */
+    @SmallTest
+    @Test
+    public void testDisabled() {
+        LockContentionProfiler.setEnabled(false);
+        runSite("site", null);
+        assertNull(LockContentionProfiler.getSiteStatsSnapshot("site"));
+    }
+
+    private void runSite(String site, Runnable whileHeld) {
+        try {
+            LockContentionProfiler.beginAcquire(mLock, site);
+            synchronized (mLock) {
+                LockContentionProfiler.onAcquired();
+                if (whileHeld != null) {
+                    whileHeld.run();
+                }
+            }
+        } finally {
+            LockContentionProfiler.onReleased();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal harness for timing Telecom hot paths from the unit tests.
+ * <p>
+ * Each benchmark runs an operation in batches: the first batches warm up the code under test,
+ * and each of the remaining batches is timed as one sample of the time per operation.  The
+ * results of a suite are written as JSON to the test app's files directory, and the path of the
+ * file is reported as an instrumentation status under a key starting with
+ * {@link #STATUS_KEY_PREFIX} so that it can be collected for regression tracking.
+ */
+public class MicroBenchmark {
+    private static final String TAG = "TelecomBenchmark";
+    public static final String STATUS_KEY_PREFIX = "telecom_benchmark_";
+    private static final String RESULTS_DIR = "telecom_benchmarks";
+    // The status code of a test in progress, so the status is not mistaken for a test result.
+    private static final int INSTRUMENTATION_STATUS_IN_PROGRESS = 2;
+
+    /**
+     * An operation being benchmarked.
+     */
+    public interface Operation {
+        /**
+         * @param iteration The index of this run of the operation, for operations which cycle
+         *                  through inputs.
+         */
+        void run(int iteration) throws Exception;
+    }
+
+    /**
+     * The timing of one benchmark.
+     */
+    public static class Result {
+        public final String name;
+        public final int operationsPerSample;
+        public final long[] sampleNanosPerOp;
+
+        Result(String name, int operationsPerSample, long[] sampleNanosPerOp) {
+            this.name = name;
+            this.operationsPerSample = operationsPerSample;
+            this.sampleNanosPerOp = sampleNanosPerOp.clone();
+            Arrays.sort(this.sampleNanosPerOp);
+        }
+
+        public long getPercentileNanos(int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * sampleNanosPerOp.length) - 1;
+            return sampleNanosPerOp[Math.max(0, Math.min(index, sampleNanosPerOp.length - 1))];
+        }
+
+        public long getMeanNanos() {
+            long total = 0;
+            for (long nanos : sampleNanosPerOp) {
+                total += nanos;
+            }
+            return total / sampleNanosPerOp.length;
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("name", name)
+                    .put("samples", sampleNanosPerOp.length)
+                    .put("opsPerSample", operationsPerSample)
+                    .put("minNs", sampleNanosPerOp[0])
+                    .put("meanNs", getMeanNanos())
+                    .put("p50Ns", getPercentileNanos(50))
+                    .put("p90Ns", getPercentileNanos(90))
+                    .put("p99Ns", getPercentileNanos(99))
+                    .put("maxNs", sampleNanosPerOp[sampleNanosPerOp.length - 1]);
+        }
+    }
+
+    private final String mSuite;
+    private final List<Result> mResults = new ArrayList<>();
+    private final Map<String, Long> mMetrics = new LinkedHashMap<>();
+
+    /**
+     * @param suite The name of the suite, which names the file its results are written to.
+     */
+    public MicroBenchmark(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Times an operation.
+     *
+     * @param name The name of the benchmark within the suite.
+     * @param warmupSamples The number of batches to run before timing.
+     * @param samples The number of batches to time.
+     * @param operationsPerSample The number of operations in each batch; operations much faster
+     *                            than the timer's resolution should be run in larger batches.
+     * @param operation The operation.
+     * @return the timing, which is also added to the suite's results.
+     */
+    public Result measure(String name, int warmupSamples, int samples, int operationsPerSample,
+            Operation operation) throws Exception {
+        int iteration = 0;
+        for (int i = 0; i < warmupSamples * operationsPerSample; i++) {
+            operation.run(iteration++);
+        }
+        long[] sampleNanosPerOp = new long[samples];
+        for (int sample = 0; sample < samples; sample++) {
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < operationsPerSample; i++) {
+                operation.run(iteration++);
+            }
+            sampleNanosPerOp[sample] = (System.nanoTime() - startNanos) / operationsPerSample;
+        }
+        Result result = new Result(name, operationsPerSample, sampleNanosPerOp);
+        mResults.add(result);
+        Log.i(TAG, mSuite + "." + name + ": p50=" + result.getPercentileNanos(50) + "ns, p99="
+                + result.getPercentileNanos(99) + "ns");
+        return result;
+    }
+
+    /**
+     * Adds timings which were measured by the caller, such as the latencies of operations which
+     * complete asynchronously.
+     *
+     * @param name The name of the benchmark within the suite.
+     * @param sampleNanos The time each operation took.
+     * @return the timing, which is also added to the suite's results.
+     */
+    public Result record(String name, long[] sampleNanos) {
+        Result result = new Result(name, 1 /* operationsPerSample */, sampleNanos);
+        mResults.add(result);
+        Log.i(TAG, mSuite + "." + name + ": p50=" + result.getPercentileNanos(50) + "ns, p99="
+                + result.getPercentileNanos(99) + "ns");
+        return result;
+    }
+
+    /**
+     * Adds a measurement other than a timing, such as a thread count or a number of bytes.
+     *
+     * @param name The name of the measurement within the suite.
+     * @param value The value.
+     */
+    public void putMetric(String name, long value) {
+        mMetrics.put(name, value);
+        Log.i(TAG, mSuite + "." + name + ": " + value);
+    }
+
+    /**
+     * @return the results of the suite as JSON.
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONArray results = new JSONArray();
+        for (Result result : mResults) {
+            results.put(result.toJson());
+        }
+        JSONObject metrics = new JSONObject();
+        for (Map.Entry<String, Long> metric : mMetrics.entrySet()) {
+            metrics.put(metric.getKey(), (long) metric.getValue());
+        }
+        return new JSONObject()
+                .put("suite", mSuite)
+                .put("device", Build.DEVICE)
+                .put("build", Build.FINGERPRINT)
+                .put("timestampMillis", System.currentTimeMillis())
+                .put("results", results)
+                .put("metrics", metrics);
+    }
+
+    /**
+     * Writes the results of the suite to a JSON file and reports its path.
+     *
+     * @return the file written.
+     */
+    public File report() throws IOException, JSONException {
+        File dir = new File(InstrumentationRegistry.getTargetContext().getFilesDir(),
+                RESULTS_DIR);
+        dir.mkdirs();
+        File file = new File(dir, mSuite + ".json");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+        }
+        Bundle status = new Bundle();
+        status.putString(STATUS_KEY_PREFIX + mSuite, file.getAbsolutePath());
+        InstrumentationRegistry.getInstrumentation().sendStatus(
+                INSTRUMENTATION_STATUS_IN_PROGRESS, status);
+        return file;
+    }
+}
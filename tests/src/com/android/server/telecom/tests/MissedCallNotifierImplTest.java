@@ -625,6 +625,80 @@ public class MissedCallNotifierImplTest extends TelecomTestCase {
                 nullable(Notification.class), eq(PRIMARY_USER));
     }
 
+    /**
+     * Verifies that a batched reload looks up only the most recent caller, however many calls
+     * were missed, and posts a single notification counting all of them.
+     */
+    @SmallTest
+    @Test
+    public void testBatchedLoadCallsFromDb() throws Exception {
+        TelecomSystem.setInstance(mTelecomSystem);
+        when(mTelecomSystem.isBootComplete()).thenReturn(true);
+        CallerInfoLookupHelper mockCallerInfoLookupHelper = mock(CallerInfoLookupHelper.class);
+        MissedCallNotifier.CallInfoFactory mockCallInfoFactory =
+                mock(MissedCallNotifier.CallInfoFactory.class);
+
+        // The call log returns the most recent missed call first.
+        Cursor mockMissedCallsCursor = new MockMissedCallCursorBuilder()
+                .addEntry(TEL_CALL_HANDLE.getSchemeSpecificPart(),
+                        CallLog.Calls.PRESENTATION_ALLOWED, CALL_TIMESTAMP)
+                .addEntry(SIP_CALL_HANDLE.getSchemeSpecificPart(),
+                        CallLog.Calls.PRESENTATION_ALLOWED, CALL_TIMESTAMP - 1000)
+                .addEntry(TEL_CALL_HANDLE.getSchemeSpecificPart(),
+                        CallLog.Calls.PRESENTATION_ALLOWED, CALL_TIMESTAMP - 2000)
+                .addEntry(null, CallLog.Calls.PRESENTATION_RESTRICTED, CALL_TIMESTAMP - 3000)
+                .build();
+
+        Uri queryUri = ContentProvider.maybeAddUserId(CallLog.Calls.CONTENT_URI,
+                PRIMARY_USER.getIdentifier());
+        IContentProvider cp = getContentProviderForUser(PRIMARY_USER.getIdentifier());
+
+        when(cp.query(any(), eq(queryUri), nullable(String[].class),
+                nullable(Bundle.class), nullable(ICancellationSignal.class)))
+                .thenReturn(mockMissedCallsCursor);
+
+        PhoneAccount phoneAccount = makePhoneAccount(PRIMARY_USER, NO_CAPABILITY);
+        MissedCallNotifier.CallInfo fakeCallInfo = makeFakeCallInfo(TEL_CALL_HANDLE,
+                CALLER_NAME, CALL_TIMESTAMP, phoneAccount.getAccountHandle());
+        when(mockCallInfoFactory.makeCallInfo(nullable(CallerInfo.class),
+                nullable(PhoneAccountHandle.class), nullable(Uri.class), eq(CALL_TIMESTAMP)))
+                .thenReturn(fakeCallInfo);
+
+        Notification.Builder builder1 = makeNotificationBuilder("builder1");
+        Notification.Builder builder2 = makeNotificationBuilder("builder2");
+        MissedCallNotifierImpl.NotificationBuilderFactory fakeBuilderFactory =
+                makeNotificationBuilderFactory(builder1, builder2);
+
+        MissedCallNotifierImpl missedCallNotifier = new MissedCallNotifierImpl(mContext,
+                mPhoneAccountRegistrar, mDefaultDialerCache, fakeBuilderFactory,
+                mDeviceIdleControllerAdapter);
+        missedCallNotifier.setBatchedReloadEnabled(true);
+
+        Handler h = new Handler(Looper.getMainLooper());
+        h.post(() -> missedCallNotifier.reloadFromDatabase(
+                mockCallerInfoLookupHelper, mockCallInfoFactory, PRIMARY_USER));
+        waitForHandlerAction(h, TEST_TIMEOUT);
+
+        Uri escapedTelHandle = Uri.fromParts(PhoneAccount.SCHEME_TEL,
+                TEL_CALL_HANDLE.getSchemeSpecificPart(), null);
+        ArgumentCaptor<CallerInfoLookupHelper.OnQueryCompleteListener> listenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        verify(mockCallerInfoLookupHelper, timeout(TEST_TIMEOUT)).startLookup(eq(escapedTelHandle),
+                listenerCaptor.capture());
+
+        CallerInfo ci = new CallerInfo();
+        listenerCaptor.getValue().onCallerInfoQueryComplete(escapedTelHandle, ci);
+        verify(mockCallInfoFactory).makeCallInfo(eq(ci), isNull(PhoneAccountHandle.class),
+                eq(escapedTelHandle), eq(CALL_TIMESTAMP));
+
+        // One lookup and one notification for all four missed calls.
+        verify(mockCallerInfoLookupHelper, times(1)).startLookup(nullable(Uri.class),
+                any(CallerInfoLookupHelper.OnQueryCompleteListener.class));
+        verify(mNotificationManager, times(1)).notifyAsUser(nullable(String.class), eq(1),
+                nullable(Notification.class), eq(PRIMARY_USER));
+        verify(builder2).setContentTitle(MISSED_CALLS_TITLE);
+    }
+
     @SmallTest
     @Test
     public void testDialerHandleMissedCall() {
@@ -4,6 +4,8 @@ import static com.android.server.telecom.TelecomSystem.SyncRoot;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -190,6 +192,43 @@ public class ParcelableCallUtilsTest extends TelecomTestCase {
         assertEquals(connectionVerificationStatus, call.getCallerNumberVerificationStatus());
     }
 
+    /**
+     * Verifies that calls parcelled between changes to the extras share the sanitized extras,
+     * and that a change to the extras does not modify extras which were already parcelled.
+     */
+    @SmallTest
+    @Test
+    public void testSanitizedExtrasSharedUntilChanged() {
+        mCall.putConnectionServiceExtras(getSomeExtras());
+        ParcelableCall first = ParcelableCallUtils.toParcelableCall(mCall,
+                false /* includevideoProvider */,
+                null /* phoneAccountRegistrar */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                false /* isForSystemDialer */);
+        ParcelableCall second = ParcelableCallUtils.toParcelableCall(mCall,
+                false /* includevideoProvider */,
+                null /* phoneAccountRegistrar */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                false /* isForSystemDialer */);
+        assertSame(first.getExtras(), second.getExtras());
+        assertEquals(1, mCall.getCallExtras().getNumSanitizations());
+
+        Bundle newExtras = new Bundle();
+        newExtras.putString(Connection.EXTRA_CALL_SUBJECT, "Changed");
+        mCall.putConnectionServiceExtras(newExtras);
+        ParcelableCall third = ParcelableCallUtils.toParcelableCall(mCall,
+                false /* includevideoProvider */,
+                null /* phoneAccountRegistrar */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                false /* isForSystemDialer */);
+        assertNotSame(first.getExtras(), third.getExtras());
+        assertEquals("Blah", first.getExtras().getString(Connection.EXTRA_CALL_SUBJECT));
+        assertEquals("Changed", third.getExtras().getString(Connection.EXTRA_CALL_SUBJECT));
+    }
+
     private Bundle getSomeExtras() {
         Bundle extras = new Bundle();
         extras.putString(Connection.EXTRA_SIP_INVITE, "scary data");
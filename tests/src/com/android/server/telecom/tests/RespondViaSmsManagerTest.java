@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.telecom.Response;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.QuickResponseUtils;
+import com.android.server.telecom.RespondViaSmsManager;
+import com.android.server.telecom.TelecomSystem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+@RunWith(JUnit4.class)
+public class RespondViaSmsManagerTest extends TelecomTestCase {
+    private static final String DEFAULT_RESPONSE = "default";
+
+    @Mock private CallsManager mCallsManager;
+    @Mock private Context mMockContext;
+    @Mock private SharedPreferences mPrefs;
+    @Mock private Resources mResources;
+    @Mock private Call mCall;
+
+    private final Map<String, String> mPrefValues = new HashMap<>();
+    private final Queue<Runnable> mPendingTasks = new ArrayDeque<>();
+    private RespondViaSmsManager mRespondViaSmsManager;
+
+    /**
+     * Records the replies made to a request for the canned responses.
+     */
+    private static class ResponseRecorder implements Response<Void, List<String>> {
+        List<String> mResult;
+        int mResultCount;
+        int mErrorCount;
+
+        @Override
+        public void onResult(Void request, List<String>... result) {
+            mResult = result[0];
+            mResultCount++;
+        }
+
+        @Override
+        public void onError(Void request, int code, String msg) {
+            mErrorCount++;
+        }
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mPrefValues.put(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1, "one");
+        when(mMockContext.getSharedPreferences(eq(QuickResponseUtils.SHARED_PREFERENCES_NAME),
+                anyInt())).thenReturn(mPrefs);
+        when(mMockContext.getResources()).thenReturn(mResources);
+        when(mResources.getString(anyInt())).thenReturn(DEFAULT_RESPONSE);
+        when(mPrefs.contains(anyString())).thenReturn(true);
+        when(mPrefs.getString(anyString(), any())).thenAnswer(invocation -> {
+            String value = mPrefValues.get(invocation.<String>getArgument(0));
+            return value != null ? value : invocation.getArgument(1);
+        });
+        mRespondViaSmsManager = new RespondViaSmsManager(mCallsManager,
+                new TelecomSystem.SyncRoot() { }, mMockContext, mPendingTasks::add);
+    }
+
+    /**
+     * Verifies that the responses are read once, in the background, and that requests made while
+     * they are being read are all answered when they have been.
+     */
+    @SmallTest
+    @Test
+    public void testResponsesReadOnceInBackground() {
+        ResponseRecorder first = new ResponseRecorder();
+        ResponseRecorder second = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(first);
+        mRespondViaSmsManager.loadCannedTextMessages(second);
+        assertEquals(0, first.mResultCount);
+        verify(mMockContext, never()).getSharedPreferences(anyString(), anyInt());
+
+        runPendingTasks();
+        assertEquals(1, first.mResultCount);
+        assertEquals(1, second.mResultCount);
+        assertEquals(List.of("one", DEFAULT_RESPONSE, DEFAULT_RESPONSE, DEFAULT_RESPONSE),
+                first.mResult);
+        verify(mPrefs, times(1)).getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_4,
+                DEFAULT_RESPONSE);
+    }
+
+    /**
+     * Verifies that once read, the responses are given straight away without touching storage.
+     */
+    @SmallTest
+    @Test
+    public void testCachedResponsesGivenWithoutReading() {
+        mRespondViaSmsManager.loadCannedTextMessages(new ResponseRecorder());
+        runPendingTasks();
+
+        ResponseRecorder cached = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(cached);
+        assertEquals(1, cached.mResultCount);
+        assertEquals("one", cached.mResult.get(0));
+        assertNull(mPendingTasks.peek());
+        verify(mPrefs, times(1)).getString(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1,
+                DEFAULT_RESPONSE);
+    }
+
+    /**
+     * Verifies that a change to the preferences causes the responses to be read again.
+     */
+    @SmallTest
+    @Test
+    public void testPreferenceChangeRefreshesResponses() {
+        mRespondViaSmsManager.loadCannedTextMessages(new ResponseRecorder());
+        runPendingTasks();
+        ArgumentCaptor<SharedPreferences.OnSharedPreferenceChangeListener> listenerCaptor =
+                ArgumentCaptor.forClass(SharedPreferences.OnSharedPreferenceChangeListener.class);
+        verify(mPrefs).registerOnSharedPreferenceChangeListener(listenerCaptor.capture());
+
+        mPrefValues.put(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1, "changed");
+        listenerCaptor.getValue().onSharedPreferenceChanged(mPrefs,
+                QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1);
+        runPendingTasks();
+
+        ResponseRecorder refreshed = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(refreshed);
+        assertEquals(1, refreshed.mResultCount);
+        assertEquals("changed", refreshed.mResult.get(0));
+    }
+
+    /**
+     * Verifies that changes announced by the settings or a change of locale cause the responses
+     * to be read again.
+     */
+    @SmallTest
+    @Test
+    public void testBroadcastRefreshesResponses() {
+        mRespondViaSmsManager.loadCannedTextMessages(new ResponseRecorder());
+        runPendingTasks();
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        ArgumentCaptor<IntentFilter> filterCaptor = ArgumentCaptor.forClass(IntentFilter.class);
+        verify(mMockContext).registerReceiver(receiverCaptor.capture(), filterCaptor.capture(),
+                eq(Context.RECEIVER_NOT_EXPORTED));
+        assertEquals(true, filterCaptor.getValue().hasAction(Intent.ACTION_LOCALE_CHANGED));
+        assertEquals(true, filterCaptor.getValue().hasAction(
+                QuickResponseUtils.ACTION_QUICK_RESPONSES_CHANGED));
+
+        receiverCaptor.getValue().onReceive(mMockContext,
+                new Intent(QuickResponseUtils.ACTION_QUICK_RESPONSES_CHANGED));
+        when(mResources.getString(anyInt())).thenReturn("translated");
+        receiverCaptor.getValue().onReceive(mMockContext, new Intent(Intent.ACTION_LOCALE_CHANGED));
+        runPendingTasks();
+
+        ResponseRecorder refreshed = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(refreshed);
+        assertEquals(1, refreshed.mResultCount);
+        assertEquals("translated", refreshed.mResult.get(1));
+    }
+
+    /**
+     * Verifies that a response edited in the settings, which run in another process, replaces
+     * the cached one once the settings announce the edit.
+     */
+    @SmallTest
+    @Test
+    public void testSettingsEditInvalidatesCache() {
+        when(mMockContext.getPackageName()).thenReturn("com.android.server.telecom");
+        mRespondViaSmsManager.loadCannedTextMessages(new ResponseRecorder());
+        runPendingTasks();
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mMockContext).registerReceiver(receiverCaptor.capture(), any(IntentFilter.class),
+                eq(Context.RECEIVER_NOT_EXPORTED));
+
+        mPrefValues.put(QuickResponseUtils.KEY_CANNED_RESPONSE_PREF_1, "edited");
+        QuickResponseUtils.notifyQuickResponsesChanged(mMockContext);
+        ArgumentCaptor<Intent> intentCaptor = ArgumentCaptor.forClass(Intent.class);
+        verify(mMockContext).sendBroadcast(intentCaptor.capture());
+        assertEquals(QuickResponseUtils.ACTION_QUICK_RESPONSES_CHANGED,
+                intentCaptor.getValue().getAction());
+        assertEquals("com.android.server.telecom", intentCaptor.getValue().getPackage());
+
+        receiverCaptor.getValue().onReceive(mMockContext, intentCaptor.getValue());
+        runPendingTasks();
+
+        ResponseRecorder edited = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(edited);
+        assertEquals(1, edited.mResultCount);
+        assertEquals("edited", edited.mResult.get(0));
+    }
+
+    /**
+     * Verifies that an incoming call starts reading the responses, so they are ready by the time
+     * it rings.
+     */
+    @SmallTest
+    @Test
+    public void testIncomingCallPrewarmsResponses() {
+        when(mCall.isIncoming()).thenReturn(false);
+        mRespondViaSmsManager.onStartCreateConnection(mCall);
+        assertNull(mPendingTasks.peek());
+
+        when(mCall.isIncoming()).thenReturn(true);
+        mRespondViaSmsManager.onStartCreateConnection(mCall);
+        runPendingTasks();
+
+        ResponseRecorder ringing = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(ringing);
+        assertEquals(1, ringing.mResultCount);
+        assertNull(mPendingTasks.peek());
+    }
+
+    /**
+     * Verifies that a failure to read the responses is reported, and that they are read again
+     * the next time they are needed.
+     */
+    @SmallTest
+    @Test
+    public void testReadFailureReportedAndRetried() {
+        when(mPrefs.contains(anyString())).thenThrow(new IllegalStateException("locked"));
+        ResponseRecorder failed = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(failed);
+        runPendingTasks();
+        assertEquals(1, failed.mErrorCount);
+        assertEquals(0, failed.mResultCount);
+
+        doReturn(true).when(mPrefs).contains(anyString());
+        ResponseRecorder retried = new ResponseRecorder();
+        mRespondViaSmsManager.loadCannedTextMessages(retried);
+        runPendingTasks();
+        assertEquals(1, retried.mResultCount);
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = mPendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
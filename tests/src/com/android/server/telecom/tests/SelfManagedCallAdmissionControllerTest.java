@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.telecom.PhoneAccountHandle;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallState;
+import com.android.server.telecom.SelfManagedCallAdmissionController;
+import com.android.server.telecom.stats.CallFailureCause;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SelfManagedCallAdmissionControllerTest extends TelecomTestCase {
+    private static final PhoneAccountHandle VOIP_HANDLE_1 = new PhoneAccountHandle(
+            new ComponentName("com.voip.app", "com.voip.app.Service"), "1");
+    private static final PhoneAccountHandle VOIP_HANDLE_2 = new PhoneAccountHandle(
+            new ComponentName("com.voip.app", "com.voip.app.Service"), "2");
+
+    private SelfManagedCallAdmissionController mController;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mController = new SelfManagedCallAdmissionController(1 /* maxRingingCalls */,
+                3 /* maxCalls */);
+        mController.setFastPathEnabled(true);
+    }
+
+    /**
+     * Verifies that only ringing calls for the same account count towards the ringing limit, and
+     * that the counters follow call state changes.
+     */
+    @SmallTest
+    @Test
+    public void testRingingLimitPerAccount() {
+        Call ringingCall = makeCall(VOIP_HANDLE_1, CallState.RINGING, true /* isSelfManaged */);
+        mController.onCallAdded(ringingCall);
+        assertEquals(CallFailureCause.MAX_RINGING_CALLS,
+                mController.checkIncomingCallPermitted(null, VOIP_HANDLE_1));
+        assertEquals(CallFailureCause.NONE,
+                mController.checkIncomingCallPermitted(null, VOIP_HANDLE_2));
+        // The call being admitted is never counted against itself.
+        assertEquals(CallFailureCause.NONE,
+                mController.checkIncomingCallPermitted(ringingCall, VOIP_HANDLE_1));
+
+        when(ringingCall.getState()).thenReturn(CallState.ACTIVE);
+        mController.onCallStateChanged(ringingCall, CallState.RINGING, CallState.ACTIVE);
+        assertEquals(0, mController.getNumRingingCalls(null, VOIP_HANDLE_1));
+        assertEquals(1, mController.getNumCalls(null, VOIP_HANDLE_1));
+        assertEquals(CallFailureCause.NONE,
+                mController.checkIncomingCallPermitted(null, VOIP_HANDLE_1));
+    }
+
+    /**
+     * Verifies the total call limit, and that managed, external and removed calls are not counted.
+     */
+    @SmallTest
+    @Test
+    public void testCallLimitIgnoresUncountedCalls() {
+        mController.onCallAdded(makeCall(VOIP_HANDLE_1, CallState.RINGING,
+                false /* isSelfManaged */));
+        Call externalCall = makeCall(VOIP_HANDLE_1, CallState.ACTIVE, true /* isSelfManaged */);
+        when(externalCall.isExternalCall()).thenReturn(true);
+        mController.onCallAdded(externalCall);
+        assertEquals(0, mController.getNumCalls(null, VOIP_HANDLE_1));
+
+        Call lastCall = null;
+        for (int i = 0; i < 3; i++) {
+            lastCall = makeCall(VOIP_HANDLE_1, CallState.ON_HOLD, true /* isSelfManaged */);
+            mController.onCallAdded(lastCall);
+        }
+        assertEquals(CallFailureCause.MAX_SELF_MANAGED_CALLS,
+                mController.checkIncomingCallPermitted(null, VOIP_HANDLE_1));
+
+        mController.onCallRemoved(lastCall);
+        assertEquals(2, mController.getNumCalls(null, VOIP_HANDLE_1));
+        assertEquals(CallFailureCause.NONE,
+                mController.checkIncomingCallPermitted(null, VOIP_HANDLE_1));
+    }
+
+    /**
+     * Verifies admission latency percentiles are computed over the recorded samples.
+     */
+    @SmallTest
+    @Test
+    public void testAdmissionLatencyPercentiles() {
+        assertEquals(-1, mController.getAdmissionLatencyPercentileNanos(50));
+        for (int i = 1; i <= 100; i++) {
+            mController.recordAdmissionLatency(i * 1000L);
+        }
+        assertEquals(50000L, mController.getAdmissionLatencyPercentileNanos(50));
+        assertEquals(90000L, mController.getAdmissionLatencyPercentileNanos(90));
+        assertEquals(99000L, mController.getAdmissionLatencyPercentileNanos(99));
+    }
+
+    private static Call makeCall(PhoneAccountHandle handle, int state, boolean isSelfManaged) {
+        Call call = mock(Call.class);
+        when(call.getTargetPhoneAccount()).thenReturn(handle);
+        when(call.getState()).thenReturn(state);
+        when(call.isSelfManaged()).thenReturn(isSelfManaged);
+        return call;
+    }
+}
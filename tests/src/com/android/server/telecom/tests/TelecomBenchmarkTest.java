@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.telecom.Connection;
+import android.telecom.DisconnectCause;
+import android.telecom.ParcelableCall;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.util.Xml;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.telecom.Analytics;
+import com.android.server.telecom.AsyncRingtonePlayer;
+import com.android.server.telecom.BitmaskTranslator;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallAnomalyWatchdog;
+import com.android.server.telecom.CallAudioManager;
+import com.android.server.telecom.CallAudioModeStateMachine;
+import com.android.server.telecom.CallAudioRouteStateMachine;
+import com.android.server.telecom.CallDiagnosticServiceController;
+import com.android.server.telecom.CallEndpointControllerFactory;
+import com.android.server.telecom.CallState;
+import com.android.server.telecom.CallerInfoLookupHelper;
+import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.ConnectionServiceFocusManager.ConnectionServiceFocusManagerFactory;
+import com.android.server.telecom.DefaultDialerCache;
+import com.android.server.telecom.EmergencyCallDiagnosticLogger;
+import com.android.server.telecom.EmergencyCallHelper;
+import com.android.server.telecom.HeadsetMediaButtonFactory;
+import com.android.server.telecom.InCallControllerFactory;
+import com.android.server.telecom.InCallTonePlayer;
+import com.android.server.telecom.InCallWakeLockControllerFactory;
+import com.android.server.telecom.MissedCallNotifier;
+import com.android.server.telecom.ParcelableCallUtils;
+import com.android.server.telecom.PhoneAccountRegistrar;
+import com.android.server.telecom.PhoneNumberUtilsAdapter;
+import com.android.server.telecom.ProximitySensorManagerFactory;
+import com.android.server.telecom.Ringer;
+import com.android.server.telecom.RoleManagerAdapter;
+import com.android.server.telecom.SystemStateHelper;
+import com.android.server.telecom.TelecomEventLoop;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.TimerWheel;
+import com.android.server.telecom.WiredHeadsetManager;
+import com.android.server.telecom.bluetooth.BluetoothRouteManager;
+import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
+import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
+import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilterResultCallback;
+import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+import com.android.server.telecom.ui.AudioProcessingNotification;
+import com.android.server.telecom.ui.CallStreamingNotification;
+import com.android.server.telecom.ui.DisconnectedCallNotifier;
+import com.android.server.telecom.ui.ToastFactory;
+import com.android.server.telecom.voip.TransactionManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of Telecom hot paths.  Each test times its operations with
+ * {@link MicroBenchmark} and reports them as a JSON suite for regression tracking.
+ */
+@RunWith(JUnit4.class)
+public class TelecomBenchmarkTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+    private static final int WARMUP_SAMPLES = 10;
+    private static final int SAMPLES = 50;
+    private static final int[] NUM_ACCOUNTS = {1, 10, 50};
+    private static final int NUM_CALLS = 6;
+    private static final int NUM_TIMERS = 5000;
+    private static final int NUM_MASKS = 1024;
+    private static final int LOCKED_SAMPLES = 10;
+    private static final long LOCK_HOLD_MILLIS = 20;
+
+    private static final CallFilteringResult PASS_CALL_RESULT = new CallFilteringResult.Builder()
+            .setShouldAllowCall(true)
+            .setShouldReject(false)
+            .setShouldSilence(false)
+            .setShouldAddToCallLog(true)
+            .setShouldShowNotification(true).build();
+
+    private static class AllowFilter extends CallFilter {
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return CompletableFuture.completedFuture(PASS_CALL_RESULT);
+        }
+    }
+
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    @Mock private ClockProxy mClockProxy;
+    @Mock private ToastFactory mToastProxy;
+    @Mock private CallsManager mCallsManager;
+    @Mock private CallerInfoLookupHelper mCallerInfoLookupHelper;
+    @Mock private PhoneNumberUtilsAdapter mPhoneNumberUtilsAdapter;
+    @Mock private PhoneAccountRegistrar mPhoneAccountRegistrar;
+    @Mock private Timeouts.Adapter mTimeoutsAdapter;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        when(mClockProxy.currentTimeMillis()).thenReturn(System.currentTimeMillis());
+        when(mClockProxy.elapsedRealtime()).thenReturn(SystemClock.elapsedRealtime());
+        when(mCallsManager.getCallerInfoLookupHelper()).thenReturn(mCallerInfoLookupHelper);
+        when(mCallsManager.getPhoneAccountRegistrar()).thenReturn(mPhoneAccountRegistrar);
+        when(mPhoneAccountRegistrar.getPhoneAccountUnchecked(any())).thenReturn(null);
+        when(mComponentContextFixture.getTelephonyManager().isEmergencyNumber(any()))
+                .thenReturn(false);
+        when(mTimeoutsAdapter.getCallScreeningTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(TEST_TIMEOUT);
+    }
+
+    /**
+     * Benchmarks building the {@link ParcelableCall} sent to in-call services.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkToParcelableCall() throws Exception {
+        Call call = createCall("1");
+        Bundle extras = new Bundle();
+        extras.putString(Connection.EXTRA_CALL_SUBJECT, "Subject");
+        extras.putString("SomeExtra", "Value");
+        call.putConnectionServiceExtras(extras);
+        call.setConnectionCapabilities(Connection.CAPABILITY_HOLD
+                | Connection.CAPABILITY_SUPPORT_HOLD | Connection.CAPABILITY_MUTE
+                | Connection.CAPABILITY_SUPPORTS_VT_LOCAL_BIDIRECTIONAL);
+
+        MicroBenchmark benchmark = new MicroBenchmark("ParcelableCallUtils");
+        benchmark.measure("toParcelableCall_systemDialer", WARMUP_SAMPLES, SAMPLES, 100,
+                i -> ParcelableCallUtils.toParcelableCall(call, false /* includeVideoProvider */,
+                        null /* phoneAccountRegistrar */, false /* supportsExternalCalls */,
+                        false /* includeRttCall */, true /* isForSystemDialer */));
+        benchmark.measure("toParcelableCall_nonSystemDialer", WARMUP_SAMPLES, SAMPLES, 100,
+                i -> ParcelableCallUtils.toParcelableCall(call, false /* includeVideoProvider */,
+                        null /* phoneAccountRegistrar */, false /* supportsExternalCalls */,
+                        false /* includeRttCall */, false /* isForSystemDialer */));
+        benchmark.report();
+    }
+
+    /**
+     * Benchmarks translating capabilities with the {@link BitmaskTranslator} tables against
+     * checking each pair of the mapping.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkBitmaskTranslator() throws Exception {
+        BitmaskTranslator translator = ParcelableCallUtils.getCapabilityTranslator();
+        int[] masks = new int[NUM_MASKS];
+        Random random = new Random(0);
+        for (int i = 0; i < NUM_MASKS; i++) {
+            masks[i] = random.nextInt();
+        }
+
+        MicroBenchmark benchmark = new MicroBenchmark("BitmaskTranslator");
+        benchmark.measure("translate_tables", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> translator.translate(masks[i % NUM_MASKS]));
+        benchmark.measure("translate_pairs", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> translator.translateByPairs(masks[i % NUM_MASKS]));
+        benchmark.report();
+    }
+
+    /**
+     * Benchmarks writing and reading the phone account state with varying numbers of accounts.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkPhoneAccountXml() throws Exception {
+        when(UserManager.get(mContext).getSerialNumberForUser(any())).thenReturn(0L);
+        when(UserManager.get(mContext).getUserForSerialNumber(anyLong()))
+                .thenReturn(Process.myUserHandle());
+
+        MicroBenchmark benchmark = new MicroBenchmark("PhoneAccountRegistrar");
+        for (int numAccounts : NUM_ACCOUNTS) {
+            PhoneAccountRegistrar.State state = new PhoneAccountRegistrar.State();
+            for (int i = 0; i < numAccounts; i++) {
+                state.accounts.add(makeAccount(i));
+            }
+            byte[] data = writeState(state);
+            assertEquals(numAccounts, readState(data).accounts.size());
+
+            benchmark.measure("write_" + numAccounts + "_accounts", WARMUP_SAMPLES, SAMPLES, 1,
+                    i -> writeState(state));
+            benchmark.measure("read_" + numAccounts + "_accounts", WARMUP_SAMPLES, SAMPLES, 1,
+                    i -> readState(data));
+        }
+        benchmark.report();
+    }
+
+    /**
+     * Benchmarks the {@link CallsManager} state queries which Telecom makes on most call state
+     * changes, and looking up a call by ID, with an active call, a held call and several
+     * disconnected calls.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkCallsManagerStateQueries() throws Exception {
+        CallsManager callsManager = createCallsManager();
+        String[] callIds = new String[NUM_CALLS];
+        Call[] calls = new Call[NUM_CALLS];
+        for (int i = 0; i < NUM_CALLS; i++) {
+            callIds[i] = "TC@" + i;
+            calls[i] = createCall(callsManager, callIds[i]);
+            calls[i].setState(i == 0 ? CallState.ACTIVE
+                    : i == 1 ? CallState.ON_HOLD : CallState.DISCONNECTED, "benchmark");
+            callsManager.addCall(calls[i]);
+        }
+        assertEquals(1, callsManager.getNumHeldCalls());
+        assertSame(calls[1], callsManager.getCall(callIds[1]));
+
+        MicroBenchmark benchmark = new MicroBenchmark("CallsManager");
+        benchmark.measure("getFirstCallWithState", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> callsManager.getFirstCallWithState(CallState.ON_HOLD, CallState.DIALING,
+                        CallState.RINGING));
+        benchmark.measure("getNumHeldCalls", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> callsManager.getNumHeldCalls());
+        benchmark.measure("getForegroundCall", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> callsManager.getForegroundCall());
+        benchmark.measure("hasOngoingCalls", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> callsManager.hasOngoingCalls(Process.myUserHandle(),
+                        true /* hasCrossUserAccess */));
+        benchmark.measure("getCall", WARMUP_SAMPLES, SAMPLES, 1000,
+                i -> callsManager.getCall(callIds[i % NUM_CALLS]));
+        benchmark.report();
+    }
+
+    /**
+     * Benchmarks scheduling a filter graph of two parallel filters followed by a third, from
+     * {@link IncomingCallFilterGraph#performFiltering} to its result.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkIncomingCallFilterGraph() throws Exception {
+        Call call = mock(Call.class);
+        Context context = mock(Context.class);
+
+        MicroBenchmark benchmark = new MicroBenchmark("IncomingCallFilterGraph");
+        benchmark.measure("performFiltering_3_filters", WARMUP_SAMPLES, SAMPLES, 1, i -> {
+            CompletableFuture<CallFilteringResult> result = new CompletableFuture<>();
+            CallFilterResultCallback listener = (c, r, timeout) -> result.complete(r);
+            IncomingCallFilterGraph graph = new IncomingCallFilterGraph(call, listener, context,
+                    mTimeoutsAdapter, mLock);
+            AllowFilter first = new AllowFilter();
+            AllowFilter second = new AllowFilter();
+            AllowFilter last = new AllowFilter();
+            graph.addFilter(first);
+            graph.addFilter(second);
+            graph.addFilter(last);
+            IncomingCallFilterGraph.addEdge(first, last);
+            IncomingCallFilterGraph.addEdge(second, last);
+            graph.performFiltering();
+            assertEquals(PASS_CALL_RESULT, result.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        });
+        benchmark.report();
+    }
+
+    /**
+     * Benchmarks recording the analytics of a call through its lifecycle.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkAnalyticsIngestion() throws Exception {
+        DisconnectCause disconnectCause = new DisconnectCause(DisconnectCause.LOCAL);
+        Analytics.reset();
+        try {
+            MicroBenchmark benchmark = new MicroBenchmark("Analytics");
+            benchmark.measure("callLifecycle", WARMUP_SAMPLES, SAMPLES, 100, i -> {
+                Analytics.CallInfo info = Analytics.initiateCallAnalytics("TC@" + i,
+                        Analytics.INCOMING_DIRECTION);
+                info.setCallStartTime(i);
+                info.addCallTechnology(Analytics.CDMA_PHONE);
+                info.setCallConnectionService("com.android.phone");
+                info.addCallProperties(Connection.PROPERTY_HIGH_DEF_AUDIO);
+                info.addInCallService("com.android.dialer", Analytics.DEFAULT_DIALER,
+                        1000 /* boundDuration */, false /* isNullBinding */);
+                info.setCallEndTime(i + 1000);
+                info.setCallDisconnectCause(disconnectCause);
+            });
+            benchmark.measure("addSessionTiming", WARMUP_SAMPLES, SAMPLES, 1000,
+                    i -> Analytics.addSessionTiming("CSW.aC", i));
+            benchmark.report();
+        } finally {
+            Analytics.reset();
+        }
+    }
+
+    /**
+     * Benchmarks rescheduling a call's timeout in a {@link TimerWheel}, as the call anomaly
+     * watchdog does on every call state change, against cancelling and re-creating a
+     * {@link ScheduledFuture}, which is what it used to do.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkTimerWheelReschedule() throws Exception {
+        Random random = new Random(42);
+        long[] delays = new long[NUM_TIMERS];
+        for (int i = 0; i < NUM_TIMERS; i++) {
+            delays[i] = 1000L + random.nextInt(9000);
+        }
+
+        TimerWheel<Integer> wheel = new TimerWheel<>(100L /* tickMillis */, 256 /* numBuckets */);
+        List<TimerWheel.Node<Integer>> nodes = new ArrayList<>(NUM_TIMERS);
+        for (int i = 0; i < NUM_TIMERS; i++) {
+            nodes.add(new TimerWheel.Node<>(i));
+        }
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[NUM_TIMERS];
+        Runnable noop = () -> { };
+        try {
+            MicroBenchmark benchmark = new MicroBenchmark("TimerWheel");
+            benchmark.measure("timerWheel_reschedule", WARMUP_SAMPLES, SAMPLES, NUM_TIMERS,
+                    i -> wheel.schedule(nodes.get(i % NUM_TIMERS), i + delays[i % NUM_TIMERS]));
+            benchmark.measure("scheduledFuture_reschedule", WARMUP_SAMPLES, SAMPLES, NUM_TIMERS,
+                    i -> {
+                        ScheduledFuture<?> existing = futures[i % NUM_TIMERS];
+                        if (existing != null) {
+                            existing.cancel(false);
+                        }
+                        futures[i % NUM_TIMERS] = executor.schedule(noop,
+                                delays[i % NUM_TIMERS], TimeUnit.MILLISECONDS);
+                    });
+            benchmark.report();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(NUM_TIMERS, wheel.size());
+    }
+
+    /**
+     * Benchmarks how long a oneway call from an app holds its binder thread while another thread
+     * holds the Telecom lock, when the call takes the lock itself and when it is posted to the
+     * {@link TelecomEventLoop}.
+     */
+    @MediumTest
+    @Test
+    public void testBenchmarkEventLoopBinderOccupancy() throws Exception {
+        HandlerThread eventThread = new HandlerThread("TelecomBenchmarkTest");
+        eventThread.start();
+        try {
+            TelecomEventLoop eventLoop = new TelecomEventLoop(true, eventThread.getLooper());
+            Runnable command = () -> {
+                synchronized (mLock) {
+                    // Stands in for an adapter method.
+                }
+            };
+            long[] directNanos = new long[LOCKED_SAMPLES];
+            long[] postedNanos = new long[LOCKED_SAMPLES];
+            for (int i = 0; i < LOCKED_SAMPLES; i++) {
+                directNanos[i] = measureWhileLocked(command);
+                // Posted as if from an app, which has a process of its own.
+                postedNanos[i] = measureWhileLocked(() -> assertTrue(eventLoop.maybePost(
+                        Process.FIRST_APPLICATION_UID, Process.myPid() + 1, command)));
+            }
+            waitForHandlerAction(new Handler(eventThread.getLooper()), TEST_TIMEOUT);
+
+            MicroBenchmark benchmark = new MicroBenchmark("TelecomEventLoop");
+            benchmark.record("direct_whileLocked", directNanos);
+            benchmark.record("eventLoop_whileLocked", postedNanos);
+            benchmark.report();
+        } finally {
+            eventThread.quitSafely();
+        }
+    }
+
+    private Call createCall(String id) {
+        return createCall(mCallsManager, id);
+    }
+
+    private Call createCall(CallsManager callsManager, String id) {
+        return new Call(id,
+                mContext /* context */,
+                callsManager,
+                mLock,
+                null /* ConnectionServiceRepository */,
+                mPhoneNumberUtilsAdapter,
+                Uri.fromParts("tel", "6505551212", null),
+                null /* GatewayInfo */,
+                null /* connectionMgr */,
+                new PhoneAccountHandle(
+                        ComponentName.unflattenFromString("com.test/Class"), "test"),
+                Call.CALL_DIRECTION_INCOMING,
+                false /* shouldAttachToExistingConnection */,
+                false /* isConference */,
+                mClockProxy /* ClockProxy */,
+                mToastProxy);
+    }
+
+    /**
+     * Creates a {@link CallsManager} whose collaborators are all mocks, as in
+     * {@link CallsManagerTest}.
+     */
+    private CallsManager createCallsManager() {
+        return new CallsManager(
+                mContext,
+                mLock,
+                mCallerInfoLookupHelper,
+                mock(MissedCallNotifier.class),
+                mock(DisconnectedCallNotifier.Factory.class, RETURNS_MOCKS),
+                mPhoneAccountRegistrar,
+                mock(HeadsetMediaButtonFactory.class, RETURNS_MOCKS),
+                mock(ProximitySensorManagerFactory.class, RETURNS_MOCKS),
+                mock(InCallWakeLockControllerFactory.class, RETURNS_MOCKS),
+                mock(ConnectionServiceFocusManagerFactory.class, RETURNS_MOCKS),
+                mock(CallAudioManager.AudioServiceFactory.class),
+                mock(BluetoothRouteManager.class),
+                mock(WiredHeadsetManager.class),
+                mock(SystemStateHelper.class),
+                mock(DefaultDialerCache.class),
+                mTimeoutsAdapter,
+                mock(AsyncRingtonePlayer.class),
+                mPhoneNumberUtilsAdapter,
+                mock(EmergencyCallHelper.class),
+                mock(InCallTonePlayer.ToneGeneratorFactory.class),
+                mClockProxy,
+                mock(AudioProcessingNotification.class),
+                mock(BluetoothStateReceiver.class),
+                mock(CallAudioRouteStateMachine.Factory.class, RETURNS_MOCKS),
+                mock(CallAudioModeStateMachine.Factory.class, RETURNS_MOCKS),
+                mock(InCallControllerFactory.class, RETURNS_MOCKS),
+                mock(CallDiagnosticServiceController.class),
+                mock(RoleManagerAdapter.class),
+                mToastProxy,
+                mock(CallEndpointControllerFactory.class, RETURNS_MOCKS),
+                mock(CallAnomalyWatchdog.class),
+                mock(Ringer.AccessibilityManagerAdapter.class),
+                // Just do async tasks synchronously.
+                command -> command.run(),
+                mock(BlockedNumbersAdapter.class),
+                TransactionManager.getTestInstance(),
+                mock(EmergencyCallDiagnosticLogger.class),
+                mock(CallStreamingNotification.class));
+    }
+
+    /**
+     * @return the time {@code call} took to run while another thread held the lock.
+     */
+    private long measureWhileLocked(Runnable call) throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (mLock) {
+                locked.countDown();
+                SystemClock.sleep(LOCK_HOLD_MILLIS);
+            }
+        });
+        holder.start();
+        assertTrue(locked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        long startNanos = System.nanoTime();
+        call.run();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        holder.join(TEST_TIMEOUT);
+        return elapsedNanos;
+    }
+
+    private static PhoneAccount makeAccount(int index) {
+        return new PhoneAccount.Builder(new PhoneAccountHandle(
+                new ComponentName("com.test", "com.test.ConnectionService"), "id" + index,
+                Process.myUserHandle()), "label" + index)
+                .setAddress(Uri.parse("tel:555-" + index))
+                .setSubscriptionAddress(Uri.parse("tel:555-" + index))
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .setShortDescription("Account " + index)
+                .addSupportedUriScheme(PhoneAccount.SCHEME_TEL)
+                .setIsEnabled(true)
+                .build();
+    }
+
+    private byte[] writeState(PhoneAccountRegistrar.State state) throws Exception {
+        XmlSerializer serializer = new FastXmlSerializer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.setOutput(new BufferedOutputStream(out), "utf-8");
+        PhoneAccountRegistrar.sStateXml.writeToXml(state, serializer, mContext);
+        serializer.flush();
+        return out.toByteArray();
+    }
+
+    private PhoneAccountRegistrar.State readState(byte[] data) throws Exception {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(new ByteArrayInputStream(data), null);
+        parser.nextTag();
+        PhoneAccountRegistrar.State state = PhoneAccountRegistrar.sStateXml.readFromXml(parser,
+                Integer.MAX_VALUE, mContext);
+        assertNotNull(state);
+        return state;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.TelecomEventLoop;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class TelecomEventLoopTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+    private static final int APP_UID = 10001;
+    private static final int OTHER_APP_UID = 10002;
+    // A process other than Telecom's own.
+    private static final int APP_PID = Process.myPid() + 1;
+
+    private final List<String> mRunCommands = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> mRunThreads = Collections.synchronizedList(new ArrayList<>());
+    private HandlerThread mHandlerThread;
+    private Handler mHandler;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mHandlerThread = new HandlerThread("TelecomEventLoopTest");
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mHandlerThread.quitSafely();
+        super.tearDown();
+    }
+
+    /**
+     * Verifies that commands posted from binder calls made by apps run on the event loop, in the
+     * order they were posted.
+     */
+    @SmallTest
+    @Test
+    public void testCommandsRunInOrderOnEventLoop() {
+        TelecomEventLoop eventLoop = new TelecomEventLoop(true, mHandlerThread.getLooper());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(eventLoop.maybePost(APP_UID, APP_PID, command("c" + i)));
+        }
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+
+        assertEquals(Arrays.asList("c0", "c1", "c2", "c3", "c4"), mRunCommands);
+        for (Thread thread : mRunThreads) {
+            assertEquals(mHandlerThread, thread);
+        }
+    }
+
+    /**
+     * Verifies that nothing is posted when the event loop is disabled, or for calls made from
+     * within Telecom, which include the commands themselves re-entering the adapter method.
+     */
+    @SmallTest
+    @Test
+    public void testCommandsRunByCallerWhenNotPosted() {
+        TelecomEventLoop disabledLoop = new TelecomEventLoop(false, mHandlerThread.getLooper());
+        assertFalse(disabledLoop.maybePost(APP_UID, APP_PID, command("disabled")));
+        TelecomEventLoop eventLoop = new TelecomEventLoop(true, mHandlerThread.getLooper());
+        assertFalse(eventLoop.maybePost(Process.myUid(), Process.myPid(), command("telecom")));
+        // Outside of a binder call, the calling identity is Telecom's own.
+        assertFalse(eventLoop.maybePost(command("local")));
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+
+        assertTrue(mRunCommands.isEmpty());
+    }
+
+    /**
+     * Verifies that a caller which has {@link TelecomEventLoop#MAX_QUEUED_PER_CALLER} commands
+     * waiting has further commands dropped, without affecting other callers, and may post again
+     * once its commands have run.
+     */
+    @SmallTest
+    @Test
+    public void testCommandsBoundedPerCaller() throws Exception {
+        TelecomEventLoop eventLoop = new TelecomEventLoop(true, mHandlerThread.getLooper());
+        CountDownLatch blocked = new CountDownLatch(1);
+        mHandler.post(() -> {
+            try {
+                blocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Let the commands run.
+            }
+        });
+        for (int i = 0; i < TelecomEventLoop.MAX_QUEUED_PER_CALLER; i++) {
+            assertTrue(eventLoop.maybePost(APP_UID, APP_PID, command("app")));
+        }
+        assertTrue(eventLoop.maybePost(APP_UID, APP_PID, command("dropped")));
+        assertTrue(eventLoop.maybePost(OTHER_APP_UID, APP_PID + 1, command("otherApp")));
+        assertEquals(1, eventLoop.getNumDropped());
+
+        blocked.countDown();
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        assertEquals(TelecomEventLoop.MAX_QUEUED_PER_CALLER + 1, mRunCommands.size());
+        assertFalse(mRunCommands.contains("dropped"));
+        assertEquals("otherApp", mRunCommands.get(mRunCommands.size() - 1));
+
+        assertTrue(eventLoop.maybePost(APP_UID, APP_PID, command("caughtUp")));
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+        assertEquals("caughtUp", mRunCommands.get(mRunCommands.size() - 1));
+        assertEquals(1, eventLoop.getNumDropped());
+    }
+
+    /**
+     * Verifies that a command which throws does not stop the commands after it from running.
+     */
+    @SmallTest
+    @Test
+    public void testFailedCommandDoesNotStopLoop() {
+        TelecomEventLoop eventLoop = new TelecomEventLoop(true, mHandlerThread.getLooper());
+        eventLoop.maybePost(APP_UID, APP_PID, () -> {
+            throw new IllegalStateException("failed");
+        });
+        eventLoop.maybePost(APP_UID, APP_PID, command("after"));
+        waitForHandlerAction(mHandler, TEST_TIMEOUT);
+
+        assertEquals(Arrays.asList("after"), mRunCommands);
+    }
+
+    private Runnable command(String name) {
+        return () -> {
+            mRunThreads.add(Thread.currentThread());
+            mRunCommands.add(name);
+        };
+    }
+}
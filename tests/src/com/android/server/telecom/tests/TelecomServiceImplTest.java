@@ -76,8 +76,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.function.IntConsumer;
 
@@ -2110,6 +2115,57 @@ public class TelecomServiceImplTest extends TelecomTestCase {
                 mTSIBinder.getAdnUriForPhoneAccount(TEL_PA_HANDLE_CURRENT, DEFAULT_DIALER_PACKAGE));
     }
 
+    @SmallTest
+    @Test
+    public void testParseDumpSections() {
+        assertEquals(8, TelecomServiceImpl.parseDumpSections(null).size());
+        assertEquals(Set.of(TelecomServiceImpl.DUMP_SECTION_CALLS,
+                        TelecomServiceImpl.DUMP_SECTION_ANALYTICS),
+                TelecomServiceImpl.parseDumpSections(
+                        new String[] {"--section=calls,Analytics"}));
+        assertNull(TelecomServiceImpl.parseDumpSections(new String[] {"--section=calls,foo"}));
+    }
+
+    /**
+     * Verifies that a dump only holds the Telecom lock to copy the state of the calls, and that
+     * it only writes the selected sections.
+     */
+    @SmallTest
+    @Test
+    public void testDumpSnapshotsCallsUnderLock() throws Exception {
+        when(mContext.checkCallingOrSelfPermission(Manifest.permission.DUMP))
+                .thenReturn(PackageManager.PERMISSION_GRANTED);
+        when(mFakeCallsManager.snapshotForDump()).thenAnswer(invocation -> {
+            assertTrue(Thread.holdsLock(mLock));
+            return new CallsManager.DumpSnapshot();
+        });
+        doAnswer(invocation -> {
+            assertFalse(Thread.holdsLock(mLock));
+            return null;
+        }).when(mFakeCallsManager).dump(any(), any(), any(CallsManager.DumpSnapshot.class));
+
+        String dump = dump(new String[] {"--section=calls"});
+
+        verify(mFakeCallsManager).snapshotForDump();
+        verify(mFakeCallsManager).dump(any(), any(), any(CallsManager.DumpSnapshot.class));
+        assertTrue(dump, dump.contains("CallsManager:"));
+        assertTrue(dump, dump.contains("Telecom lock held for dump:"));
+        assertFalse(dump, dump.contains("Analytics:"));
+        assertFalse(dump, dump.contains("PhoneAccountRegistrar:"));
+    }
+
+    private String dump(String[] args) throws Exception {
+        File file = File.createTempFile("telecom_dump", null);
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                mTSIBinder.dump(out.getFD(), args);
+            }
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } finally {
+            file.delete();
+        }
+    }
+
     /**
      * Register phone accounts for the supplied PhoneAccountHandles to make them
      * visible to all users (via the isVisibleToCaller method in TelecomServiceImpl.
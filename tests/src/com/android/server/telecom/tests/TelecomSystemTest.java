@@ -395,6 +395,7 @@ public class TelecomSystemTest extends TelecomTestCase {
             }
             handlerThreads.clear();
             mTelecomSystem.getCallsManager().getVoipCallMonitor().stopMonitor();
+            mTelecomSystem.getCallsManager().getBlockedNumberIndex().stopObserving();
         }
         waitForHandlerAction(new Handler(Looper.getMainLooper()), TEST_TIMEOUT);
         waitForHandlerAction(mHandlerThread.getThreadHandler(), TEST_TIMEOUT);
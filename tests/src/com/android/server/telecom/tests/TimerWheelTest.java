@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.TimerWheel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class TimerWheelTest extends TelecomTestCase {
+    private static final long TICK_MILLIS = 100L;
+    private static final int NUM_BUCKETS = 256;
+
+    /**
+     * Verifies that nodes expire only once their deadline has strictly passed.
+     */
+    @SmallTest
+    @Test
+    public void testExpireAfterDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MILLIS, NUM_BUCKETS);
+        TimerWheel.Node<String> node = new TimerWheel.Node<>("call1");
+        wheel.schedule(node, 350L);
+        assertEquals(350L, wheel.getEarliestDeadlineMillis());
+
+        List<String> expired = new ArrayList<>();
+        assertEquals(0, wheel.expire(350L, expired::add));
+        assertTrue(node.isScheduled());
+        assertEquals(1, wheel.expire(351L, expired::add));
+        assertFalse(node.isScheduled());
+        assertEquals(List.of("call1"), expired);
+        assertEquals(0, wheel.size());
+        assertEquals(-1, wheel.getEarliestDeadlineMillis());
+    }
+
+    /**
+     * Verifies that rescheduling a node moves it rather than adding a second entry, and that
+     * cancelled nodes never expire.
+     */
+    @SmallTest
+    @Test
+    public void testRescheduleAndCancel() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MILLIS, NUM_BUCKETS);
+        TimerWheel.Node<String> node1 = new TimerWheel.Node<>("call1");
+        TimerWheel.Node<String> node2 = new TimerWheel.Node<>("call2");
+        wheel.schedule(node1, 100L);
+        wheel.schedule(node2, 200L);
+        wheel.schedule(node1, 300L);
+        assertEquals(2, wheel.size());
+        assertEquals(200L, wheel.getEarliestDeadlineMillis());
+
+        assertTrue(wheel.cancel(node2));
+        assertFalse(wheel.cancel(node2));
+        assertEquals(300L, wheel.getEarliestDeadlineMillis());
+
+        List<String> expired = new ArrayList<>();
+        wheel.expire(250L, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.expire(301L, expired::add);
+        assertEquals(List.of("call1"), expired);
+    }
+
+    /**
+     * Verifies that deadlines beyond a single revolution of the wheel do not expire early, and
+     * that a sweep covering a long gap expires everything that is due in one batch.
+     */
+    @SmallTest
+    @Test
+    public void testDeadlinesBeyondOneRevolution() {
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MILLIS, 4);
+        TimerWheel.Node<String> near = new TimerWheel.Node<>("near");
+        TimerWheel.Node<String> far = new TimerWheel.Node<>("far");
+        wheel.schedule(near, 150L);
+        // Lands in the same bucket as "near" but three revolutions later.
+        wheel.schedule(far, 1350L);
+        assertEquals(150L, wheel.getEarliestDeadlineMillis());
+
+        List<String> expired = new ArrayList<>();
+        wheel.expire(200L, expired::add);
+        assertEquals(List.of("near"), expired);
+        assertEquals(1350L, wheel.getEarliestDeadlineMillis());
+
+        wheel.expire(5000L, expired::add);
+        assertEquals(List.of("near", "far"), expired);
+    }
+
+    /**
+     * Stress test which simulates thousands of calls cycling between states, rescheduling or
+     * cancelling their timeouts on every transition while time moves on and the wheel is swept.
+     * Verifies that every timer which is still scheduled fires exactly once, on the first sweep
+     * after its deadline, and that the earliest deadline reported is always right.
+     */
+    @MediumTest
+    @Test
+    public void testStressCallStateCycling() {
+        final int numCalls = 5000;
+        final int numRounds = 200;
+        final int transitionsPerRound = 500;
+        final Random random = new Random(42);
+        // The deadline of each call's timer, or -1 if it is not scheduled.
+        long[] deadlines = new long[numCalls];
+        Arrays.fill(deadlines, -1L);
+
+        TimerWheel<Integer> wheel = new TimerWheel<>(TICK_MILLIS, NUM_BUCKETS);
+        List<TimerWheel.Node<Integer>> nodes = new ArrayList<>(numCalls);
+        for (int i = 0; i < numCalls; i++) {
+            nodes.add(new TimerWheel.Node<>(i));
+        }
+        long[] now = {0L};
+        for (int round = 0; round < numRounds; round++) {
+            for (int t = 0; t < transitionsPerRound; t++) {
+                int call = random.nextInt(numCalls);
+                if (random.nextInt(10) == 0) {
+                    assertEquals(deadlines[call] >= 0, wheel.cancel(nodes.get(call)));
+                    deadlines[call] = -1L;
+                } else {
+                    // Up to several revolutions of the wheel away.
+                    deadlines[call] = now[0] + random.nextInt(4 * NUM_BUCKETS * (int) TICK_MILLIS);
+                    wheel.schedule(nodes.get(call), deadlines[call]);
+                }
+            }
+            assertEquals(getEarliestDeadline(deadlines), wheel.getEarliestDeadlineMillis());
+
+            long previousNow = now[0];
+            now[0] += 1 + random.nextInt((int) TICK_MILLIS * 3);
+            wheel.expire(now[0], call -> {
+                assertTrue("fired twice", deadlines[call] >= 0);
+                assertTrue("fired early", deadlines[call] < now[0]);
+                assertTrue("fired late", deadlines[call] >= previousNow);
+                deadlines[call] = -1L;
+            });
+        }
+
+        now[0] += 4 * NUM_BUCKETS * TICK_MILLIS;
+        wheel.expire(now[0], call -> {
+            assertTrue("fired twice", deadlines[call] >= 0);
+            assertTrue("fired early", deadlines[call] < now[0]);
+            deadlines[call] = -1L;
+        });
+        assertEquals(0, wheel.size());
+        assertEquals(-1L, getEarliestDeadline(deadlines));
+        for (TimerWheel.Node<Integer> node : nodes) {
+            assertFalse(node.isScheduled());
+        }
+    }
+
+    private static long getEarliestDeadline(long[] deadlines) {
+        long earliest = -1L;
+        for (long deadline : deadlines) {
+            if (deadline >= 0 && (earliest < 0 || deadline < earliest)) {
+                earliest = deadline;
+            }
+        }
+        return earliest;
+    }
+}
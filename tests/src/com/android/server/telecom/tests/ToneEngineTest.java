@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.server.telecom.CallAudioManager;
+import com.android.server.telecom.CallAudioRoutePeripheralAdapter;
+import com.android.server.telecom.InCallTonePlayer;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.ToneEngine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ToneEngineTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000L;
+    private static final long IDLE_GENERATOR_TIMEOUT_MILLIS = 100L;
+    private static final int LATENCY_SAMPLES = 50;
+
+    /**
+     * A tone which records what the engine asks of it.
+     */
+    private class TestTone extends ToneEngine.Tone {
+        private final String mName;
+        private final int mPriority;
+        private final boolean mIsContinuous;
+
+        TestTone(String name, int priority, boolean isContinuous) {
+            mName = name;
+            mPriority = priority;
+            mIsContinuous = isContinuous;
+        }
+
+        @Override
+        protected int getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        protected boolean isContinuous() {
+            return mIsContinuous;
+        }
+
+        @Override
+        protected boolean onStart() {
+            mEvents.add(mName + ".start");
+            return true;
+        }
+
+        @Override
+        protected void onStop() {
+            mEvents.add(mName + ".stop");
+        }
+
+        @Override
+        protected void onFinished() {
+            mEvents.add(mName + ".finished");
+        }
+    }
+
+    @Mock private ToneGenerator mToneGenerator;
+    @Mock private InCallTonePlayer.ToneGeneratorFactory mToneGeneratorFactory;
+    @Mock private InCallTonePlayer.MediaPlayerFactory mMediaPlayerFactory;
+    @Mock private InCallTonePlayer.AudioManagerAdapter mAudioManagerAdapter;
+    @Mock private CallAudioRoutePeripheralAdapter mCallAudioRoutePeripheralAdapter;
+    @Mock private CallAudioManager mCallAudioManager;
+
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    private final List<String> mEvents = Collections.synchronizedList(new ArrayList<>());
+    private ToneEngine mToneEngine;
+    private InCallTonePlayer mLastPlayer;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mToneEngine = new ToneEngine(ToneEngine.getWorkerLooper(),
+                IDLE_GENERATOR_TIMEOUT_MILLIS);
+        when(mToneGeneratorFactory.get(anyInt(), anyInt())).thenReturn(mToneGenerator);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        if (mLastPlayer != null) {
+            mLastPlayer.cleanup();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Verifies that a tone of a higher priority ends the tone playing and starts straight away.
+     */
+    @SmallTest
+    @Test
+    public void testHigherPriorityTonePreempts() {
+        mToneEngine.play(new TestTone("low", ToneEngine.PRIORITY_LOW, false));
+        mToneEngine.play(new TestTone("high", ToneEngine.PRIORITY_HIGH, false));
+        waitForEngine();
+        assertEquals(List.of("low.start", "low.stop", "low.finished", "high.start"), mEvents);
+    }
+
+    /**
+     * Verifies that a tone of the same priority replaces the tone playing.
+     */
+    @SmallTest
+    @Test
+    public void testSamePriorityTonePreempts() {
+        mToneEngine.play(new TestTone("first", ToneEngine.PRIORITY_HIGH, false));
+        mToneEngine.play(new TestTone("second", ToneEngine.PRIORITY_HIGH, false));
+        waitForEngine();
+        assertEquals(List.of("first.start", "first.stop", "first.finished", "second.start"),
+                mEvents);
+    }
+
+    /**
+     * Verifies that a tone of a lower priority waits until the tone playing is done.
+     */
+    @SmallTest
+    @Test
+    public void testLowerPriorityToneWaits() {
+        TestTone high = new TestTone("high", ToneEngine.PRIORITY_HIGH, false);
+        mToneEngine.play(high);
+        mToneEngine.play(new TestTone("low", ToneEngine.PRIORITY_LOW, false));
+        waitForEngine();
+        assertEquals(List.of("high.start"), mEvents);
+
+        mToneEngine.onToneFinished(high);
+        waitForEngine();
+        assertEquals(List.of("high.start", "high.stop", "high.finished", "low.start"), mEvents);
+    }
+
+    /**
+     * Verifies that a continuous tone which is preempted starts again once the tone which
+     * preempted it is done.
+     */
+    @SmallTest
+    @Test
+    public void testContinuousToneResumesAfterPreemption() {
+        mToneEngine.play(new TestTone("ringback", ToneEngine.PRIORITY_NORMAL, true));
+        TestTone busy = new TestTone("busy", ToneEngine.PRIORITY_HIGH, false);
+        mToneEngine.play(busy);
+        waitForEngine();
+        assertEquals(List.of("ringback.start", "ringback.stop", "busy.start"), mEvents);
+
+        mToneEngine.onToneFinished(busy);
+        waitForEngine();
+        assertEquals(List.of("ringback.start", "ringback.stop", "busy.start", "busy.stop",
+                "busy.finished", "ringback.start"), mEvents);
+    }
+
+    /**
+     * Verifies that a tone stopped before it starts is dropped from the queue, and that stopping
+     * a tone the engine does not have does nothing.
+     */
+    @SmallTest
+    @Test
+    public void testStopQueuedTone() {
+        mToneEngine.play(new TestTone("high", ToneEngine.PRIORITY_HIGH, false));
+        TestTone low = new TestTone("low", ToneEngine.PRIORITY_LOW, false);
+        mToneEngine.play(low);
+        mToneEngine.stop(low);
+        mToneEngine.stop(new TestTone("unknown", ToneEngine.PRIORITY_HIGH, false));
+        waitForEngine();
+        assertEquals(List.of("high.start", "low.finished"), mEvents);
+    }
+
+    /**
+     * Verifies that a tone generator is reused for the same stream type and volume, and released
+     * once it has been idle for a while.
+     */
+    @SmallTest
+    @Test
+    public void testToneGeneratorsPooled() {
+        ToneGenerator first = mToneEngine.acquireToneGenerator(AudioManager.STREAM_VOICE_CALL,
+                80, mToneGeneratorFactory);
+        mToneEngine.releaseToneGenerator(AudioManager.STREAM_VOICE_CALL, 80, first);
+        ToneGenerator second = mToneEngine.acquireToneGenerator(AudioManager.STREAM_VOICE_CALL,
+                80, mToneGeneratorFactory);
+        assertSame(first, second);
+        verify(mToneGeneratorFactory, times(1)).get(AudioManager.STREAM_VOICE_CALL, 80);
+
+        ToneGenerator other = mock(ToneGenerator.class);
+        when(mToneGeneratorFactory.get(AudioManager.STREAM_VOICE_CALL, 30)).thenReturn(other);
+        assertNotSame(second, mToneEngine.acquireToneGenerator(AudioManager.STREAM_VOICE_CALL,
+                30, mToneGeneratorFactory));
+
+        mToneEngine.releaseToneGenerator(AudioManager.STREAM_VOICE_CALL, 80, second);
+        mToneEngine.releaseToneGenerator(AudioManager.STREAM_VOICE_CALL, 30, other);
+        assertEquals(2, mToneEngine.getIdleToneGeneratorCount());
+        verify(mToneGenerator, never()).release();
+
+        waitForHandlerActionDelayed(mToneEngine.getHandler(), TEST_TIMEOUT,
+                IDLE_GENERATOR_TIMEOUT_MILLIS * 2);
+        assertEquals(0, mToneEngine.getIdleToneGeneratorCount());
+        verify(mToneGenerator).release();
+        verify(other).release();
+    }
+
+    /**
+     * Measures how long in-call tones take to start and checks that they are all played on the
+     * one worker with one tone generator, where each used to start a thread and create a
+     * generator.  The cost of starting a thread per tone is measured for comparison.
+     */
+    @MediumTest
+    @Test
+    public void testToneStartLatencyAndThreadChurn() throws Exception {
+        InCallTonePlayer.Factory factory = new InCallTonePlayer.Factory(
+                mCallAudioRoutePeripheralAdapter, mLock, mToneGeneratorFactory,
+                mMediaPlayerFactory, mAudioManagerAdapter, mToneEngine);
+        factory.setCallAudioManager(mCallAudioManager);
+        Set<Thread> playbackThreads = Collections.synchronizedSet(new HashSet<>());
+        CountDownLatch[] toneStarted = new CountDownLatch[1];
+        doAnswer(invocation -> {
+            playbackThreads.add(Thread.currentThread());
+            toneStarted[0].countDown();
+            return true;
+        }).when(mToneGenerator).startTone(anyInt());
+
+        int threadsBefore = Thread.activeCount();
+        long[] toneStartNanos = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            toneStarted[0] = new CountDownLatch(1);
+            mLastPlayer = factory.createPlayer(InCallTonePlayer.TONE_BUSY);
+            long startNanos = System.nanoTime();
+            assertTrue(mLastPlayer.startTone());
+            assertTrue(toneStarted[0].await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+            toneStartNanos[i] = System.nanoTime() - startNanos;
+            mLastPlayer.stopTone();
+            waitForEngine();
+        }
+        int threadsAfter = Thread.activeCount();
+
+        long[] threadStartNanos = new long[LATENCY_SAMPLES];
+        for (int i = 0; i < LATENCY_SAMPLES; i++) {
+            CountDownLatch threadStarted = new CountDownLatch(1);
+            long startNanos = System.nanoTime();
+            new Thread(threadStarted::countDown).start();
+            assertTrue(threadStarted.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+            threadStartNanos[i] = System.nanoTime() - startNanos;
+        }
+
+        assertEquals(1, playbackThreads.size());
+        verify(mToneGeneratorFactory, times(1)).get(anyInt(), anyInt());
+
+        MicroBenchmark benchmark = new MicroBenchmark("ToneEngine");
+        benchmark.record("inCallToneStart", toneStartNanos);
+        benchmark.record("threadPerToneStart", threadStartNanos);
+        benchmark.putMetric("playbackThreads", playbackThreads.size());
+        benchmark.putMetric("threadsStartedForTones", Math.max(0, threadsAfter - threadsBefore));
+        benchmark.putMetric("toneGeneratorsCreated",
+                mockingDetails(mToneGeneratorFactory).getInvocations().size());
+        benchmark.report();
+    }
+
+    private void waitForEngine() {
+        waitForHandlerAction(mToneEngine.getHandler(), TEST_TIMEOUT);
+    }
+}
@@ -17,17 +17,25 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.telecom.VideoProfile;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.android.internal.telecom.IVideoCallback;
 import com.android.internal.telecom.IVideoProvider;
 import com.android.server.telecom.Analytics;
 import com.android.server.telecom.Call;
@@ -42,8 +50,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class VideoProviderProxyTest extends TelecomTestCase {
 
+    private static final long TEST_TIMEOUT = 1000L;
+
     private TelecomSystem.SyncRoot mLock;
     private VideoProviderProxy mVideoProviderProxy;
     @Mock private IVideoProvider mVideoProvider;
@@ -52,6 +65,8 @@ public class VideoProviderProxyTest extends TelecomTestCase {
     @Mock private Analytics.CallInfo mCallInfo;
     @Mock private CurrentUserProxy mCurrentUserProxy;
     @Mock private VideoProviderProxy.Listener mListener;
+    @Mock private IBinder mVideoCallbackBinder;
+    @Mock private IVideoCallback mVideoCallback;
 
     @Override
     @Before
@@ -138,4 +153,84 @@ public class VideoProviderProxyTest extends TelecomTestCase {
                 new VideoProfile(VideoProfile.STATE_BIDIRECTIONAL));
         verify(mCall).maybeEnableSpeakerForVideoUpgrade(eq(VideoProfile.STATE_BIDIRECTIONAL));
     }
+
+    /**
+     * Tests that call data usage updates are tracked on the call without waiting for the Telecom
+     * lock, even when another thread is currently holding it.
+     * @throws Exception
+     */
+    @SmallTest
+    @Test
+    public void testDataUsageRelayedWithoutTelecomLock() throws Exception {
+        mVideoProviderProxy.setDataUsageRelayIntervalMillis(0);
+        CountDownLatch lockHeld = new CountDownLatch(1);
+        CountDownLatch releaseLock = new CountDownLatch(1);
+        Thread lockHolder = new Thread(() -> {
+            synchronized (mLock) {
+                lockHeld.countDown();
+                try {
+                    releaseLock.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Fall through and release the lock.
+                }
+            }
+        });
+        lockHolder.start();
+        assertTrue(lockHeld.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        try {
+            mVideoProviderProxy.getVideoCallListenerBinder().changeCallDataUsage(1024L);
+            mVideoProviderProxy.getVideoCallListenerBinder().changePeerDimensions(640, 480);
+            verify(mCall).setCallDataUsage(eq(1024L));
+        } finally {
+            releaseLock.countDown();
+            lockHolder.join();
+        }
+    }
+
+    /**
+     * Tests that when data usage relay is coalesced, every update is still tracked on the call so
+     * that the call log records the latest value.
+     * @throws Exception
+     */
+    @SmallTest
+    @Test
+    public void testCoalescedDataUsageStillTrackedOnCall() throws Exception {
+        mVideoProviderProxy.setDataUsageRelayIntervalMillis(
+                VideoProviderProxy.DATA_USAGE_RELAY_INTERVAL_MILLIS);
+        mVideoProviderProxy.getVideoCallListenerBinder().changeCallDataUsage(100L);
+        mVideoProviderProxy.getVideoCallListenerBinder().changeCallDataUsage(200L);
+        verify(mCall).setCallDataUsage(eq(100L));
+        verify(mCall).setCallDataUsage(eq(200L));
+        mVideoProviderProxy.clearVideoCallback();
+    }
+
+    /**
+     * Tests that a burst of data usage updates is relayed to the InCallServices as a single update
+     * carrying the latest value.
+     * @throws Exception
+     */
+    @SmallTest
+    @Test
+    public void testDataUsageBurstRelayedOnce() throws Exception {
+        // Register an InCallService callback with the video provider, which is done on the main
+        // thread.
+        when(mVideoCallbackBinder.queryLocalInterface(anyString())).thenReturn(mVideoCallback);
+        mVideoProviderProxy.getInterface().addVideoCallback(mVideoCallbackBinder);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        waitForHandlerAction(mainHandler, TEST_TIMEOUT);
+
+        mVideoProviderProxy.setDataUsageRelayIntervalMillis(
+                VideoProviderProxy.DATA_USAGE_RELAY_INTERVAL_MILLIS);
+        for (long dataUsage = 100L; dataUsage <= 1000L; dataUsage += 100L) {
+            mVideoProviderProxy.getVideoCallListenerBinder().changeCallDataUsage(dataUsage);
+        }
+
+        verify(mVideoCallback, timeout(VideoProviderProxy.DATA_USAGE_RELAY_INTERVAL_MILLIS
+                + TEST_TIMEOUT)).changeCallDataUsage(eq(1000L));
+        waitForHandlerAction(mainHandler, TEST_TIMEOUT);
+        verify(mVideoCallback, times(1)).changeCallDataUsage(anyLong());
+        verify(mCall, times(10)).setCallDataUsage(anyLong());
+        mVideoProviderProxy.clearVideoCallback();
+    }
 }